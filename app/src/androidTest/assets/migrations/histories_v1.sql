@@ -0,0 +1,10 @@
+-- Esquema e dados de exemplo da versão 1 da base (ver HistoryMigrations)
+CREATE TABLE histories (_id INTEGER PRIMARY KEY, title TEXT NOT NULL, url_history TEXT NOT NULL, url_image TEXT, date_created INTEGER NOT NULL, date_modified INTEGER, favorite INTEGER NOT NULL DEFAULT 0);
+CREATE TABLE paragraphs (_id INTEGER PRIMARY KEY AUTOINCREMENT, history_id INTEGER REFERENCES histories ON DELETE CASCADE, type INTEGER NOT NULL, content TEXT NOT NULL);
+CREATE INDEX paragraphs_index ON paragraphs(history_id);
+INSERT INTO histories (_id, title, url_history, url_image, date_created, date_modified, favorite) VALUES (10, '&#8220;Raposa&#8221; e o Coração', 'http://www.teste.com/10', 'http://www.teste.com/10.jpg', 1000, 1001, 1);
+INSERT INTO histories (_id, title, url_history, url_image, date_created, date_modified, favorite) VALUES (20, 'Pinguim', 'http://www.teste.com/20', 'http://www.teste.com/20.jpg', 2000, 2001, 0);
+INSERT INTO paragraphs (history_id, type, content) VALUES (10, 0, 'A raposa encontrou um coração de pedra.');
+INSERT INTO paragraphs (history_id, type, content) VALUES (10, 1, 'http://www.teste.com/raposa.jpg');
+INSERT INTO paragraphs (history_id, type, content) VALUES (10, 0, 'E viveu feliz.');
+INSERT INTO paragraphs (history_id, type, content) VALUES (20, 0, 'O pinguim sentia calor no deserto.');
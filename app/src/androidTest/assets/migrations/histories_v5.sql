@@ -0,0 +1,13 @@
+-- Esquema e dados de exemplo da versão 5 da base (ver HistoryMigrations)
+CREATE TABLE histories (_id INTEGER PRIMARY KEY, title TEXT NOT NULL, url_history TEXT NOT NULL, url_image TEXT, date_created INTEGER NOT NULL, date_modified INTEGER, favorite INTEGER NOT NULL DEFAULT 0, content_fetched INTEGER NOT NULL DEFAULT 0, content_hash TEXT, title_plain TEXT, title_sort TEXT);
+CREATE TABLE paragraphs (_id INTEGER PRIMARY KEY AUTOINCREMENT, history_id INTEGER REFERENCES histories ON DELETE CASCADE, type INTEGER NOT NULL, content TEXT NOT NULL);
+CREATE INDEX paragraphs_index ON paragraphs(history_id);
+CREATE TABLE paragraph_blobs (history_id INTEGER PRIMARY KEY REFERENCES histories ON DELETE CASCADE, data BLOB NOT NULL);
+CREATE INDEX histories_title_sort_index ON histories(title_sort);
+INSERT INTO histories (_id, title, url_history, url_image, date_created, date_modified, favorite, content_fetched, content_hash, title_plain, title_sort) VALUES (10, '&#8220;Raposa&#8221; e o Coração', 'http://www.teste.com/10', 'http://www.teste.com/10.jpg', 1000, 1001, 1, 1, 'hash10', '“Raposa” e o Coração', 'raposa” e o coracao');
+INSERT INTO histories (_id, title, url_history, url_image, date_created, date_modified, favorite, content_fetched, content_hash, title_plain, title_sort) VALUES (20, 'Pinguim', 'http://www.teste.com/20', 'http://www.teste.com/20.jpg', 2000, 2001, 0, 1, 'hash20', 'Pinguim', 'pinguim');
+INSERT INTO histories (_id, title, url_history, url_image, date_created, date_modified, favorite, content_fetched, content_hash, title_plain, title_sort) VALUES (30, 'Leão', 'http://www.teste.com/30', 'http://www.teste.com/30.jpg', 3000, 3001, 0, 0, NULL, 'Leão', 'leao');
+INSERT INTO paragraphs (history_id, type, content) VALUES (10, 0, 'A raposa encontrou um coração de pedra.');
+INSERT INTO paragraphs (history_id, type, content) VALUES (10, 1, 'http://www.teste.com/raposa.jpg');
+INSERT INTO paragraphs (history_id, type, content) VALUES (10, 0, 'E viveu feliz.');
+INSERT INTO paragraphs (history_id, type, content) VALUES (20, 0, 'O pinguim sentia calor no deserto.');
@@ -0,0 +1,136 @@
+package com.abobrinha.caixinha.data;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Locale;
+
+import static junit.framework.Assert.assertEquals;
+
+/**
+ * Compara a gravação de parágrafos com SQLiteDatabase.insert, uma chamada por linha, e com os
+ * comandos compilados do HistoryBulkWriter, em linhas por segundo. Os tempos são registrados no
+ * log.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestBulkInsertBenchmark {
+    private static final String LOG_TAG = TestBulkInsertBenchmark.class.getSimpleName();
+
+    private static final String DATABASE_NAME = "bulk_insert_benchmark.db";
+    private static final int PARAGRAPHS_PER_HISTORY = 50;
+
+    private final Context context = InstrumentationRegistry.getTargetContext();
+
+    @After
+    public void tearDown() {
+        context.deleteDatabase(DATABASE_NAME);
+    }
+
+    @Test
+    public void testOneThousandParagraphs() {
+        compareInsertPaths(1000);
+    }
+
+    @Test
+    public void testFiftyThousandParagraphs() {
+        compareInsertPaths(50000);
+    }
+
+    private void compareInsertPaths(int paragraphsQuantity) {
+        ContentValues[][] histories = createHistories(paragraphsQuantity / PARAGRAPHS_PER_HISTORY);
+
+        double insertRowsPerSecond = measure(histories, false);
+        double compiledRowsPerSecond = measure(histories, true);
+
+        Log.i(LOG_TAG, String.format(Locale.US,
+                "%d parágrafos: SQLiteDatabase.insert %.0f linhas/s, " +
+                        "HistoryBulkWriter %.0f linhas/s (%.1fx)",
+                paragraphsQuantity, insertRowsPerSecond, compiledRowsPerSecond,
+                compiledRowsPerSecond / insertRowsPerSecond));
+    }
+
+    /*
+     * Grava as histórias e seus parágrafos em uma única transação, como o HistoryProvider, e
+     * retorna a quantidade de linhas gravadas por segundo.
+     */
+    private double measure(ContentValues[][] histories, boolean compiled) {
+        context.deleteDatabase(DATABASE_NAME);
+        HistoryDbHelper helper = new HistoryDbHelper(context, DATABASE_NAME, true);
+        SQLiteDatabase database = helper.getWritableDatabase();
+
+        long start = System.nanoTime();
+        database.beginTransaction();
+        HistoryBulkWriter writer = new HistoryBulkWriter(database);
+        try {
+            for (int id = 0; id < histories.length; id++) {
+                ContentValues historyValues = createHistory(id);
+                if (compiled) {
+                    writer.insertHistory(historyValues);
+                    writer.insertParagraphs(id, histories[id]);
+                } else {
+                    database.insert(HistoryContract.HistoriesEntry.TABLE_NAME, null,
+                            historyValues);
+                    for (ContentValues paragraphValues : histories[id]) {
+                        database.insert(HistoryContract.ParagraphsEntry.TABLE_NAME, null,
+                                paragraphValues);
+                    }
+                }
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            writer.close();
+            database.endTransaction();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        long rows = DatabaseUtils.queryNumEntries(database,
+                HistoryContract.HistoriesEntry.TABLE_NAME) +
+                DatabaseUtils.queryNumEntries(database, HistoryContract.ParagraphsEntry.TABLE_NAME);
+        assertEquals("Quantidade de linhas gravadas incorreta.",
+                histories.length * (PARAGRAPHS_PER_HISTORY + 1), rows);
+
+        helper.close();
+        return rows / seconds;
+    }
+
+    private static ContentValues createHistory(int id) {
+        ContentValues historyValues = new ContentValues();
+        historyValues.put(HistoryContract.HistoriesEntry._ID, id);
+        historyValues.put(HistoryContract.HistoriesEntry.COLUMN_HISTORY_TITLE, "História " + id);
+        historyValues.putAll(HistoryDbHelper.buildTitleValues("História " + id));
+        historyValues.put(HistoryContract.HistoriesEntry.COLUMN_HISTORY_URL,
+                "http://www.teste.com/" + id);
+        historyValues.put(HistoryContract.HistoriesEntry.COLUMN_HISTORY_DATE, 1000L * id);
+        historyValues.put(HistoryContract.HistoriesEntry.COLUMN_CONTENT_FETCHED,
+                HistoryContract.CONTENT_FETCHED);
+        return historyValues;
+    }
+
+    private static ContentValues[][] createHistories(int quantity) {
+        ContentValues[][] histories = new ContentValues[quantity][];
+        for (int id = 0; id < quantity; id++) {
+            histories[id] = HistoryProvider.historyContentParser(id, createRawContent(id));
+            assertEquals(PARAGRAPHS_PER_HISTORY, histories[id].length);
+        }
+        return histories;
+    }
+
+    private static String createRawContent(int historyId) {
+        StringBuilder rawContent = new StringBuilder();
+        for (int i = 0; i < PARAGRAPHS_PER_HISTORY; i++) {
+            rawContent.append("<p>Era uma vez, na história ").append(historyId)
+                    .append(", o parágrafo ").append(i)
+                    .append(", com um texto de tamanho parecido com o das histórias reais.</p>");
+        }
+        return rawContent.toString();
+    }
+}
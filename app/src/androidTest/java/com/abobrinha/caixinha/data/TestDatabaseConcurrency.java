@@ -0,0 +1,161 @@
+package com.abobrinha.caixinha.data;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Compara a latência das consultas da tela principal enquanto uma sincronização grande escreve
+ * na base, com o journal padrão do SQLite (rollback) e com write-ahead logging (WAL). Os tempos
+ * de cada modo são registrados no log.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestDatabaseConcurrency {
+    private static final String LOG_TAG = TestDatabaseConcurrency.class.getSimpleName();
+
+    private static final String ROLLBACK_DATABASE_NAME = "concurrency_rollback.db";
+    private static final String WAL_DATABASE_NAME = "concurrency_wal.db";
+
+    private static final int INITIAL_HISTORIES = 500;
+    private static final int SYNC_HISTORIES = 3000;
+    private static final int PARAGRAPHS_PER_HISTORY = 30;
+
+    // Consulta da grade de histórias, como na HistoryGridFragment
+    private static final String[] GRID_PROJECTION = {
+            HistoryContract.HistoriesEntry._ID,
+            HistoryContract.HistoriesEntry.COLUMN_HISTORY_TITLE_PLAIN,
+            HistoryContract.HistoriesEntry.COLUMN_HISTORY_IMAGE,
+            HistoryContract.HistoriesEntry.COLUMN_FAVORITE
+    };
+
+    private final Context context = InstrumentationRegistry.getTargetContext();
+
+    @After
+    public void tearDown() {
+        context.deleteDatabase(ROLLBACK_DATABASE_NAME);
+        context.deleteDatabase(WAL_DATABASE_NAME);
+    }
+
+    @Test
+    public void testReadLatencyDuringSync() throws Exception {
+        LatencyResult rollback = measureReadLatency(ROLLBACK_DATABASE_NAME, false);
+        LatencyResult wal = measureReadLatency(WAL_DATABASE_NAME, true);
+
+        Log.i(LOG_TAG, "Journal rollback: " + rollback);
+        Log.i(LOG_TAG, "Write-ahead logging: " + wal);
+
+        assertTrue("Com WAL, as consultas deveriam ser concluídas durante a sincronização.",
+                wal.readsDuringSync > 0);
+    }
+
+    /*
+     * Popula a base, inicia a gravação de SYNC_HISTORIES histórias em uma única transação em
+     * outra thread e repete a consulta da grade até que a gravação termine.
+     */
+    private LatencyResult measureReadLatency(String databaseName, boolean writeAheadLogging)
+            throws Exception {
+        context.deleteDatabase(databaseName);
+        HistoryDbHelper helper = new HistoryDbHelper(context, databaseName, writeAheadLogging);
+        final SQLiteDatabase database = helper.getWritableDatabase();
+        writeHistories(database, 0, INITIAL_HISTORIES);
+
+        final CountDownLatch syncStarted = new CountDownLatch(1);
+        final AtomicBoolean syncRunning = new AtomicBoolean(true);
+        Thread sync = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                database.beginTransaction();
+                try {
+                    syncStarted.countDown();
+                    writeHistories(database, INITIAL_HISTORIES, SYNC_HISTORIES);
+                    database.setTransactionSuccessful();
+                } finally {
+                    database.endTransaction();
+                    syncRunning.set(false);
+                }
+            }
+        });
+
+        long syncStart = System.nanoTime();
+        sync.start();
+        syncStarted.await();
+
+        LatencyResult result = new LatencyResult();
+        List<Long> latencies = new ArrayList<>();
+        while (syncRunning.get()) {
+            long start = System.nanoTime();
+            Cursor cursor = database.query(HistoryContract.HistoriesEntry.TABLE_NAME,
+                    GRID_PROJECTION, null, null, null, null,
+                    HistoryContract.HistoriesEntry.COLUMN_HISTORY_DATE + " DESC");
+            cursor.moveToFirst();
+            cursor.close();
+            latencies.add(System.nanoTime() - start);
+
+            if (syncRunning.get()) result.readsDuringSync++;
+        }
+        sync.join();
+        result.syncMillis = (System.nanoTime() - syncStart) / 1e6;
+
+        Collections.sort(latencies);
+        result.medianMillis = latencies.get(latencies.size() / 2) / 1e6;
+        result.maxMillis = latencies.get(latencies.size() - 1) / 1e6;
+
+        helper.close();
+        return result;
+    }
+
+    private static void writeHistories(SQLiteDatabase database, int firstId, int quantity) {
+        for (int id = firstId; id < firstId + quantity; id++) {
+            ContentValues historyValues = new ContentValues();
+            historyValues.put(HistoryContract.HistoriesEntry._ID, id);
+            historyValues.put(HistoryContract.HistoriesEntry.COLUMN_HISTORY_TITLE, "História " + id);
+            historyValues.put(HistoryContract.HistoriesEntry.COLUMN_HISTORY_TITLE_PLAIN,
+                    "História " + id);
+            historyValues.put(HistoryContract.HistoriesEntry.COLUMN_HISTORY_URL,
+                    "http://www.teste.com/" + id);
+            historyValues.put(HistoryContract.HistoriesEntry.COLUMN_HISTORY_DATE, 1000L * id);
+            database.insert(HistoryContract.HistoriesEntry.TABLE_NAME, null, historyValues);
+
+            for (int i = 0; i < PARAGRAPHS_PER_HISTORY; i++) {
+                ContentValues paragraphValues = new ContentValues();
+                paragraphValues.put(HistoryContract.ParagraphsEntry.COLUMN_HISTORY_ID, id);
+                paragraphValues.put(HistoryContract.ParagraphsEntry.COLUMN_PARAGRAPH_TYPE,
+                        HistoryContract.ParagraphsEntry.TYPE_TEXT);
+                paragraphValues.put(HistoryContract.ParagraphsEntry.COLUMN_PARAGRAPH_CONTENT,
+                        "Era uma vez, na história " + id + ", o parágrafo " + i + ".");
+                database.insert(HistoryContract.ParagraphsEntry.TABLE_NAME, null, paragraphValues);
+            }
+        }
+    }
+
+    private static class LatencyResult {
+        int readsDuringSync;
+        double medianMillis;
+        double maxMillis;
+        double syncMillis;
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US,
+                    "%d consultas durante a sincronização (%.0f ms), mediana %.2f ms, máximo %.2f ms",
+                    readsDuringSync, syncMillis, medianMillis, maxMillis);
+        }
+    }
+}
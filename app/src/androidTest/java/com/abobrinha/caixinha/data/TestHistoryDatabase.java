@@ -30,6 +30,8 @@ public class TestHistoryDatabase {
 
     private final String HISTORIES_TABLE = HistoryContract.HistoriesEntry.TABLE_NAME;
     private final String PARAGRAPHS_TABLE = HistoryContract.ParagraphsEntry.TABLE_NAME;
+    private final String PARAGRAPH_BLOBS_TABLE = HistoryContract.ParagraphBlobsEntry.TABLE_NAME;
+    private final String SEARCH_TABLE = HistoryContract.SearchEntry.TABLE_NAME;
 
     @Before
     public void before() {
@@ -57,6 +59,8 @@ public class TestHistoryDatabase {
         final HashSet<String> tableNameHashSet = new HashSet<>();
         tableNameHashSet.add(HISTORIES_TABLE);
         tableNameHashSet.add(PARAGRAPHS_TABLE);
+        tableNameHashSet.add(PARAGRAPH_BLOBS_TABLE);
+        tableNameHashSet.add(SEARCH_TABLE);
 
         String error = "Database não pôde ser aberto";
         assertEquals(error,
@@ -97,6 +101,10 @@ public class TestHistoryDatabase {
         tableColumnsHashSetArray.get(0).add(HistoryContract.HistoriesEntry.COLUMN_HISTORY_DATE);
         tableColumnsHashSetArray.get(0).add(HistoryContract.HistoriesEntry.COLUMN_HISTORY_MODIFIED);
         tableColumnsHashSetArray.get(0).add(HistoryContract.HistoriesEntry.COLUMN_FAVORITE);
+        tableColumnsHashSetArray.get(0).add(HistoryContract.HistoriesEntry.COLUMN_CONTENT_FETCHED);
+        tableColumnsHashSetArray.get(0).add(HistoryContract.HistoriesEntry.COLUMN_CONTENT_HASH);
+        tableColumnsHashSetArray.get(0).add(HistoryContract.HistoriesEntry.COLUMN_HISTORY_TITLE_PLAIN);
+        tableColumnsHashSetArray.get(0).add(HistoryContract.HistoriesEntry.COLUMN_HISTORY_TITLE_SORT);
 
         tableColumnsHashSetArray.get(1).add(HistoryContract.ParagraphsEntry._ID);
         tableColumnsHashSetArray.get(1).add(HistoryContract.ParagraphsEntry.COLUMN_HISTORY_ID);
@@ -0,0 +1,359 @@
+package com.abobrinha.caixinha.data;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.abobrinha.caixinha.core.ParagraphBlob;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+/**
+ * Atualiza bases criadas com o esquema de cada versão anterior (assets/migrations do teste) até a
+ * versão atual e verifica que o resultado tem o mesmo esquema de uma base nova, sem perder
+ * favoritos, títulos, parágrafos e o índice de busca.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestHistoryMigrations {
+
+    private static final String FIXTURE_DATABASE_NAME = "migrations_test.db";
+    private static final String REFERENCE_DATABASE_NAME = "migrations_reference.db";
+    private static final String EXPECTED_DATABASE_NAME = "migrations_expected.db";
+    private static final String FIXTURE_PATH = "migrations/histories_v%d.sql";
+
+    private static final int FIRST_VERSION = 1;
+
+    // Histórias dos fixtures (ver assets/migrations)
+    private static final long FAVORITE_HISTORY_ID = 10;
+    private static final String FAVORITE_HISTORY_TITLE = "&#8220;Raposa&#8221; e o Coração";
+    private static final int FAVORITE_HISTORY_PARAGRAPHS = 3;
+    private static final long NOT_FETCHED_HISTORY_ID = 30;
+
+    private final Context context = InstrumentationRegistry.getTargetContext();
+
+    @After
+    public void tearDown() {
+        context.deleteDatabase(FIXTURE_DATABASE_NAME);
+        context.deleteDatabase(REFERENCE_DATABASE_NAME);
+        context.deleteDatabase(EXPECTED_DATABASE_NAME);
+    }
+
+    @Test
+    public void testMigrationsCoverEveryVersion() {
+        int expectedVersion = FIRST_VERSION + 1;
+        for (HistoryMigrations.Migration migration : HistoryMigrations.MIGRATIONS) {
+            assertEquals("Migrações fora de ordem ou faltando.",
+                    expectedVersion, migration.toVersion);
+            expectedVersion++;
+        }
+
+        assertEquals("A última migração deve levar à versão atual da base.",
+                HistoryDbHelper.DATABASE_VERSION, expectedVersion - 1);
+    }
+
+    @Test
+    public void testUpgradeFromEveryVersion() throws IOException {
+        List<String> expectedSchema = readReferenceSchema();
+
+        for (int version = FIRST_VERSION; version < HistoryDbHelper.DATABASE_VERSION; version++) {
+            createFixtureDatabase(version);
+
+            HistoryDbHelper helper = new HistoryDbHelper(context, FIXTURE_DATABASE_NAME, true);
+            SQLiteDatabase db = helper.getWritableDatabase();
+            try {
+                assertEquals(HistoryDbHelper.DATABASE_VERSION, db.getVersion());
+                assertEquals("Esquema diferente de uma base nova ao atualizar da versão " + version,
+                        expectedSchema, readSchema(db));
+                assertFixtureData(db, version);
+            } finally {
+                helper.close();
+                context.deleteDatabase(FIXTURE_DATABASE_NAME);
+            }
+        }
+    }
+
+    /*
+     * Cada migração, aplicada sozinha, deve levar o fixture da versão anterior exatamente ao
+     * esquema do fixture da sua versão (ou ao de uma base nova, na última), e não ao de uma
+     * versão posterior.
+     */
+    @Test
+    public void testEachMigrationMatchesNextVersion() throws IOException {
+        for (int version = FIRST_VERSION; version < HistoryDbHelper.DATABASE_VERSION; version++) {
+            int nextVersion = version + 1;
+            List<String> expectedSchema = nextVersion == HistoryDbHelper.DATABASE_VERSION
+                    ? readReferenceSchema() : readFixtureSchema(nextVersion);
+
+            createFixtureDatabase(FIXTURE_DATABASE_NAME, version);
+            SQLiteDatabase db = context.openOrCreateDatabase(FIXTURE_DATABASE_NAME,
+                    Context.MODE_PRIVATE, null);
+            try {
+                db.beginTransaction();
+                try {
+                    HistoryMigrations.migrate(db, version, nextVersion);
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+
+                assertEquals("Esquema incorreto ao migrar da versão " + version + " para a " +
+                        nextVersion, expectedSchema, readSchema(db));
+            } finally {
+                db.close();
+                context.deleteDatabase(FIXTURE_DATABASE_NAME);
+            }
+        }
+    }
+
+    /*
+     * Uma tabela com o nome de um dos índices criados pela última migração faz ela falhar depois
+     * de já ter alterado a base. Nada deve ser gravado: a base continua com o esquema e a versão
+     * anteriores.
+     */
+    @Test
+    public void testFailedMigrationKeepsPreviousVersion() throws IOException {
+        int previousVersion = HistoryDbHelper.DATABASE_VERSION - 1;
+        createFixtureDatabase(previousVersion);
+
+        SQLiteDatabase fixture = context.openOrCreateDatabase(FIXTURE_DATABASE_NAME,
+                Context.MODE_PRIVATE, null);
+        List<String> previousSchema;
+        try {
+            fixture.execSQL("DROP INDEX IF EXISTS histories_favorite_title_index");
+            fixture.execSQL("CREATE TABLE histories_favorite_title_index (_id INTEGER)");
+            previousSchema = readSchema(fixture);
+        } finally {
+            fixture.close();
+        }
+
+        HistoryDbHelper helper = new HistoryDbHelper(context, FIXTURE_DATABASE_NAME, true);
+        try {
+            helper.getWritableDatabase();
+            fail("A migração deveria ter falhado.");
+        } catch (SQLiteException expected) {
+            // A falha é esperada
+        } finally {
+            helper.close();
+        }
+
+        SQLiteDatabase db = context.openOrCreateDatabase(FIXTURE_DATABASE_NAME,
+                Context.MODE_PRIVATE, null);
+        try {
+            assertEquals(previousVersion, db.getVersion());
+            assertEquals("As alterações da migração que falhou deveriam ter sido desfeitas.",
+                    previousSchema, readSchema(db));
+        } finally {
+            db.close();
+        }
+    }
+
+    private void assertFixtureData(SQLiteDatabase db, int version) {
+        String message = " ao atualizar da versão " + version;
+
+        Cursor cursor = db.query(HistoryContract.HistoriesEntry.TABLE_NAME, null,
+                HistoryContract.HistoriesEntry._ID + "=?",
+                new String[]{String.valueOf(FAVORITE_HISTORY_ID)}, null, null, null);
+        try {
+            assertTrue("História perdida" + message, cursor.moveToFirst());
+            assertEquals("Favorito perdido" + message, HistoryContract.IS_FAVORITE,
+                    cursor.getInt(cursor.getColumnIndex(HistoryContract.HistoriesEntry.COLUMN_FAVORITE)));
+            assertEquals("Conteúdo marcado como não baixado" + message,
+                    HistoryContract.CONTENT_FETCHED, cursor.getInt(cursor.getColumnIndex(
+                            HistoryContract.HistoriesEntry.COLUMN_CONTENT_FETCHED)));
+
+            ContentValues titleValues = HistoryDbHelper.buildTitleValues(FAVORITE_HISTORY_TITLE);
+            for (String column : titleValues.keySet()) {
+                assertEquals("Título " + column + " incorreto" + message,
+                        titleValues.getAsString(column),
+                        cursor.getString(cursor.getColumnIndex(column)));
+            }
+        } finally {
+            cursor.close();
+        }
+
+        assertEquals("Parágrafos perdidos" + message, FAVORITE_HISTORY_PARAGRAPHS,
+                countParagraphs(db, FAVORITE_HISTORY_ID));
+
+        // A partir da versão 2, uma história pode estar gravada sem o conteúdo
+        if (version > FIRST_VERSION) {
+            cursor = db.query(HistoryContract.HistoriesEntry.TABLE_NAME,
+                    new String[]{HistoryContract.HistoriesEntry.COLUMN_CONTENT_FETCHED},
+                    HistoryContract.HistoriesEntry._ID + "=?",
+                    new String[]{String.valueOf(NOT_FETCHED_HISTORY_ID)}, null, null, null);
+            try {
+                assertTrue("História perdida" + message, cursor.moveToFirst());
+                assertEquals("Conteúdo marcado como baixado" + message,
+                        HistoryContract.CONTENT_NOT_FETCHED, cursor.getInt(0));
+            } finally {
+                cursor.close();
+            }
+        }
+
+        // Pelo título e pelo texto dos parágrafos, já sem acentos
+        assertSearchFinds(db, "coracao", FAVORITE_HISTORY_ID, message);
+        assertSearchFinds(db, "pedra", FAVORITE_HISTORY_ID, message);
+    }
+
+    private static void assertSearchFinds(SQLiteDatabase db, String match, long historyId,
+                                          String message) {
+        Cursor cursor = db.rawQuery("SELECT docid FROM " + HistoryContract.SearchEntry.TABLE_NAME +
+                " WHERE " + HistoryContract.SearchEntry.TABLE_NAME + " MATCH ?", new String[]{match});
+        try {
+            assertEquals("Busca por \"" + match + "\" incorreta" + message, 1, cursor.getCount());
+            cursor.moveToFirst();
+            assertEquals(historyId, cursor.getLong(0));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    // Parágrafos da história nos dois formatos de gravação (ver TestParagraphStorage)
+    private static int countParagraphs(SQLiteDatabase db, long historyId) {
+        String[] args = {String.valueOf(historyId)};
+        int count = 0;
+
+        Cursor cursor = db.query(HistoryContract.ParagraphsEntry.TABLE_NAME, null,
+                HistoryContract.ParagraphsEntry.COLUMN_HISTORY_ID + "=?", args, null, null, null);
+        try {
+            count += cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+
+        cursor = db.query(HistoryContract.ParagraphBlobsEntry.TABLE_NAME,
+                new String[]{HistoryContract.ParagraphBlobsEntry.COLUMN_DATA},
+                HistoryContract.ParagraphBlobsEntry.COLUMN_HISTORY_ID + "=?", args,
+                null, null, null);
+        try {
+            if (cursor.moveToFirst()) {
+                count += new ParagraphBlob.Reader(cursor.getBlob(0)).getCount();
+            }
+        } finally {
+            cursor.close();
+        }
+        return count;
+    }
+
+    /*
+     * Cria a base de teste com o esquema e os dados de uma versão anterior. Os comandos do
+     * fixture terminam com ";" no fim da linha.
+     */
+    private void createFixtureDatabase(int version) throws IOException {
+        createFixtureDatabase(FIXTURE_DATABASE_NAME, version);
+    }
+
+    private void createFixtureDatabase(String name, int version) throws IOException {
+        context.deleteDatabase(name);
+        SQLiteDatabase db = context.openOrCreateDatabase(name, Context.MODE_PRIVATE, null);
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+                InstrumentationRegistry.getInstrumentation().getContext().getAssets()
+                        .open(String.format(FIXTURE_PATH, version)), "UTF-8"));
+        try {
+            StringBuilder statement = new StringBuilder();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("--")) continue;
+
+                if (statement.length() > 0) statement.append('\n');
+                statement.append(line);
+                if (line.endsWith(";")) {
+                    db.execSQL(statement.toString());
+                    statement.setLength(0);
+                }
+            }
+            db.setVersion(version);
+        } finally {
+            reader.close();
+            db.close();
+        }
+    }
+
+    private List<String> readFixtureSchema(int version) throws IOException {
+        createFixtureDatabase(EXPECTED_DATABASE_NAME, version);
+        SQLiteDatabase db = context.openOrCreateDatabase(EXPECTED_DATABASE_NAME,
+                Context.MODE_PRIVATE, null);
+        try {
+            return readSchema(db);
+        } finally {
+            db.close();
+            context.deleteDatabase(EXPECTED_DATABASE_NAME);
+        }
+    }
+
+    private List<String> readReferenceSchema() {
+        HistoryDbHelper helper = new HistoryDbHelper(context, REFERENCE_DATABASE_NAME, true);
+        try {
+            return readSchema(helper.getReadableDatabase());
+        } finally {
+            helper.close();
+        }
+    }
+
+    /*
+     * Colunas de cada tabela, colunas de cada índice e SQL de cada trigger, em ordem, para que
+     * bases criadas de formas diferentes possam ser comparadas.
+     */
+    private static List<String> readSchema(SQLiteDatabase db) {
+        List<String> schema = new ArrayList<>();
+
+        Cursor master = db.rawQuery("SELECT type, name, tbl_name, sql FROM sqlite_master " +
+                "WHERE name NOT IN ('android_metadata', 'sqlite_sequence')", null);
+        try {
+            while (master.moveToNext()) {
+                String type = master.getString(0);
+                String name = master.getString(1);
+
+                if ("table".equals(type)) {
+                    schema.add("table " + name + ": " +
+                            readPragma(db, "PRAGMA table_info(" + name + ")"));
+                } else if ("index".equals(type)) {
+                    schema.add("index " + name + " on " + master.getString(2) + ": " +
+                            readPragma(db, "PRAGMA index_info(" + name + ")"));
+                } else {
+                    schema.add(type + " " + name + ": " + master.getString(3));
+                }
+            }
+        } finally {
+            master.close();
+        }
+
+        Collections.sort(schema);
+        return schema;
+    }
+
+    private static String readPragma(SQLiteDatabase db, String pragma) {
+        StringBuilder result = new StringBuilder();
+        Cursor cursor = db.rawQuery(pragma, null);
+        try {
+            while (cursor.moveToNext()) {
+                result.append('(');
+                for (int i = 0; i < cursor.getColumnCount(); i++) {
+                    if (i > 0) result.append(", ");
+                    result.append(cursor.getString(i));
+                }
+                result.append(')');
+            }
+        } finally {
+            cursor.close();
+        }
+        return result.toString();
+    }
+}
@@ -1,8 +1,10 @@
 package com.abobrinha.caixinha.data;
 
+import android.content.ContentProviderOperation;
 import android.content.ContentValues;
 import android.content.Context;
 import android.content.UriMatcher;
+import android.database.ContentObserver;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.net.Uri;
@@ -11,14 +13,22 @@ import androidx.test.ext.junit.runners.AndroidJUnit4;
 import android.text.TextUtils;
 
 import com.abobrinha.caixinha.R;
+import com.abobrinha.caixinha.core.HistoryCache;
 
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
 import static junit.framework.Assert.assertEquals;
 import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
 import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
 
 @RunWith(AndroidJUnit4.class)
 public class TestHistoryProvider {
@@ -30,7 +40,7 @@ public class TestHistoryProvider {
     }
 
     /*
-     * Este método testa as 4 possíveis combinações de URI do Provider
+     * Este método testa as 6 possíveis combinações de URI do Provider
      */
     @Test
     public void testUriMatcher() {
@@ -51,6 +61,14 @@ public class TestHistoryProvider {
         uri = HistoryContract.ParagraphsEntry.buildParagraphsFromHistoryId(0);
         uriError = "Erro no parsing da Uri de parágrafos de uma história.";
         assertEquals(uriError, HistoryProvider.CODE_PARAGRAPHS, matcher.match(uri));
+
+        uri = HistoryContract.HistoriesEntry.buildHistoryDetailUri(0);
+        uriError = "Erro no parsing da Uri de detalhe de uma história.";
+        assertEquals(uriError, HistoryProvider.CODE_HISTORY_DETAIL, matcher.match(uri));
+
+        uri = HistoryContract.SearchEntry.buildSearchUri("pinguim");
+        uriError = "Erro no parsing da Uri de busca.";
+        assertEquals(uriError, HistoryProvider.CODE_SEARCH, matcher.match(uri));
     }
 
     /*
@@ -136,6 +154,144 @@ public class TestHistoryProvider {
         }
     }
 
+    /*
+     * Histórias inseridas sem o conteúdo (primeira fase da sincronização) devem ficar marcadas
+     * como não baixadas. O update na URI de parágrafos (CODE_PARAGRAPHS, do matcher) grava o
+     * conteúdo e atualiza a marcação.
+     */
+    @Test
+    public void testListOnlyHistoriesAndContentUpdate() {
+        Uri uri = HistoryContract.HistoriesEntry.CONTENT_URI;
+        ContentValues[] historyValues =
+                TestDbUtilities.createBulkInsertTestHistoryContentValues(context,
+                        TestDbUtilities.CONTENT_VALUES_HIGHER_QUANTITY, false);
+
+        int rowsInserted = context.getContentResolver().bulkInsert(uri, historyValues);
+        assertEquals("Houveram falhas para inserir as histórias sem conteúdo.",
+                historyValues.length, rowsInserted);
+
+        String[] projection = {HistoryContract.HistoriesEntry.COLUMN_CONTENT_FETCHED};
+        Cursor cursor = context.getContentResolver().query(uri, projection, null, null, null);
+        assertTrue("Erro: Nenhuma linha retornada da consulta de histórias.", cursor.moveToFirst());
+        do {
+            assertEquals("História sem conteúdo foi marcada como baixada.",
+                    HistoryContract.CONTENT_NOT_FETCHED, cursor.getInt(0));
+        } while (cursor.moveToNext());
+        cursor.close();
+
+        long id = 0;
+        ContentValues[] contentValues =
+                TestDbUtilities.createBulkInsertTestHistoryContentValues(context, 1, true);
+        ContentValues rawValues = new ContentValues();
+        String rawKey = context.getString(R.string.history_raw_content);
+        rawValues.put(rawKey, contentValues[0].getAsString(rawKey));
+
+        uri = HistoryContract.ParagraphsEntry.buildParagraphsFromHistoryId(id);
+        int rowsUpdated = context.getContentResolver().update(uri, rawValues, null, null);
+        assertEquals("Conteúdo da história não foi gravado.", 1, rowsUpdated);
+
+        cursor = context.getContentResolver().query(
+                HistoryContract.HistoriesEntry.buildSingleHistoryUri(id),
+                projection, null, null, null);
+        assertTrue(cursor.moveToFirst());
+        assertEquals("História com conteúdo não foi marcada como baixada.",
+                HistoryContract.CONTENT_FETCHED, cursor.getInt(0));
+        cursor.close();
+
+        ContentValues[] paragraphValues =
+                HistoryProvider.historyContentParser(id, rawValues.getAsString(rawKey));
+        cursor = context.getContentResolver().query(uri, null, null, null, null);
+        assertEquals("Quantidade de parágrafos gravados incorreta.",
+                paragraphValues.length, cursor.getCount());
+        cursor.close();
+    }
+
+    /*
+     * Uma história existente reenviada sem conteúdo (modificada na fonte) deve ter apenas os dados
+     * da listagem atualizados, mantendo favorito e parágrafos. O mesmo conteúdo HTML enviado
+     * novamente (mesmo hash) não deve regravar os parágrafos.
+     */
+    @Test
+    public void testModifiedHistoryKeepsUnchangedContent() {
+        Uri uri = HistoryContract.HistoriesEntry.CONTENT_URI;
+        ContentValues[] historyValues =
+                TestDbUtilities.createBulkInsertTestHistoryContentValues(context, 1, true);
+        String rawKey = context.getString(R.string.history_raw_content);
+        String rawContent = historyValues[0].getAsString(rawKey);
+        historyValues[0].put(HistoryContract.HistoriesEntry.COLUMN_FAVORITE,
+                HistoryContract.IS_FAVORITE);
+        context.getContentResolver().bulkInsert(uri, historyValues);
+
+        Uri paragraphsUri = HistoryContract.ParagraphsEntry.buildParagraphsFromHistoryId(0);
+        String paragraphIdsBefore = getParagraphIds(paragraphsUri);
+
+        ContentValues[] modifiedValues =
+                TestDbUtilities.createBulkInsertTestHistoryContentValues(context, 1, false);
+        modifiedValues[0].put(HistoryContract.HistoriesEntry.COLUMN_HISTORY_MODIFIED, 99999);
+        assertEquals("História modificada não foi atualizada.", 1,
+                context.getContentResolver().bulkInsert(uri, modifiedValues));
+
+        String[] projection = {
+                HistoryContract.HistoriesEntry.COLUMN_HISTORY_MODIFIED,
+                HistoryContract.HistoriesEntry.COLUMN_FAVORITE,
+                HistoryContract.HistoriesEntry.COLUMN_CONTENT_FETCHED
+        };
+        Uri historyUri = HistoryContract.HistoriesEntry.buildSingleHistoryUri(0);
+        Cursor cursor = context.getContentResolver().query(historyUri, projection, null, null, null);
+        assertTrue(cursor.moveToFirst());
+        assertEquals("Dados da listagem não foram atualizados.", 99999, cursor.getLong(0));
+        assertEquals("Favorito não foi preservado.", HistoryContract.IS_FAVORITE, cursor.getInt(1));
+        assertEquals("Conteúdo deveria aguardar revalidação.",
+                HistoryContract.CONTENT_NOT_FETCHED, cursor.getInt(2));
+        cursor.close();
+
+        ContentValues rawValues = new ContentValues();
+        rawValues.put(rawKey, rawContent);
+        assertEquals(1, context.getContentResolver().update(paragraphsUri, rawValues, null, null));
+
+        assertEquals("Parágrafos de conteúdo igual foram regravados.",
+                paragraphIdsBefore, getParagraphIds(paragraphsUri));
+
+        cursor = context.getContentResolver().query(historyUri, projection, null, null, null);
+        assertTrue(cursor.moveToFirst());
+        assertEquals("História não foi marcada como baixada.",
+                HistoryContract.CONTENT_FETCHED, cursor.getInt(2));
+        cursor.close();
+    }
+
+    /*
+     * O título sem HTML e a chave de ordenação são gerados na gravação, e a ordenação por título
+     * ignora acentos, maiúsculas e aspas iniciais.
+     */
+    @Test
+    public void testPlainTitleAndTitleOrder() {
+        String[] htmlTitles = {"&#8220;Zebra&#8221;", "Bola", "Árvore", "abacaxi"};
+        String[] expectedTitles = {"abacaxi", "Árvore", "Bola", "“Zebra”"};
+
+        ContentValues[] historyValues =
+                TestDbUtilities.createBulkInsertTestHistoryContentValues(context,
+                        htmlTitles.length, false);
+        for (int i = 0; i < historyValues.length; i++) {
+            historyValues[i].put(HistoryContract.HistoriesEntry.COLUMN_HISTORY_TITLE, htmlTitles[i]);
+        }
+        context.getContentResolver().bulkInsert(HistoryContract.HistoriesEntry.CONTENT_URI,
+                historyValues);
+
+        Cursor cursor = context.getContentResolver().query(
+                HistoryContract.HistoriesEntry.CONTENT_URI,
+                new String[]{HistoryContract.HistoriesEntry.COLUMN_HISTORY_TITLE_PLAIN},
+                null,
+                null,
+                HistoryContract.HistoriesEntry.COLUMN_HISTORY_TITLE_SORT + " ASC");
+
+        assertEquals(expectedTitles.length, cursor.getCount());
+        for (String expectedTitle : expectedTitles) {
+            assertTrue(cursor.moveToNext());
+            assertEquals("Título ou ordenação incorretos.", expectedTitle, cursor.getString(0));
+        }
+        cursor.close();
+    }
+
     /*
      * Este teste valida o método de delete do provider usando a URI de histórias
      * (CODE_HISTORIES, do matcher).
@@ -416,11 +572,601 @@ public class TestHistoryProvider {
                 newHistoryQuantity - oldHistoryQuantity);
     }
 
+    /*
+     * Este teste valida a estratégia de sincronização incremental, onde apenas as histórias
+     * removidas na fonte ou modificadas são deletadas da base, e as modificadas são reinseridas
+     * preservando o status de favorito:
+     * 1) Deletar, por ID, uma história removida e uma modificada (favorita)
+     * 2) Reinserir a história modificada mantendo o favorito
+     * 3) Checar que as demais histórias não foram tocadas
+     */
+    @Test
+    public void testDeltaSyncStrategy() {
+        Uri uri = HistoryContract.HistoriesEntry.CONTENT_URI;
+        ContentValues[] historyValues =
+                TestDbUtilities.createBulkInsertTestHistoryContentValues(context,
+                        TestDbUtilities.CONTENT_VALUES_HIGHER_QUANTITY, true);
+
+        final int REMOVED_INDEX = 0;
+        final int MODIFIED_INDEX = 1;
+
+        historyValues[MODIFIED_INDEX].put(HistoryContract.HistoriesEntry.COLUMN_FAVORITE,
+                HistoryContract.IS_FAVORITE);
+        context.getContentResolver().bulkInsert(uri, historyValues);
+
+        // 1) Deletar, por ID, uma história removida e uma modificada (favorita)
+
+        int deletedRows = context.getContentResolver().delete(uri,
+                HistoryContract.HistoriesEntry._ID + " IN (?,?)",
+                new String[]{String.valueOf(REMOVED_INDEX), String.valueOf(MODIFIED_INDEX)});
+
+        String deleteFailed = "Houveram falhas para deletar as histórias por ID.";
+        assertEquals(deleteFailed, 2, deletedRows);
+
+        // 2) Reinserir a história modificada mantendo o favorito
+
+        ContentValues[] modifiedValues =
+                TestDbUtilities.createBulkInsertTestHistoryContentValues(context,
+                        TestDbUtilities.CONTENT_VALUES_HIGHER_QUANTITY, true);
+        ContentValues modifiedHistory = modifiedValues[MODIFIED_INDEX];
+        modifiedHistory.put(HistoryContract.HistoriesEntry.COLUMN_HISTORY_MODIFIED, 99999);
+        modifiedHistory.put(HistoryContract.HistoriesEntry.COLUMN_FAVORITE,
+                HistoryContract.IS_FAVORITE);
+
+        int rowsInserted = context.getContentResolver()
+                .bulkInsert(uri, new ContentValues[]{modifiedHistory});
+
+        String bulkinsertFailed = "Houveram falhas para reinserir a história modificada.";
+        assertEquals(bulkinsertFailed, 1, rowsInserted);
+
+        Cursor cursor = context.getContentResolver()
+                .query(HistoryContract.HistoriesEntry.buildFavoritesUri(), null, null, null, null);
+
+        String favoriteError = "O status de favorito da história modificada não foi preservado.";
+        assertTrue(favoriteError, cursor.moveToFirst());
+        assertEquals(favoriteError, MODIFIED_INDEX,
+                cursor.getLong(cursor.getColumnIndex(HistoryContract.HistoriesEntry._ID)));
+        assertEquals(favoriteError, 1, cursor.getCount());
+        cursor.close();
+
+        // 3) Checar que as demais histórias não foram tocadas
+
+        cursor = context.getContentResolver().query(uri, null, null, null, null);
+
+        String countError = "Quantidade incorreta de histórias após a sincronização incremental.";
+        assertEquals(countError, historyValues.length - 1, cursor.getCount());
+        cursor.close();
+
+        uri = HistoryContract.HistoriesEntry.buildSingleHistoryUri(MODIFIED_INDEX + 1);
+        cursor = context.getContentResolver().query(uri, null, null, null, null);
+
+        String untouchedError = "Uma história não modificada foi alterada indevidamente.";
+        assertTrue(untouchedError, cursor.moveToFirst());
+        ContentValues untouchedValues = historyValues[MODIFIED_INDEX + 1];
+        untouchedValues.remove(context.getString(R.string.history_raw_content));
+        TestDbUtilities.validateCurrentRecord(untouchedError, cursor, untouchedValues);
+        cursor.close();
+    }
+
+    /*
+     * A sincronização grava remoções e histórias alteradas em um único applyBatch. O upsert
+     * nunca altera o favorito e só regrava os parágrafos de conteúdo que mudou.
+     */
+    @Test
+    public void testSyncBatchUpsert() throws Exception {
+        Uri uri = HistoryContract.HistoriesEntry.CONTENT_URI;
+        ContentValues[] historyValues =
+                TestDbUtilities.createBulkInsertTestHistoryContentValues(context,
+                        TestDbUtilities.CONTENT_VALUES_LOWER_QUANTITY, true);
+        historyValues[1].put(HistoryContract.HistoriesEntry.COLUMN_FAVORITE,
+                HistoryContract.IS_FAVORITE);
+        historyValues[2].put(HistoryContract.HistoriesEntry.COLUMN_FAVORITE,
+                HistoryContract.IS_FAVORITE);
+        context.getContentResolver().bulkInsert(uri, historyValues);
+
+        Uri unchangedParagraphsUri = HistoryContract.ParagraphsEntry.buildParagraphsFromHistoryId(1);
+        Uri changedParagraphsUri = HistoryContract.ParagraphsEntry.buildParagraphsFromHistoryId(2);
+        String unchangedIdsBefore = getParagraphIds(unchangedParagraphsUri);
+        String changedIdsBefore = getParagraphIds(changedParagraphsUri);
+
+        // Mesmo conteúdo para a história 1, conteúdo novo para a 2 e uma história nova (3)
+        String rawKey = context.getString(R.string.history_raw_content);
+        ContentValues[] syncValues =
+                TestDbUtilities.createBulkInsertTestHistoryContentValues(context,
+                        TestDbUtilities.CONTENT_VALUES_HIGHER_QUANTITY, true);
+        syncValues[2].put(rawKey, syncValues[2].getAsString(rawKey) + "<p>Novo parágrafo</p>");
+        syncValues[2].put(HistoryContract.HistoriesEntry.COLUMN_FAVORITE,
+                HistoryContract.IS_NOT_FAVORITE);
+
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        operations.add(ContentProviderOperation.newDelete(uri)
+                .withSelection(HistoryContract.HistoriesEntry._ID + "=?", new String[]{"0"})
+                .build());
+        for (int i = 1; i < 4; i++) {
+            operations.add(ContentProviderOperation.newInsert(uri)
+                    .withValues(syncValues[i])
+                    .build());
+        }
+        context.getContentResolver().applyBatch(HistoryContract.CONTENT_AUTHORITY, operations);
+
+        Cursor cursor = context.getContentResolver().query(uri,
+                new String[]{HistoryContract.HistoriesEntry._ID}, null, null,
+                HistoryContract.HistoriesEntry._ID);
+        assertEquals("Quantidade incorreta de histórias após o applyBatch.", 3, cursor.getCount());
+        assertTrue(cursor.moveToFirst());
+        assertEquals("História removida na fonte não foi deletada.", 1, cursor.getLong(0));
+        cursor.close();
+
+        cursor = context.getContentResolver().query(
+                HistoryContract.HistoriesEntry.buildFavoritesUri(), null, null, null, null);
+        assertEquals("Favoritos não foram preservados pelo upsert.", 2, cursor.getCount());
+        cursor.close();
+
+        assertEquals("Parágrafos de conteúdo igual foram regravados.",
+                unchangedIdsBefore, getParagraphIds(unchangedParagraphsUri));
+        assertFalse("Parágrafos de conteúdo novo não foram regravados.",
+                changedIdsBefore.equals(getParagraphIds(changedParagraphsUri)));
+
+        cursor = context.getContentResolver().query(
+                HistoryContract.ParagraphsEntry.buildParagraphsFromHistoryId(3),
+                null, null, null, null);
+        assertTrue("Parágrafos da história nova não foram gravados.", cursor.getCount() > 0);
+        cursor.close();
+    }
+
+    /*
+     * A busca ignora acentos e maiúsculas, aceita a última palavra incompleta, encontra tanto o
+     * título quanto o texto (e não imagens), coloca acertos no título à frente e acompanha
+     * alterações e remoções das histórias.
+     */
+    @Test
+    public void testSearch() {
+        Uri uri = HistoryContract.HistoriesEntry.CONTENT_URI;
+        String rawKey = context.getString(R.string.history_raw_content);
+        ContentValues[] historyValues =
+                TestDbUtilities.createBulkInsertTestHistoryContentValues(context, 3, true);
+        historyValues[0].put(HistoryContract.HistoriesEntry.COLUMN_HISTORY_TITLE, "O Pinguim");
+        historyValues[0].put(rawKey, "<p>Era uma vez um pássaro que não voava.</p>");
+        historyValues[1].put(HistoryContract.HistoriesEntry.COLUMN_HISTORY_TITLE, "A Raposa");
+        historyValues[1].put(rawKey, "<p>A raposa conheceu um PINGUIM no Coração da mata.</p>" +
+                "<p><img src='http://www.teste.com/pinguim.jpg'></p>");
+        historyValues[2].put(HistoryContract.HistoriesEntry.COLUMN_HISTORY_TITLE, "O Leão");
+        historyValues[2].put(rawKey, "<p>O leão dormia.</p><p><img src='http://www.teste.com/" +
+                "coracao.jpg'></p>");
+        context.getContentResolver().bulkInsert(uri, historyValues);
+
+        assertEquals("Acerto no título deveria vir à frente.", "0,1", searchIds("pingu"));
+        assertEquals("Busca deveria ignorar acentos.", "1", searchIds("coracao"));
+        assertEquals("Busca deveria ignorar acentos.", "2", searchIds("LEÃO"));
+        assertEquals("Todas as palavras devem estar presentes.", "1", searchIds("raposa pinguim"));
+        assertEquals("", searchIds("elefante"));
+        assertEquals("", searchIds(" *\"- "));
+
+        Cursor cursor = context.getContentResolver().query(
+                HistoryContract.SearchEntry.buildSearchUri("mata"), null, null, null, null);
+        assertTrue(cursor.moveToFirst());
+        assertEquals("A Raposa", cursor.getString(cursor.getColumnIndex(
+                HistoryContract.HistoriesEntry.COLUMN_HISTORY_TITLE_PLAIN)));
+        assertTrue("Trecho sem a palavra encontrada.", cursor.getString(cursor.getColumnIndex(
+                HistoryContract.SearchEntry.COLUMN_SNIPPET)).contains("<b>mata</b>"));
+        cursor.close();
+
+        // Conteúdo alterado e história removida
+        ContentValues rawValues = new ContentValues();
+        rawValues.put(rawKey, "<p>O leão acordou com fome.</p>");
+        context.getContentResolver().update(
+                HistoryContract.ParagraphsEntry.buildParagraphsFromHistoryId(2),
+                rawValues, null, null);
+        assertEquals("2", searchIds("fome"));
+        assertEquals("", searchIds("dormia"));
+
+        context.getContentResolver().delete(uri, HistoryContract.HistoriesEntry._ID + "=?",
+                new String[]{"0"});
+        assertEquals("1", searchIds("pinguim"));
+    }
+
+    /*
+     * Percorre as listagens página a página (ver HistoriesEntry.buildPageUri), com várias
+     * histórias de mesma data e mesmo título, e compara com a listagem completa: cada história
+     * deve aparecer uma única vez e na mesma ordem.
+     */
+    @Test
+    public void testKeysetPagination() {
+        final int historiesQuantity = 95;
+        final int pageSize = 10;
+
+        ContentValues[] historyValues = TestDbUtilities.createBulkInsertTestHistoryContentValues(
+                context, historiesQuantity, false);
+        for (int i = 0; i < historyValues.length; i++) {
+            historyValues[i].put(HistoryContract.HistoriesEntry.COLUMN_HISTORY_DATE, 1000 + i / 7);
+            historyValues[i].put(HistoryContract.HistoriesEntry.COLUMN_HISTORY_TITLE,
+                    "História " + (i % 4));
+            historyValues[i].put(HistoryContract.HistoriesEntry.COLUMN_FAVORITE, i % 3 == 0
+                    ? HistoryContract.IS_FAVORITE : HistoryContract.IS_NOT_FAVORITE);
+        }
+        context.getContentResolver().bulkInsert(HistoryContract.HistoriesEntry.CONTENT_URI,
+                historyValues);
+
+        Uri[] listUris = {
+                HistoryContract.HistoriesEntry.CONTENT_URI,
+                HistoryContract.HistoriesEntry.buildFavoritesUri()
+        };
+        String[][] orders = {
+                {HistoryContract.HistoriesEntry.COLUMN_HISTORY_DATE, "DESC"},
+                {HistoryContract.HistoriesEntry.COLUMN_HISTORY_TITLE_SORT, "ASC"}
+        };
+
+        for (Uri listUri : listUris) {
+            for (String[] order : orders) {
+                String sortOrder = order[0] + " " + order[1];
+                Cursor cursor = context.getContentResolver().query(listUri,
+                        new String[]{HistoryContract.HistoriesEntry._ID}, null, null,
+                        sortOrder + ", " + HistoryContract.HistoriesEntry._ID + " " + order[1]);
+                List<String> expectedIds = new ArrayList<>();
+                while (cursor.moveToNext()) {
+                    expectedIds.add(cursor.getString(0));
+                }
+                cursor.close();
+
+                assertEquals("Paginação incorreta em " + listUri + " por " + sortOrder,
+                        TextUtils.join(",", expectedIds),
+                        getPagedIds(listUri, order[0], sortOrder, pageSize));
+            }
+        }
+
+        try {
+            context.getContentResolver().query(
+                    HistoryContract.HistoriesEntry.buildPageUri(listUris[0], pageSize),
+                    null, null, null, HistoryContract.HistoriesEntry.COLUMN_HISTORY_URL);
+            fail("Ordenação sem índice não deveria ser aceita na paginação.");
+        } catch (IllegalArgumentException expected) {
+            // A exceção é esperada
+        }
+    }
+
+    /*
+     * As consultas registradas pelo provider (Cursor.setNotificationUri) são notificadas apenas
+     * pelas alterações dos seus dados: a troca do status de favorito e o conteúdo novo de uma
+     * história refazem as consultas da história e a de favoritos, mas não a listagem de todas as
+     * histórias (ver HistoriesEntry.LIST_NOTIFICATION_URI). Novas histórias notificam a listagem.
+     * A busca é refeita pelo conteúdo novo, mas não pelo favorito.
+     */
+    @Test
+    public void testRowLevelNotifications() throws InterruptedException {
+        context.getContentResolver().bulkInsert(HistoryContract.HistoriesEntry.CONTENT_URI,
+                TestDbUtilities.createBulkInsertTestHistoryContentValues(context, 2, true));
+
+        ChangeObserver historiesObserver = new ChangeObserver();
+        ChangeObserver favoritesObserver = new ChangeObserver();
+        ChangeObserver detailObserver = new ChangeObserver();
+        ChangeObserver otherObserver = new ChangeObserver();
+        ChangeObserver searchObserver = new ChangeObserver();
+        List<Cursor> cursors = new ArrayList<>();
+        cursors.add(queryObserved(HistoryContract.HistoriesEntry.CONTENT_URI, historiesObserver));
+        cursors.add(queryObserved(HistoryContract.HistoriesEntry.buildFavoritesUri(),
+                favoritesObserver));
+        cursors.add(queryObserved(HistoryContract.HistoriesEntry.buildHistoryDetailUri(0),
+                detailObserver));
+        cursors.add(queryObserved(HistoryContract.HistoriesEntry.buildHistoryDetailUri(1),
+                otherObserver));
+        cursors.add(queryObserved(HistoryContract.SearchEntry.buildSearchUri("historia"),
+                searchObserver));
+
+        ContentValues values = new ContentValues();
+        values.put(HistoryContract.HistoriesEntry.COLUMN_FAVORITE, HistoryContract.IS_FAVORITE);
+        context.getContentResolver().update(
+                HistoryContract.HistoriesEntry.buildSingleHistoryUri(0), values, null, null);
+
+        assertTrue("História alterada não foi notificada.", detailObserver.await());
+        assertTrue("Listagem de favoritos não foi notificada.", favoritesObserver.await());
+        assertFalse("Outra história foi notificada.", otherObserver.await());
+        assertFalse("Listagem de histórias foi notificada.", historiesObserver.await());
+        assertFalse("Busca foi notificada pelo favorito.", searchObserver.await());
+        closeAll(cursors);
+
+        ChangeObserver paragraphsObserver = new ChangeObserver();
+        detailObserver = new ChangeObserver();
+        searchObserver = new ChangeObserver();
+        cursors.add(queryObserved(HistoryContract.SearchEntry.buildSearchUri("historia"),
+                searchObserver));
+        cursors.add(queryObserved(HistoryContract.HistoriesEntry.CONTENT_URI, historiesObserver));
+        cursors.add(queryObserved(HistoryContract.ParagraphsEntry.buildParagraphsFromHistoryId(0),
+                paragraphsObserver));
+        cursors.add(queryObserved(HistoryContract.HistoriesEntry.buildHistoryDetailUri(0),
+                detailObserver));
+
+        values = new ContentValues();
+        values.put(context.getString(R.string.history_raw_content), "<p>Conteúdo novo</p>");
+        context.getContentResolver().update(
+                HistoryContract.ParagraphsEntry.buildParagraphsFromHistoryId(0), values, null, null);
+
+        assertTrue("Parágrafos alterados não foram notificados.", paragraphsObserver.await());
+        assertTrue("História alterada não foi notificada.", detailObserver.await());
+        assertTrue("Busca não foi notificada pelo conteúdo.", searchObserver.await());
+        assertFalse("Listagem de histórias foi notificada.", historiesObserver.await());
+
+        context.getContentResolver().bulkInsert(HistoryContract.HistoriesEntry.CONTENT_URI,
+                TestDbUtilities.createBulkInsertTestHistoryContentValues(context, 3, false));
+        assertTrue("Listagem de histórias não foi notificada.", historiesObserver.await());
+        closeAll(cursors);
+    }
+
+    /*
+     * Uma história reaberta é lida do HistoryCache, sem acessar a base. Alterações gravadas pelo
+     * provider (favorito, conteúdo, sincronização e remoção) tiram do cache apenas as histórias
+     * alteradas.
+     */
+    @Test
+    public void testHistoryCache() throws Exception {
+        HistoryCache cache = HistoryProvider.getHistoryCache();
+        context.getContentResolver().bulkInsert(HistoryContract.HistoriesEntry.CONTENT_URI,
+                TestDbUtilities.createBulkInsertTestHistoryContentValues(context, 3, true));
+
+        List<String> paragraphs = readCachedParagraphs(0);
+        String header = readCachedHeader(0);
+        assertFalse(paragraphs.isEmpty());
+
+        int hits = cache.getHitCount();
+        int misses = cache.getMissCount();
+        assertEquals(paragraphs, readCachedParagraphs(0));
+        assertEquals(header, readCachedHeader(0));
+        assertEquals("História reaberta não foi lida do cache.", hits + 2, cache.getHitCount());
+        assertEquals(misses, cache.getMissCount());
+
+        // Removida direto da base, a história 2 continua no cache até ser alterada pelo provider
+        List<String> cachedParagraphs = readCachedParagraphs(2);
+        HistoryDbHelper helper = new HistoryDbHelper(context);
+        SQLiteDatabase database = helper.getWritableDatabase();
+        database.delete(HistoryContract.HistoriesEntry.TABLE_NAME,
+                HistoryContract.HistoriesEntry._ID + "=2", null);
+        database.close();
+        assertEquals("História em cache foi lida da base.",
+                cachedParagraphs, readCachedParagraphs(2));
+
+        ContentValues values = new ContentValues();
+        values.put(HistoryContract.HistoriesEntry.COLUMN_FAVORITE, HistoryContract.IS_FAVORITE);
+        context.getContentResolver().update(
+                HistoryContract.HistoriesEntry.buildSingleHistoryUri(0), values, null, null);
+        assertEquals("Favorito alterado não foi atualizado no cache.",
+                "História0|" + HistoryContract.IS_FAVORITE + "|" + HistoryContract.CONTENT_FETCHED,
+                readCachedHeader(0));
+        assertEquals(cachedParagraphs, readCachedParagraphs(2));
+
+        values = new ContentValues();
+        values.put(context.getString(R.string.history_raw_content), "<p>Conteúdo novo</p>");
+        context.getContentResolver().update(
+                HistoryContract.ParagraphsEntry.buildParagraphsFromHistoryId(0), values, null, null);
+        assertEquals("Conteúdo alterado não foi atualizado no cache.",
+                HistoryContract.ParagraphsEntry.TYPE_TEXT + "|Conteúdo novo",
+                TextUtils.join(",", readCachedParagraphs(0)));
+        assertEquals(cachedParagraphs, readCachedParagraphs(2));
+
+        // Sincronização apenas com os dados da listagem: o conteúdo será baixado novamente
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        operations.add(ContentProviderOperation.newInsert(HistoryContract.HistoriesEntry.CONTENT_URI)
+                .withValues(TestDbUtilities.createBulkInsertTestHistoryContentValues(context, 1,
+                        false)[0])
+                .build());
+        context.getContentResolver().applyBatch(HistoryContract.CONTENT_AUTHORITY, operations);
+        assertEquals("História sincronizada não foi removida do cache.",
+                "História0|" + HistoryContract.IS_FAVORITE + "|" +
+                        HistoryContract.CONTENT_NOT_FETCHED, readCachedHeader(0));
+        assertEquals(cachedParagraphs, readCachedParagraphs(2));
+
+        readCachedParagraphs(1);
+        context.getContentResolver().delete(HistoryContract.HistoriesEntry.CONTENT_URI,
+                HistoryContract.HistoriesEntry._ID + "=1", null);
+        assertNull("História removida continua no cache.", readCachedHeader(1));
+        assertTrue(readCachedParagraphs(1).isEmpty());
+        assertEquals(cachedParagraphs, readCachedParagraphs(2));
+
+        // A história 2 não existe mais na base
+        cache.invalidate(2);
+    }
+
+    /*
+     * A URI de detalhe (CODE_HISTORY_DETAIL, do matcher) retorna o cabeçalho e os mesmos
+     * parágrafos da URI de parágrafos em uma única consulta, nos dois formatos de gravação, e
+     * apenas o cabeçalho de uma história cujo conteúdo não foi baixado.
+     */
+    @Test
+    public void testHistoryDetail() {
+        context.getContentResolver().bulkInsert(HistoryContract.HistoriesEntry.CONTENT_URI,
+                TestDbUtilities.createBulkInsertTestHistoryContentValues(context, 2, false));
+        context.getContentResolver().bulkInsert(HistoryContract.HistoriesEntry.CONTENT_URI,
+                TestDbUtilities.createBulkInsertTestHistoryContentValues(context, 1, true));
+
+        String header = "História0|http://www.teste.com/0/image.jpg|" +
+                HistoryContract.IS_NOT_FAVORITE + "|" + HistoryContract.CONTENT_FETCHED;
+        List<String> detail = readDetail(0);
+        List<String> paragraphs = readCachedParagraphs(0);
+        assertEquals(paragraphs.size(), detail.size());
+        for (int i = 0; i < detail.size(); i++) {
+            assertEquals(header + "|" + paragraphs.get(i), detail.get(i));
+        }
+
+        boolean blobStorage = HistoryProvider.isBlobStorageEnabled();
+        HistoryProvider.setBlobStorageEnabled(!blobStorage);
+        try {
+            ContentValues values = new ContentValues();
+            values.put(context.getString(R.string.history_raw_content),
+                    "<p>Era uma vez</p><p>" + HistoryContract.ParagraphsEntry.END + "</p>");
+            context.getContentResolver().update(
+                    HistoryContract.ParagraphsEntry.buildParagraphsFromHistoryId(0), values,
+                    null, null);
+            HistoryProvider.getHistoryCache().invalidateAll();
+
+            detail = readDetail(0);
+            assertEquals(2, detail.size());
+            assertEquals(header + "|" + HistoryContract.ParagraphsEntry.TYPE_TEXT +
+                    "|Era uma vez", detail.get(0));
+            assertEquals(header + "|" + HistoryContract.ParagraphsEntry.TYPE_END + "|" +
+                    HistoryContract.ParagraphsEntry.END, detail.get(1));
+        } finally {
+            HistoryProvider.setBlobStorageEnabled(blobStorage);
+        }
+
+        assertEquals("Detalhe de história não baixada deveria ter apenas o cabeçalho.",
+                "História1|http://www.teste.com/1/image.jpg|" + HistoryContract.IS_NOT_FAVORITE +
+                        "|" + HistoryContract.CONTENT_NOT_FETCHED + "|null|null",
+                TextUtils.join(",", readDetail(1)));
+        assertTrue(readDetail(2).isEmpty());
+
+        try {
+            context.getContentResolver().query(
+                    HistoryContract.HistoriesEntry.buildHistoryDetailUri(0),
+                    new String[]{HistoryContract.HistoriesEntry.COLUMN_HISTORY_URL},
+                    null, null, null);
+            fail("Coluna inválida na projeção do detalhe da história.");
+        } catch (IllegalArgumentException e) {
+            // esperado
+        }
+    }
+
+    // Linhas do detalhe da história: cabeçalho e parágrafo, ou "null" nas colunas nulas
+    private List<String> readDetail(long historyId) {
+        String[] projection = {
+                HistoryContract.HistoriesEntry.COLUMN_HISTORY_TITLE_PLAIN,
+                HistoryContract.HistoriesEntry.COLUMN_HISTORY_IMAGE,
+                HistoryContract.HistoriesEntry.COLUMN_FAVORITE,
+                HistoryContract.HistoriesEntry.COLUMN_CONTENT_FETCHED,
+                HistoryContract.ParagraphsEntry.COLUMN_PARAGRAPH_TYPE,
+                HistoryContract.ParagraphsEntry.COLUMN_PARAGRAPH_CONTENT
+        };
+        Cursor cursor = context.getContentResolver().query(
+                HistoryContract.HistoriesEntry.buildHistoryDetailUri(historyId), projection,
+                null, null, null);
+
+        List<String> rows = new ArrayList<>();
+        while (cursor.moveToNext()) {
+            rows.add(cursor.getString(0) + "|" + cursor.getString(1) + "|" + cursor.getInt(2) +
+                    "|" + cursor.getInt(3) + "|" + cursor.getString(4) + "|" +
+                    cursor.getString(5));
+        }
+        cursor.close();
+        return rows;
+    }
+
+    // Colunas do cabeçalho retornadas pelo cache, ou null se a história não existir
+    private String readCachedHeader(long historyId) {
+        String[] projection = {
+                HistoryContract.HistoriesEntry.COLUMN_HISTORY_TITLE_PLAIN,
+                HistoryContract.HistoriesEntry.COLUMN_FAVORITE,
+                HistoryContract.HistoriesEntry.COLUMN_CONTENT_FETCHED
+        };
+        Cursor cursor = context.getContentResolver().query(
+                HistoryContract.HistoriesEntry.buildSingleHistoryUri(historyId), projection,
+                null, null, null);
+        try {
+            if (!cursor.moveToFirst()) return null;
+            return cursor.getString(0) + "|" + cursor.getInt(1) + "|" + cursor.getInt(2);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private List<String> readCachedParagraphs(long historyId) {
+        Cursor cursor = context.getContentResolver().query(
+                HistoryContract.ParagraphsEntry.buildParagraphsFromHistoryId(historyId),
+                null, null, null, null);
+        int typeIndex = cursor.getColumnIndex(HistoryContract.ParagraphsEntry.COLUMN_PARAGRAPH_TYPE);
+        int contentIndex =
+                cursor.getColumnIndex(HistoryContract.ParagraphsEntry.COLUMN_PARAGRAPH_CONTENT);
+
+        List<String> paragraphs = new ArrayList<>();
+        while (cursor.moveToNext()) {
+            paragraphs.add(cursor.getInt(typeIndex) + "|" + cursor.getString(contentIndex));
+        }
+        cursor.close();
+        return paragraphs;
+    }
+
+    // Consulta a URI como as telas do aplicativo, observando as notificações do cursor
+    private Cursor queryObserved(Uri uri, ChangeObserver observer) {
+        Cursor cursor = context.getContentResolver().query(uri, null, null, null, null);
+        cursor.registerContentObserver(observer);
+        return cursor;
+    }
+
+    private static void closeAll(List<Cursor> cursors) {
+        for (Cursor cursor : cursors) {
+            cursor.close();
+        }
+        cursors.clear();
+    }
+
+    private static class ChangeObserver extends ContentObserver {
+        private final CountDownLatch mChanged = new CountDownLatch(1);
+
+        ChangeObserver() {
+            super(null);
+        }
+
+        @Override
+        public void onChange(boolean selfChange) {
+            mChanged.countDown();
+        }
+
+        boolean await() throws InterruptedException {
+            return mChanged.await(500, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private String searchIds(String query) {
+        Cursor cursor = context.getContentResolver().query(
+                HistoryContract.SearchEntry.buildSearchUri(query), null, null, null, null);
+        List<String> ids = new ArrayList<>();
+        while (cursor.moveToNext()) {
+            ids.add(cursor.getString(cursor.getColumnIndex(HistoryContract.HistoriesEntry._ID)));
+        }
+        cursor.close();
+        return TextUtils.join(",", ids);
+    }
+
+    private String getPagedIds(Uri listUri, String keyColumn, String sortOrder, int pageSize) {
+        String[] projection = {HistoryContract.HistoriesEntry._ID, keyColumn};
+        List<String> ids = new ArrayList<>();
+
+        Uri pageUri = HistoryContract.HistoriesEntry.buildPageUri(listUri, pageSize);
+        while (true) {
+            Cursor cursor = context.getContentResolver().query(pageUri, projection, null, null,
+                    sortOrder);
+            int count = cursor.getCount();
+            assertTrue("Página maior que o limite.", count <= pageSize);
+
+            while (cursor.moveToNext()) {
+                ids.add(cursor.getString(0));
+            }
+            if (count > 0) {
+                cursor.moveToLast();
+                pageUri = HistoryContract.HistoriesEntry.buildPageUri(listUri, pageSize,
+                        cursor.getString(1), cursor.getLong(0));
+            }
+            cursor.close();
+
+            if (count < pageSize) break;
+        }
+        return TextUtils.join(",", ids);
+    }
+
+    private String getParagraphIds(Uri paragraphsUri) {
+        Cursor cursor = context.getContentResolver().query(paragraphsUri,
+                new String[]{HistoryContract.ParagraphsEntry._ID}, null, null, null);
+        List<String> ids = new ArrayList<>();
+        while (cursor.moveToNext()) {
+            ids.add(cursor.getString(0));
+        }
+        cursor.close();
+        return TextUtils.join(",", ids);
+    }
+
+    // Direto na base, sem passar pelo provider: o cache de histórias também é limpo
     private void deleteAllRecordsFromHistoriesTable() {
         HistoryDbHelper helper = new HistoryDbHelper(InstrumentationRegistry.getTargetContext());
         SQLiteDatabase database = helper.getWritableDatabase();
 
         database.delete(HistoryContract.HistoriesEntry.TABLE_NAME, null, null);
+        HistoryProvider.getHistoryCache().invalidateAll();
 
         database.close();
     }
@@ -0,0 +1,193 @@
+package com.abobrinha.caixinha.data;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.AbstractWindowedCursor;
+import android.database.Cursor;
+import android.database.CursorWrapper;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+import android.util.Log;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.abobrinha.caixinha.ui.HistoryGridFragment;
+import com.abobrinha.caixinha.ui.HistoryPagesLoader;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+import static junit.framework.Assert.assertEquals;
+
+/**
+ * Mede a primeira página e uma página do meio da grade, consultadas pelo provider (ver
+ * HistoryProvider.queryPage), em bases sintéticas de 100 e de 100.000 histórias. Com a paginação
+ * por chave, as linhas mantidas em memória (a janela do cursor) não devem crescer com o tamanho
+ * da base. Os tempos de cada página, e os da listagem completa para comparação, são apenas
+ * registrados no log, já que variam com o aparelho.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestPaginationCorpus {
+    private static final String LOG_TAG = TestPaginationCorpus.class.getSimpleName();
+
+    private static final int SMALL_CORPUS = 100;
+    private static final int LARGE_CORPUS = 100000;
+    private static final int ITERATIONS = 7;
+
+    private static final String DATE_ORDER = HistoryContract.HistoriesEntry.COLUMN_HISTORY_DATE;
+
+    private final Context context = InstrumentationRegistry.getTargetContext();
+
+    @Before
+    public void setUp() {
+        deleteAllHistories();
+    }
+
+    @After
+    public void tearDown() {
+        deleteAllHistories();
+    }
+
+    @Test
+    public void testPageCostDoesNotGrowWithCorpus() {
+        CorpusResult small = measureCorpus(SMALL_CORPUS);
+        CorpusResult large = measureCorpus(LARGE_CORPUS);
+
+        Log.i(LOG_TAG, String.format(Locale.US,
+                "Primeira página: %.2f ms (%d histórias), %.2f ms (%d histórias); " +
+                        "página do meio: %.2f ms, %.2f ms; listagem completa: %.2f ms, %.2f ms",
+                small.firstPageMillis, SMALL_CORPUS, large.firstPageMillis, LARGE_CORPUS,
+                small.middlePageMillis, large.middlePageMillis,
+                small.fullListMillis, large.fullListMillis));
+
+        assertEquals("A primeira página deveria manter apenas as suas linhas em memória.",
+                small.firstPageRows, large.firstPageRows);
+        assertEquals(HistoryPagesLoader.PAGE_SIZE, large.firstPageRows);
+        assertEquals("A página do meio deveria manter apenas as suas linhas em memória.",
+                HistoryPagesLoader.PAGE_SIZE, large.middlePageRows);
+    }
+
+    private CorpusResult measureCorpus(int quantity) {
+        deleteAllHistories();
+        HistoryDbHelper helper = new HistoryDbHelper(context);
+        try {
+            insertCorpus(helper.getWritableDatabase(), quantity);
+        } finally {
+            helper.close();
+        }
+
+        Uri listUri = HistoryContract.HistoriesEntry.CONTENT_URI;
+        CorpusResult result = new CorpusResult();
+        // Em ordem decrescente de data, a página seguinte a 1/4 da listagem
+        int middle = quantity - quantity / 4;
+        Uri firstPageUri = HistoryContract.HistoriesEntry.buildPageUri(listUri,
+                HistoryPagesLoader.PAGE_SIZE);
+        Uri middlePageUri = HistoryContract.HistoriesEntry.buildPageUri(listUri,
+                HistoryPagesLoader.PAGE_SIZE, String.valueOf(createDate(middle)), middle);
+
+        double[] firstPage = new double[ITERATIONS];
+        double[] middlePage = new double[ITERATIONS];
+        double[] fullList = new double[ITERATIONS];
+        for (int i = 0; i < ITERATIONS; i++) {
+            long start = System.nanoTime();
+            result.firstPageRows = readPage(firstPageUri);
+            firstPage[i] = (System.nanoTime() - start) / 1e6;
+
+            start = System.nanoTime();
+            result.middlePageRows = readPage(middlePageUri);
+            middlePage[i] = (System.nanoTime() - start) / 1e6;
+
+            start = System.nanoTime();
+            Cursor cursor = context.getContentResolver().query(listUri,
+                    HistoryGridFragment.MAIN_HISTORIES_PROJECTION, null, null,
+                    DATE_ORDER + " DESC");
+            assertEquals(quantity, cursor.getCount());
+            cursor.close();
+            fullList[i] = (System.nanoTime() - start) / 1e6;
+        }
+
+        result.firstPageMillis = median(firstPage);
+        result.middlePageMillis = median(middlePage);
+        result.fullListMillis = median(fullList);
+        return result;
+    }
+
+    /*
+     * Lê uma página pelo provider e retorna a quantidade de linhas na janela do cursor. O
+     * ContentResolver entrega o cursor do provider dentro de um CursorWrapper.
+     */
+    private int readPage(Uri pageUri) {
+        Cursor cursor = context.getContentResolver().query(pageUri,
+                HistoryGridFragment.MAIN_HISTORIES_PROJECTION, null, null, DATE_ORDER + " DESC");
+        try {
+            cursor.getCount();
+            Cursor wrapped = cursor;
+            while (wrapped instanceof CursorWrapper) {
+                wrapped = ((CursorWrapper) wrapped).getWrappedCursor();
+            }
+            return ((AbstractWindowedCursor) wrapped).getWindow().getNumRows();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private void deleteAllHistories() {
+        HistoryDbHelper helper = new HistoryDbHelper(context);
+        try {
+            helper.getWritableDatabase().delete(HistoryContract.HistoriesEntry.TABLE_NAME,
+                    null, null);
+            HistoryProvider.getHistoryCache().invalidateAll();
+        } finally {
+            helper.close();
+        }
+    }
+
+    private static void insertCorpus(SQLiteDatabase database, int quantity) {
+        database.beginTransaction();
+        HistoryBulkWriter writer = new HistoryBulkWriter(database);
+        try {
+            for (int id = 0; id < quantity; id++) {
+                ContentValues historyValues = new ContentValues();
+                historyValues.put(HistoryContract.HistoriesEntry._ID, id);
+                historyValues.put(HistoryContract.HistoriesEntry.COLUMN_HISTORY_TITLE,
+                        "História " + id);
+                historyValues.putAll(HistoryDbHelper.buildTitleValues("História " + id));
+                historyValues.put(HistoryContract.HistoriesEntry.COLUMN_HISTORY_URL,
+                        "http://www.teste.com/" + id);
+                historyValues.put(HistoryContract.HistoriesEntry.COLUMN_HISTORY_IMAGE,
+                        "http://www.teste.com/" + id + "/image.jpg");
+                historyValues.put(HistoryContract.HistoriesEntry.COLUMN_HISTORY_DATE,
+                        createDate(id));
+                writer.insertHistory(historyValues);
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            writer.close();
+            database.endTransaction();
+        }
+    }
+
+    // Várias histórias por data, para que a paginação dependa do desempate pelo _ID
+    private static long createDate(int id) {
+        return 1000L * (id / 3);
+    }
+
+    private static double median(double[] values) {
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+
+    private static class CorpusResult {
+        int firstPageRows;
+        int middlePageRows;
+        double firstPageMillis;
+        double middlePageMillis;
+        double fullListMillis;
+    }
+}
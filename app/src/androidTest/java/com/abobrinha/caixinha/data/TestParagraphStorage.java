@@ -0,0 +1,187 @@
+package com.abobrinha.caixinha.data;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+import android.util.Log;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.abobrinha.caixinha.BuildConfig;
+import com.abobrinha.caixinha.R;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+
+/**
+ * Compara os dois formatos de gravação dos parágrafos (uma linha por parágrafo e um blob por
+ * história): o resultado das consultas deve ser o mesmo, e o tempo de abertura das histórias e
+ * o tamanho da base em cada formato são registrados no log.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestParagraphStorage {
+    private static final String LOG_TAG = TestParagraphStorage.class.getSimpleName();
+
+    private static final int HISTORIES_QUANTITY = 50;
+    private static final int PARAGRAPHS_PER_HISTORY = 60;
+    private static final int OPEN_ITERATIONS = 5;
+
+    private final Context context = InstrumentationRegistry.getTargetContext();
+
+    @After
+    public void tearDown() {
+        HistoryProvider.setBlobStorageEnabled(BuildConfig.PARAGRAPH_BLOB_STORAGE);
+        deleteAllRecordsFromHistoriesTable();
+    }
+
+    @Test
+    public void testRowsAndBlobStorage() {
+        StorageResult rows = measureStorage(false);
+        StorageResult blob = measureStorage(true);
+
+        Log.i(LOG_TAG, String.format(Locale.US,
+                "Uma linha por parágrafo: %.2f ms/história, %d KB; " +
+                        "blob por história: %.2f ms/história, %d KB",
+                rows.openMillis, rows.databaseBytes / 1024,
+                blob.openMillis, blob.databaseBytes / 1024));
+
+        assertEquals("Os dois formatos devem retornar os mesmos parágrafos.",
+                rows.paragraphs, blob.paragraphs);
+    }
+
+    /*
+     * Uma base gravada uma linha por parágrafo continua legível depois que o formato passa a ser
+     * o blob, e a história é regravada no novo formato quando o conteúdo muda.
+     */
+    @Test
+    public void testStorageFormatChange() {
+        HistoryProvider.setBlobStorageEnabled(false);
+        deleteAllRecordsFromHistoriesTable();
+        context.getContentResolver().bulkInsert(HistoryContract.HistoriesEntry.CONTENT_URI,
+                createHistories(1));
+        List<String> expected = readParagraphs(0);
+
+        HistoryProvider.setBlobStorageEnabled(true);
+        assertEquals("Parágrafos gravados em linhas deixaram de ser lidos.",
+                expected, readParagraphs(0));
+
+        ContentValues rawValues = new ContentValues();
+        String rawKey = context.getString(R.string.history_raw_content);
+        rawValues.put(rawKey, createRawContent(0) + "<p>Novo parágrafo</p>");
+        context.getContentResolver().update(
+                HistoryContract.ParagraphsEntry.buildParagraphsFromHistoryId(0),
+                rawValues, null, null);
+
+        SQLiteDatabase database = new HistoryDbHelper(context).getReadableDatabase();
+        assertEquals("Parágrafos em linhas não foram removidos ao regravar no formato blob.",
+                0, DatabaseUtils.queryNumEntries(database,
+                        HistoryContract.ParagraphsEntry.TABLE_NAME));
+        assertEquals(1, DatabaseUtils.queryNumEntries(database,
+                HistoryContract.ParagraphBlobsEntry.TABLE_NAME));
+        database.close();
+
+        List<String> paragraphs = readParagraphs(0);
+        assertEquals(expected.size() + 1, paragraphs.size());
+    }
+
+    private StorageResult measureStorage(boolean blobStorage) {
+        HistoryProvider.setBlobStorageEnabled(blobStorage);
+        deleteAllRecordsFromHistoriesTable();
+
+        context.getContentResolver().bulkInsert(HistoryContract.HistoriesEntry.CONTENT_URI,
+                createHistories(HISTORIES_QUANTITY));
+
+        StorageResult result = new StorageResult();
+        SQLiteDatabase database = new HistoryDbHelper(context).getWritableDatabase();
+        database.execSQL("VACUUM");
+        result.databaseBytes = DatabaseUtils.longForQuery(database, "PRAGMA page_count", null) *
+                DatabaseUtils.longForQuery(database, "PRAGMA page_size", null);
+        database.close();
+
+        // Abertura de uma história como na HistoryFragment: consulta e leitura de cada parágrafo.
+        // O cache de histórias é limpo antes de cada abertura, para que ela leia a base.
+        long start = System.nanoTime();
+        for (int iteration = 0; iteration < OPEN_ITERATIONS; iteration++) {
+            for (int i = 0; i < HISTORIES_QUANTITY; i++) {
+                HistoryProvider.getHistoryCache().invalidateAll();
+                List<String> paragraphs = readParagraphs(i);
+                if (iteration == 0) result.paragraphs.addAll(paragraphs);
+            }
+        }
+        result.openMillis = (System.nanoTime() - start) / 1e6 /
+                (OPEN_ITERATIONS * HISTORIES_QUANTITY);
+
+        assertFalse(result.paragraphs.isEmpty());
+        return result;
+    }
+
+    private List<String> readParagraphs(long historyId) {
+        Uri uri = HistoryContract.ParagraphsEntry.buildParagraphsFromHistoryId(historyId);
+        Cursor cursor = context.getContentResolver().query(uri, null, null, null, null);
+        int typeIndex = cursor.getColumnIndex(HistoryContract.ParagraphsEntry.COLUMN_PARAGRAPH_TYPE);
+        int contentIndex =
+                cursor.getColumnIndex(HistoryContract.ParagraphsEntry.COLUMN_PARAGRAPH_CONTENT);
+
+        List<String> paragraphs = new ArrayList<>();
+        while (cursor.moveToNext()) {
+            paragraphs.add(cursor.getInt(typeIndex) + "|" + cursor.getString(contentIndex));
+        }
+        cursor.close();
+        return paragraphs;
+    }
+
+    private ContentValues[] createHistories(int quantity) {
+        ContentValues[] historyValues =
+                TestDbUtilities.createBulkInsertTestHistoryContentValues(context, quantity, false);
+        String rawKey = context.getString(R.string.history_raw_content);
+        for (int i = 0; i < historyValues.length; i++) {
+            historyValues[i].put(rawKey, createRawContent(i));
+        }
+        return historyValues;
+    }
+
+    private static String createRawContent(int historyId) {
+        StringBuilder rawContent = new StringBuilder();
+        for (int i = 0; i < PARAGRAPHS_PER_HISTORY; i++) {
+            if (i % 10 == 9) {
+                rawContent.append("<p><img src='http://www.teste.com/").append(historyId)
+                        .append('/').append(i).append(".jpg'></p>");
+            } else {
+                rawContent.append("<p>Era uma vez, na história ").append(historyId)
+                        .append(", o parágrafo ").append(i)
+                        .append(", com um texto de tamanho parecido com o das histórias reais, ")
+                        .append("cheio de acentuação e de pontuação.</p>");
+            }
+        }
+        rawContent.append("<p>").append(HistoryContract.ParagraphsEntry.END).append("</p>");
+        rawContent.append("<p>").append(HistoryContract.ParagraphsEntry.AUTHOR).append("</p>");
+        return rawContent.toString();
+    }
+
+    private void deleteAllRecordsFromHistoriesTable() {
+        HistoryDbHelper helper = new HistoryDbHelper(context);
+        SQLiteDatabase database = helper.getWritableDatabase();
+
+        database.delete(HistoryContract.HistoriesEntry.TABLE_NAME, null, null);
+        HistoryProvider.getHistoryCache().invalidateAll();
+
+        database.close();
+    }
+
+    private static class StorageResult {
+        final List<String> paragraphs = new ArrayList<>();
+        long databaseBytes;
+        double openMillis;
+    }
+}
@@ -0,0 +1,183 @@
+package com.abobrinha.caixinha.data;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteQueryBuilder;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.abobrinha.caixinha.ui.HistoryActivity;
+import com.abobrinha.caixinha.ui.HistoryGridFragment;
+import com.abobrinha.caixinha.widget.SingleHistoryConfigureActivity;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static junit.framework.Assert.assertFalse;
+
+/**
+ * Verifica, pelo EXPLAIN QUERY PLAN, que as consultas feitas ao provider pelas telas, widgets e
+ * notificações usam índices: nenhuma percorre uma tabela inteira nem ordena em uma B-tree
+ * temporária.
+ *
+ * A leitura de todas as histórias feita pela sincronização (HistorySyncTask) não é verificada,
+ * pois ela precisa mesmo de todas as linhas.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestQueryPlans {
+
+    private static final String[] HISTORY_ORDERS = {
+            HistoryContract.HistoriesEntry.COLUMN_HISTORY_DATE + " DESC",
+            HistoryContract.HistoriesEntry.COLUMN_HISTORY_TITLE_SORT + " ASC"
+    };
+
+    // Seleções das URIs de todas as histórias e de favoritos, como no HistoryProvider
+    private static final String[] HISTORY_SELECTIONS = {
+            null,
+            HistoryContract.HistoriesEntry.COLUMN_FAVORITE + "=" + HistoryContract.IS_FAVORITE
+    };
+
+    private final Context context = InstrumentationRegistry.getTargetContext();
+    private HistoryDbHelper mHelper;
+    private SQLiteDatabase mDatabase;
+
+    @Before
+    public void setUp() {
+        mHelper = new HistoryDbHelper(context);
+        mDatabase = mHelper.getReadableDatabase();
+    }
+
+    @After
+    public void tearDown() {
+        mHelper.close();
+    }
+
+    @Test
+    public void testHistoryListQueries() {
+        String[][] projections = {
+                HistoryGridFragment.MAIN_HISTORIES_PROJECTION,
+                HistoryActivity.MAIN_HISTORIES_PROJECTION,
+                SingleHistoryConfigureActivity.MAIN_HISTORIES_PROJECTION
+        };
+
+        for (String[] projection : projections) {
+            for (String selection : HISTORY_SELECTIONS) {
+                for (String order : HISTORY_ORDERS) {
+                    assertUsesIndexes(SQLiteQueryBuilder.buildQueryString(false,
+                            HistoryContract.HistoriesEntry.TABLE_NAME, projection, selection,
+                            null, null, order, null));
+                }
+            }
+        }
+
+        // Verificação de base vazia (HistorySyncUtils)
+        assertUsesIndexes(SQLiteQueryBuilder.buildQueryString(false,
+                HistoryContract.HistoriesEntry.TABLE_NAME,
+                new String[]{HistoryContract.HistoriesEntry._ID},
+                null, null, null, null, null));
+    }
+
+    /*
+     * Páginas das listagens (ver HistoryProvider.queryPage), com a coluna de ordenação que o
+     * HistoryPagesLoader acrescenta à projeção.
+     */
+    @Test
+    public void testHistoryPageQueries() {
+        String[] sortColumns = {
+                HistoryContract.HistoriesEntry.COLUMN_HISTORY_DATE,
+                HistoryContract.HistoriesEntry.COLUMN_HISTORY_TITLE_SORT
+        };
+        boolean[] descending = {true, false};
+
+        for (int i = 0; i < sortColumns.length; i++) {
+            List<String> projection = new ArrayList<>(
+                    Arrays.asList(HistoryGridFragment.MAIN_HISTORIES_PROJECTION));
+            if (!projection.contains(sortColumns[i])) projection.add(sortColumns[i]);
+
+            String order = HistoryProvider.buildPageOrder(sortColumns[i], descending[i]);
+            String keyset = HistoryProvider.buildPageSelection(sortColumns[i], descending[i]);
+
+            for (String selection : HISTORY_SELECTIONS) {
+                String afterSelection = (selection == null) ? keyset :
+                        "(" + selection + ") AND " + keyset;
+
+                assertUsesIndexes(SQLiteQueryBuilder.buildQueryString(false,
+                        HistoryContract.HistoriesEntry.TABLE_NAME,
+                        projection.toArray(new String[0]), selection,
+                        null, null, order, "60"));
+                assertUsesIndexes(SQLiteQueryBuilder.buildQueryString(false,
+                        HistoryContract.HistoriesEntry.TABLE_NAME,
+                        projection.toArray(new String[0]), afterSelection,
+                        null, null, order, "60"));
+            }
+        }
+    }
+
+    @Test
+    public void testSingleHistoryQueries() {
+        assertUsesIndexes(SQLiteQueryBuilder.buildQueryString(false,
+                HistoryContract.HistoriesEntry.TABLE_NAME, null,
+                HistoryContract.HistoriesEntry._ID + "=?", null, null, null, null));
+
+        assertUsesIndexes(SQLiteQueryBuilder.buildQueryString(false,
+                HistoryContract.ParagraphsEntry.TABLE_NAME, null,
+                HistoryContract.ParagraphsEntry.COLUMN_HISTORY_ID + "=?", null, null, null, null));
+
+        assertUsesIndexes(SQLiteQueryBuilder.buildQueryString(false,
+                HistoryContract.ParagraphBlobsEntry.TABLE_NAME,
+                new String[]{HistoryContract.ParagraphBlobsEntry.COLUMN_DATA},
+                HistoryContract.ParagraphBlobsEntry.COLUMN_HISTORY_ID + "=?",
+                null, null, null, null));
+
+        assertUsesIndexes(HistoryProvider.SQL_HISTORY_DETAIL);
+    }
+
+    @Test
+    public void testSearchQuery() {
+        assertUsesIndexes(HistoryProvider.SQL_SEARCH);
+    }
+
+    /*
+     * O formato do EXPLAIN QUERY PLAN muda entre versões do SQLite ("SCAN TABLE histories" nas
+     * antigas, "SCAN histories" nas novas), então apenas o início de cada passo é comparado. A
+     * busca no índice FTS aparece como um SCAN da tabela virtual e é aceita.
+     */
+    private void assertUsesIndexes(String sql) {
+        Cursor cursor = mDatabase.rawQuery("EXPLAIN QUERY PLAN " + sql, buildArgs(sql));
+        int detailIndex = cursor.getColumnIndex("detail");
+
+        try {
+            while (cursor.moveToNext()) {
+                String detail = cursor.getString(detailIndex);
+
+                assertFalse("Ordenação temporária em: " + sql + "\n" + detail,
+                        detail.contains("TEMP B-TREE"));
+
+                boolean tableScan = detail.startsWith("SCAN ") &&
+                        !detail.contains(" USING ") && !detail.contains("VIRTUAL TABLE");
+                assertFalse("Tabela percorrida inteira em: " + sql + "\n" + detail, tableScan);
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    // Um valor qualquer para cada parâmetro, já que o plano não depende deles
+    private static String[] buildArgs(String sql) {
+        int count = 0;
+        for (int i = 0; i < sql.length(); i++) {
+            if (sql.charAt(i) == '?') count++;
+        }
+
+        String[] args = new String[count];
+        Arrays.fill(args, "0");
+        return args;
+    }
+}
@@ -0,0 +1,448 @@
+package com.abobrinha.caixinha.network;
+
+import android.content.Context;
+import android.net.Uri;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+
+/**
+ * Servidor HTTP local, executado no próprio processo de testes, que simula a API REST v1.1 do
+ * WordPress a partir de um fixture gravado (assets/fixtures) com o mesmo formato de resposta da
+ * API real. Permite testar e medir a sincronização sem depender da rede.
+ *
+ * Suporta o que o aplicativo utiliza da API:
+ * - Listagem paginada de posts: fields, number, page e order_by (date, modified ou ID)
+ * - Consulta de um único post pelo ID
+ * - Keep-alive (várias requisições por conexão), gzip e ETag / If-None-Match
+ *
+ * Qualquer caminho iniciado por INVALID_PATH retorna HTML (JSON inválido) e caminhos
+ * desconhecidos retornam 404, simulando respectivamente dados inválidos e servidor fora do ar.
+ */
+public class FakeWordPressServer {
+    public static final String FIXTURE_POSTS = "fixtures/posts.json";
+
+    public static final String INVALID_PATH = "invalid/";
+    public static final String MISSING_PATH = "missing/";
+
+    private static final String API_PATH = "rest/v1.1/sites/";
+
+    private static final String FIELD_ID = "ID";
+    private static final String FIELD_DATE = "date";
+    private static final String FIELD_MODIFIED = "modified";
+
+    private static final int DEFAULT_NUMBER = 20;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+
+    private final List<JSONObject> mPosts;
+
+    // Alteração aplicada logo após a próxima página de listagem servida (ver modifyAfterNextPage)
+    private long mPendingModifiedId;
+    private String mPendingModified;
+
+    private final ServerSocket mServerSocket;
+    private final ExecutorService mExecutor = Executors.newCachedThreadPool();
+    private final Set<Socket> mOpenSockets =
+            Collections.newSetFromMap(new ConcurrentHashMap<Socket, Boolean>());
+
+    private final AtomicInteger mConnections = new AtomicInteger();
+    private final AtomicInteger mRequests = new AtomicInteger();
+    private final AtomicInteger mNotModifiedResponses = new AtomicInteger();
+    private final AtomicInteger mGzipResponses = new AtomicInteger();
+    private final AtomicLong mBytesSent = new AtomicLong();
+
+    public FakeWordPressServer(List<JSONObject> posts) throws IOException {
+        mPosts = new ArrayList<>(posts);
+        mServerSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                while (!mServerSocket.isClosed()) {
+                    try {
+                        final Socket socket = mServerSocket.accept();
+                        mConnections.incrementAndGet();
+                        mOpenSockets.add(socket);
+                        mExecutor.execute(new Runnable() {
+                            @Override
+                            public void run() {
+                                serveConnection(socket);
+                            }
+                        });
+                    } catch (IOException e) {
+                        // Servidor encerrado
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Cria o servidor com os posts do fixture, lido dos assets do APK de testes.
+     */
+    public static FakeWordPressServer fromAsset(Context testContext, String assetName)
+            throws IOException, JSONException {
+        return new FakeWordPressServer(loadPosts(testContext, assetName));
+    }
+
+    /**
+     * Cria o servidor com totalPosts posts, replicando os posts do fixture com novos ID's e
+     * datas, para medições com volumes maiores que o gravado.
+     */
+    public static FakeWordPressServer fromAsset(Context testContext, String assetName,
+                                                int totalPosts)
+            throws IOException, JSONException {
+        List<JSONObject> recorded = loadPosts(testContext, assetName);
+        List<JSONObject> posts = new ArrayList<>(totalPosts);
+        for (int i = 0; i < totalPosts; i++) {
+            JSONObject post = new JSONObject(recorded.get(i % recorded.size()).toString());
+            int copy = i / recorded.size();
+            if (copy > 0) {
+                post.put(FIELD_ID, post.getLong(FIELD_ID) + copy * 1000000L);
+                post.put(FIELD_DATE, shiftYear(post.getString(FIELD_DATE), copy));
+                post.put(FIELD_MODIFIED, shiftYear(post.getString(FIELD_MODIFIED), copy));
+            }
+            posts.add(post);
+        }
+        return new FakeWordPressServer(posts);
+    }
+
+    public static List<JSONObject> loadPosts(Context testContext, String assetName)
+            throws IOException, JSONException {
+        InputStream in = testContext.getAssets().open(assetName);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+
+            JSONArray posts = new JSONObject(new String(out.toByteArray(), UTF_8))
+                    .getJSONArray("posts");
+            List<JSONObject> result = new ArrayList<>(posts.length());
+            for (int i = 0; i < posts.length(); i++) {
+                result.add(posts.getJSONObject(i));
+            }
+            return result;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * URL base a ser utilizada no lugar de WordPressConn.WORDPRESS_BASE_URL
+     */
+    public String getBaseUrl() {
+        return getUrl(API_PATH);
+    }
+
+    public String getUrl(String path) {
+        return "http://127.0.0.1:" + mServerSocket.getLocalPort() + "/" + path;
+    }
+
+    public synchronized int getPostCount() {
+        return mPosts.size();
+    }
+
+    public synchronized List<Long> getPostIds() throws JSONException {
+        List<Long> ids = new ArrayList<>(mPosts.size());
+        for (JSONObject post : mPosts) {
+            ids.add(post.getLong(FIELD_ID));
+        }
+        return ids;
+    }
+
+    public synchronized boolean removePost(long id) throws JSONException {
+        for (int i = 0; i < mPosts.size(); i++) {
+            if (mPosts.get(i).getLong(FIELD_ID) == id) {
+                mPosts.remove(i);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public synchronized boolean setPostModified(long id, String modified) throws JSONException {
+        for (JSONObject post : mPosts) {
+            if (post.getLong(FIELD_ID) == id) {
+                post.put(FIELD_MODIFIED, modified);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Altera a data de modificação do post logo após servir a próxima página de listagem,
+     * simulando uma história editada na fonte durante a leitura das páginas.
+     */
+    public synchronized void modifyAfterNextPage(long id, String modified) {
+        mPendingModifiedId = id;
+        mPendingModified = modified;
+    }
+
+    public int getConnectionCount() {
+        return mConnections.get();
+    }
+
+    public int getRequestCount() {
+        return mRequests.get();
+    }
+
+    public int getNotModifiedCount() {
+        return mNotModifiedResponses.get();
+    }
+
+    public int getGzipResponseCount() {
+        return mGzipResponses.get();
+    }
+
+    // Bytes de corpo enviados, já compactados quando solicitado pelo cliente
+    public long getBytesSent() {
+        return mBytesSent.get();
+    }
+
+    public void shutdown() throws IOException {
+        mServerSocket.close();
+        for (Socket socket : mOpenSockets) {
+            socket.close();
+        }
+        mExecutor.shutdownNow();
+    }
+
+    private void serveConnection(Socket socket) {
+        try {
+            BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(socket.getInputStream(), ISO_8859_1));
+            OutputStream out = socket.getOutputStream();
+
+            String requestLine;
+            while ((requestLine = reader.readLine()) != null) {
+                if (requestLine.isEmpty()) continue;
+                mRequests.incrementAndGet();
+
+                Map<String, String> headers = new HashMap<>();
+                String line;
+                while ((line = reader.readLine()) != null && !line.isEmpty()) {
+                    int separator = line.indexOf(':');
+                    if (separator > 0) {
+                        headers.put(line.substring(0, separator).trim().toLowerCase(Locale.US),
+                                line.substring(separator + 1).trim());
+                    }
+                }
+
+                String[] requestParts = requestLine.split(" ");
+                String target = requestParts.length > 1 ? requestParts[1] : "/";
+                boolean keepAlive = !"close".equalsIgnoreCase(headers.get("connection"));
+
+                writeResponse(out, handleRequest(Uri.parse(target)), headers, keepAlive);
+                if (!keepAlive) break;
+            }
+        } catch (IOException e) {
+            // Conexão encerrada pelo cliente ou pelo shutdown
+        } finally {
+            mOpenSockets.remove(socket);
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Nada a fazer
+            }
+        }
+    }
+
+    private void writeResponse(OutputStream out, FakeResponse response,
+                               Map<String, String> requestHeaders, boolean keepAlive)
+            throws IOException {
+        byte[] body = response.body.getBytes(UTF_8);
+        String etag = "\"" + Integer.toHexString(Arrays.hashCode(body)) + "\"";
+
+        StringBuilder head = new StringBuilder();
+        if (response.code == 200 && etag.equals(requestHeaders.get("if-none-match"))) {
+            mNotModifiedResponses.incrementAndGet();
+            head.append("HTTP/1.1 304 Not Modified\r\n")
+                    .append("ETag: ").append(etag).append("\r\n");
+            body = new byte[0];
+        } else {
+            head.append("HTTP/1.1 ").append(response.code).append(' ')
+                    .append(response.code == 200 ? "OK" : "Not Found").append("\r\n")
+                    .append("Content-Type: ").append(response.contentType).append("\r\n");
+            if (response.code == 200) {
+                head.append("ETag: ").append(etag).append("\r\n");
+            }
+
+            String acceptEncoding = requestHeaders.get("accept-encoding");
+            if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+                mGzipResponses.incrementAndGet();
+                body = gzip(body);
+                head.append("Content-Encoding: gzip\r\n");
+            }
+            head.append("Content-Length: ").append(body.length).append("\r\n");
+        }
+
+        head.append("Connection: ").append(keepAlive ? "keep-alive" : "close").append("\r\n\r\n");
+
+        out.write(head.toString().getBytes(ISO_8859_1));
+        out.write(body);
+        out.flush();
+        mBytesSent.addAndGet(body.length);
+    }
+
+    private FakeResponse handleRequest(Uri uri) {
+        String path = uri.getPath() == null ? "" : uri.getPath().substring(1);
+
+        if (path.startsWith(INVALID_PATH)) {
+            return new FakeResponse(200, "text/html; charset=UTF-8",
+                    "<html><body><p>Página de teste</p></body></html>");
+        }
+
+        if (!path.startsWith(API_PATH)) {
+            return notFound();
+        }
+
+        // {site}/posts[/{id}]
+        List<String> segments = Arrays.asList(path.substring(API_PATH.length()).split("/"));
+        if (segments.size() < 2 || !WordPressConn.WORDPRESS_POSTS.equals(segments.get(1))) {
+            return notFound();
+        }
+
+        String fields = uri.getQueryParameter("fields");
+        try {
+            if (segments.size() == 2) {
+                return new FakeResponse(200, "application/json; charset=UTF-8",
+                        listPosts(uri, fields));
+            }
+
+            JSONObject post = findPost(Long.parseLong(segments.get(2)));
+            if (post == null) {
+                return new FakeResponse(404, "application/json; charset=UTF-8",
+                        "{\"error\":\"unknown_post\",\"message\":\"Unknown post\"}");
+            }
+            return new FakeResponse(200, "application/json; charset=UTF-8",
+                    filterFields(post, fields).toString());
+        } catch (JSONException | NumberFormatException e) {
+            return notFound();
+        }
+    }
+
+    private synchronized String listPosts(Uri uri, String fields) throws JSONException {
+        String orderBy = uri.getQueryParameter("order_by");
+        final String orderField = FIELD_MODIFIED.equals(orderBy) || FIELD_ID.equals(orderBy)
+                ? orderBy : FIELD_DATE;
+        int number = parseInt(uri.getQueryParameter("number"), DEFAULT_NUMBER);
+        int page = parseInt(uri.getQueryParameter("page"), 1);
+
+        List<JSONObject> sorted = new ArrayList<>(mPosts);
+        // As datas do fixture têm o mesmo fuso, então a ordem textual é a ordem cronológica
+        Collections.sort(sorted, new Comparator<JSONObject>() {
+            @Override
+            public int compare(JSONObject a, JSONObject b) {
+                if (FIELD_ID.equals(orderField)) {
+                    long idA = a.optLong(FIELD_ID);
+                    long idB = b.optLong(FIELD_ID);
+                    return idB < idA ? -1 : (idB == idA ? 0 : 1);
+                }
+                return b.optString(orderField).compareTo(a.optString(orderField));
+            }
+        });
+
+        JSONArray posts = new JSONArray();
+        int from = (page - 1) * number;
+        for (int i = from; i < Math.min(from + number, sorted.size()); i++) {
+            posts.put(filterFields(sorted.get(i), fields));
+        }
+
+        JSONObject result = new JSONObject();
+        result.put("found", sorted.size());
+        result.put("posts", posts);
+
+        if (mPendingModified != null) {
+            setPostModified(mPendingModifiedId, mPendingModified);
+            mPendingModified = null;
+        }
+        return result.toString();
+    }
+
+    private synchronized JSONObject findPost(long id) throws JSONException {
+        for (JSONObject post : mPosts) {
+            if (post.getLong(FIELD_ID) == id) return post;
+        }
+        return null;
+    }
+
+    private static JSONObject filterFields(JSONObject post, String fields) throws JSONException {
+        if (fields == null) return post;
+
+        JSONObject filtered = new JSONObject();
+        for (String field : fields.split(",")) {
+            if (post.has(field)) filtered.put(field, post.get(field));
+        }
+        return filtered;
+    }
+
+    private static FakeResponse notFound() {
+        return new FakeResponse(404, "text/plain; charset=UTF-8", "Not Found");
+    }
+
+    private static int parseInt(String value, int defaultValue) {
+        try {
+            return value == null ? defaultValue : Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    private static String shiftYear(String isoDate, int years) {
+        int year = Integer.parseInt(isoDate.substring(0, 4));
+        return (year + years) + isoDate.substring(4);
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        GZIPOutputStream gzipOut = new GZIPOutputStream(out);
+        gzipOut.write(data);
+        gzipOut.close();
+        return out.toByteArray();
+    }
+
+    private static class FakeResponse {
+        final int code;
+        final String contentType;
+        final String body;
+
+        FakeResponse(int code, String contentType, String body) {
+            this.code = code;
+            this.contentType = contentType;
+            this.body = body;
+        }
+    }
+}
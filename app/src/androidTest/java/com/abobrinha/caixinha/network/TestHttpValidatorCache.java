@@ -0,0 +1,99 @@
+package com.abobrinha.caixinha.network;
+
+
+import android.content.ContentValues;
+import android.content.Context;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+
+@RunWith(AndroidJUnit4.class)
+public class TestHttpValidatorCache {
+    private final Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+    private final Context testContext = InstrumentationRegistry.getInstrumentation().getContext();
+
+    private FakeWordPressServer mServer;
+    private HttpValidatorCache mCache;
+
+    @Before
+    public void setUp() throws Exception {
+        mServer = FakeWordPressServer.fromAsset(testContext, FakeWordPressServer.FIXTURE_POSTS);
+        WordPressConn.setBaseUrl(mServer.getBaseUrl());
+        mCache = HttpValidatorCache.getInstance(context);
+        mCache.clear();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        WordPressConn.setBaseUrl(WordPressConn.WORDPRESS_BASE_URL);
+        mCache.clear();
+        mServer.shutdown();
+    }
+
+    /**
+     * Após uma sincronização confirmada, a próxima consulta condicional deve receber 304 e
+     * retornar NOT_MODIFIED com uma única requisição. Quando uma história é removida ou
+     * alterada na fonte, a primeira página muda e os dados completos voltam a ser retornados.
+     */
+    @Test
+    public void testConditionalRequest() throws Exception {
+        int totalPosts = mServer.getPostCount();
+        ContentValues[] data = WordPressConn.getMetadataFromAllApiPages(context, true);
+        assertEquals("Quantidade de histórias incorreta na primeira consulta.",
+                totalPosts, data.length);
+        WordPressConn.commitValidators(context);
+
+        int hitsBefore = mCache.getHitCount();
+        int requestsBefore = mServer.getRequestCount();
+        data = WordPressConn.getMetadataFromAllApiPages(context, true);
+        assertSame("Resposta 304 não foi identificada.", WordPressConn.NOT_MODIFIED, data);
+        assertEquals("Deveria ter sido feita apenas uma requisição.",
+                requestsBefore + 1, mServer.getRequestCount());
+        assertEquals("Contador de acertos não foi incrementado.",
+                hitsBefore + 1, mCache.getHitCount());
+
+        long oldestId = mServer.getPostIds().get(totalPosts - 1);
+        assertTrue(mServer.removePost(oldestId));
+        data = WordPressConn.getMetadataFromAllApiPages(context, true);
+        assertNotSame("História removida foi tratada como não modificada.",
+                WordPressConn.NOT_MODIFIED, data);
+        assertEquals("Quantidade de histórias incorreta após remoção.",
+                totalPosts - 1, data.length);
+        WordPressConn.commitValidators(context);
+
+        long newestId = mServer.getPostIds().get(0);
+        assertTrue(mServer.setPostModified(newestId, "2030-01-01T00:00:00-03:00"));
+        data = WordPressConn.getMetadataFromAllApiPages(context, true);
+        assertNotSame("História alterada foi tratada como não modificada.",
+                WordPressConn.NOT_MODIFIED, data);
+    }
+
+    /**
+     * Validadores de uma sincronização que não foi confirmada, ou consultas não condicionais
+     * (base local vazia), nunca devem resultar em NOT_MODIFIED.
+     */
+    @Test
+    public void testUncommittedValidatorsAreIgnored() throws Exception {
+        int totalPosts = mServer.getPostCount();
+        WordPressConn.getMetadataFromAllApiPages(context, true);
+
+        ContentValues[] data = WordPressConn.getMetadataFromAllApiPages(context, true);
+        assertEquals("Validadores não confirmados foram utilizados.", totalPosts, data.length);
+        WordPressConn.commitValidators(context);
+
+        data = WordPressConn.getMetadataFromAllApiPages(context, false);
+        assertEquals("Consulta não condicional não retornou os dados.", totalPosts, data.length);
+        assertEquals("Servidor não deveria ter respondido 304.", 0, mServer.getNotModifiedCount());
+    }
+}
@@ -0,0 +1,135 @@
+package com.abobrinha.caixinha.network;
+
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.abobrinha.caixinha.data.HistoryContract;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+
+@RunWith(AndroidJUnit4.class)
+public class TestWordPressTransport {
+    private static final String LOG_TAG = TestWordPressTransport.class.getSimpleName();
+
+    // Suficiente para que a consulta tenha várias páginas de 100 posts
+    private static final int TOTAL_POSTS = 450;
+
+    private final Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+    private final Context testContext = InstrumentationRegistry.getInstrumentation().getContext();
+
+    private FakeWordPressServer mServer;
+    private UrlConnectionTransport mTransport;
+    private HttpTransport mOriginalTransport;
+
+    @Before
+    public void setUp() throws Exception {
+        mServer = FakeWordPressServer.fromAsset(testContext, FakeWordPressServer.FIXTURE_POSTS,
+                TOTAL_POSTS);
+        mTransport = new UrlConnectionTransport();
+        mOriginalTransport = WordPressConn.getTransport();
+        WordPressConn.setBaseUrl(mServer.getBaseUrl());
+        WordPressConn.setTransport(mTransport);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        WordPressConn.setBaseUrl(WordPressConn.WORDPRESS_BASE_URL);
+        WordPressConn.setTransport(mOriginalTransport);
+        mServer.shutdown();
+    }
+
+    /**
+     * As páginas devem ser lidas reaproveitando conexões (keep-alive) e com respostas
+     * compactadas, e os bytes contabilizados pelo transporte devem ser os bytes trafegados.
+     */
+    @Test
+    public void testConnectionReuseAndGzip() throws Exception {
+        ContentValues[] data = WordPressConn.getMetadataFromAllApiPages(context, false);
+        assertEquals("Quantidade de histórias incorreta.", TOTAL_POSTS, data.length);
+
+        data = WordPressConn.getMetadataFromAllApiPages(context, false);
+        assertEquals("Quantidade de histórias incorreta na segunda leitura.",
+                TOTAL_POSTS, data.length);
+
+        assertEquals("Requisições do transporte e do servidor não conferem.",
+                mServer.getRequestCount(), mTransport.getRequestCount());
+        assertTrue("Conexões não foram reaproveitadas.",
+                mServer.getConnectionCount() < mServer.getRequestCount());
+
+        assertEquals("Nem todas as respostas foram compactadas.",
+                mServer.getRequestCount(), mServer.getGzipResponseCount());
+        assertEquals("Bytes recebidos não conferem com os enviados.",
+                mServer.getBytesSent(), mTransport.getBytesReceived());
+        assertTrue("Respostas compactadas deveriam ser menores que as descompactadas.",
+                mTransport.getBytesReceived() < mTransport.getBytesDecoded());
+    }
+
+    /**
+     * Uma história alterada na fonte depois da leitura da primeira página passa para ela e
+     * desloca as seguintes, ficando fora da listagem por data de modificação. A listagem
+     * retornada deve continuar completa, para que a sincronização não a remova da base.
+     */
+    @Test
+    public void testHistoryModifiedDuringListing() throws Exception {
+        // Os posts do fixture original têm as datas mais antigas e ficam na última página
+        long oldestId = mServer.getPostIds().get(0);
+        mServer.modifyAfterNextPage(oldestId, "2100-01-01T00:00:00-03:00");
+
+        ContentValues[] data = WordPressConn.getMetadataFromAllApiPages(context, false);
+
+        Set<Long> idsRead = new HashSet<>();
+        for (ContentValues historyValues : data) {
+            idsRead.add(historyValues.getAsLong(HistoryContract.HistoriesEntry._ID));
+        }
+        assertTrue("História alterada durante a leitura ficou fora da listagem.",
+                idsRead.contains(oldestId));
+        assertEquals("Quantidade de histórias incorreta.", TOTAL_POSTS, idsRead.size());
+        assertEquals("Histórias repetidas na listagem.", TOTAL_POSTS, data.length);
+    }
+
+    /**
+     * Mede a leitura completa das histórias (todas as páginas, com conteúdo), registrando no
+     * log a vazão obtida para acompanhamento entre versões.
+     */
+    @Test
+    public void testFullHistoriesThroughput() throws Exception {
+        List<Long> ids = mServer.getPostIds();
+        final Set<Long> idsRead = new HashSet<>();
+
+        long start = SystemClock.elapsedRealtime();
+        WordPressConn.readHistoriesById(context, new ArrayList<>(ids),
+                new WordPressJson.OnHistoryReadListener() {
+                    @Override
+                    public void onHistoryRead(ContentValues historyValues) {
+                        idsRead.add(historyValues.getAsLong(HistoryContract.HistoriesEntry._ID));
+                    }
+                });
+        long elapsed = Math.max(1, SystemClock.elapsedRealtime() - start);
+
+        assertEquals("Nem todas as histórias foram lidas.", ids.size(), idsRead.size());
+
+        Log.i(LOG_TAG, String.format("%d histórias em %d ms (%.1f histórias/s), " +
+                        "%d requisições, %d conexões, %d bytes recebidos, %d bytes descompactados",
+                idsRead.size(), elapsed, idsRead.size() * 1000.0 / elapsed,
+                mTransport.getRequestCount(), mServer.getConnectionCount(),
+                mTransport.getBytesReceived(), mTransport.getBytesDecoded()));
+    }
+}
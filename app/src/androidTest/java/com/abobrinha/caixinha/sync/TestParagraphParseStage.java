@@ -0,0 +1,182 @@
+package com.abobrinha.caixinha.sync;
+
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.abobrinha.caixinha.R;
+import com.abobrinha.caixinha.core.ContentDigest;
+import com.abobrinha.caixinha.data.HistoryContract;
+import com.abobrinha.caixinha.data.HistoryContract.HistoriesEntry;
+import com.abobrinha.caixinha.data.HistoryContract.ParagraphsEntry;
+import com.abobrinha.caixinha.data.HistoryProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+
+@RunWith(AndroidJUnit4.class)
+public class TestParagraphParseStage {
+    // Mais histórias do que o limite em memória da etapa, para que a gravação ocorra em partes
+    private static final int HISTORIES_QUANTITY = 40;
+
+    private final Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+
+    @Before
+    public void setUp() {
+        deleteAllHistories();
+
+        ContentValues[] historyValues = new ContentValues[HISTORIES_QUANTITY];
+        for (int i = 0; i < HISTORIES_QUANTITY; i++) {
+            historyValues[i] = new ContentValues();
+            historyValues[i].put(HistoriesEntry._ID, i);
+            historyValues[i].put(HistoriesEntry.COLUMN_HISTORY_TITLE, "História" + i);
+            historyValues[i].put(HistoriesEntry.COLUMN_HISTORY_URL, "http://www.teste.com/" + i);
+            historyValues[i].put(HistoriesEntry.COLUMN_HISTORY_DATE, i + 1000);
+        }
+        context.getContentResolver().bulkInsert(HistoriesEntry.CONTENT_URI, historyValues);
+    }
+
+    @After
+    public void tearDown() {
+        deleteAllHistories();
+    }
+
+    /**
+     * Todas as histórias recebidas pela etapa devem ser gravadas com os mesmos parágrafos gerados
+     * pelo parser do provider e marcadas como baixadas, com os tempos de parsing e gravação
+     * registrados separadamente.
+     */
+    @Test
+    public void testParsedHistoriesAreWritten() throws Exception {
+        HistorySyncReport report = runStage(new HashMap<Long, String>(), "");
+
+        assertEquals("Nem todas as histórias foram regravadas.",
+                HISTORIES_QUANTITY, report.getContentRewritten());
+
+        for (int i = 0; i < HISTORIES_QUANTITY; i++) {
+            ContentValues[] expected =
+                    HistoryProvider.historyContentParser(i, createRawContent(i, ""));
+
+            Uri uri = ParagraphsEntry.buildParagraphsFromHistoryId(i);
+            Cursor cursor = context.getContentResolver().query(uri, null, null, null,
+                    ParagraphsEntry._ID);
+            assertEquals("Quantidade de parágrafos incorreta para a história " + i + ".",
+                    expected.length, cursor.getCount());
+
+            int j = 0;
+            int contentIndex = cursor.getColumnIndex(ParagraphsEntry.COLUMN_PARAGRAPH_CONTENT);
+            while (cursor.moveToNext()) {
+                assertEquals("Parágrafo incorreto para a história " + i + ".",
+                        expected[j++].getAsString(ParagraphsEntry.COLUMN_PARAGRAPH_CONTENT),
+                        cursor.getString(contentIndex));
+            }
+            cursor.close();
+
+            cursor = context.getContentResolver().query(
+                    HistoriesEntry.buildSingleHistoryUri(i),
+                    new String[]{HistoriesEntry.COLUMN_CONTENT_FETCHED}, null, null, null);
+            assertTrue(cursor.moveToFirst());
+            assertEquals("História não foi marcada como baixada.",
+                    HistoryContract.CONTENT_FETCHED, cursor.getInt(0));
+            cursor.close();
+        }
+
+        assertTrue("Tempo de parsing não registrado.",
+                report.hasStage(HistorySyncReport.STAGE_CONTENT_PARSE));
+        assertTrue("Tempo de gravação não registrado.",
+                report.hasStage(HistorySyncReport.STAGE_CONTENT_WRITE));
+    }
+
+    /**
+     * Conteúdo com o mesmo hash do já gravado deve apenas marcar a história como baixada, sem
+     * regravar os parágrafos. Com conteúdo alterado, a história deve ser regravada.
+     */
+    @Test
+    public void testUnchangedContentIsSkipped() throws Exception {
+        runStage(new HashMap<Long, String>(), "");
+
+        Map<Long, String> localHashes = new HashMap<>();
+        for (int i = 0; i < HISTORIES_QUANTITY; i++) {
+            localHashes.put((long) i, ContentDigest.of(createRawContent(i, "")));
+        }
+        Set<Long> paragraphIdsBefore = getParagraphIds();
+
+        HistorySyncReport report = runStage(localHashes, "");
+        assertEquals("Conteúdo igual não deveria ser regravado.",
+                0, report.getContentRewritten());
+        assertEquals("Conteúdo igual deveria ser mantido.",
+                HISTORIES_QUANTITY, report.getContentSkipped());
+        assertEquals("Parágrafos de conteúdo igual foram regravados.",
+                paragraphIdsBefore, getParagraphIds());
+
+        report = runStage(localHashes, "<p>Parágrafo novo</p>");
+        assertEquals("Conteúdo alterado deveria ser regravado.",
+                HISTORIES_QUANTITY, report.getContentRewritten());
+        assertEquals(0, report.getContentSkipped());
+    }
+
+    private HistorySyncReport runStage(Map<Long, String> localHashes, String extraContent)
+            throws Exception {
+        String rawContentKey = context.getString(R.string.history_raw_content);
+        HistorySyncReport report = new HistorySyncReport();
+        ParagraphParseStage stage = new ParagraphParseStage(context, localHashes, report);
+
+        try {
+            for (int i = 0; i < HISTORIES_QUANTITY; i++) {
+                ContentValues historyValues = new ContentValues();
+                historyValues.put(HistoriesEntry._ID, i);
+                historyValues.put(rawContentKey, createRawContent(i, extraContent));
+                stage.onHistoryRead(historyValues);
+            }
+            stage.finish();
+        } finally {
+            stage.shutdown();
+        }
+
+        assertEquals("Nem todas as histórias foram gravadas.",
+                HISTORIES_QUANTITY, stage.getHistoriesWritten());
+        return report;
+    }
+
+    private Set<Long> getParagraphIds() {
+        Set<Long> ids = new HashSet<>();
+        for (int i = 0; i < HISTORIES_QUANTITY; i++) {
+            Cursor cursor = context.getContentResolver().query(
+                    ParagraphsEntry.buildParagraphsFromHistoryId(i),
+                    new String[]{ParagraphsEntry._ID}, null, null, null);
+            while (cursor.moveToNext()) {
+                ids.add(cursor.getLong(0));
+            }
+            cursor.close();
+        }
+        return ids;
+    }
+
+    private static String createRawContent(int i, String extraContent) {
+        return "<p>Era uma vez " + i + "</p>" + extraContent +
+                "<p>Mais uma linha<br>com quebra</p>" +
+                "<figure><img src='http://www.teste.com/" + i + "/image.jpg?w=300'></figure>" +
+                "<p>" + ParagraphsEntry.END + "</p>" +
+                "<p>" + ParagraphsEntry.AUTHOR + "</p>";
+    }
+
+    private void deleteAllHistories() {
+        context.getContentResolver().delete(HistoriesEntry.CONTENT_URI, null, null);
+    }
+}
@@ -7,9 +7,11 @@ import androidx.test.platform.app.InstrumentationRegistry;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
 
 import com.abobrinha.caixinha.data.PreferencesUtils;
-import com.abobrinha.caixinha.network.WordPressConn;
+import com.abobrinha.caixinha.network.FakeWordPressServer;
 
 import org.json.JSONException;
+import org.junit.After;
+import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
@@ -21,15 +23,37 @@ import static junit.framework.Assert.assertEquals;
 
 @RunWith(AndroidJUnit4.class)
 public class TestSyncHistories {
-    private final Context context = InstrumentationRegistry.getTargetContext();
+    private final Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
 
-    private final String EMPTY_URL = "http://google.com/?";
-    private final String INVALID_URL = "http://google.com/ping?";
-    private final String VALID_URL = WordPressConn.WORDPRESS_BASE_URL;
+    private FakeWordPressServer mServer;
+
+    private String EMPTY_URL;
+    private String INVALID_URL;
+    private String VALID_URL;
 
     private int mStatus;
     private ContentValues[] mData;
 
+    /**
+     * As consultas são feitas a um servidor local que reproduz a API do WordPress a partir de
+     * um fixture, tornando os testes determinísticos e independentes da rede.
+     */
+    @Before
+    public void setUp() throws Exception {
+        mServer = FakeWordPressServer.fromAsset(
+                InstrumentationRegistry.getInstrumentation().getContext(),
+                FakeWordPressServer.FIXTURE_POSTS);
+
+        EMPTY_URL = mServer.getUrl(FakeWordPressServer.MISSING_PATH);
+        INVALID_URL = mServer.getUrl(FakeWordPressServer.INVALID_PATH);
+        VALID_URL = mServer.getBaseUrl();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mServer.shutdown();
+    }
+
     /**
      * Teste dos possíveis valores de retorno do servidor da API:
      * - OK
@@ -11,6 +11,7 @@ import org.json.JSONException;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.StringReader;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
@@ -68,7 +69,7 @@ public class TestSyncUtilities {
     static List<ContentValues> getDataFromAllApiPages(Context context, String urlString,
                                                       int results_per_page)
             throws IOException, JSONException {
-        List<ContentValues> dataRetrieved = new ArrayList<>();
+        final List<ContentValues> dataRetrieved = new ArrayList<>();
         for (int page = 1; page <= 99999; page++) {
             URL url = buildUrl(urlString, results_per_page, page);
             String searchResults = TestSyncUtilities.fetchDataFromUrl(url);
@@ -76,10 +77,14 @@ public class TestSyncUtilities {
                 return null;
             }
 
-            List<ContentValues> data = WordPressJson.getHistoriesFromJson(context, searchResults);
-            if (data == null) break;
-
-            dataRetrieved.addAll(data);
+            WordPressJson.PageResult result = WordPressJson.readHistories(context,
+                    new StringReader(searchResults), new WordPressJson.OnHistoryReadListener() {
+                        @Override
+                        public void onHistoryRead(ContentValues historyValues) {
+                            dataRetrieved.add(historyValues);
+                        }
+                    });
+            if (result.historiesRead == 0) break;
         }
 
         if (dataRetrieved.size() == 0) {
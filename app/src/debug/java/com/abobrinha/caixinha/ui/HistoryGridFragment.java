@@ -30,7 +30,6 @@ import androidx.core.app.ActivityCompat;
 import androidx.core.app.ActivityOptionsCompat;
 import androidx.fragment.app.Fragment;
 import androidx.loader.app.LoaderManager;
-import androidx.loader.content.CursorLoader;
 import androidx.loader.content.Loader;
 import androidx.recyclerview.widget.GridLayoutManager;
 import androidx.recyclerview.widget.ItemTouchHelper;
@@ -39,6 +38,7 @@ import androidx.recyclerview.widget.RecyclerView;
 import com.abobrinha.caixinha.R;
 import com.abobrinha.caixinha.data.HistoryContract;
 import com.abobrinha.caixinha.data.PreferencesUtils;
+import com.abobrinha.caixinha.network.HttpValidatorCache;
 import com.abobrinha.caixinha.network.WordPressConn;
 import com.abobrinha.caixinha.sync.HistorySyncUtils;
 import com.abobrinha.caixinha.sync.NotificationUtils;
@@ -64,7 +64,7 @@ public class HistoryGridFragment extends Fragment implements
 
     public static final String[] MAIN_HISTORIES_PROJECTION = {
             HistoryContract.HistoriesEntry._ID,
-            HistoryContract.HistoriesEntry.COLUMN_HISTORY_TITLE,
+            HistoryContract.HistoriesEntry.COLUMN_HISTORY_TITLE_PLAIN,
             HistoryContract.HistoriesEntry.COLUMN_HISTORY_IMAGE,
             HistoryContract.HistoriesEntry.COLUMN_HISTORY_DATE
     };
@@ -111,6 +111,13 @@ public class HistoryGridFragment extends Fragment implements
                 getActivity().getResources().getInteger(R.integer.grid_columns));
         mAdapter = new HistoryGridAdapter(getActivity(), this);
 
+        mHistoriesList.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                loadNextPageIfNeeded();
+            }
+        });
+
         showLoading();
 
         getLoaderManager().initLoader(mCategory, null, this);
@@ -213,7 +220,7 @@ public class HistoryGridFragment extends Fragment implements
                         null,
                         null);
 
-                NotificationUtils.updateWidgets(getActivity());
+                NotificationUtils.updateFavoritesWidgets(getActivity());
             }
 
             @Override
@@ -275,18 +282,24 @@ public class HistoryGridFragment extends Fragment implements
         }).attachToRecyclerView(mHistoriesList);
     }
 
+    /*
+     * A lista é configurada apenas na primeira carga. As seguintes (novas páginas ou alterações
+     * nas histórias) só atualizam o adapter, sem voltar para a posição salva.
+     */
     private void showHistoriesDataView() {
-        mHistoriesList.setLayoutManager(mLayoutManager);
-        mHistoriesList.setHasFixedSize(true);
-        mHistoriesList.setNestedScrollingEnabled(false);
+        if (mHistoriesList.getAdapter() != mAdapter) {
+            mHistoriesList.setLayoutManager(mLayoutManager);
+            mHistoriesList.setHasFixedSize(true);
+            mHistoriesList.setNestedScrollingEnabled(false);
 
-        mHistoriesList.setAdapter(mAdapter);
+            mHistoriesList.setAdapter(mAdapter);
 
-        if (mCategory == PreferencesUtils.CATEGORY_FAVORITES)
-            prepareSwipeAnimation();
+            if (mCategory == PreferencesUtils.CATEGORY_FAVORITES)
+                prepareSwipeAnimation();
 
-        if (mPosition != RecyclerView.NO_POSITION)
-            mHistoriesList.scrollToPosition(mPosition);
+            if (mPosition != RecyclerView.NO_POSITION)
+                mHistoriesList.scrollToPosition(mPosition);
+        }
 
         mEmptyStateView.setVisibility(View.INVISIBLE);
         mHistoriesList.setVisibility(View.VISIBLE);
@@ -296,14 +309,27 @@ public class HistoryGridFragment extends Fragment implements
             mRefreshItem.setActionView(null);
     }
 
+    /*
+     * Busca a próxima página de histórias quando a rolagem se aproxima do fim das já carregadas
+     * (ver HistoryPagesLoader).
+     */
+    private void loadNextPageIfNeeded() {
+        Loader<Cursor> loader = getLoaderManager().getLoader(mCategory);
+        int lastVisible = mLayoutManager.findLastVisibleItemPosition();
+
+        if (loader != null && lastVisible != RecyclerView.NO_POSITION &&
+                lastVisible >= mAdapter.getItemCount() - HistoryPagesLoader.PREFETCH_DISTANCE) {
+            ((HistoryPagesLoader) loader).loadNextPage();
+        }
+    }
+
     @Override
     public Loader<Cursor> onCreateLoader(int id, Bundle args) {
-        return new CursorLoader(getActivity(),
+        return new HistoryPagesLoader(getActivity(),
                 mCategoryUri[mCategory],
                 MAIN_HISTORIES_PROJECTION,
-                null,
-                null,
-                PreferencesUtils.getGridHistoryOrder(getActivity()));
+                PreferencesUtils.getGridHistoryOrder(getActivity()),
+                mPosition);
     }
 
     @Override
@@ -312,6 +338,14 @@ public class HistoryGridFragment extends Fragment implements
         boolean hasData = data != null && data.moveToFirst();
         if (hasData) {
             showHistoriesDataView();
+
+            // Em telas grandes a primeira página pode não ocupar a lista toda
+            mHistoriesList.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (isAdded()) loadNextPageIfNeeded();
+                }
+            });
         } else {
             showErrorMessage();
         }
@@ -329,6 +363,7 @@ public class HistoryGridFragment extends Fragment implements
 
     @Override
     public void onListItemClick(long historyId) {
+        HistoryOpenTimer.start(historyId);
         Intent intent = new Intent(getActivity(), HistoryActivity.class);
         intent.putExtra(Intent.EXTRA_TEXT, historyId);
         ActivityOptionsCompat activityOptions =
@@ -414,6 +449,9 @@ public class HistoryGridFragment extends Fragment implements
                         "=" + beforeLastId, null);
             }
 
+            // Sem isso a próxima sincronização receberia 304 e não restauraria as histórias
+            HttpValidatorCache.getInstance(getActivity()).clear();
+
             NotificationUtils.updateWidgets(getActivity());
             return true;
         }
@@ -428,6 +466,7 @@ public class HistoryGridFragment extends Fragment implements
             public void onClick(DialogInterface dialog, int id) {
                 getActivity().getContentResolver().update(
                         HistoryContract.HistoriesEntry.CONTENT_URI, null, null, null);
+                NotificationUtils.updateFavoritesWidgets(getActivity());
             }
         });
         builder.setNegativeButton(R.string.cancel, new DialogInterface.OnClickListener() {
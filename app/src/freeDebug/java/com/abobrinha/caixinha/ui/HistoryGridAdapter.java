@@ -25,8 +25,6 @@ import com.google.android.gms.ads.AdView;
 import com.google.android.gms.ads.InterstitialAd;
 import com.google.android.gms.ads.MobileAds;
 
-import org.jsoup.Jsoup;
-
 import java.util.Random;
 
 public class HistoryGridAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
@@ -124,7 +122,7 @@ public class HistoryGridAdapter extends RecyclerView.Adapter<RecyclerView.ViewHo
             int offsetPosition = getOffsetPosition(position);
             mCursor.moveToPosition(offsetPosition);
 
-            String title = Jsoup.parse(mCursor.getString(HistoryGridFragment.INDEX_HISTORY_TITLE)).text();
+            String title = mCursor.getString(HistoryGridFragment.INDEX_HISTORY_TITLE);
 
             RegularViewHolder rHolder = (RegularViewHolder) holder;
 
@@ -0,0 +1,147 @@
+package com.abobrinha.caixinha.data;
+
+import android.content.ContentValues;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteConstraintException;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.text.TextUtils;
+import android.util.Log;
+
+import java.io.Closeable;
+
+/**
+ * Gravação em lote de histórias e parágrafos com comandos compilados (SQLiteStatement).
+ *
+ * Cada comando é compilado uma única vez, na primeira linha, e reaproveitado nas seguintes
+ * apenas com a troca dos parâmetros posicionais, sem montar o SQL nem percorrer ContentValues
+ * a cada parágrafo, como faz SQLiteDatabase.insert. Os valores já devem estar validados.
+ *
+ * Deve ser usado dentro de uma transação e fechado ao final dela.
+ */
+class HistoryBulkWriter implements Closeable {
+
+    private static final String LOG_TAG = HistoryBulkWriter.class.getSimpleName();
+
+    private static final String[] HISTORY_COLUMNS = {
+            HistoryContract.HistoriesEntry._ID,
+            HistoryContract.HistoriesEntry.COLUMN_HISTORY_TITLE,
+            HistoryContract.HistoriesEntry.COLUMN_HISTORY_URL,
+            HistoryContract.HistoriesEntry.COLUMN_HISTORY_IMAGE,
+            HistoryContract.HistoriesEntry.COLUMN_HISTORY_DATE,
+            HistoryContract.HistoriesEntry.COLUMN_HISTORY_MODIFIED,
+            HistoryContract.HistoriesEntry.COLUMN_FAVORITE,
+            HistoryContract.HistoriesEntry.COLUMN_CONTENT_FETCHED,
+            HistoryContract.HistoriesEntry.COLUMN_CONTENT_HASH,
+            HistoryContract.HistoriesEntry.COLUMN_HISTORY_TITLE_PLAIN,
+            HistoryContract.HistoriesEntry.COLUMN_HISTORY_TITLE_SORT
+    };
+
+    // Favorito e marcação de conteúdo ausentes ficam com o valor padrão da tabela
+    private static final String SQL_INSERT_HISTORY =
+            "INSERT INTO " + HistoryContract.HistoriesEntry.TABLE_NAME + " (" +
+                    TextUtils.join(", ", HISTORY_COLUMNS) + ") VALUES (?, ?, ?, ?, ?, ?, " +
+                    "COALESCE(?, " + HistoryContract.IS_NOT_FAVORITE + "), " +
+                    "COALESCE(?, " + HistoryContract.CONTENT_NOT_FETCHED + "), ?, ?, ?)";
+
+    private static final String SQL_INSERT_PARAGRAPH =
+            "INSERT INTO " + HistoryContract.ParagraphsEntry.TABLE_NAME + " (" +
+                    HistoryContract.ParagraphsEntry.COLUMN_HISTORY_ID + ", " +
+                    HistoryContract.ParagraphsEntry.COLUMN_PARAGRAPH_TYPE + ", " +
+                    HistoryContract.ParagraphsEntry.COLUMN_PARAGRAPH_CONTENT + ") VALUES (?, ?, ?)";
+
+    private static final String SQL_INSERT_PARAGRAPH_BLOB =
+            "INSERT INTO " + HistoryContract.ParagraphBlobsEntry.TABLE_NAME + " (" +
+                    HistoryContract.ParagraphBlobsEntry.COLUMN_HISTORY_ID + ", " +
+                    HistoryContract.ParagraphBlobsEntry.COLUMN_DATA + ") VALUES (?, ?)";
+
+    private static final String SQL_UPDATE_SEARCH_CONTENT =
+            "UPDATE " + HistoryContract.SearchEntry.TABLE_NAME + " SET " +
+                    HistoryContract.SearchEntry.COLUMN_CONTENT + " = ? WHERE docid = ?";
+
+    private final SQLiteDatabase mDb;
+    private SQLiteStatement mHistoryInsert;
+    private SQLiteStatement mParagraphInsert;
+    private SQLiteStatement mParagraphBlobInsert;
+    private SQLiteStatement mSearchContentUpdate;
+
+    HistoryBulkWriter(SQLiteDatabase db) {
+        mDb = db;
+    }
+
+    /*
+     * Insere uma história nova, com as colunas de HISTORY_COLUMNS presentes em values. Retorna o
+     * ID da história, ou -1 se a inserção violar uma constraint da tabela, como
+     * SQLiteDatabase.insert (o SQLiteStatement lança SQLiteConstraintException nesse caso).
+     */
+    long insertHistory(ContentValues values) {
+        if (mHistoryInsert == null) {
+            mHistoryInsert = mDb.compileStatement(SQL_INSERT_HISTORY);
+        }
+
+        for (int i = 0; i < HISTORY_COLUMNS.length; i++) {
+            DatabaseUtils.bindObjectToProgram(mHistoryInsert, i + 1,
+                    values.get(HISTORY_COLUMNS[i]));
+        }
+        try {
+            return mHistoryInsert.executeInsert();
+        } catch (SQLiteConstraintException e) {
+            Log.e(LOG_TAG, "Falha ao inserir a história " +
+                    values.getAsLong(HistoryContract.HistoriesEntry._ID), e);
+            return -1;
+        }
+    }
+
+    /*
+     * Insere os parágrafos de uma história, uma linha por parágrafo.
+     */
+    void insertParagraphs(long historyId, ContentValues[] paragraphValues) {
+        if (mParagraphInsert == null) {
+            mParagraphInsert = mDb.compileStatement(SQL_INSERT_PARAGRAPH);
+        }
+
+        mParagraphInsert.bindLong(1, historyId);
+        for (ContentValues paragraphValue : paragraphValues) {
+            mParagraphInsert.bindLong(2, paragraphValue.getAsInteger(
+                    HistoryContract.ParagraphsEntry.COLUMN_PARAGRAPH_TYPE));
+            mParagraphInsert.bindString(3, paragraphValue.getAsString(
+                    HistoryContract.ParagraphsEntry.COLUMN_PARAGRAPH_CONTENT));
+            mParagraphInsert.executeInsert();
+        }
+    }
+
+    /*
+     * Insere os parágrafos de uma história já codificados em um único blob (ver ParagraphBlob).
+     */
+    void insertParagraphBlob(long historyId, byte[] data) {
+        if (mParagraphBlobInsert == null) {
+            mParagraphBlobInsert = mDb.compileStatement(SQL_INSERT_PARAGRAPH_BLOB);
+        }
+
+        mParagraphBlobInsert.bindLong(1, historyId);
+        mParagraphBlobInsert.bindBlob(2, data);
+        mParagraphBlobInsert.executeInsert();
+    }
+
+    /*
+     * Grava o texto da história no índice de busca, já sem acentos (ver HistorySearch). A linha
+     * do índice é criada pelo trigger de inserção da história.
+     */
+    void updateSearchContent(long historyId, String content) {
+        if (mSearchContentUpdate == null) {
+            mSearchContentUpdate = mDb.compileStatement(SQL_UPDATE_SEARCH_CONTENT);
+        }
+
+        mSearchContentUpdate.bindString(1, content);
+        mSearchContentUpdate.bindLong(2, historyId);
+        mSearchContentUpdate.executeUpdateDelete();
+    }
+
+    @Override
+    public void close() {
+        if (mHistoryInsert != null) mHistoryInsert.close();
+        if (mParagraphInsert != null) mParagraphInsert.close();
+        if (mParagraphBlobInsert != null) mParagraphBlobInsert.close();
+        if (mSearchContentUpdate != null) mSearchContentUpdate.close();
+    }
+}
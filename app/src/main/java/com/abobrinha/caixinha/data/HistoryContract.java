@@ -4,6 +4,8 @@ package com.abobrinha.caixinha.data;
 import android.net.Uri;
 import android.provider.BaseColumns;
 
+import com.abobrinha.caixinha.core.ParagraphExtractor;
+
 public class HistoryContract {
     public static final String CONTENT_AUTHORITY = "com.abobrinha.caixinha";
     public static final Uri BASE_CONTENT_URI = Uri.parse("content://" + CONTENT_AUTHORITY);
@@ -11,15 +13,30 @@ public class HistoryContract {
     public static final String PATH_HISTORIES = "histories";
     public static final String PATH_FAVORITES = "favorites";
     public static final String PATH_PARAGRAPHS = "paragraphs";
+    public static final String PATH_DETAIL = "detail";
+    public static final String PATH_SEARCH = "search";
+    public static final String PATH_HISTORY_LIST = "history_list";
 
     public static final int IS_FAVORITE = 1;
     public static final int IS_NOT_FAVORITE = 0;
 
+    public static final int CONTENT_FETCHED = 1;
+    public static final int CONTENT_NOT_FETCHED = 0;
+
     public static final class HistoriesEntry implements BaseColumns {
         public static final Uri CONTENT_URI = BASE_CONTENT_URI.buildUpon()
                 .appendPath(PATH_HISTORIES)
                 .build();
 
+        /*
+         * URI em que são notificadas as consultas de CONTENT_URI (todas as histórias). Fica fora
+         * de CONTENT_URI para que as alterações de favorito e de conteúdo, notificadas nas URIs
+         * das histórias e na de favoritos, não refaçam essas listagens. Não pode ser consultada.
+         */
+        public static final Uri LIST_NOTIFICATION_URI = BASE_CONTENT_URI.buildUpon()
+                .appendPath(PATH_HISTORY_LIST)
+                .build();
+
         public static final int INVALID_ID = -1;
 
         public static final String TABLE_NAME = "histories";
@@ -31,17 +48,70 @@ public class HistoryContract {
         public static final String COLUMN_HISTORY_MODIFIED = "date_modified";
         public static final String COLUMN_FAVORITE = "favorite";
 
+        // Título sem tags e entidades HTML, pronto para exibição (ver HistoryTitle)
+        public static final String COLUMN_HISTORY_TITLE_PLAIN = "title_plain";
+
+        // Chave de ordenação do título: minúsculas e sem acentos (ver HistoryTitle)
+        public static final String COLUMN_HISTORY_TITLE_SORT = "title_sort";
+
+        // Indica se os parágrafos da história já foram baixados (CONTENT_FETCHED)
+        public static final String COLUMN_CONTENT_FETCHED = "content_fetched";
+
+        // Hash do conteúdo HTML que gerou os parágrafos gravados (ver ContentDigest)
+        public static final String COLUMN_CONTENT_HASH = "content_hash";
+
+        // Parâmetros das URIs de listagem para a paginação (ver buildPageUri)
+        public static final String PARAM_LIMIT = "limit";
+        public static final String PARAM_AFTER_KEY = "after_key";
+        public static final String PARAM_AFTER_ID = "after_id";
+
         public static Uri buildFavoritesUri() {
             return HistoriesEntry.CONTENT_URI.buildUpon()
                     .appendPath(PATH_FAVORITES)
                     .build();
         }
 
+        /*
+         * Primeira página, de até limit histórias, de uma URI de listagem (CONTENT_URI ou
+         * buildFavoritesUri). A consulta deve ser ordenada por COLUMN_HISTORY_DATE ou
+         * COLUMN_HISTORY_TITLE_SORT (ver PreferencesUtils.getGridHistoryOrder).
+         */
+        public static Uri buildPageUri(Uri listUri, int limit) {
+            return listUri.buildUpon()
+                    .appendQueryParameter(PARAM_LIMIT, Integer.toString(limit))
+                    .build();
+        }
+
+        /*
+         * Página seguinte à que terminou na história afterId, cujo valor na coluna de ordenação
+         * é afterKey.
+         */
+        public static Uri buildPageUri(Uri listUri, int limit, String afterKey, long afterId) {
+            return buildPageUri(listUri, limit).buildUpon()
+                    .appendQueryParameter(PARAM_AFTER_KEY, afterKey)
+                    .appendQueryParameter(PARAM_AFTER_ID, Long.toString(afterId))
+                    .build();
+        }
+
         public static Uri buildSingleHistoryUri(long historyId) {
             return HistoriesEntry.CONTENT_URI.buildUpon()
                     .appendPath(Long.toString(historyId))
                     .build();
         }
+
+        /*
+         * Cabeçalho e parágrafos da história em uma única consulta, para abrir a história: uma
+         * linha por parágrafo, cada uma com as colunas COLUMN_HISTORY_TITLE_PLAIN,
+         * COLUMN_HISTORY_IMAGE, COLUMN_FAVORITE e COLUMN_CONTENT_FETCHED da história e as colunas
+         * COLUMN_PARAGRAPH_TYPE e COLUMN_PARAGRAPH_CONTENT do parágrafo. Se o conteúdo ainda não
+         * foi baixado, retorna uma única linha com as colunas do parágrafo nulas, e nenhuma linha
+         * se a história não existir. Ao contrário da URI de parágrafos, nunca baixa o conteúdo.
+         */
+        public static Uri buildHistoryDetailUri(long historyId) {
+            return buildSingleHistoryUri(historyId).buildUpon()
+                    .appendPath(PATH_DETAIL)
+                    .build();
+        }
     }
 
     public static final class ParagraphsEntry implements BaseColumns {
@@ -52,14 +122,21 @@ public class HistoryContract {
         public static final String COLUMN_PARAGRAPH_TYPE = "type";
         public static final String COLUMN_PARAGRAPH_CONTENT = "content";
 
-        public static final int TYPE_TEXT = 0;
-        public static final int TYPE_IMAGE = 1;
-        public static final int TYPE_AUTHOR = 2;
-        public static final int TYPE_END = 3;
+        public static final int TYPE_TEXT = ParagraphExtractor.TYPE_TEXT;
+        public static final int TYPE_IMAGE = ParagraphExtractor.TYPE_IMAGE;
+        public static final int TYPE_AUTHOR = ParagraphExtractor.TYPE_AUTHOR;
+        public static final int TYPE_END = ParagraphExtractor.TYPE_END;
+
+        // Parâmetro da URI de parágrafos com o hash do conteúdo que os gerou
+        public static final String PARAM_CONTENT_HASH = "content_hash";
 
-        public static final String AUTHOR = "Rodrigo Lopes";
-        public static final String END = "FIM";
+        public static final String AUTHOR = ParagraphExtractor.AUTHOR;
+        public static final String END = ParagraphExtractor.END;
 
+        /*
+         * Caso o conteúdo da história ainda não tenha sido baixado, a consulta a esta URI o
+         * baixa da API antes de retornar. Portanto, não deve ser consultada na thread principal.
+         */
         public static Uri buildParagraphsFromHistoryId(long historyId) {
             return HistoriesEntry.CONTENT_URI.buildUpon()
                     .appendPath(Long.toString(historyId))
@@ -67,6 +144,12 @@ public class HistoryContract {
                     .build();
         }
 
+        public static Uri buildParagraphsFromHistoryId(long historyId, String contentHash) {
+            return buildParagraphsFromHistoryId(historyId).buildUpon()
+                    .appendQueryParameter(PARAM_CONTENT_HASH, contentHash)
+                    .build();
+        }
+
         public static boolean isValidType(int type) {
             if (type == TYPE_TEXT || type == TYPE_IMAGE ||
                     type == TYPE_AUTHOR || type == TYPE_END) {
@@ -75,4 +158,53 @@ public class HistoryContract {
             return false;
         }
     }
-}
\ No newline at end of file
+
+    /*
+     * Formato alternativo de gravação dos parágrafos: todos os parágrafos da história em uma
+     * única linha (ver ParagraphBlob). É lido pela mesma URI de parágrafos.
+     */
+    public static final class ParagraphBlobsEntry {
+
+        public static final String TABLE_NAME = "paragraph_blobs";
+
+        public static final String COLUMN_HISTORY_ID = "history_id";
+        public static final String COLUMN_DATA = "data";
+    }
+
+    /*
+     * Índice de busca textual (FTS4) sobre o título e o texto dos parágrafos das histórias, com o
+     * docid igual ao ID da história. O título é mantido por triggers na tabela de histórias e o
+     * texto é gravado junto com os parágrafos. Ambos sem acentos (ver HistorySearch).
+     */
+    public static final class SearchEntry {
+        /*
+         * Também é a URI em que as buscas são notificadas: apenas pelas alterações da listagem
+         * (títulos, novas histórias e remoções) e do conteúdo das histórias, que mudam o índice
+         * de busca. As alterações de favorito não refazem a busca.
+         */
+        public static final Uri CONTENT_URI = BASE_CONTENT_URI.buildUpon()
+                .appendPath(PATH_SEARCH)
+                .build();
+
+        public static final String TABLE_NAME = "histories_search";
+
+        public static final String COLUMN_TITLE = "title";
+        public static final String COLUMN_CONTENT = "content";
+
+        // Trecho do texto com as palavras encontradas entre <b></b>, retornado pela busca
+        public static final String COLUMN_SNIPPET = "snippet";
+
+        // Parâmetro da URI de busca com o texto digitado pelo usuário
+        public static final String PARAM_QUERY = "q";
+
+        /*
+         * A consulta a esta URI retorna as histórias encontradas, da mais para a menos relevante,
+         * com as colunas _ID, COLUMN_HISTORY_TITLE_PLAIN, COLUMN_HISTORY_IMAGE e COLUMN_SNIPPET.
+         */
+        public static Uri buildSearchUri(String query) {
+            return CONTENT_URI.buildUpon()
+                    .appendQueryParameter(PARAM_QUERY, query)
+                    .build();
+        }
+    }
+}
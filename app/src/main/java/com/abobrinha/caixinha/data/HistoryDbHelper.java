@@ -1,29 +1,74 @@
 package com.abobrinha.caixinha.data;
 
+import android.content.ContentValues;
 import android.content.Context;
+import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
-import android.os.Build;
+import androidx.annotation.VisibleForTesting;
+
+import com.abobrinha.caixinha.core.HistoryTitle;
 
 
 class HistoryDbHelper extends SQLiteOpenHelper {
     static final String DATABASE_NAME = "histories.db";
-    private static final int DATABASE_VERSION = 1;
+    static final int DATABASE_VERSION = 8;
+
+    // Configuração da base: páginas de 4 KB (padrão do Android, só tem efeito em uma base nova),
+    // cache de 4 MB (valor negativo em KB) e até 32 MB lidos por mmap
+    private static final int PAGE_SIZE = 4096;
+    private static final int CACHE_SIZE_KB = 4096;
+    private static final long MMAP_SIZE = 32L * 1024 * 1024;
+
+    private final boolean mWriteAheadLogging;
 
     HistoryDbHelper(Context context) {
-        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        this(context, DATABASE_NAME, true);
     }
 
-    // Método necessário para habilitar as constraints de FK no SQLite
+    /*
+     * Permite abrir uma base com outro nome e com o journal padrão do SQLite (rollback), para
+     * comparar os dois modos nos testes.
+     */
+    @VisibleForTesting
+    HistoryDbHelper(Context context, String name, boolean writeAheadLogging) {
+        super(context, name, null, DATABASE_VERSION);
+        mWriteAheadLogging = writeAheadLogging;
+    }
+
+    /*
+     * Executado a cada abertura da base, antes de onCreate/onUpgrade/onOpen.
+     *
+     * Com o write-ahead logging (WAL), as consultas das telas e widgets (CursorLoader) seguem
+     * lendo a última versão confirmada da base enquanto a sincronização mantém uma transação de
+     * escrita aberta, em vez de aguardarem o fim dela. Com WAL, synchronous=NORMAL só sincroniza
+     * o disco nos checkpoints. Uma queda de energia pode perder as últimas transações, mas nunca
+     * corrompe a base, e os dados voltam na próxima sincronização.
+     *
+     * cache_size, mmap_size e synchronous valem por conexão e são aplicados à conexão principal,
+     * usada pelas escritas. As conexões extras de leitura do WAL usam os padrões do Android.
+     */
     @Override
-    public void onOpen(SQLiteDatabase db) {
-        super.onOpen(db);
-        if (!db.isReadOnly()) {
-            if (android.os.Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
-                db.setForeignKeyConstraintsEnabled(true);
-            } else {
-                db.execSQL("PRAGMA foreign_keys=ON;");
-            }
+    public void onConfigure(SQLiteDatabase db) {
+        super.onConfigure(db);
+        db.setForeignKeyConstraintsEnabled(true);
+
+        db.execSQL("PRAGMA page_size=" + PAGE_SIZE);
+        if (mWriteAheadLogging) {
+            db.enableWriteAheadLogging();
+            db.execSQL("PRAGMA synchronous=NORMAL");
+        } else {
+            db.disableWriteAheadLogging();
+        }
+        db.execSQL("PRAGMA cache_size=-" + CACHE_SIZE_KB);
+
+        // mmap_size retorna o valor aplicado, que pode ser menor (ou 0) conforme o SQLite do
+        // aparelho
+        Cursor cursor = db.rawQuery("PRAGMA mmap_size=" + MMAP_SIZE, null);
+        try {
+            cursor.moveToFirst();
+        } finally {
+            cursor.close();
         }
     }
 
@@ -38,10 +83,17 @@ class HistoryDbHelper extends SQLiteOpenHelper {
                         HistoryContract.HistoriesEntry.COLUMN_HISTORY_DATE + " INTEGER NOT NULL, " +
                         HistoryContract.HistoriesEntry.COLUMN_HISTORY_MODIFIED + " INTEGER, " +
                         HistoryContract.HistoriesEntry.COLUMN_FAVORITE + " INTEGER NOT NULL DEFAULT " +
-                        HistoryContract.IS_NOT_FAVORITE + ");";
+                        HistoryContract.IS_NOT_FAVORITE + ", " +
+                        HistoryContract.HistoriesEntry.COLUMN_CONTENT_FETCHED + " INTEGER NOT NULL DEFAULT " +
+                        HistoryContract.CONTENT_NOT_FETCHED + ", " +
+                        HistoryContract.HistoriesEntry.COLUMN_CONTENT_HASH + " TEXT, " +
+                        HistoryContract.HistoriesEntry.COLUMN_HISTORY_TITLE_PLAIN + " TEXT, " +
+                        HistoryContract.HistoriesEntry.COLUMN_HISTORY_TITLE_SORT + " TEXT);";
 
         db.execSQL(SQL_CREATE_HISTORIES_TABLE);
 
+        createHistoryListIndexes(db);
+
         final String SQL_CREATE_PARAGRAPHS_TABLE =
                 "CREATE TABLE " + HistoryContract.ParagraphsEntry.TABLE_NAME + " (" +
                         HistoryContract.ParagraphsEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
@@ -58,12 +110,108 @@ class HistoryDbHelper extends SQLiteOpenHelper {
                         HistoryContract.ParagraphsEntry.COLUMN_HISTORY_ID + ");";
 
         db.execSQL(SQL_CREATE_PARAGRAPHS_INDEX);
+
+        createParagraphBlobsTable(db);
+
+        createSearchIndex(db);
+    }
+
+    /*
+     * Índices de cobertura das listagens de histórias (grade, favoritos, widgets e navegação da
+     * HistoryActivity), nas duas ordenações permitidas (ver PreferencesUtils.getGridHistoryOrder).
+     *
+     * Cada índice começa pelas colunas do filtro e da ordenação e inclui as demais colunas da
+     * projeção da grade, então a listagem é lida em ordem direto do índice, sem ordenação
+     * temporária e sem acessar a tabela. A data em ordem decrescente é lida percorrendo o índice
+     * de trás para frente.
+     *
+     * O _ID vem logo após a coluna de ordenação porque desempata histórias com a mesma data ou
+     * título na paginação por chave (ver HistoriesEntry.buildPageUri).
+     */
+    private static void createHistoryListIndexes(SQLiteDatabase db) {
+        final String table = HistoryContract.HistoriesEntry.TABLE_NAME;
+        final String favorite = HistoryContract.HistoriesEntry.COLUMN_FAVORITE;
+        final String date = HistoryContract.HistoriesEntry.COLUMN_HISTORY_DATE;
+        final String titleSort = HistoryContract.HistoriesEntry.COLUMN_HISTORY_TITLE_SORT;
+        final String listColumns = HistoryContract.HistoriesEntry.COLUMN_HISTORY_TITLE_PLAIN +
+                ", " + HistoryContract.HistoriesEntry.COLUMN_HISTORY_IMAGE;
+
+        final String id = HistoryContract.HistoriesEntry._ID;
+
+        db.execSQL("CREATE INDEX " + table + "_date_index ON " + table + "(" +
+                date + ", " + id + ", " + listColumns + ");");
+        db.execSQL("CREATE INDEX " + table + "_title_index ON " + table + "(" +
+                titleSort + ", " + id + ", " + listColumns + ", " + date + ");");
+        db.execSQL("CREATE INDEX " + table + "_favorite_date_index ON " + table + "(" +
+                favorite + ", " + date + ", " + id + ", " + listColumns + ");");
+        db.execSQL("CREATE INDEX " + table + "_favorite_title_index ON " + table + "(" +
+                favorite + ", " + titleSort + ", " + id + ", " + listColumns + ", " + date + ");");
+    }
+
+    /*
+     * Colunas derivadas do título HTML da história.
+     */
+    static ContentValues buildTitleValues(String htmlTitle) {
+        String plainTitle = HistoryTitle.toPlainText(htmlTitle);
+
+        ContentValues titleValues = new ContentValues();
+        titleValues.put(HistoryContract.HistoriesEntry.COLUMN_HISTORY_TITLE_PLAIN, plainTitle);
+        titleValues.put(HistoryContract.HistoriesEntry.COLUMN_HISTORY_TITLE_SORT,
+                HistoryTitle.toSortKey(plainTitle));
+        return titleValues;
+    }
+
+    private static void createParagraphBlobsTable(SQLiteDatabase db) {
+        final String SQL_CREATE_PARAGRAPH_BLOBS_TABLE =
+                "CREATE TABLE " + HistoryContract.ParagraphBlobsEntry.TABLE_NAME + " (" +
+                        HistoryContract.ParagraphBlobsEntry.COLUMN_HISTORY_ID + " INTEGER PRIMARY KEY REFERENCES " +
+                        HistoryContract.HistoriesEntry.TABLE_NAME + " ON DELETE CASCADE, " +
+                        HistoryContract.ParagraphBlobsEntry.COLUMN_DATA + " BLOB NOT NULL);";
+
+        db.execSQL(SQL_CREATE_PARAGRAPH_BLOBS_TABLE);
+    }
+
+    /*
+     * Índice de busca (SearchEntry) e triggers que mantêm uma linha por história, com o título
+     * sem acentos (COLUMN_HISTORY_TITLE_SORT). O texto dos parágrafos é gravado pelo provider
+     * junto com eles (ver HistoryBulkWriter.updateSearchContent).
+     */
+    private static void createSearchIndex(SQLiteDatabase db) {
+        final String searchTable = HistoryContract.SearchEntry.TABLE_NAME;
+        final String historiesTable = HistoryContract.HistoriesEntry.TABLE_NAME;
+        final String titleSort = HistoryContract.HistoriesEntry.COLUMN_HISTORY_TITLE_SORT;
+
+        db.execSQL("CREATE VIRTUAL TABLE " + searchTable + " USING fts4(" +
+                HistoryContract.SearchEntry.COLUMN_TITLE + ", " +
+                HistoryContract.SearchEntry.COLUMN_CONTENT + ");");
+
+        db.execSQL("CREATE TRIGGER " + searchTable + "_insert AFTER INSERT ON " +
+                historiesTable + " BEGIN " +
+                "INSERT INTO " + searchTable + " (docid, " +
+                HistoryContract.SearchEntry.COLUMN_TITLE + ", " +
+                HistoryContract.SearchEntry.COLUMN_CONTENT + ") VALUES (new." +
+                HistoryContract.HistoriesEntry._ID + ", new." + titleSort + ", ''); END;");
+
+        db.execSQL("CREATE TRIGGER " + searchTable + "_title AFTER UPDATE OF " + titleSort +
+                " ON " + historiesTable + " BEGIN " +
+                "UPDATE " + searchTable + " SET " + HistoryContract.SearchEntry.COLUMN_TITLE +
+                " = new." + titleSort + " WHERE docid = new." +
+                HistoryContract.HistoriesEntry._ID + "; END;");
+
+        db.execSQL("CREATE TRIGGER " + searchTable + "_delete AFTER DELETE ON " +
+                historiesTable + " BEGIN " +
+                "DELETE FROM " + searchTable + " WHERE docid = old." +
+                HistoryContract.HistoriesEntry._ID + "; END;");
     }
 
+    /*
+     * Atualiza a base com as migrações de HistoryMigrations, sem apagar as histórias, os
+     * favoritos e os parágrafos já baixados. O SQLiteOpenHelper executa o onUpgrade dentro de uma
+     * transação e só grava a nova versão se todas as migrações forem concluídas: uma falha
+     * desfaz todas elas e a base continua na versão anterior.
+     */
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        db.execSQL("DROP TABLE IF EXISTS " + HistoryContract.HistoriesEntry.TABLE_NAME);
-        db.execSQL("DROP TABLE IF EXISTS " + HistoryContract.ParagraphsEntry.TABLE_NAME);
-        onCreate(db);
+        HistoryMigrations.migrate(db, oldVersion, newVersion);
     }
 }
@@ -0,0 +1,171 @@
+package com.abobrinha.caixinha.data;
+
+import android.database.AbstractCursor;
+
+import com.abobrinha.caixinha.core.ParagraphList;
+
+/**
+ * Cursor da URI de detalhe da história (ver HistoriesEntry.buildHistoryDetailUri): os dados do
+ * cabeçalho repetidos em cada linha, seguidos do tipo e do texto de um parágrafo. Assim como no
+ * ParagraphListCursor, os parágrafos são lidos diretamente da ParagraphList, sem cópia para uma
+ * CursorWindow.
+ *
+ * Sem parágrafos (conteúdo ainda não baixado), há uma única linha com as colunas do parágrafo
+ * nulas, e nenhuma linha se a história não existir.
+ */
+class HistoryDetailCursor extends AbstractCursor {
+
+    static final String[] ALL_COLUMNS = {
+            HistoryContract.HistoriesEntry.COLUMN_HISTORY_TITLE_PLAIN,
+            HistoryContract.HistoriesEntry.COLUMN_HISTORY_IMAGE,
+            HistoryContract.HistoriesEntry.COLUMN_FAVORITE,
+            HistoryContract.HistoriesEntry.COLUMN_CONTENT_FETCHED,
+            HistoryContract.ParagraphsEntry.COLUMN_PARAGRAPH_TYPE,
+            HistoryContract.ParagraphsEntry.COLUMN_PARAGRAPH_CONTENT
+    };
+
+    private static final int COLUMN_TITLE = 0;
+    private static final int COLUMN_IMAGE = 1;
+    private static final int COLUMN_FAVORITE = 2;
+    private static final int COLUMN_CONTENT_FETCHED = 3;
+    private static final int COLUMN_TYPE = 4;
+    private static final int COLUMN_CONTENT = 5;
+
+    private final String[] mColumnNames;
+    private final int[] mColumns;
+    private final int mCount;
+
+    private final String mTitle;
+    private final String mImage;
+    private final int mFavorite;
+    private final int mContentFetched;
+    private final ParagraphList mParagraphs;
+
+    // História inexistente: nenhuma linha
+    HistoryDetailCursor(String[] projection) {
+        this(projection, false, null, null, 0, 0, null);
+    }
+
+    // paragraphs pode ser null, se o conteúdo não foi baixado
+    HistoryDetailCursor(String[] projection, String title, String image, int favorite,
+                        int contentFetched, ParagraphList paragraphs) {
+        this(projection, true, title, image, favorite, contentFetched, paragraphs);
+    }
+
+    private HistoryDetailCursor(String[] projection, boolean exists, String title, String image,
+                                int favorite, int contentFetched, ParagraphList paragraphs) {
+        mColumnNames = projection == null ? ALL_COLUMNS : projection;
+        mColumns = new int[mColumnNames.length];
+
+        for (int i = 0; i < mColumnNames.length; i++) {
+            mColumns[i] = indexOf(mColumnNames[i]);
+        }
+
+        mTitle = title;
+        mImage = image;
+        mFavorite = favorite;
+        mContentFetched = contentFetched;
+        mParagraphs = (paragraphs == null || paragraphs.getCount() == 0) ? null : paragraphs;
+
+        if (!exists) {
+            mCount = 0;
+        } else {
+            mCount = mParagraphs == null ? 1 : mParagraphs.getCount();
+        }
+    }
+
+    private static int indexOf(String columnName) {
+        for (int i = 0; i < ALL_COLUMNS.length; i++) {
+            if (ALL_COLUMNS[i].equals(columnName)) return i;
+        }
+        throw new IllegalArgumentException("Coluna de detalhe da história inválida: " + columnName);
+    }
+
+    @Override
+    public int getCount() {
+        return mCount;
+    }
+
+    @Override
+    public String[] getColumnNames() {
+        return mColumnNames;
+    }
+
+    @Override
+    public String getString(int column) {
+        switch (mColumns[column]) {
+            case COLUMN_TITLE:
+                return mTitle;
+            case COLUMN_IMAGE:
+                return mImage;
+            case COLUMN_CONTENT:
+                return mParagraphs == null ? null : mParagraphs.getContent(getPosition());
+            default:
+                return isNull(column) ? null : String.valueOf(getLong(column));
+        }
+    }
+
+    @Override
+    public long getLong(int column) {
+        switch (mColumns[column]) {
+            case COLUMN_FAVORITE:
+                return mFavorite;
+            case COLUMN_CONTENT_FETCHED:
+                return mContentFetched;
+            case COLUMN_TYPE:
+                return mParagraphs == null ? 0 : mParagraphs.getType(getPosition());
+            default:
+                String value = getString(column);
+                return value == null ? 0 : Long.parseLong(value);
+        }
+    }
+
+    @Override
+    public short getShort(int column) {
+        return (short) getLong(column);
+    }
+
+    @Override
+    public int getInt(int column) {
+        return (int) getLong(column);
+    }
+
+    @Override
+    public float getFloat(int column) {
+        return getLong(column);
+    }
+
+    @Override
+    public double getDouble(int column) {
+        return getLong(column);
+    }
+
+    @Override
+    public int getType(int column) {
+        if (isNull(column)) return FIELD_TYPE_NULL;
+
+        switch (mColumns[column]) {
+            case COLUMN_TITLE:
+            case COLUMN_IMAGE:
+            case COLUMN_CONTENT:
+                return FIELD_TYPE_STRING;
+            default:
+                return FIELD_TYPE_INTEGER;
+        }
+    }
+
+    @Override
+    public boolean isNull(int column) {
+        switch (mColumns[column]) {
+            case COLUMN_TITLE:
+                return mTitle == null;
+            case COLUMN_IMAGE:
+                return mImage == null;
+            case COLUMN_TYPE:
+            case COLUMN_CONTENT:
+                return mParagraphs == null;
+            default:
+                return false;
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package com.abobrinha.caixinha.data;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.abobrinha.caixinha.core.HistorySearch;
+import com.abobrinha.caixinha.core.HistoryTitle;
+import com.abobrinha.caixinha.core.ParagraphBlob;
+
+/**
+ * Migrações da base de histórias, uma por versão do esquema (ver HistoryDbHelper).
+ *
+ * Cada migração leva a base da versão anterior para a sua e preserva os dados já gravados:
+ * favoritos, histórias e parágrafos baixados continuam disponíveis sem uma nova sincronização.
+ * Uma nova versão do esquema deve incrementar HistoryDbHelper.DATABASE_VERSION e acrescentar a
+ * sua migração ao final de MIGRATIONS, sem alterar as anteriores.
+ *
+ * O SQL de cada migração é escrito por extenso, com os nomes do esquema da sua versão, em vez de
+ * usar HistoryContract ou os métodos de HistoryDbHelper: esses acompanham sempre o esquema atual,
+ * e uma migração antiga que os chamasse criaria o esquema de uma versão posterior à sua.
+ */
+final class HistoryMigrations {
+
+    abstract static class Migration {
+        final int toVersion;
+
+        Migration(int toVersion) {
+            this.toVersion = toVersion;
+        }
+
+        abstract void migrate(SQLiteDatabase db);
+    }
+
+    // A versão 1 é o esquema original, sem migração
+    static final Migration[] MIGRATIONS = {
+            new Migration(2) {
+                // Até a versão 1 o conteúdo era sempre baixado junto com a história
+                @Override
+                void migrate(SQLiteDatabase db) {
+                    execAll(db,
+                            "ALTER TABLE histories ADD COLUMN content_fetched " +
+                                    "INTEGER NOT NULL DEFAULT 0",
+                            "UPDATE histories SET content_fetched=1");
+                }
+            },
+            new Migration(3) {
+                // Sem hash, o conteúdo das histórias existentes será regravado na próxima
+                // alteração
+                @Override
+                void migrate(SQLiteDatabase db) {
+                    execAll(db,
+                            "ALTER TABLE histories ADD COLUMN content_hash TEXT");
+                }
+            },
+            new Migration(4) {
+                // Os parágrafos já gravados continuam uma linha por parágrafo: o provider lê os
+                // dois formatos e passa a história para o blob quando ela é regravada
+                @Override
+                void migrate(SQLiteDatabase db) {
+                    execAll(db,
+                            "CREATE TABLE paragraph_blobs (" +
+                                    "history_id INTEGER PRIMARY KEY REFERENCES histories " +
+                                    "ON DELETE CASCADE, " +
+                                    "data BLOB NOT NULL);");
+                }
+            },
+            new Migration(5) {
+                @Override
+                void migrate(SQLiteDatabase db) {
+                    execAll(db,
+                            "ALTER TABLE histories ADD COLUMN title_plain TEXT",
+                            "ALTER TABLE histories ADD COLUMN title_sort TEXT");
+                    fillPlainTitles(db);
+                    execAll(db,
+                            "CREATE INDEX histories_title_sort_index ON histories(title_sort);");
+                }
+            },
+            new Migration(6) {
+                @Override
+                void migrate(SQLiteDatabase db) {
+                    execAll(db,
+                            "CREATE VIRTUAL TABLE histories_search USING fts4(title, content);",
+                            "CREATE TRIGGER histories_search_insert AFTER INSERT ON histories " +
+                                    "BEGIN INSERT INTO histories_search (docid, title, content) " +
+                                    "VALUES (new._id, new.title_sort, ''); END;",
+                            "CREATE TRIGGER histories_search_title AFTER UPDATE OF title_sort " +
+                                    "ON histories BEGIN UPDATE histories_search " +
+                                    "SET title = new.title_sort WHERE docid = new._id; END;",
+                            "CREATE TRIGGER histories_search_delete AFTER DELETE ON histories " +
+                                    "BEGIN DELETE FROM histories_search " +
+                                    "WHERE docid = old._id; END;");
+                    fillSearchIndex(db);
+                }
+            },
+            new Migration(7) {
+                // O índice da versão 5 passa a ser coberto pelo índice de título das listagens
+                @Override
+                void migrate(SQLiteDatabase db) {
+                    execAll(db,
+                            "DROP INDEX IF EXISTS histories_title_sort_index",
+                            "CREATE INDEX histories_date_index ON histories(" +
+                                    "date_created, title_plain, url_image);",
+                            "CREATE INDEX histories_title_index ON histories(" +
+                                    "title_sort, title_plain, url_image, date_created);",
+                            "CREATE INDEX histories_favorite_date_index ON histories(" +
+                                    "favorite, date_created, title_plain, url_image);",
+                            "CREATE INDEX histories_favorite_title_index ON histories(" +
+                                    "favorite, title_sort, title_plain, url_image, date_created);");
+                }
+            },
+            new Migration(8) {
+                // Os índices das listagens passam a incluir o _id, para a paginação por chave
+                @Override
+                void migrate(SQLiteDatabase db) {
+                    execAll(db,
+                            "DROP INDEX IF EXISTS histories_date_index",
+                            "DROP INDEX IF EXISTS histories_title_index",
+                            "DROP INDEX IF EXISTS histories_favorite_date_index",
+                            "DROP INDEX IF EXISTS histories_favorite_title_index",
+                            "CREATE INDEX histories_date_index ON histories(" +
+                                    "date_created, _id, title_plain, url_image);",
+                            "CREATE INDEX histories_title_index ON histories(" +
+                                    "title_sort, _id, title_plain, url_image, date_created);",
+                            "CREATE INDEX histories_favorite_date_index ON histories(" +
+                                    "favorite, date_created, _id, title_plain, url_image);",
+                            "CREATE INDEX histories_favorite_title_index ON histories(" +
+                                    "favorite, title_sort, _id, title_plain, url_image, " +
+                                    "date_created);");
+                }
+            }
+    };
+
+    private HistoryMigrations() {
+    }
+
+    /*
+     * Aplica, em ordem, as migrações posteriores a oldVersion até newVersion. Deve ser chamado
+     * dentro de uma transação (o SQLiteOpenHelper já abre uma para o onUpgrade).
+     */
+    static void migrate(SQLiteDatabase db, int oldVersion, int newVersion) {
+        for (Migration migration : MIGRATIONS) {
+            if (migration.toVersion > oldVersion && migration.toVersion <= newVersion) {
+                migration.migrate(db);
+            }
+        }
+    }
+
+    private static void execAll(SQLiteDatabase db, String... statements) {
+        for (String statement : statements) {
+            db.execSQL(statement);
+        }
+    }
+
+    /*
+     * Preenche o título para exibição e a chave de ordenação das histórias já gravadas.
+     */
+    private static void fillPlainTitles(SQLiteDatabase db) {
+        Cursor cursor = db.rawQuery("SELECT _id, title FROM histories", null);
+
+        try {
+            while (cursor.moveToNext()) {
+                String plainTitle = HistoryTitle.toPlainText(cursor.getString(1));
+                db.execSQL("UPDATE histories SET title_plain = ?, title_sort = ? WHERE _id = ?",
+                        new Object[]{plainTitle, HistoryTitle.toSortKey(plainTitle),
+                                cursor.getLong(0)});
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /*
+     * Preenche o índice de busca com as histórias e os parágrafos já gravados, nos dois formatos.
+     */
+    private static void fillSearchIndex(SQLiteDatabase db) {
+        db.execSQL("INSERT INTO histories_search (docid, title, content) " +
+                "SELECT _id, title_sort, '' FROM histories");
+
+        Cursor cursor = db.rawQuery("SELECT history_id, type, content FROM paragraphs " +
+                "ORDER BY history_id, _id", null);
+
+        try {
+            HistorySearch.ContentBuilder content = new HistorySearch.ContentBuilder();
+            long currentHistoryId = HistoryContract.HistoriesEntry.INVALID_ID;
+            while (cursor.moveToNext()) {
+                long historyId = cursor.getLong(0);
+                if (historyId != currentHistoryId &&
+                        currentHistoryId != HistoryContract.HistoriesEntry.INVALID_ID) {
+                    updateSearchContent(db, currentHistoryId, content.build());
+                    content = new HistorySearch.ContentBuilder();
+                }
+                currentHistoryId = historyId;
+                content.add(cursor.getInt(1), cursor.getString(2));
+            }
+
+            if (currentHistoryId != HistoryContract.HistoriesEntry.INVALID_ID) {
+                updateSearchContent(db, currentHistoryId, content.build());
+            }
+        } finally {
+            cursor.close();
+        }
+
+        cursor = db.rawQuery("SELECT history_id, data FROM paragraph_blobs", null);
+
+        try {
+            while (cursor.moveToNext()) {
+                ParagraphBlob.Reader reader = new ParagraphBlob.Reader(cursor.getBlob(1));
+                HistorySearch.ContentBuilder content = new HistorySearch.ContentBuilder();
+                for (int i = 0; i < reader.getCount(); i++) {
+                    content.add(reader.getType(i), reader.getContent(i));
+                }
+                updateSearchContent(db, cursor.getLong(0), content.build());
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static void updateSearchContent(SQLiteDatabase db, long historyId, String content) {
+        db.execSQL("UPDATE histories_search SET content = ? WHERE docid = ?",
+                new Object[]{content, historyId});
+    }
+}
@@ -1,33 +1,151 @@
 package com.abobrinha.caixinha.data;
 
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentResolver;
 import android.content.ContentUris;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.MatrixCursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.net.Uri;
 import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
 import android.text.TextUtils;
+import android.util.Log;
 
+import com.abobrinha.caixinha.BuildConfig;
 import com.abobrinha.caixinha.R;
+import com.abobrinha.caixinha.core.ContentDigest;
+import com.abobrinha.caixinha.core.HistoryCache;
+import com.abobrinha.caixinha.core.HistorySearch;
+import com.abobrinha.caixinha.core.ParagraphBlob;
+import com.abobrinha.caixinha.core.ParagraphExtractor;
+import com.abobrinha.caixinha.core.ParagraphList;
+import com.abobrinha.caixinha.network.WordPressConn;
 
-import org.jsoup.Jsoup;
-import org.jsoup.nodes.Document;
-import org.jsoup.nodes.Element;
+import org.json.JSONException;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 
 
 public class HistoryProvider extends ContentProvider {
+    private static final String LOG_TAG = HistoryProvider.class.getSimpleName();
+
     public static final int CODE_HISTORIES = 100;
     public static final int CODE_FAVORITES_HISTORIES = 101;
     public static final int CODE_SINGLE_HISTORY = 200;
     public static final int CODE_PARAGRAPHS = 201;
+    public static final int CODE_HISTORY_DETAIL = 202;
+    public static final int CODE_SEARCH = 300;
+
+    // Quantidade máxima de histórias retornadas pela busca
+    private static final int SEARCH_LIMIT = 50;
+
+    private static final String[] SEARCH_COLUMNS = {
+            HistoryContract.HistoriesEntry._ID,
+            HistoryContract.HistoriesEntry.COLUMN_HISTORY_TITLE_PLAIN,
+            HistoryContract.HistoriesEntry.COLUMN_HISTORY_IMAGE,
+            HistoryContract.SearchEntry.COLUMN_SNIPPET
+    };
+
+    // Histórias que contêm a expressão MATCH (único parâmetro), com o trecho e o matchinfo
+    static final String SQL_SEARCH = "SELECT " +
+            HistoryContract.HistoriesEntry.TABLE_NAME + "." + HistoryContract.HistoriesEntry._ID + ", " +
+            HistoryContract.HistoriesEntry.COLUMN_HISTORY_TITLE_PLAIN + ", " +
+            HistoryContract.HistoriesEntry.COLUMN_HISTORY_IMAGE + ", " +
+            "snippet(" + HistoryContract.SearchEntry.TABLE_NAME + ", '<b>', '</b>', '…', " +
+            HistorySearch.COLUMN_CONTENT + ", 12), " +
+            "matchinfo(" + HistoryContract.SearchEntry.TABLE_NAME + ", '" +
+            HistorySearch.MATCHINFO_FORMAT + "') " +
+            "FROM " + HistoryContract.SearchEntry.TABLE_NAME + " JOIN " +
+            HistoryContract.HistoriesEntry.TABLE_NAME + " ON " +
+            HistoryContract.HistoriesEntry.TABLE_NAME + "." + HistoryContract.HistoriesEntry._ID +
+            " = " + HistoryContract.SearchEntry.TABLE_NAME + ".docid " +
+            "WHERE " + HistoryContract.SearchEntry.TABLE_NAME + " MATCH ?";
+
+    /*
+     * Cabeçalho e parágrafos de uma história já baixada (único parâmetro: o ID), em uma única
+     * leitura da base, consistente mesmo sem transação. Os parágrafos estão em um dos dois
+     * formatos: o blob em uma única linha, com as colunas de parágrafo nulas, ou uma linha por
+     * parágrafo, com o blob nulo. Sem parágrafos, retorna uma linha com ambos nulos.
+     */
+    static final String SQL_HISTORY_DETAIL = "SELECT " +
+            HistoryContract.HistoriesEntry.TABLE_NAME + "." +
+            HistoryContract.HistoriesEntry.COLUMN_HISTORY_TITLE_PLAIN + ", " +
+            HistoryContract.HistoriesEntry.TABLE_NAME + "." +
+            HistoryContract.HistoriesEntry.COLUMN_HISTORY_IMAGE + ", " +
+            HistoryContract.HistoriesEntry.TABLE_NAME + "." +
+            HistoryContract.HistoriesEntry.COLUMN_FAVORITE + ", " +
+            HistoryContract.ParagraphBlobsEntry.TABLE_NAME + "." +
+            HistoryContract.ParagraphBlobsEntry.COLUMN_DATA + ", " +
+            HistoryContract.ParagraphsEntry.TABLE_NAME + "." +
+            HistoryContract.ParagraphsEntry.COLUMN_PARAGRAPH_TYPE + ", " +
+            HistoryContract.ParagraphsEntry.TABLE_NAME + "." +
+            HistoryContract.ParagraphsEntry.COLUMN_PARAGRAPH_CONTENT + ", " +
+            HistoryContract.ParagraphsEntry.TABLE_NAME + "." +
+            HistoryContract.ParagraphsEntry._ID + " " +
+            "FROM " + HistoryContract.HistoriesEntry.TABLE_NAME + " LEFT JOIN " +
+            HistoryContract.ParagraphBlobsEntry.TABLE_NAME + " ON " +
+            HistoryContract.ParagraphBlobsEntry.TABLE_NAME + "." +
+            HistoryContract.ParagraphBlobsEntry.COLUMN_HISTORY_ID + " = " +
+            HistoryContract.HistoriesEntry.TABLE_NAME + "." + HistoryContract.HistoriesEntry._ID +
+            " LEFT JOIN " + HistoryContract.ParagraphsEntry.TABLE_NAME + " ON " +
+            HistoryContract.ParagraphsEntry.TABLE_NAME + "." +
+            HistoryContract.ParagraphsEntry.COLUMN_HISTORY_ID + " = " +
+            HistoryContract.HistoriesEntry.TABLE_NAME + "." + HistoryContract.HistoriesEntry._ID +
+            " WHERE " + HistoryContract.HistoriesEntry.TABLE_NAME + "." +
+            HistoryContract.HistoriesEntry._ID + " = ? AND " +
+            HistoryContract.HistoriesEntry.TABLE_NAME + "." +
+            HistoryContract.HistoriesEntry.COLUMN_CONTENT_FETCHED + " = " +
+            HistoryContract.CONTENT_FETCHED +
+            " ORDER BY " + HistoryContract.ParagraphsEntry.TABLE_NAME + "." +
+            HistoryContract.ParagraphsEntry._ID;
+
+    private static final int INDEX_DETAIL_TITLE = 0;
+    private static final int INDEX_DETAIL_IMAGE = 1;
+    private static final int INDEX_DETAIL_FAVORITE = 2;
+    private static final int INDEX_DETAIL_BLOB = 3;
+    private static final int INDEX_DETAIL_TYPE = 4;
+    private static final int INDEX_DETAIL_CONTENT = 5;
+    private static final int INDEX_DETAIL_PARAGRAPH_ID = 6;
+
+    // Tamanho máximo aproximado, em bytes, das histórias mantidas em memória (algumas dezenas de
+    // histórias de tamanho comum)
+    private static final int HISTORY_CACHE_SIZE = 1024 * 1024;
+
+    // Colunas de CODE_SINGLE_HISTORY que podem ser retornadas a partir do HistoryCache
+    private static final List<String> CACHED_HISTORY_COLUMNS = Arrays.asList(
+            HistoryContract.HistoriesEntry._ID,
+            HistoryContract.HistoriesEntry.COLUMN_HISTORY_TITLE_PLAIN,
+            HistoryContract.HistoriesEntry.COLUMN_HISTORY_IMAGE,
+            HistoryContract.HistoriesEntry.COLUMN_FAVORITE,
+            HistoryContract.HistoriesEntry.COLUMN_CONTENT_FETCHED
+    );
 
     private static final UriMatcher sUriMatcher = buildUriMatcher();
+    private static volatile boolean sBlobStorageEnabled = BuildConfig.PARAGRAPH_BLOB_STORAGE;
+    private static final HistoryCache sHistoryCache = new HistoryCache(HISTORY_CACHE_SIZE);
     private HistoryDbHelper mOpenHelper;
+    private final Object mContentFetchLock = new Object();
+
+    // URIs alteradas durante um applyBatch, notificadas apenas ao final da transação
+    private final ThreadLocal<Set<Uri>> mBatchChanges = new ThreadLocal<>();
+
+    // Histórias alteradas durante um applyBatch, removidas do cache ao final da transação
+    private final ThreadLocal<Set<Long>> mBatchInvalidations = new ThreadLocal<>();
 
     public static UriMatcher buildUriMatcher() {
 
@@ -46,10 +164,37 @@ public class HistoryProvider extends ContentProvider {
                 HistoryContract.PATH_HISTORIES + "/#/" + HistoryContract.PATH_PARAGRAPHS,
                 CODE_PARAGRAPHS);
 
+        matcher.addURI(authority,
+                HistoryContract.PATH_HISTORIES + "/#/" + HistoryContract.PATH_DETAIL,
+                CODE_HISTORY_DETAIL);
+
+        matcher.addURI(authority, HistoryContract.PATH_SEARCH, CODE_SEARCH);
+
         return matcher;
     }
 
-    private String checkTableConstraints(String tableName, ContentValues values) {
+    /*
+     * Indica se os parágrafos são gravados em um único blob por história (ParagraphBlobsEntry)
+     * em vez de uma linha por parágrafo. A leitura aceita os dois formatos, então histórias
+     * gravadas antes de uma mudança continuam legíveis até serem regravadas.
+     */
+    static boolean isBlobStorageEnabled() {
+        return sBlobStorageEnabled;
+    }
+
+    // Permite comparar os dois formatos de gravação nos testes
+    @VisibleForTesting
+    static void setBlobStorageEnabled(boolean enabled) {
+        sBlobStorageEnabled = enabled;
+    }
+
+    // Contadores de acertos, faltas e descartes do cache de histórias (ver HistoryCache)
+    @VisibleForTesting
+    static HistoryCache getHistoryCache() {
+        return sHistoryCache;
+    }
+
+    private static String checkTableConstraints(String tableName, ContentValues values) {
         String error = null;
         switch (tableName) {
             case HistoryContract.HistoriesEntry.TABLE_NAME:
@@ -63,11 +208,6 @@ public class HistoryProvider extends ContentProvider {
                     error = "É necessário fornecer o título da história.";
                 }
 
-                String rawContent = values.getAsString(getContext().getString(R.string.history_raw_content));
-                if (rawContent == null) {
-                    error = "É necessário fornecer o conteúdo HTML da história.";
-                }
-
                 String url = values.getAsString(HistoryContract.HistoriesEntry.COLUMN_HISTORY_URL);
                 if (url == null) {
                     error = "É necessário fornecer a URL da história.";
@@ -114,6 +254,16 @@ public class HistoryProvider extends ContentProvider {
         return true;
     }
 
+    // As histórias em cache são descartadas quando o sistema precisa de memória
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        if (level >= TRIM_MEMORY_MODERATE || level == TRIM_MEMORY_RUNNING_LOW ||
+                level == TRIM_MEMORY_RUNNING_CRITICAL) {
+            sHistoryCache.invalidateAll();
+        }
+    }
+
     /**
      * Método faz parsing do conteúdo HTML da história retornardo pela API do Wordpress e tenta
      * gerar um conteúdo sem tags, quebrado em parágrados e identificados por tipos específicos
@@ -121,128 +271,649 @@ public class HistoryProvider extends ContentProvider {
      * forma e posteriormentente utilizados na RecyclerView da história com os layouts apropriados
      * por tipo.
      *
-     * Por conta de alterações recentes no editor online do Wordpress, as imagens são geradas em
-     * tags FIGURE fora de parágrafos (P), então para que as imagens sejam corretamente parseadas,
-     * as tags FIGURE serão renomeadas para P antes do parsing.
+     * A extração é feita pelo ParagraphExtractor, em uma única passagem pelo HTML. Por conta de
+     * alterações recentes no editor online do Wordpress, as imagens são geradas em tags FIGURE
+     * fora de parágrafos (P), e por isso as tags FIGURE também são tratadas como parágrafos.
      */
-    public static ContentValues[] historyContentParser(long id, String htmlContent) {
-
-        final String BR_TOKEN = "#!#br2n#!#";
-        final String TAG_P = "p";
-        final String TAG_IMG = "img";
-        final String TAG_SRC = "src";
-        final String TAG_FIGURE = "figure";
-
-        List<ContentValues> historyValues = new ArrayList<>();
-
-        Document doc = Jsoup.parse(
-                htmlContent
-                        .replaceAll("(?i)<br[^>]*>", BR_TOKEN)
-                        .replaceAll("<((\\\\/)?)" + TAG_FIGURE, "<$1" + TAG_P)
-        );
-
-        for (Element p : doc.select(TAG_P)) {
-            if (!p.text().trim().isEmpty()) {
-                String paragraphString = p.text().replaceAll(BR_TOKEN, "\n");
-                int paragraphType;
-                boolean isAuthor = false;
-
-                if (paragraphString.trim().toLowerCase()
-                        .equals(HistoryContract.ParagraphsEntry.AUTHOR.toLowerCase())) {
-                    paragraphType = HistoryContract.ParagraphsEntry.TYPE_AUTHOR;
-                    isAuthor = true;
-                } else if (paragraphString.trim().toLowerCase()
-                        .equals(HistoryContract.ParagraphsEntry.END.toLowerCase())) {
-                    paragraphType = HistoryContract.ParagraphsEntry.TYPE_END;
-                } else {
-                    paragraphType = HistoryContract.ParagraphsEntry.TYPE_TEXT;
+    public static ContentValues[] historyContentParser(final long id, String htmlContent) {
+        final List<ContentValues> historyValues = new ArrayList<>();
+
+        ParagraphExtractor.extract(htmlContent, new ParagraphExtractor.OnParagraphListener() {
+            @Override
+            public void onParagraph(int type, String content) {
+                ContentValues paragraphValues = new ContentValues();
+                paragraphValues.put(HistoryContract.ParagraphsEntry.COLUMN_HISTORY_ID, id);
+                paragraphValues.put(HistoryContract.ParagraphsEntry.COLUMN_PARAGRAPH_TYPE, type);
+                paragraphValues.put(HistoryContract.ParagraphsEntry.COLUMN_PARAGRAPH_CONTENT, content);
+                historyValues.add(paragraphValues);
+            }
+        });
+
+        return historyValues.toArray(new ContentValues[0]);
+    }
+
+    /*
+     * Valida os parágrafos já parseados de uma história. Feito antes de abrir a transação, para
+     * que ela contenha apenas as escritas.
+     */
+    private static void checkParagraphs(long historyId, ContentValues[] paragraphValues) {
+        final String paragraphTableName = HistoryContract.ParagraphsEntry.TABLE_NAME;
+
+        for (ContentValues paragraphValue : paragraphValues) {
+            String paragraphErrorConstraints =
+                    checkTableConstraints(paragraphTableName, paragraphValue);
+            if (paragraphErrorConstraints != null) {
+                throw new IllegalArgumentException(paragraphErrorConstraints);
+            }
+
+            Long paragraphHistoryId =
+                    paragraphValue.getAsLong(HistoryContract.ParagraphsEntry.COLUMN_HISTORY_ID);
+            if (paragraphHistoryId != historyId) {
+                throw new IllegalArgumentException(
+                        "Parágrafo não pertence à história " + historyId + ".");
+            }
+        }
+    }
+
+    /*
+     * Insere os parágrafos já validados de uma história, no formato de gravação atual. Deve ser
+     * chamado dentro da transação do writer.
+     */
+    private void insertParagraphs(HistoryBulkWriter writer, long historyId,
+                                  ContentValues[] paragraphValues) {
+        if (sBlobStorageEnabled) {
+            writer.insertParagraphBlob(historyId, buildParagraphBlob(paragraphValues));
+        } else {
+            writer.insertParagraphs(historyId, paragraphValues);
+        }
+
+        HistorySearch.ContentBuilder searchContent = new HistorySearch.ContentBuilder();
+        for (ContentValues paragraphValue : paragraphValues) {
+            searchContent.add(
+                    paragraphValue.getAsInteger(HistoryContract.ParagraphsEntry.COLUMN_PARAGRAPH_TYPE),
+                    paragraphValue.getAsString(HistoryContract.ParagraphsEntry.COLUMN_PARAGRAPH_CONTENT));
+        }
+        writer.updateSearchContent(historyId, searchContent.build());
+    }
+
+    /*
+     * Remove os parágrafos da história nos dois formatos, caso o formato de gravação tenha mudado.
+     * historyIdArgs contém apenas o ID da história.
+     */
+    private void deleteParagraphs(SQLiteDatabase db, String[] historyIdArgs) {
+        db.delete(HistoryContract.ParagraphsEntry.TABLE_NAME,
+                HistoryContract.ParagraphsEntry.COLUMN_HISTORY_ID + "=?", historyIdArgs);
+        db.delete(HistoryContract.ParagraphBlobsEntry.TABLE_NAME,
+                HistoryContract.ParagraphBlobsEntry.COLUMN_HISTORY_ID + "=?", historyIdArgs);
+    }
+
+    private static byte[] buildParagraphBlob(ContentValues[] paragraphValues) {
+        ParagraphBlob.Builder builder = new ParagraphBlob.Builder();
+        for (ContentValues paragraphValue : paragraphValues) {
+            builder.add(
+                    paragraphValue.getAsInteger(HistoryContract.ParagraphsEntry.COLUMN_PARAGRAPH_TYPE),
+                    paragraphValue.getAsString(HistoryContract.ParagraphsEntry.COLUMN_PARAGRAPH_CONTENT));
+        }
+        return builder.build();
+    }
+
+    /*
+     * Retorna os parágrafos da história gravados em blob, ou null se estiverem gravados uma
+     * linha por parágrafo (ou ainda não tiverem sido baixados).
+     */
+    private ParagraphBlob.Reader queryParagraphBlob(long historyId) {
+        Cursor cursor = mOpenHelper.getReadableDatabase().query(
+                HistoryContract.ParagraphBlobsEntry.TABLE_NAME,
+                new String[]{HistoryContract.ParagraphBlobsEntry.COLUMN_DATA},
+                HistoryContract.ParagraphBlobsEntry.COLUMN_HISTORY_ID + "=?",
+                new String[]{String.valueOf(historyId)},
+                null,
+                null,
+                null);
+
+        try {
+            if (!cursor.moveToFirst()) return null;
+            return new ParagraphBlob.Reader(cursor.getBlob(0));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /*
+     * Lê da base o cabeçalho e os parágrafos (nos dois formatos) de uma história já baixada, em
+     * uma única consulta (SQL_HISTORY_DETAIL), e os guarda no HistoryCache. Retorna null se a
+     * história não existir ou o conteúdo ainda não tiver sido baixado, casos que não são
+     * guardados. Uma alteração gravada durante a leitura invalida a história, e a entrada, lida
+     * com a geração anterior, não é guardada (ver HistoryCache.put).
+     */
+    private HistoryCache.Entry loadCachedHistory(long historyId) {
+        final long generation = sHistoryCache.getGeneration();
+
+        HistoryCache.Entry entry;
+        Cursor cursor = mOpenHelper.getReadableDatabase().rawQuery(SQL_HISTORY_DETAIL,
+                new String[]{String.valueOf(historyId)});
+
+        try {
+            if (!cursor.moveToFirst()) return null;
+
+            ParagraphList paragraphs = cursor.isNull(INDEX_DETAIL_BLOB)
+                    ? new ParagraphRows(cursor)
+                    : new ParagraphBlob.Reader(cursor.getBlob(INDEX_DETAIL_BLOB));
+            entry = new HistoryCache.Entry(cursor.getString(INDEX_DETAIL_TITLE),
+                    cursor.getString(INDEX_DETAIL_IMAGE), cursor.getInt(INDEX_DETAIL_FAVORITE),
+                    paragraphs);
+        } finally {
+            cursor.close();
+        }
+
+        sHistoryCache.put(historyId, entry, generation);
+        return entry;
+    }
+
+    /*
+     * Detalhe de uma história cujo conteúdo ainda não foi baixado (ver buildHistoryDetailUri):
+     * apenas o cabeçalho, com as colunas de parágrafo nulas, ou nenhuma linha se a história não
+     * existir.
+     */
+    private Cursor queryHistoryHeader(long historyId, String[] projection) {
+        Cursor cursor = mOpenHelper.getReadableDatabase().query(
+                HistoryContract.HistoriesEntry.TABLE_NAME,
+                new String[]{HistoryContract.HistoriesEntry.COLUMN_HISTORY_TITLE_PLAIN,
+                        HistoryContract.HistoriesEntry.COLUMN_HISTORY_IMAGE,
+                        HistoryContract.HistoriesEntry.COLUMN_FAVORITE,
+                        HistoryContract.HistoriesEntry.COLUMN_CONTENT_FETCHED},
+                HistoryContract.HistoriesEntry._ID + "=?",
+                new String[]{String.valueOf(historyId)},
+                null,
+                null,
+                null);
+
+        try {
+            if (!cursor.moveToFirst()) return new HistoryDetailCursor(projection);
+            return new HistoryDetailCursor(projection, cursor.getString(0), cursor.getString(1),
+                    cursor.getInt(2), cursor.getInt(3), null);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /*
+     * Cabeçalho da história no cache, com as colunas da projeção (todas em
+     * CACHED_HISTORY_COLUMNS).
+     */
+    private static Cursor buildCachedHistoryCursor(long historyId, HistoryCache.Entry entry,
+                                                   String[] projection) {
+        Object[] row = new Object[projection.length];
+        for (int i = 0; i < projection.length; i++) {
+            switch (projection[i]) {
+                case HistoryContract.HistoriesEntry._ID:
+                    row[i] = historyId;
+                    break;
+                case HistoryContract.HistoriesEntry.COLUMN_HISTORY_TITLE_PLAIN:
+                    row[i] = entry.getTitle();
+                    break;
+                case HistoryContract.HistoriesEntry.COLUMN_HISTORY_IMAGE:
+                    row[i] = entry.getImage();
+                    break;
+                case HistoryContract.HistoriesEntry.COLUMN_FAVORITE:
+                    row[i] = entry.getFavorite();
+                    break;
+                case HistoryContract.HistoriesEntry.COLUMN_CONTENT_FETCHED:
+                    row[i] = HistoryContract.CONTENT_FETCHED;
+                    break;
+            }
+        }
+
+        MatrixCursor cursor = new MatrixCursor(projection, 1);
+        cursor.addRow(row);
+        return cursor;
+    }
+
+    /*
+     * Remove a história do cache depois que a alteração foi gravada, ou ao final da transação
+     * caso esteja dentro de um applyBatch. Antes disso, uma consulta ainda lê os dados anteriores
+     * da base e poderia guardá-los novamente.
+     */
+    private void invalidateHistory(long historyId) {
+        Set<Long> batchInvalidations = mBatchInvalidations.get();
+        if (batchInvalidations != null) {
+            batchInvalidations.add(historyId);
+            return;
+        }
+        sHistoryCache.invalidate(historyId);
+    }
+
+    /*
+     * Busca as histórias pelo texto digitado pelo usuário (ver HistorySearch.buildMatchQuery).
+     * O FTS4 não ordena por relevância, então o rank é calculado aqui a partir do matchinfo de
+     * cada resultado, e apenas as SEARCH_LIMIT histórias mais relevantes são retornadas.
+     */
+    private Cursor querySearch(String userQuery) {
+        MatrixCursor results = new MatrixCursor(SEARCH_COLUMNS);
+        String matchQuery = HistorySearch.buildMatchQuery(userQuery);
+        if (matchQuery == null) return results;
+
+        Cursor cursor = mOpenHelper.getReadableDatabase().rawQuery(SQL_SEARCH,
+                new String[]{matchQuery});
+
+        List<SearchResult> found = new ArrayList<>();
+        try {
+            while (cursor.moveToNext()) {
+                found.add(new SearchResult(cursor.getLong(0), cursor.getString(1),
+                        cursor.getString(2), cursor.getString(3),
+                        HistorySearch.rank(cursor.getBlob(4))));
+            }
+        } finally {
+            cursor.close();
+        }
+
+        Collections.sort(found, new Comparator<SearchResult>() {
+            @Override
+            public int compare(SearchResult a, SearchResult b) {
+                return Double.compare(b.rank, a.rank);
+            }
+        });
+
+        for (int i = 0; i < found.size() && i < SEARCH_LIMIT; i++) {
+            SearchResult result = found.get(i);
+            results.addRow(new Object[]{result.id, result.title, result.image, result.snippet});
+        }
+        return results;
+    }
+
+    /*
+     * Página de uma listagem de histórias (ver HistoriesEntry.buildPageUri). A paginação é por
+     * chave: cada página começa logo após a última história da anterior, identificada pelo valor
+     * da coluna de ordenação e pelo _ID, que desempata histórias com a mesma data ou título. Ao
+     * contrário de um OFFSET, que percorre todas as histórias das páginas anteriores, cada página
+     * é uma busca nos índices das listagens (ver HistoryDbHelper.createHistoryListIndexes)
+     * seguida da leitura de no máximo limit entradas, qualquer que seja o tamanho da base.
+     *
+     * O SQLite das versões antigas do Android não compara valores de linha ((a, b) < (?, ?)),
+     * então a condição é escrita como "coluna <= ? AND (coluna < ? OR _id < ?)": a primeira parte
+     * delimita a busca no índice e a segunda descarta as histórias com a mesma chave já
+     * retornadas.
+     */
+    private Cursor queryPage(Uri uri, String[] projection, String selection,
+                             String[] selectionArgs, String sortOrder) {
+        String[] order = (sortOrder == null) ? new String[0] : sortOrder.trim().split("\\s+");
+        if (order.length != 2 ||
+                !(order[0].equals(HistoryContract.HistoriesEntry.COLUMN_HISTORY_DATE) ||
+                        order[0].equals(HistoryContract.HistoriesEntry.COLUMN_HISTORY_TITLE_SORT)) ||
+                !(order[1].equalsIgnoreCase("ASC") || order[1].equalsIgnoreCase("DESC"))) {
+            throw new IllegalArgumentException("Ordenação inválida para paginação: " + sortOrder);
+        }
+
+        String limit = uri.getQueryParameter(HistoryContract.HistoriesEntry.PARAM_LIMIT);
+        String afterKey = uri.getQueryParameter(HistoryContract.HistoriesEntry.PARAM_AFTER_KEY);
+        String afterId = uri.getQueryParameter(HistoryContract.HistoriesEntry.PARAM_AFTER_ID);
+        try {
+            if (Integer.parseInt(limit) <= 0) {
+                throw new IllegalArgumentException("Limite inválido para paginação: " + limit);
+            }
+            if (afterId != null) Long.parseLong(afterId);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Parâmetros de paginação inválidos: " + uri);
+        }
+
+        if ((afterKey == null) != (afterId == null)) {
+            throw new IllegalArgumentException(
+                    "A chave e o ID da última história devem ser informados juntos: " + uri);
+        }
+
+        String column = order[0];
+        boolean descending = order[1].equalsIgnoreCase("DESC");
+
+        if (afterId != null) {
+            String keyset = buildPageSelection(column, descending);
+            selection = (selection == null) ? keyset : "(" + selection + ") AND " + keyset;
+            selectionArgs = DatabaseUtils.appendSelectionArgs(selectionArgs,
+                    new String[]{afterKey, afterKey, afterId});
+        }
+
+        return mOpenHelper.getReadableDatabase().query(
+                HistoryContract.HistoriesEntry.TABLE_NAME,
+                projection,
+                selection,
+                selectionArgs,
+                null,
+                null,
+                buildPageOrder(column, descending),
+                limit);
+    }
+
+    // Histórias após a última da página anterior (parâmetros: chave, chave e _ID)
+    static String buildPageSelection(String column, boolean descending) {
+        String comparison = descending ? "<" : ">";
+        return column + comparison + "=? AND (" + column + comparison + "? OR " +
+                HistoryContract.HistoriesEntry._ID + comparison + "?)";
+    }
+
+    static String buildPageOrder(String column, boolean descending) {
+        String direction = descending ? " DESC" : " ASC";
+        return column + direction + ", " + HistoryContract.HistoriesEntry._ID + direction;
+    }
+
+    /*
+     * Substitui os parágrafos de uma história já existente pelos informados e a marca como
+     * baixada, guardando o hash do conteúdo que os gerou (null se desconhecido), em uma transação
+     * que contém apenas escritas. Retorna a quantidade de histórias atualizadas (0 se a história
+     * não existir).
+     */
+    private int replaceParagraphs(long historyId, ContentValues[] paragraphValues,
+                                  String contentHash) {
+        checkParagraphs(historyId, paragraphValues);
+
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        final String[] selectionArgs = new String[]{String.valueOf(historyId)};
+
+        ContentValues fetchedValues = new ContentValues();
+        fetchedValues.put(HistoryContract.HistoriesEntry.COLUMN_CONTENT_FETCHED,
+                HistoryContract.CONTENT_FETCHED);
+        fetchedValues.put(HistoryContract.HistoriesEntry.COLUMN_CONTENT_HASH, contentHash);
+
+        int rowsUpdated;
+        db.beginTransaction();
+        HistoryBulkWriter writer = new HistoryBulkWriter(db);
+        try {
+            rowsUpdated = db.update(HistoryContract.HistoriesEntry.TABLE_NAME, fetchedValues,
+                    HistoryContract.HistoriesEntry._ID + "=?", selectionArgs);
+
+            if (rowsUpdated > 0) {
+                deleteParagraphs(db, selectionArgs);
+                insertParagraphs(writer, historyId, paragraphValues);
+            }
+
+            db.setTransactionSuccessful();
+        } finally {
+            writer.close();
+            db.endTransaction();
+        }
+
+        if (rowsUpdated > 0) invalidateHistory(historyId);
+        return rowsUpdated;
+    }
+
+    /*
+     * Marca a história como baixada sem tocar nos parágrafos, caso o hash do conteúdo baixado
+     * seja igual ao do conteúdo que os gerou. Retorna 0 se a história não existir ou o hash for
+     * diferente.
+     */
+    private int markContentUnchanged(long historyId, String contentHash) {
+        ContentValues fetchedValues = new ContentValues();
+        fetchedValues.put(HistoryContract.HistoriesEntry.COLUMN_CONTENT_FETCHED,
+                HistoryContract.CONTENT_FETCHED);
+
+        return mOpenHelper.getWritableDatabase().update(HistoryContract.HistoriesEntry.TABLE_NAME,
+                fetchedValues,
+                HistoryContract.HistoriesEntry._ID + "=? AND " +
+                        HistoryContract.HistoriesEntry.COLUMN_CONTENT_HASH + "=?",
+                new String[]{String.valueOf(historyId), contentHash});
+    }
+
+    /*
+     * Grava o conteúdo HTML de uma história existente. O parsing e a regravação dos parágrafos
+     * só ocorrem se o conteúdo mudou desde a última gravação (hash diferente).
+     */
+    private int storeRawContent(long historyId, String rawContent) {
+        String contentHash = ContentDigest.of(rawContent);
+
+        int rowsUpdated = markContentUnchanged(historyId, contentHash);
+        if (rowsUpdated > 0) return rowsUpdated;
+
+        return replaceParagraphs(historyId, historyContentParser(historyId, rawContent),
+                contentHash);
+    }
+
+    /*
+     * Baixa o conteúdo da história caso ainda não tenha sido baixado (sincronização apenas com
+     * os dados da listagem) ou precise ser revalidado (história modificada na fonte). Falhas de
+     * rede mantêm os parágrafos anteriores, se houver, e o conteúdo será baixado novamente na
+     * próxima consulta.
+     */
+    private void fetchHistoryContentIfNeeded(long historyId) {
+        synchronized (mContentFetchLock) {
+            Cursor cursor = mOpenHelper.getReadableDatabase().query(
+                    HistoryContract.HistoriesEntry.TABLE_NAME,
+                    new String[]{HistoryContract.HistoriesEntry.COLUMN_CONTENT_FETCHED},
+                    HistoryContract.HistoriesEntry._ID + "=?",
+                    new String[]{String.valueOf(historyId)},
+                    null,
+                    null,
+                    null);
+
+            boolean needsContent = cursor.moveToFirst() &&
+                    cursor.getInt(0) == HistoryContract.CONTENT_NOT_FETCHED;
+            cursor.close();
+
+            if (!needsContent) return;
+
+            try {
+                String rawContent = WordPressConn.readHistoryContent(getContext(), historyId);
+                if (rawContent != null) {
+                    storeRawContent(historyId, rawContent);
                 }
+            } catch (IOException | JSONException e) {
+                Log.w(LOG_TAG, "Não foi possível baixar o conteúdo da história " + historyId, e);
+            }
+        }
+    }
+
+    /*
+     * Valida os dados de uma história e gera os campos derivados (títulos, marcação e hash do
+     * conteúdo). Retorna os parágrafos parseados do conteúdo HTML, ou null se a história veio
+     * apenas com os dados da listagem. Os parágrafos gerados pelo historyContentParser já são
+     * válidos e não passam pelo checkParagraphs.
+     */
+    private static ContentValues[] prepareHistory(ContentValues value,
+                                                  String historyRawContentColumnName) {
+        String errorConstraints =
+                checkTableConstraints(HistoryContract.HistoriesEntry.TABLE_NAME, value);
+        if (errorConstraints != null) {
+            throw new IllegalArgumentException(errorConstraints);
+        }
+
+        // Título para exibição e ordenação, gerado uma única vez aqui
+        value.putAll(HistoryDbHelper.buildTitleValues(
+                value.getAsString(HistoryContract.HistoriesEntry.COLUMN_HISTORY_TITLE)));
+
+        String rawContent = value.getAsString(historyRawContentColumnName);
+        value.remove(historyRawContentColumnName);
+        value.put(HistoryContract.HistoriesEntry.COLUMN_CONTENT_FETCHED,
+                rawContent != null ? HistoryContract.CONTENT_FETCHED
+                        : HistoryContract.CONTENT_NOT_FETCHED);
+
+        if (rawContent == null) return null;
+
+        long historyId = value.getAsLong(HistoryContract.HistoriesEntry._ID);
+        ContentValues[] paragraphValues = historyContentParser(historyId, rawContent);
+        value.put(HistoryContract.HistoriesEntry.COLUMN_CONTENT_HASH, ContentDigest.of(rawContent));
+        return paragraphValues;
+    }
+
+    /*
+     * Grava uma história já preparada (ver prepareHistory) com a semântica de
+     * INSERT ... ON CONFLICT(_id) DO UPDATE, que o SQLite só suporta a partir da versão 3.24
+     * (API 30). Deve ser chamado dentro de uma transação.
+     *
+     * Se a história já existir, o status de favorito nunca é alterado. Sem o conteúdo HTML,
+     * apenas os dados da listagem são atualizados, mantendo parágrafos e hash, e o conteúdo será
+     * revalidado no próximo acesso. Com o conteúdo, os parágrafos só são regravados se o hash
+     * mudou. Retorna a quantidade de histórias gravadas (0 ou 1). A história deve ser removida do
+     * cache (invalidateHistory) depois da transação.
+     */
+    private int upsertHistory(SQLiteDatabase db, HistoryBulkWriter writer, ContentValues values,
+                              ContentValues[] paragraphValues) {
+        final String historyTableName = HistoryContract.HistoriesEntry.TABLE_NAME;
+        long historyId = values.getAsLong(HistoryContract.HistoriesEntry._ID);
+        String[] selectionArgs = new String[]{String.valueOf(historyId)};
+
+        Cursor cursor = db.query(historyTableName,
+                new String[]{HistoryContract.HistoriesEntry.COLUMN_CONTENT_HASH},
+                HistoryContract.HistoriesEntry._ID + "=?",
+                selectionArgs,
+                null,
+                null,
+                null);
+
+        boolean exists;
+        String storedHash;
+        try {
+            exists = cursor.moveToFirst();
+            storedHash = exists ? cursor.getString(0) : null;
+        } finally {
+            cursor.close();
+        }
 
-                ContentValues paragraphText = new ContentValues();
-                paragraphText.put(HistoryContract.ParagraphsEntry.COLUMN_HISTORY_ID, id);
-                paragraphText.put(HistoryContract.ParagraphsEntry.COLUMN_PARAGRAPH_TYPE, paragraphType);
-                paragraphText.put(HistoryContract.ParagraphsEntry.COLUMN_PARAGRAPH_CONTENT, paragraphString);
-                historyValues.add(paragraphText);
+        if (!exists) {
+            if (writer.insertHistory(values) == -1) return 0;
 
-                if (isAuthor) break;
+            if (paragraphValues != null) {
+                insertParagraphs(writer, historyId, paragraphValues);
             }
+            return 1;
+        }
+
+        ContentValues updateValues = new ContentValues(values);
+        updateValues.remove(HistoryContract.HistoriesEntry.COLUMN_FAVORITE);
+        db.update(historyTableName, updateValues, HistoryContract.HistoriesEntry._ID + "=?",
+                selectionArgs);
+
+        String contentHash = values.getAsString(HistoryContract.HistoriesEntry.COLUMN_CONTENT_HASH);
+        if (paragraphValues != null && !contentHash.equals(storedHash)) {
+            deleteParagraphs(db, selectionArgs);
+            insertParagraphs(writer, historyId, paragraphValues);
+        }
+        return 1;
+    }
+
+    /*
+     * Notifica os observers da URI, ou adia a notificação para o final da transação caso esteja
+     * dentro de um applyBatch.
+     */
+    private void notifyChange(Uri uri) {
+        Set<Uri> batchChanges = mBatchChanges.get();
+        if (batchChanges != null) {
+            batchChanges.add(uri);
+            return;
+        }
+        dispatchChange(uri);
+    }
+
+    /*
+     * As listagens de todas as histórias são registradas em LIST_NOTIFICATION_URI, fora de
+     * CONTENT_URI, e só são notificadas pelas alterações da própria listagem (CONTENT_URI). As
+     * alterações de favorito e de conteúdo, notificadas nas URIs das histórias alteradas e na de
+     * favoritos, não as refazem.
+     *
+     * As buscas são registradas em SearchEntry.CONTENT_URI, notificada junto com a listagem e
+     * pelas gravações de conteúdo (ver notifyContentChange).
+     */
+    private void dispatchChange(Uri uri) {
+        ContentResolver resolver = getContext().getContentResolver();
+        resolver.notifyChange(uri, null);
+        if (sUriMatcher.match(uri) == CODE_HISTORIES) {
+            resolver.notifyChange(HistoryContract.HistoriesEntry.LIST_NOTIFICATION_URI, null);
+            resolver.notifyChange(HistoryContract.SearchEntry.CONTENT_URI, null);
+        }
+    }
+
+    /*
+     * O conteúdo gravado também muda o texto da história no índice de busca.
+     */
+    private void notifyContentChange(Uri uri) {
+        notifyChange(uri);
+        notifyChange(HistoryContract.SearchEntry.CONTENT_URI);
+    }
 
-            ContentValues paragraphImage = new ContentValues();
-            for (Element img : p.select(TAG_IMG)) {
-                String imageUrl = img.absUrl(TAG_SRC).contains("?") ?
-                        img.absUrl(TAG_SRC).substring(0, img.absUrl(TAG_SRC).indexOf("?")) :
-                        img.absUrl(TAG_SRC);
-
-                paragraphImage.put(HistoryContract.ParagraphsEntry.COLUMN_HISTORY_ID, id);
-                paragraphImage.put(HistoryContract.ParagraphsEntry.COLUMN_PARAGRAPH_TYPE,
-                        HistoryContract.ParagraphsEntry.TYPE_IMAGE);
-                paragraphImage.put(HistoryContract.ParagraphsEntry.COLUMN_PARAGRAPH_CONTENT, imageUrl);
-                historyValues.add(paragraphImage);
+    /*
+     * Aplica todas as operações em uma única transação. Os observers são notificados uma única
+     * vez por URI alterada, depois da transação concluída, e nunca veem um estado intermediário
+     * da base. Usado pela sincronização para gravar remoções e histórias alteradas de uma vez.
+     */
+    @NonNull
+    @Override
+    public ContentProviderResult[] applyBatch(
+            @NonNull ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        final Set<Uri> batchChanges = new LinkedHashSet<>();
+        final Set<Long> batchInvalidations = new HashSet<>();
+        ContentProviderResult[] results;
+
+        mBatchChanges.set(batchChanges);
+        mBatchInvalidations.set(batchInvalidations);
+        db.beginTransaction();
+        try {
+            results = super.applyBatch(operations);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            mBatchChanges.remove();
+            mBatchInvalidations.remove();
+
+            for (long historyId : batchInvalidations) {
+                sHistoryCache.invalidate(historyId);
             }
         }
-        return historyValues.toArray(new ContentValues[0]);
+
+        for (Uri uri : batchChanges) {
+            dispatchChange(uri);
+        }
+        return results;
     }
 
     @Override
     public int bulkInsert(@NonNull Uri uri, @NonNull ContentValues[] values) {
         switch (sUriMatcher.match(uri)) {
             case CODE_HISTORIES:
-                final String historyTableName = HistoryContract.HistoriesEntry.TABLE_NAME;
-                final String paragraphTableName = HistoryContract.ParagraphsEntry.TABLE_NAME;
-                final String idHistoryColumnName = HistoryContract.HistoriesEntry._ID;
                 final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
                 final String historyRawContentColumnName =
                         getContext().getString(R.string.history_raw_content);
 
+                // Validação e parsing do HTML são feitos antes da transação, para não bloquear
+                // a base durante o processamento
+                ContentValues[][] paragraphValues = new ContentValues[values.length][];
+                for (int i = 0; i < values.length; i++) {
+                    paragraphValues[i] = prepareHistory(values[i], historyRawContentColumnName);
+                }
+
                 db.beginTransaction();
+                HistoryBulkWriter writer = new HistoryBulkWriter(db);
                 int rowsInserted = 0;
                 try {
-                    for (ContentValues value : values) {
-                        String errorConstraints = checkTableConstraints(historyTableName, value);
-                        if (errorConstraints != null) {
-                            throw new IllegalArgumentException(errorConstraints);
-                        }
-
-                        if (value.size() == 0) {
-                            continue;
-                        }
-
-                        ContentValues[] paragraphValues =
-                                historyContentParser(value.getAsLong(idHistoryColumnName),
-                                        value.getAsString(historyRawContentColumnName));
-
-                        value.remove(historyRawContentColumnName);
-
-                        long _id = db.insert(historyTableName, null, value);
-
-                        if (_id != -1) {
-                            for (ContentValues paragraphValue : paragraphValues) {
-                                String paragraphErrorConstraints =
-                                        checkTableConstraints(paragraphTableName, paragraphValue);
-                                if (paragraphErrorConstraints != null) {
-                                    throw new IllegalArgumentException(paragraphErrorConstraints);
-                                }
-
-                                if (value.size() == 0) {
-                                    continue;
-                                }
-
-                                db.insert(paragraphTableName, null, paragraphValue);
-                            }
-                            rowsInserted++;
-                        }
+                    for (int i = 0; i < values.length; i++) {
+                        rowsInserted += upsertHistory(db, writer, values[i], paragraphValues[i]);
                     }
                     db.setTransactionSuccessful();
                 } finally {
+                    writer.close();
                     db.endTransaction();
                 }
 
                 if (rowsInserted > 0) {
-                    getContext().getContentResolver().notifyChange(uri, null);
+                    for (ContentValues value : values) {
+                        invalidateHistory(value.getAsLong(HistoryContract.HistoriesEntry._ID));
+                    }
+                    notifyChange(uri);
                 }
 
                 return rowsInserted;
 
+            // Substitui os parágrafos da história pelos informados, já parseados
+            // (ver historyContentParser), com o hash do conteúdo opcional na URI
+            // (PARAM_CONTENT_HASH). Retorna 0 se a história não existir.
+            case CODE_PARAGRAPHS:
+                long historyId = Long.parseLong(uri.getPathSegments().get(1));
+                String contentHash =
+                        uri.getQueryParameter(HistoryContract.ParagraphsEntry.PARAM_CONTENT_HASH);
+                if (replaceParagraphs(historyId, values, contentHash) == 0) {
+                    return 0;
+                }
+
+                notifyContentChange(uri);
+                return values.length;
+
             default:
                 throw new UnsupportedOperationException("URI desconhecida: " + uri);
         }
@@ -253,8 +924,9 @@ public class HistoryProvider extends ContentProvider {
                         String[] selectionArgs, String sortOrder) {
         Cursor cursor;
         String tableName;
+        int match = sUriMatcher.match(uri);
 
-        switch (sUriMatcher.match(uri)) {
+        switch (match) {
             case CODE_HISTORIES:
                 tableName = HistoryContract.HistoriesEntry.TABLE_NAME;
                 break;
@@ -264,13 +936,83 @@ public class HistoryProvider extends ContentProvider {
                 selection = HistoryContract.HistoriesEntry.COLUMN_FAVORITE + "=" + HistoryContract.IS_FAVORITE;
                 break;
 
+            // Uma história aberta recentemente é lida do cache, se a projeção for coberta por
+            // ele. Esta consulta não guarda a história no cache, apenas a de parágrafos.
             case CODE_SINGLE_HISTORY:
+                long singleHistoryId = ContentUris.parseId(uri);
+                if (projection != null &&
+                        CACHED_HISTORY_COLUMNS.containsAll(Arrays.asList(projection))) {
+                    HistoryCache.Entry cachedHistory = sHistoryCache.get(singleHistoryId);
+                    if (cachedHistory != null) {
+                        cursor = buildCachedHistoryCursor(singleHistoryId, cachedHistory,
+                                projection);
+                        cursor.setNotificationUri(getContext().getContentResolver(), uri);
+                        return cursor;
+                    }
+                }
+
                 tableName = HistoryContract.HistoriesEntry.TABLE_NAME;
                 selection = HistoryContract.HistoriesEntry._ID + "=?";
-                selectionArgs = new String[]{String.valueOf(ContentUris.parseId(uri))};
+                selectionArgs = new String[]{String.valueOf(singleHistoryId)};
                 break;
 
+            // Retorna sempre as colunas de SearchEntry.buildSearchUri, ignorando projeção,
+            // seleção e ordenação, e é notificada pelas alterações do índice de busca
+            case CODE_SEARCH:
+                cursor = querySearch(
+                        uri.getQueryParameter(HistoryContract.SearchEntry.PARAM_QUERY));
+                cursor.setNotificationUri(getContext().getContentResolver(),
+                        HistoryContract.SearchEntry.CONTENT_URI);
+                return cursor;
+
+            // Uma única consulta para abrir a história: do cache ou, se já baixada, com uma única
+            // leitura da base, que também a guarda no cache. Notificada pelas alterações da
+            // história e dos seus parágrafos (URI da história). Nunca baixa o conteúdo.
+            case CODE_HISTORY_DETAIL:
+                long detailHistoryId = Long.parseLong(uri.getPathSegments().get(1));
+
+                HistoryCache.Entry detail = sHistoryCache.get(detailHistoryId);
+                if (detail == null) detail = loadCachedHistory(detailHistoryId);
+
+                if (detail != null) {
+                    cursor = new HistoryDetailCursor(projection, detail.getTitle(),
+                            detail.getImage(), detail.getFavorite(),
+                            HistoryContract.CONTENT_FETCHED, detail.getParagraphs());
+                } else {
+                    cursor = queryHistoryHeader(detailHistoryId, projection);
+                }
+
+                cursor.setNotificationUri(getContext().getContentResolver(),
+                        HistoryContract.HistoriesEntry.buildSingleHistoryUri(detailHistoryId));
+                return cursor;
+
+            // Parágrafos do cache ou em blob são sempre retornados na ordem em que foram
+            // gravados, ignorando seleção e ordenação
             case CODE_PARAGRAPHS:
+                long historyId = Long.parseLong(uri.getPathSegments().get(1));
+
+                // Só histórias já baixadas ficam no cache, então não há conteúdo a baixar
+                HistoryCache.Entry cachedParagraphs = sHistoryCache.get(historyId);
+                if (cachedParagraphs == null) {
+                    fetchHistoryContentIfNeeded(historyId);
+                    cachedParagraphs = loadCachedHistory(historyId);
+                }
+
+                if (cachedParagraphs != null) {
+                    cursor = new ParagraphListCursor(historyId, cachedParagraphs.getParagraphs(),
+                            projection);
+                    cursor.setNotificationUri(getContext().getContentResolver(), uri);
+                    return cursor;
+                }
+
+                // Conteúdo não baixado: parágrafos anteriores a uma falha no download, se houver
+                ParagraphBlob.Reader blob = queryParagraphBlob(historyId);
+                if (blob != null) {
+                    cursor = new ParagraphListCursor(historyId, blob, projection);
+                    cursor.setNotificationUri(getContext().getContentResolver(), uri);
+                    return cursor;
+                }
+
                 tableName = HistoryContract.ParagraphsEntry.TABLE_NAME;
                 selection = HistoryContract.ParagraphsEntry.COLUMN_HISTORY_ID + "=?";
                 selectionArgs = new String[]{uri.getPathSegments().get(1)};
@@ -281,16 +1023,22 @@ public class HistoryProvider extends ContentProvider {
 
         }
 
-        cursor = mOpenHelper.getReadableDatabase().query(
-                tableName,
-                projection,
-                selection,
-                selectionArgs,
-                null,
-                null,
-                sortOrder);
+        if ((match == CODE_HISTORIES || match == CODE_FAVORITES_HISTORIES) &&
+                uri.getQueryParameter(HistoryContract.HistoriesEntry.PARAM_LIMIT) != null) {
+            cursor = queryPage(uri, projection, selection, selectionArgs, sortOrder);
+        } else {
+            cursor = mOpenHelper.getReadableDatabase().query(
+                    tableName,
+                    projection,
+                    selection,
+                    selectionArgs,
+                    null,
+                    null,
+                    sortOrder);
+        }
 
-        cursor.setNotificationUri(getContext().getContentResolver(), uri);
+        cursor.setNotificationUri(getContext().getContentResolver(), match == CODE_HISTORIES ?
+                HistoryContract.HistoriesEntry.LIST_NOTIFICATION_URI : uri);
         return cursor;
     }
 
@@ -301,16 +1049,29 @@ public class HistoryProvider extends ContentProvider {
 
         switch (sUriMatcher.match(uri)) {
 
+            // As histórias removidas são consultadas antes, para removê-las também do cache
             case CODE_HISTORIES:
                 tableName = HistoryContract.HistoriesEntry.TABLE_NAME;
 
-                numRowsDeleted = mOpenHelper.getWritableDatabase().delete(
-                        tableName,
-                        selection,
-                        selectionArgs);
+                final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+                String[] deletedIds;
+                db.beginTransaction();
+                try {
+                    deletedIds = queryHistoryIds(db, selection, selectionArgs);
+                    numRowsDeleted = db.delete(
+                            tableName,
+                            selection,
+                            selectionArgs);
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
 
                 if (numRowsDeleted != 0) {
-                    getContext().getContentResolver().notifyChange(uri, null);
+                    for (String id : deletedIds) {
+                        invalidateHistory(Long.parseLong(id));
+                    }
+                    notifyChange(uri);
                 }
 
                 return numRowsDeleted;
@@ -325,20 +1086,50 @@ public class HistoryProvider extends ContentProvider {
                       String[] selectionArgs) {
         ContentValues selectedValues = new ContentValues();
         String favoriteColumnName = HistoryContract.HistoriesEntry.COLUMN_FAVORITE;
+        // IDs das histórias alteradas, ou null para consultar os favoritos atuais
+        String[] changedIds;
 
         switch (sUriMatcher.match(uri)) {
 
+            // Substitui os parágrafos da história pelo conteúdo HTML informado, caso tenha
+            // mudado. Apenas com o hash (COLUMN_CONTENT_HASH), confirma que o conteúdo não
+            // mudou, retornando 0 se o hash gravado for outro.
+            case CODE_PARAGRAPHS:
+                long historyId = Long.parseLong(uri.getPathSegments().get(1));
+                String rawContent = values == null ? null :
+                        values.getAsString(getContext().getString(R.string.history_raw_content));
+                String contentHash = values == null ? null :
+                        values.getAsString(HistoryContract.HistoriesEntry.COLUMN_CONTENT_HASH);
+
+                if (rawContent != null) {
+                    int historiesUpdated = storeRawContent(historyId, rawContent);
+                    if (historiesUpdated != 0) {
+                        notifyContentChange(
+                                HistoryContract.HistoriesEntry.buildSingleHistoryUri(historyId));
+                    }
+                    return historiesUpdated;
+                }
+
+                if (contentHash != null) {
+                    return markContentUnchanged(historyId, contentHash);
+                }
+
+                throw new IllegalArgumentException(
+                        "É necessário fornecer o conteúdo HTML ou o hash do conteúdo da história.");
+
             // Remove o status de favorito de todas as histórias
             case CODE_HISTORIES:
                 selection = favoriteColumnName + "=?";
                 selectionArgs = new String[]{String.valueOf(HistoryContract.IS_FAVORITE)};
                 selectedValues.put(favoriteColumnName, HistoryContract.IS_NOT_FAVORITE);
+                changedIds = null;
                 break;
 
             // Update de uma história específica deverá ser apenas do status de favorito
             case CODE_SINGLE_HISTORY:
                 selection = HistoryContract.HistoriesEntry._ID + "=?";
                 selectionArgs = new String[]{String.valueOf(ContentUris.parseId(uri))};
+                changedIds = selectionArgs;
 
                 if (values.containsKey(favoriteColumnName)) {
                     Integer favorite = values.getAsInteger(favoriteColumnName);
@@ -352,42 +1143,156 @@ public class HistoryProvider extends ContentProvider {
 
                 break;
 
-            // Marca todas as histórias selecionadas como favoritas
+            // Marca todas as histórias selecionadas (IDs em selectionArgs) como favoritas
             case CODE_FAVORITES_HISTORIES:
                 selection = HistoryContract.HistoriesEntry._ID + " IN (" +
-                        TextUtils.join(",", selectionArgs) + ")";
-                selectionArgs = null;
+                        TextUtils.join(",", Collections.nCopies(selectionArgs.length, "?")) + ")";
                 selectedValues.put(favoriteColumnName, HistoryContract.IS_FAVORITE);
+                changedIds = selectionArgs;
                 break;
 
             default:
                 throw new UnsupportedOperationException("URI desconhecida: " + uri);
         }
 
-        int rowsUpdated = mOpenHelper.getWritableDatabase().update(
-                HistoryContract.HistoriesEntry.TABLE_NAME,
-                selectedValues,
-                selection,
-                selectionArgs);
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        int rowsUpdated;
+        db.beginTransaction();
+        try {
+            if (changedIds == null) changedIds = queryHistoryIds(db, selection, selectionArgs);
+            rowsUpdated = db.update(
+                    HistoryContract.HistoriesEntry.TABLE_NAME,
+                    selectedValues,
+                    selection,
+                    selectionArgs);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
 
+        // Apenas o status de favorito muda: a listagem de todas as histórias não o exibe e não
+        // precisa ser refeita, somente a de favoritos e as telas das histórias alteradas
         if (rowsUpdated != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
-            Uri uriAllFavorites = HistoryContract.HistoriesEntry.buildFavoritesUri();
-            getContext().getContentResolver().notifyChange(uriAllFavorites, null);
+            for (String id : changedIds) {
+                invalidateHistory(Long.parseLong(id));
+                notifyChange(HistoryContract.HistoriesEntry.buildSingleHistoryUri(
+                        Long.parseLong(id)));
+            }
+            notifyChange(HistoryContract.HistoriesEntry.buildFavoritesUri());
         }
 
         return rowsUpdated;
     }
 
+    private static String[] queryHistoryIds(SQLiteDatabase db, String selection,
+                                            String[] selectionArgs) {
+        Cursor cursor = db.query(HistoryContract.HistoriesEntry.TABLE_NAME,
+                new String[]{HistoryContract.HistoriesEntry._ID},
+                selection, selectionArgs, null, null, null);
+
+        try {
+            String[] ids = new String[cursor.getCount()];
+            for (int i = 0; cursor.moveToNext(); i++) {
+                ids[i] = cursor.getString(0);
+            }
+            return ids;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /*
+     * Insere ou atualiza uma única história (ver upsertHistory). Para várias histórias, use
+     * bulkInsert ou applyBatch, que gravam tudo em uma única transação.
+     */
     @Override
     public Uri insert(@NonNull Uri uri, ContentValues values) {
-        throw new RuntimeException(
-                "Não há implementação de insert neste aplicativo. Use bulkUpsertHistories ou " +
-                        "bulkUpsertParagraphs no lugar.");
+        switch (sUriMatcher.match(uri)) {
+            case CODE_HISTORIES:
+                ContentValues[] paragraphValues = prepareHistory(values,
+                        getContext().getString(R.string.history_raw_content));
+
+                final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+                int rowsInserted;
+                db.beginTransaction();
+                HistoryBulkWriter writer = new HistoryBulkWriter(db);
+                try {
+                    rowsInserted = upsertHistory(db, writer, values, paragraphValues);
+                    db.setTransactionSuccessful();
+                } finally {
+                    writer.close();
+                    db.endTransaction();
+                }
+
+                if (rowsInserted == 0) return null;
+
+                long historyId = values.getAsLong(HistoryContract.HistoriesEntry._ID);
+                invalidateHistory(historyId);
+                notifyChange(uri);
+                return HistoryContract.HistoriesEntry.buildSingleHistoryUri(historyId);
+
+            default:
+                throw new UnsupportedOperationException("URI desconhecida: " + uri);
+        }
     }
 
     @Override
     public String getType(@NonNull Uri uri) {
         throw new RuntimeException("Não há implementação de getType neste aplicativo.");
     }
+
+    /*
+     * Parágrafos gravados uma linha por parágrafo, lidos de um cursor de SQL_HISTORY_DETAIL,
+     * apenas para a cópia para o HistoryCache. Uma história sem parágrafos tem uma única linha,
+     * com o _ID do parágrafo nulo.
+     */
+    private static class ParagraphRows implements ParagraphList {
+        private final Cursor mCursor;
+        private final int mCount;
+
+        ParagraphRows(Cursor cursor) {
+            mCursor = cursor;
+            mCount = cursor.moveToFirst() && !cursor.isNull(INDEX_DETAIL_PARAGRAPH_ID)
+                    ? cursor.getCount() : 0;
+        }
+
+        @Override
+        public int getCount() {
+            return mCount;
+        }
+
+        @Override
+        public long getId(int index) {
+            mCursor.moveToPosition(index);
+            return mCursor.getLong(INDEX_DETAIL_PARAGRAPH_ID);
+        }
+
+        @Override
+        public int getType(int index) {
+            mCursor.moveToPosition(index);
+            return mCursor.getInt(INDEX_DETAIL_TYPE);
+        }
+
+        @Override
+        public String getContent(int index) {
+            mCursor.moveToPosition(index);
+            return mCursor.getString(INDEX_DETAIL_CONTENT);
+        }
+    }
+
+    private static class SearchResult {
+        final long id;
+        final String title;
+        final String image;
+        final String snippet;
+        final double rank;
+
+        SearchResult(long id, String title, String image, String snippet, double rank) {
+            this.id = id;
+            this.title = title;
+            this.image = image;
+            this.snippet = snippet;
+            this.rank = rank;
+        }
+    }
 }
@@ -0,0 +1,112 @@
+package com.abobrinha.caixinha.data;
+
+import android.database.AbstractCursor;
+
+import com.abobrinha.caixinha.core.ParagraphList;
+
+/**
+ * Cursor sobre os parágrafos de uma história gravados em um ParagraphBlob ou guardados no
+ * HistoryCache, com as mesmas colunas da tabela de parágrafos. Nada é copiado para uma
+ * CursorWindow: o tipo e o texto de cada parágrafo são lidos diretamente da ParagraphList, e o
+ * texto de um blob só é decodificado quando solicitado.
+ *
+ * O _ID de cada parágrafo é o da ParagraphList: a sua posição na história (a partir de 1) em um
+ * blob, ou o _ID da linha para parágrafos gravados uma linha por parágrafo.
+ */
+class ParagraphListCursor extends AbstractCursor {
+
+    private static final String[] ALL_COLUMNS = {
+            HistoryContract.ParagraphsEntry._ID,
+            HistoryContract.ParagraphsEntry.COLUMN_HISTORY_ID,
+            HistoryContract.ParagraphsEntry.COLUMN_PARAGRAPH_TYPE,
+            HistoryContract.ParagraphsEntry.COLUMN_PARAGRAPH_CONTENT
+    };
+
+    private static final int COLUMN_ID = 0;
+    private static final int COLUMN_HISTORY_ID = 1;
+    private static final int COLUMN_TYPE = 2;
+    private static final int COLUMN_CONTENT = 3;
+
+    private final long mHistoryId;
+    private final ParagraphList mParagraphs;
+    private final String[] mColumnNames;
+    private final int[] mColumns;
+
+    ParagraphListCursor(long historyId, ParagraphList paragraphs, String[] projection) {
+        mHistoryId = historyId;
+        mParagraphs = paragraphs;
+        mColumnNames = projection == null ? ALL_COLUMNS : projection;
+        mColumns = new int[mColumnNames.length];
+
+        for (int i = 0; i < mColumnNames.length; i++) {
+            mColumns[i] = indexOf(mColumnNames[i]);
+        }
+    }
+
+    private static int indexOf(String columnName) {
+        for (int i = 0; i < ALL_COLUMNS.length; i++) {
+            if (ALL_COLUMNS[i].equals(columnName)) return i;
+        }
+        throw new IllegalArgumentException("Coluna de parágrafo inválida: " + columnName);
+    }
+
+    @Override
+    public int getCount() {
+        return mParagraphs.getCount();
+    }
+
+    @Override
+    public String[] getColumnNames() {
+        return mColumnNames;
+    }
+
+    @Override
+    public String getString(int column) {
+        if (mColumns[column] == COLUMN_CONTENT) return mParagraphs.getContent(getPosition());
+        return String.valueOf(getLong(column));
+    }
+
+    @Override
+    public long getLong(int column) {
+        switch (mColumns[column]) {
+            case COLUMN_ID:
+                return mParagraphs.getId(getPosition());
+            case COLUMN_HISTORY_ID:
+                return mHistoryId;
+            case COLUMN_TYPE:
+                return mParagraphs.getType(getPosition());
+            default:
+                return Long.parseLong(mParagraphs.getContent(getPosition()));
+        }
+    }
+
+    @Override
+    public short getShort(int column) {
+        return (short) getLong(column);
+    }
+
+    @Override
+    public int getInt(int column) {
+        return (int) getLong(column);
+    }
+
+    @Override
+    public float getFloat(int column) {
+        return getLong(column);
+    }
+
+    @Override
+    public double getDouble(int column) {
+        return getLong(column);
+    }
+
+    @Override
+    public int getType(int column) {
+        return mColumns[column] == COLUMN_CONTENT ? FIELD_TYPE_STRING : FIELD_TYPE_INTEGER;
+    }
+
+    @Override
+    public boolean isNull(int column) {
+        return false;
+    }
+}
@@ -72,10 +72,25 @@ public class PreferencesUtils {
         );
 
         return orderByPreference.equals(c.getString(R.string.pref_order_title))
-                ? HistoryContract.HistoriesEntry.COLUMN_HISTORY_TITLE + " ASC"
+                ? HistoryContract.HistoriesEntry.COLUMN_HISTORY_TITLE_SORT + " ASC"
                 : HistoryContract.HistoriesEntry.COLUMN_HISTORY_DATE + " DESC";
     }
 
+    /*
+     * Indica se o conteúdo de todas as histórias deve ser baixado durante a sincronização. Caso
+     * contrário, apenas os dados da listagem são sincronizados e cada história é baixada ao ser
+     * aberta (ou antecipadamente, em redes sem cobrança por uso).
+     */
+    public static boolean isContentDownloadedOnSync(Context c) {
+        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(c);
+        String contentPreference = sp.getString(
+                c.getString(R.string.pref_content_key),
+                c.getString(R.string.pref_content_on_open)
+        );
+
+        return contentPreference.equals(c.getString(R.string.pref_content_on_sync));
+    }
+
     public static boolean areNotificationsEnabled(Context context) {
         String displayNotificationsKey = context.getString(R.string.pref_enable_notifications_key);
         boolean shouldDisplayNotificationsByDefault = context
@@ -168,7 +183,7 @@ public class PreferencesUtils {
      */
     public static String getDatabaseOrderByPref(Context c, int appWidgetId) {
         return loadWidgetOrderPref(c, appWidgetId) == ORDER_TITLE
-                ? HistoryContract.HistoriesEntry.COLUMN_HISTORY_TITLE + " ASC"
+                ? HistoryContract.HistoriesEntry.COLUMN_HISTORY_TITLE_SORT + " ASC"
                 : HistoryContract.HistoriesEntry.COLUMN_HISTORY_DATE + " DESC";
     }
 }
@@ -0,0 +1,61 @@
+package com.abobrinha.caixinha.network;
+
+import android.content.ContentValues;
+
+import com.abobrinha.caixinha.core.HistoryRow;
+import com.abobrinha.caixinha.data.HistoryContract;
+
+/**
+ * Grava os campos lidos pelo WordPressPageReader em um ContentValues, com as colunas da tabela de
+ * histórias. O conteúdo HTML vai na chave R.string.history_raw_content, que não é uma coluna e é
+ * tratada pelo provider.
+ */
+class HistoryValuesRow implements HistoryRow {
+
+    private final ContentValues mValues;
+    private final String mRawContentKey;
+
+    HistoryValuesRow(String rawContentKey) {
+        mValues = new ContentValues();
+        mRawContentKey = rawContentKey;
+    }
+
+    ContentValues getValues() {
+        return mValues;
+    }
+
+    @Override
+    public void putId(long id) {
+        mValues.put(HistoryContract.HistoriesEntry._ID, id);
+    }
+
+    @Override
+    public void putDate(long dateMillis) {
+        mValues.put(HistoryContract.HistoriesEntry.COLUMN_HISTORY_DATE, dateMillis);
+    }
+
+    @Override
+    public void putModified(long dateMillis) {
+        mValues.put(HistoryContract.HistoriesEntry.COLUMN_HISTORY_MODIFIED, dateMillis);
+    }
+
+    @Override
+    public void putTitle(String title) {
+        mValues.put(HistoryContract.HistoriesEntry.COLUMN_HISTORY_TITLE, title);
+    }
+
+    @Override
+    public void putUrl(String url) {
+        mValues.put(HistoryContract.HistoriesEntry.COLUMN_HISTORY_URL, url);
+    }
+
+    @Override
+    public void putImage(String imageUrl) {
+        mValues.put(HistoryContract.HistoriesEntry.COLUMN_HISTORY_IMAGE, imageUrl);
+    }
+
+    @Override
+    public void putRawContent(String rawContent) {
+        mValues.put(mRawContentKey, rawContent);
+    }
+}
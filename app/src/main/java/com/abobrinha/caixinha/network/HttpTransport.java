@@ -0,0 +1,33 @@
+package com.abobrinha.caixinha.network;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.Map;
+
+/**
+ * Abstração da camada HTTP utilizada pelo WordPressConn. Permite trocar a implementação de
+ * produção (UrlConnectionTransport) nos testes ou em medições de desempenho.
+ */
+public interface HttpTransport {
+
+    /**
+     * Executa um GET na URL informada com os cabeçalhos adicionais. Respostas de erro do
+     * servidor (4xx / 5xx) devem ser lançadas como IOException.
+     */
+    Response get(URL url, Map<String, String> requestHeaders) throws IOException;
+
+    /*
+     * Resposta de uma requisição. Deve sempre ser fechada, para que a conexão possa ser
+     * reaproveitada pela próxima requisição.
+     */
+    interface Response extends Closeable {
+        int getCode();
+
+        String getHeader(String name);
+
+        // Corpo da resposta já descompactado
+        InputStream getBody() throws IOException;
+    }
+}
@@ -0,0 +1,126 @@
+package com.abobrinha.caixinha.network;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Guarda os validadores HTTP (ETag e Last-Modified) das páginas da API do WordPress, permitindo
+ * requisições condicionais (If-None-Match / If-Modified-Since) nas sincronizações seguintes.
+ *
+ * Os validadores recebidos ficam pendentes até que commit() seja chamado, o que só deve ocorrer
+ * depois que a base local foi atualizada com sucesso. Assim, uma sincronização interrompida
+ * nunca faz o servidor responder 304 para dados que não foram gravados.
+ */
+public class HttpValidatorCache {
+
+    private static final String PREFS_NAME = "http_validator_cache";
+    private static final String ETAG_PREFIX_KEY = "etag_";
+    private static final String LAST_MODIFIED_PREFIX_KEY = "last_modified_";
+
+    private static final String HEADER_ETAG = "ETag";
+    private static final String HEADER_LAST_MODIFIED = "Last-Modified";
+    private static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+    private static final String HEADER_IF_MODIFIED_SINCE = "If-Modified-Since";
+
+    private static HttpValidatorCache sInstance;
+
+    private final SharedPreferences mPreferences;
+    private final Map<String, String[]> mPendingValidators = new HashMap<>();
+
+    private final AtomicInteger mHits = new AtomicInteger();
+    private final AtomicInteger mMisses = new AtomicInteger();
+
+    private HttpValidatorCache(Context context) {
+        mPreferences = context.getApplicationContext()
+                .getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    public static synchronized HttpValidatorCache getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new HttpValidatorCache(context);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Retorna os cabeçalhos condicionais referentes à URL, caso existam validadores guardados
+     * de uma sincronização anterior.
+     */
+    public Map<String, String> getValidators(URL url) {
+        String key = url.toString();
+        String etag = mPreferences.getString(ETAG_PREFIX_KEY + key, null);
+        String lastModified = mPreferences.getString(LAST_MODIFIED_PREFIX_KEY + key, null);
+
+        Map<String, String> headers = new HashMap<>();
+        if (etag != null) {
+            headers.put(HEADER_IF_NONE_MATCH, etag);
+        }
+        if (lastModified != null) {
+            headers.put(HEADER_IF_MODIFIED_SINCE, lastModified);
+        }
+        return headers;
+    }
+
+    /**
+     * Registra os validadores da resposta como pendentes, até a chamada de commit()
+     */
+    public synchronized void stageValidators(URL url, HttpTransport.Response response) {
+        String etag = response.getHeader(HEADER_ETAG);
+        String lastModified = response.getHeader(HEADER_LAST_MODIFIED);
+        mPendingValidators.put(url.toString(), new String[]{etag, lastModified});
+    }
+
+    /**
+     * Persiste os validadores pendentes. Respostas sem nenhum validador apagam o que estava
+     * guardado, já que não há como condicionar a próxima requisição.
+     */
+    public synchronized void commit() {
+        if (mPendingValidators.isEmpty()) return;
+
+        SharedPreferences.Editor editor = mPreferences.edit();
+        for (Map.Entry<String, String[]> entry : mPendingValidators.entrySet()) {
+            putOrRemove(editor, ETAG_PREFIX_KEY + entry.getKey(), entry.getValue()[0]);
+            putOrRemove(editor, LAST_MODIFIED_PREFIX_KEY + entry.getKey(), entry.getValue()[1]);
+        }
+        editor.apply();
+        mPendingValidators.clear();
+    }
+
+    /**
+     * Descarta todos os validadores, pendentes ou guardados, forçando a próxima sincronização
+     * a baixar tudo novamente.
+     */
+    public synchronized void clear() {
+        mPendingValidators.clear();
+        mPreferences.edit().clear().apply();
+    }
+
+    void recordHit() {
+        mHits.incrementAndGet();
+    }
+
+    void recordMiss() {
+        mMisses.incrementAndGet();
+    }
+
+    public int getHitCount() {
+        return mHits.get();
+    }
+
+    public int getMissCount() {
+        return mMisses.get();
+    }
+
+    private static void putOrRemove(SharedPreferences.Editor editor, String key, String value) {
+        if (value == null) {
+            editor.remove(key);
+        } else {
+            editor.putString(key, value);
+        }
+    }
+}
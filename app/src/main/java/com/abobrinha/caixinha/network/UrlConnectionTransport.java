@@ -0,0 +1,175 @@
+package com.abobrinha.caixinha.network;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Implementação de produção do HttpTransport sobre HttpURLConnection.
+ *
+ * - As conexões nunca são desconectadas explicitamente: o corpo é lido até o fim e fechado, o
+ * que devolve o socket ao pool de keep-alive para as próximas páginas.
+ * - Solicita respostas compactadas (gzip) e as descompacta manualmente, de forma que os bytes
+ * contabilizados sejam os bytes realmente trafegados.
+ * - Aplica timeouts de conexão e de leitura, evitando que a sincronização fique presa.
+ */
+public class UrlConnectionTransport implements HttpTransport {
+
+    private static final int CONNECT_TIMEOUT_MS = 15000;
+    private static final int READ_TIMEOUT_MS = 30000;
+
+    private static final String HEADER_ACCEPT_ENCODING = "Accept-Encoding";
+    private static final String HEADER_CONTENT_ENCODING = "Content-Encoding";
+    private static final String ENCODING_GZIP = "gzip";
+
+    private static final int DRAIN_BUFFER_SIZE = 4096;
+
+    private final AtomicLong mRequests = new AtomicLong();
+    private final AtomicLong mBytesReceived = new AtomicLong();
+    private final AtomicLong mBytesDecoded = new AtomicLong();
+
+    @Override
+    public Response get(URL url, Map<String, String> requestHeaders) throws IOException {
+        HttpURLConnection urlConnection = (HttpURLConnection) url.openConnection();
+        urlConnection.setConnectTimeout(CONNECT_TIMEOUT_MS);
+        urlConnection.setReadTimeout(READ_TIMEOUT_MS);
+        urlConnection.setRequestProperty(HEADER_ACCEPT_ENCODING, ENCODING_GZIP);
+        for (Map.Entry<String, String> header : requestHeaders.entrySet()) {
+            urlConnection.setRequestProperty(header.getKey(), header.getValue());
+        }
+
+        mRequests.incrementAndGet();
+
+        int code;
+        try {
+            code = urlConnection.getResponseCode();
+        } catch (IOException e) {
+            urlConnection.disconnect();
+            throw e;
+        }
+
+        if (code >= HttpURLConnection.HTTP_BAD_REQUEST) {
+            // Descarta o corpo do erro para que a conexão possa ser reaproveitada
+            drainAndClose(urlConnection.getErrorStream());
+            throw new IOException("Resposta HTTP " + code + " para " + url);
+        }
+
+        return new UrlConnectionResponse(urlConnection, code);
+    }
+
+    // Quantidade de requisições realizadas
+    public long getRequestCount() {
+        return mRequests.get();
+    }
+
+    // Bytes de corpo recebidos pela rede (compactados, quando for o caso)
+    public long getBytesReceived() {
+        return mBytesReceived.get();
+    }
+
+    // Bytes de corpo após a descompactação
+    public long getBytesDecoded() {
+        return mBytesDecoded.get();
+    }
+
+    private static void drainAndClose(InputStream in) throws IOException {
+        if (in == null) return;
+        try {
+            byte[] buffer = new byte[DRAIN_BUFFER_SIZE];
+            while (in.read(buffer) != -1) {
+                // Apenas consome o restante do corpo
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    private class UrlConnectionResponse implements Response {
+        private final HttpURLConnection mUrlConnection;
+        private final int mCode;
+        private InputStream mBody;
+
+        UrlConnectionResponse(HttpURLConnection urlConnection, int code) {
+            mUrlConnection = urlConnection;
+            mCode = code;
+        }
+
+        @Override
+        public int getCode() {
+            return mCode;
+        }
+
+        @Override
+        public String getHeader(String name) {
+            return mUrlConnection.getHeaderField(name);
+        }
+
+        @Override
+        public InputStream getBody() throws IOException {
+            if (mBody != null) return mBody;
+
+            if (mCode == HttpURLConnection.HTTP_NOT_MODIFIED ||
+                    mCode == HttpURLConnection.HTTP_NO_CONTENT) {
+                mBody = new ByteArrayInputStream(new byte[0]);
+                return mBody;
+            }
+
+            InputStream in = new CountingInputStream(mUrlConnection.getInputStream(),
+                    mBytesReceived);
+            if (ENCODING_GZIP.equalsIgnoreCase(getHeader(HEADER_CONTENT_ENCODING))) {
+                in = new GZIPInputStream(in);
+            }
+
+            mBody = new BufferedInputStream(new CountingInputStream(in, mBytesDecoded));
+            return mBody;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                drainAndClose(getBody());
+            } catch (IOException e) {
+                // Não foi possível deixar a conexão em estado reaproveitável
+                mUrlConnection.disconnect();
+                throw e;
+            }
+        }
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+        private final AtomicLong mCounter;
+
+        CountingInputStream(InputStream in, AtomicLong counter) {
+            super(in);
+            mCounter = counter;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) mCounter.incrementAndGet();
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) throws IOException {
+            int read = super.read(buffer, offset, count);
+            if (read > 0) mCounter.addAndGet(read);
+            return read;
+        }
+
+        @Override
+        public long skip(long count) throws IOException {
+            long skipped = super.skip(count);
+            if (skipped > 0) mCounter.addAndGet(skipped);
+            return skipped;
+        }
+    }
+}
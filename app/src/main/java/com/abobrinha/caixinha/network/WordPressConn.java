@@ -6,16 +6,34 @@ import android.net.ConnectivityManager;
 import android.net.NetworkInfo;
 import android.net.Uri;
 
+import androidx.annotation.VisibleForTesting;
+import androidx.core.net.ConnectivityManagerCompat;
+
+import com.abobrinha.caixinha.R;
+import com.abobrinha.caixinha.data.HistoryContract;
+
 import org.json.JSONException;
 
 import java.io.IOException;
-import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.Reader;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Scanner;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class WordPressConn {
 
@@ -30,26 +48,81 @@ public class WordPressConn {
     public final static String CATEGORY_VALUE = "historias-infantis-abobrinha";
 
     private final static String FIELDS_PARAM = "fields";
+    private final static String ORDER_BY_PARAM = "order_by";
+    private final static String ORDER_BY_MODIFIED = "modified";
+    private final static String ORDER_BY_ID = "ID";
     private final static int RESULTS_PER_PAGE = 100;
 
+    // A partir desta quantidade de histórias alteradas, é mais barato baixar as páginas completas
+    private final static int MAX_SINGLE_HISTORY_REQUESTS = 5;
+
+    // Quantidade máxima de páginas baixadas simultaneamente
+    private final static int MAX_CONCURRENT_PAGES = 3;
+
+    /*
+     * Retornado por getMetadataFromAllApiPages quando o servidor indica que nada mudou desde a
+     * última sincronização concluída.
+     */
+    public final static ContentValues[] NOT_MODIFIED = new ContentValues[0];
+
+    private static String sBaseUrl = WORDPRESS_BASE_URL;
+    private static HttpTransport sTransport = new UrlConnectionTransport();
 
     private WordPressConn() {
     }
 
+    // Permite apontar as consultas para um servidor local nos testes
+    @VisibleForTesting
+    static void setBaseUrl(String baseUrl) {
+        sBaseUrl = baseUrl;
+    }
+
+    public static HttpTransport getTransport() {
+        return sTransport;
+    }
+
+    // Permite substituir a camada HTTP, por exemplo para medir o tráfego nos testes
+    @VisibleForTesting
+    static void setTransport(HttpTransport transport) {
+        sTransport = transport;
+    }
+
     /**
      * Contrói a URL para consultar o WordPress API
      * Ex: https://public-api.wordpress.com/rest/v1.1/sites/113100833/posts?category=historias-infantis-abobrinha&number=100&fields=ID,date,modified,title,URL,featured_image,content
      */
-    private static URL buildUrl(int results_per_page, int page) {
-        Uri builtUri = Uri.parse(WORDPRESS_BASE_URL).buildUpon()
+    private static URL buildUrl(String fields, String orderBy, int results_per_page, int page) {
+        Uri.Builder builder = Uri.parse(sBaseUrl).buildUpon()
                 .appendPath(WORDPRESS_ABOBRINHA_ID)
                 .appendPath(WORDPRESS_POSTS)
-                .appendQueryParameter(FIELDS_PARAM, WordPressJson.getJsonHistoryFields())
+                .appendQueryParameter(FIELDS_PARAM, fields)
                 .appendQueryParameter(CATEGORY_PARAM, CATEGORY_VALUE)
                 .appendQueryParameter(NUMBER_PARAM, Integer.toString(results_per_page))
-                .appendQueryParameter(PAGE_PARAM, Integer.toString(page))
+                .appendQueryParameter(PAGE_PARAM, Integer.toString(page));
+
+        if (orderBy != null) {
+            builder.appendQueryParameter(ORDER_BY_PARAM, orderBy);
+        }
+
+        return toUrl(builder.build());
+    }
+
+    /**
+     * Contrói a URL para consultar uma única história no WordPress API
+     * Ex: https://public-api.wordpress.com/rest/v1.1/sites/113100833/posts/2436?fields=ID,date,modified,title,URL,featured_image,content
+     */
+    private static URL buildSingleHistoryUrl(long historyId, String fields) {
+        Uri builtUri = Uri.parse(sBaseUrl).buildUpon()
+                .appendPath(WORDPRESS_ABOBRINHA_ID)
+                .appendPath(WORDPRESS_POSTS)
+                .appendPath(Long.toString(historyId))
+                .appendQueryParameter(FIELDS_PARAM, fields)
                 .build();
 
+        return toUrl(builtUri);
+    }
+
+    private static URL toUrl(Uri builtUri) {
         URL url = null;
         try {
             url = new URL(builtUri.toString());
@@ -60,52 +133,272 @@ public class WordPressConn {
         return url;
     }
 
+    private static Reader openReader(HttpTransport.Response response) throws IOException {
+        return new InputStreamReader(response.getBody(), "UTF-8");
+    }
+
     /**
-     * Retorna a string JSON com o resultado de uma página específica da consulta ao WordPress.
+     * Lê uma página específica da consulta ao WordPress diretamente do stream da conexão,
+     * entregando cada história ao listener à medida que é lida.
+     *
+     * Se conditional for verdadeiro, envia os validadores (ETag / Last-Modified) guardados da
+     * última sincronização e retorna null caso o servidor responda 304 (Not Modified).
      */
-    private static String getResponseFromApiPage(int results_per_page, int page) throws IOException {
-        URL url = buildUrl(results_per_page, page);
-        HttpURLConnection urlConnection = (HttpURLConnection) url.openConnection();
+    private static WordPressJson.PageResult readApiPage(Context context, URL url,
+                                                        boolean conditional,
+                                                        WordPressJson.OnHistoryReadListener listener)
+            throws IOException, JSONException {
+        HttpValidatorCache validatorCache = HttpValidatorCache.getInstance(context);
+        Map<String, String> requestHeaders = conditional
+                ? validatorCache.getValidators(url)
+                : Collections.<String, String>emptyMap();
+
+        HttpTransport.Response response = sTransport.get(url, requestHeaders);
         try {
-            InputStream in = urlConnection.getInputStream();
+            if (conditional) {
+                if (response.getCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                    validatorCache.recordHit();
+                    return null;
+                }
+                validatorCache.recordMiss();
+            }
 
-            Scanner scanner = new Scanner(in);
-            scanner.useDelimiter("\\A");
+            WordPressJson.PageResult result =
+                    WordPressJson.readHistories(context, openReader(response), listener);
 
-            boolean hasInput = scanner.hasNext();
-            if (hasInput) {
-                return scanner.next();
-            } else {
-                return null;
+            if (conditional) {
+                validatorCache.stageValidators(url, response);
             }
+
+            return result;
         } finally {
-            urlConnection.disconnect();
+            response.close();
+        }
+    }
+
+    private static ContentValues readSingleHistory(Context context, long historyId, String fields)
+            throws IOException, JSONException {
+        URL url = buildSingleHistoryUrl(historyId, fields);
+        HttpTransport.Response response =
+                sTransport.get(url, Collections.<String, String>emptyMap());
+        try {
+            return WordPressJson.readSingleHistory(context, openReader(response));
+        } finally {
+            response.close();
         }
     }
 
     /*
-     * Retorna todos os dados de todas as páginas de resultados da API do WordPress
+     * Percorre todas as páginas de resultados da API do WordPress com os campos informados,
+     * entregando cada história ao listener, sempre na ordem das páginas e na thread chamadora.
+     *
+     * A primeira página é lida sozinha para descobrir o total de histórias ("found") e, com isso,
+     * a quantidade exata de páginas. As demais são baixadas em paralelo, com no máximo
+     * MAX_CONCURRENT_PAGES requisições simultâneas e, no máximo, essa mesma quantidade de
+     * páginas aguardando em memória para serem entregues. Retorna a quantidade total de
+     * histórias lidas e o total informado pela primeira página, ou null se a primeira página não
+     * foi modificada desde a última sincronização (HTTP 304).
      */
-    public static ContentValues[] getDataFromAllApiPages(Context context)
+    private static WordPressJson.PageResult readAllApiPages(final Context context, final String fields,
+                                       final String orderBy, boolean conditional,
+                                       WordPressJson.OnHistoryReadListener listener)
             throws IOException, JSONException {
-        List<ContentValues> dataRetrieved = new ArrayList<>();
-        for (int page = 1; page <= 99999; page++) {
-            String searchResults = WordPressConn.getResponseFromApiPage(RESULTS_PER_PAGE, page);
-            if (searchResults == null) {
-                return null;
+        WordPressJson.PageResult firstPage = readApiPage(context,
+                buildUrl(fields, orderBy, RESULTS_PER_PAGE, 1), conditional, listener);
+        if (firstPage == null) return null;
+        if (firstPage.historiesRead == 0) return firstPage;
+
+        int historiesRead = firstPage.historiesRead;
+        int lastPage = 1;
+
+        if (firstPage.found != WordPressJson.PageResult.NOT_FOUND) {
+            int totalPages = (firstPage.found + RESULTS_PER_PAGE - 1) / RESULTS_PER_PAGE;
+            int lastPageSize = firstPage.historiesRead;
+
+            ExecutorService executor = Executors.newFixedThreadPool(MAX_CONCURRENT_PAGES);
+            try {
+                Deque<Future<List<ContentValues>>> pendingPages = new ArrayDeque<>();
+                int nextPage = 2;
+
+                while (nextPage <= totalPages || !pendingPages.isEmpty()) {
+                    while (nextPage <= totalPages && pendingPages.size() < MAX_CONCURRENT_PAGES) {
+                        final int page = nextPage++;
+                        pendingPages.add(executor.submit(new Callable<List<ContentValues>>() {
+                            @Override
+                            public List<ContentValues> call() throws Exception {
+                                return readApiPage(context,
+                                        buildUrl(fields, orderBy, RESULTS_PER_PAGE, page));
+                            }
+                        }));
+                    }
+
+                    List<ContentValues> pageData = getPageData(pendingPages.poll());
+                    for (ContentValues historyValues : pageData) {
+                        listener.onHistoryRead(historyValues);
+                    }
+
+                    historiesRead += pageData.size();
+                    lastPageSize = pageData.size();
+                    lastPage++;
+                }
+            } finally {
+                executor.shutdownNow();
             }
 
-            List<ContentValues> data = WordPressJson.getHistoriesFromJson(context, searchResults);
-            if (data == null) break;
+            // Histórias publicadas durante a leitura deslocam as páginas; apenas se a última
+            // página veio completa é necessário conferir se existe mais alguma.
+            if (lastPageSize < RESULTS_PER_PAGE) {
+                return new WordPressJson.PageResult(historiesRead, firstPage.found);
+            }
+        }
 
-            dataRetrieved.addAll(data);
+        for (int page = lastPage + 1; page <= 99999; page++) {
+            int pageSize = readApiPage(context,
+                    buildUrl(fields, orderBy, RESULTS_PER_PAGE, page), false, listener)
+                    .historiesRead;
+            if (pageSize == 0) break;
+
+            historiesRead += pageSize;
+        }
+
+        return new WordPressJson.PageResult(historiesRead, firstPage.found);
+    }
+
+    /*
+     * Lê uma página inteira em memória. Utilizado apenas pelas páginas baixadas em paralelo, que
+     * precisam aguardar a entrega das anteriores.
+     */
+    private static List<ContentValues> readApiPage(Context context, URL url)
+            throws IOException, JSONException {
+        final List<ContentValues> pageData = new ArrayList<>(RESULTS_PER_PAGE);
+        readApiPage(context, url, false,
+                new WordPressJson.OnHistoryReadListener() {
+                    @Override
+                    public void onHistoryRead(ContentValues historyValues) {
+                        pageData.add(historyValues);
+                    }
+                });
+        return pageData;
+    }
+
+    private static List<ContentValues> getPageData(Future<List<ContentValues>> pendingPage)
+            throws IOException, JSONException {
+        try {
+            return pendingPage.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Leitura das páginas interrompida.");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof JSONException) throw (JSONException) cause;
+            throw new RuntimeException(cause);
+        }
+    }
+
+    /*
+     * Retorna apenas ID, data de criação e data de modificação de todas as histórias da API do
+     * WordPress, sem o conteúdo HTML, para que a sincronização possa identificar o que mudou.
+     *
+     * Os metadados são ordenados pela data de modificação, de forma que qualquer história nova,
+     * alterada ou removida na fonte altera a primeira página (inclusive o total "found"). Assim,
+     * com conditional verdadeiro, basta uma requisição condicional da primeira página: se o
+     * servidor responder 304, retorna NOT_MODIFIED sem ler nenhuma outra página.
+     *
+     * A sincronização remove da base as histórias ausentes da listagem, então ela precisa estar
+     * completa. Uma história alterada durante a leitura passa para a primeira página, já lida, e
+     * desloca as seguintes, ficando fora da listagem. Nesse caso (menos histórias distintas que
+     * o "found"), a listagem é refeita ordenada pelo ID, que não muda com as alterações. Se
+     * ainda assim estiver incompleta (histórias removidas durante a leitura), lança IOException
+     * e nada é sincronizado.
+     */
+    public static ContentValues[] getMetadataFromAllApiPages(Context context, boolean conditional)
+            throws IOException, JSONException {
+        final Map<Long, ContentValues> dataRetrieved = new LinkedHashMap<>();
+        WordPressJson.OnHistoryReadListener listener = new WordPressJson.OnHistoryReadListener() {
+            @Override
+            public void onHistoryRead(ContentValues historyValues) {
+                dataRetrieved.put(historyValues.getAsLong(HistoryContract.HistoriesEntry._ID),
+                        historyValues);
+            }
+        };
+
+        WordPressJson.PageResult listing = readAllApiPages(context,
+                WordPressJson.getJsonMetadataFields(), ORDER_BY_MODIFIED, conditional, listener);
+
+        if (listing == null) {
+            return NOT_MODIFIED;
+        }
+
+        if (listing.found != dataRetrieved.size()) {
+            dataRetrieved.clear();
+            listing = readAllApiPages(context, WordPressJson.getJsonMetadataFields(),
+                    ORDER_BY_ID, false, listener);
+
+            if (listing.found != WordPressJson.PageResult.NOT_FOUND &&
+                    listing.found != dataRetrieved.size()) {
+                throw new IOException("Histórias alteradas durante a leitura da listagem.");
+            }
         }
 
         if (dataRetrieved.size() == 0) {
             return null;
         }
 
-        return dataRetrieved.toArray(new ContentValues[0]);
+        return dataRetrieved.values().toArray(new ContentValues[0]);
+    }
+
+    /*
+     * Lê os dados completos apenas das histórias informadas, entregando-as uma a uma ao
+     * listener. Se forem poucas, cada uma é consultada individualmente; caso contrário, é mais
+     * barato percorrer as páginas completas e filtrar apenas os ID's desejados.
+     */
+    public static void readHistoriesById(final Context context, final Collection<Long> historyIds,
+                                         final WordPressJson.OnHistoryReadListener listener)
+            throws IOException, JSONException {
+        if (historyIds.isEmpty()) return;
+
+        if (historyIds.size() <= MAX_SINGLE_HISTORY_REQUESTS) {
+            for (long historyId : historyIds) {
+                ContentValues data = readSingleHistory(context, historyId,
+                        WordPressJson.getJsonHistoryFields());
+                WordPressJson.checkCompleteHistory(context, data);
+                listener.onHistoryRead(data);
+            }
+        } else {
+            readAllApiPages(context, WordPressJson.getJsonHistoryFields(), null, false,
+                    new WordPressJson.OnHistoryReadListener() {
+                        @Override
+                        public void onHistoryRead(ContentValues historyValues)
+                                throws IOException, JSONException {
+                            if (historyIds.contains(
+                                    historyValues.getAsLong(HistoryContract.HistoriesEntry._ID))) {
+                                WordPressJson.checkCompleteHistory(context, historyValues);
+                                listener.onHistoryRead(historyValues);
+                            }
+                        }
+                    });
+        }
+    }
+
+    /*
+     * Baixa apenas o conteúdo HTML de uma história, para as histórias sincronizadas somente com
+     * os dados da listagem. Retorna null caso a API não retorne o conteúdo.
+     */
+    public static String readHistoryContent(Context context, long historyId)
+            throws IOException, JSONException {
+        ContentValues data = readSingleHistory(context, historyId,
+                WordPressJson.getJsonContentFields());
+        return data.getAsString(context.getString(R.string.history_raw_content));
+    }
+
+    /*
+     * Confirma os validadores HTTP recebidos durante a sincronização. Deve ser chamado apenas
+     * após a base local refletir os dados baixados, caso contrário uma sincronização que falhou
+     * no meio poderia ser considerada atualizada na próxima execução.
+     */
+    public static void commitValidators(Context context) {
+        HttpValidatorCache.getInstance(context).commit();
     }
 
     public static boolean isNetworkAvailable(Context c) {
@@ -116,4 +409,12 @@ public class WordPressConn {
         return activeNetwork != null &&
                 activeNetwork.isConnectedOrConnecting();
     }
+
+    // Rede conectada e sem cobrança por uso (ex: Wi-Fi), adequada para baixar conteúdo antecipadamente
+    public static boolean isNetworkUnmetered(Context c) {
+        ConnectivityManager cm =
+                (ConnectivityManager) c.getSystemService(Context.CONNECTIVITY_SERVICE);
+
+        return isNetworkAvailable(c) && !ConnectivityManagerCompat.isActiveNetworkMetered(cm);
+    }
 }
\ No newline at end of file
@@ -2,29 +2,27 @@ package com.abobrinha.caixinha.network;
 
 import android.content.ContentValues;
 import android.content.Context;
-import android.text.TextUtils;
 
 import com.abobrinha.caixinha.R;
+import com.abobrinha.caixinha.core.IsoDateParser;
+import com.abobrinha.caixinha.core.WordPressFormatException;
+import com.abobrinha.caixinha.core.WordPressPageReader;
 import com.abobrinha.caixinha.data.HistoryContract;
 
-import org.json.JSONArray;
 import org.json.JSONException;
-import org.json.JSONObject;
 
-import java.text.SimpleDateFormat;
-import java.util.ArrayList;
-import java.util.Date;
-import java.util.List;
+import java.io.IOException;
+import java.io.Reader;
 
 public class WordPressJson {
 
-    private final static String WORDPRESS_POST_ID = "ID";
-    private final static String WORDPRESS_POST_DATE = "date";
-    private final static String WORDPRESS_POST_MODIFIED = "modified";
-    private final static String WORDPRESS_POST_TITLE = "title";
-    private final static String WORDPRESS_POST_URL = "URL";
-    private final static String WORDPRESS_POST_IMAGE = "featured_image";
-    private final static String WORDPRESS_POST_CONTENT = "content";
+    private final static String WORDPRESS_POST_ID = WordPressPageReader.FIELD_ID;
+    private final static String WORDPRESS_POST_DATE = WordPressPageReader.FIELD_DATE;
+    private final static String WORDPRESS_POST_MODIFIED = WordPressPageReader.FIELD_MODIFIED;
+    private final static String WORDPRESS_POST_TITLE = WordPressPageReader.FIELD_TITLE;
+    private final static String WORDPRESS_POST_URL = WordPressPageReader.FIELD_URL;
+    private final static String WORDPRESS_POST_IMAGE = WordPressPageReader.FIELD_IMAGE;
+    private final static String WORDPRESS_POST_CONTENT = WordPressPageReader.FIELD_CONTENT;
 
     private WordPressJson() {
     }
@@ -43,69 +41,125 @@ public class WordPressJson {
                 WORDPRESS_POST_CONTENT;
     }
 
-    public static List<ContentValues> getHistoriesFromJson(Context context, String historiesJsonStr)
-            throws JSONException {
+    /*
+     * Retorna os campos necessários para a listagem das histórias e para identificar histórias
+     * novas, modificadas ou removidas na fonte, sem o conteúdo HTML. Utilizado na primeira etapa
+     * da sincronização incremental.
+     */
+    public static String getJsonMetadataFields() {
+        return WORDPRESS_POST_ID + "," +
+                WORDPRESS_POST_DATE + "," +
+                WORDPRESS_POST_MODIFIED + "," +
+                WORDPRESS_POST_TITLE + "," +
+                WORDPRESS_POST_URL + "," +
+                WORDPRESS_POST_IMAGE;
+    }
 
-        final String WORDPRESS_RESULTS = "posts";
-        final String WORDPRESS_ERROR_TYPE = "error";
-        final String WORDPRESS_ERROR_MESSAGE = "message";
+    /*
+     * Retorna apenas os campos necessários para baixar o conteúdo de uma história já listada.
+     */
+    public static String getJsonContentFields() {
+        return WORDPRESS_POST_ID + "," +
+                WORDPRESS_POST_DATE + "," +
+                WORDPRESS_POST_MODIFIED + "," +
+                WORDPRESS_POST_CONTENT;
+    }
 
-        if (TextUtils.isEmpty(historiesJsonStr)) {
-            return null;
-        }
+    /*
+     * Interface para receber as histórias uma a uma, à medida que são lidas do JSON, sem que a
+     * página inteira precise ser carregada em memória.
+     */
+    public interface OnHistoryReadListener {
+        void onHistoryRead(ContentValues historyValues) throws IOException, JSONException;
+    }
 
-        JSONObject baseJsonResponse = new JSONObject(historiesJsonStr);
-        if (baseJsonResponse.has(WORDPRESS_ERROR_TYPE)) {
-            String errorType = baseJsonResponse.getString(WORDPRESS_ERROR_TYPE);
-            String errorMessage = baseJsonResponse.getString(WORDPRESS_ERROR_MESSAGE);
-            throw new JSONException(String.format("API Error (%s): %s", errorType, errorMessage));
-        }
+    /*
+     * Resumo de uma página lida: a quantidade de posts da página e o total de posts encontrados
+     * na consulta (campo "found" da API), ou NOT_FOUND caso a API não o tenha informado.
+     */
+    public static class PageResult {
+        public static final int NOT_FOUND = WordPressPageReader.NOT_FOUND;
 
-        JSONArray historyArray = baseJsonResponse.getJSONArray(WORDPRESS_RESULTS);
+        public final int historiesRead;
+        public final int found;
 
-        if (historyArray == null || historyArray.length() == 0) return null;
+        PageResult(int historiesRead, int found) {
+            this.historiesRead = historiesRead;
+            this.found = found;
+        }
+    }
 
-        List<ContentValues> historiesValues = new ArrayList<>();
+    /*
+     * Lê uma página de resultados da API diretamente do stream, entregando cada post ao listener
+     * assim que é lido. O pico de memória fica limitado a um único post, em vez da página inteira.
+     */
+    public static PageResult readHistories(Context context, Reader in,
+                                           OnHistoryReadListener listener)
+            throws IOException, JSONException {
+        final String rawContentKey = context.getString(R.string.history_raw_content);
+        WordPressPageReader reader = new WordPressPageReader(in);
+        int historiesRead = 0;
 
-        for (int i = 0; i < historyArray.length(); i++) {
-            JSONObject currentHistory = historyArray.getJSONObject(i);
+        try {
+            HistoryValuesRow row = new HistoryValuesRow(rawContentKey);
+            while (reader.nextPost(row)) {
+                listener.onHistoryRead(row.getValues());
+                historiesRead++;
+                row = new HistoryValuesRow(rawContentKey);
+            }
+        } catch (WordPressFormatException e) {
+            throw new JSONException(e.getMessage());
+        }
 
-            long id = currentHistory.getLong(WORDPRESS_POST_ID);
-            String title = currentHistory.getString(WORDPRESS_POST_TITLE);
-            String urlHistory = currentHistory.getString(WORDPRESS_POST_URL);
-            String urlImage = currentHistory.getString(WORDPRESS_POST_IMAGE);
-            String content = currentHistory.getString(WORDPRESS_POST_CONTENT);
-            long dateCreatedInMillis = dateInMillis(currentHistory.getString(WORDPRESS_POST_DATE));
-            long dateModifiedInMillis =
-                    dateInMillis(currentHistory.optString(WORDPRESS_POST_MODIFIED));
+        return new PageResult(historiesRead, reader.getFound());
+    }
 
-            ContentValues historyValues = new ContentValues();
-            historyValues.put(HistoryContract.HistoriesEntry._ID, id);
-            historyValues.put(HistoryContract.HistoriesEntry.COLUMN_HISTORY_TITLE, title);
-            historyValues.put(HistoryContract.HistoriesEntry.COLUMN_HISTORY_URL, urlHistory);
-            historyValues.put(HistoryContract.HistoriesEntry.COLUMN_HISTORY_IMAGE, urlImage);
-            historyValues.put(HistoryContract.HistoriesEntry.COLUMN_HISTORY_DATE, dateCreatedInMillis);
-            historyValues.put(HistoryContract.HistoriesEntry.COLUMN_HISTORY_MODIFIED, dateModifiedInMillis);
-            historyValues.put(context.getString(R.string.history_raw_content), content);
+    /*
+     * Lê uma única história, consultada diretamente pelo seu ID na API.
+     */
+    public static ContentValues readSingleHistory(Context context, Reader in)
+            throws IOException, JSONException {
+        HistoryValuesRow row =
+                new HistoryValuesRow(context.getString(R.string.history_raw_content));
+        try {
+            WordPressPageReader.readSinglePost(in, row);
+        } catch (WordPressFormatException e) {
+            throw new JSONException(e.getMessage());
+        }
+        return row.getValues();
+    }
 
-            historiesValues.add(historyValues);
+    /*
+     * Garante que um post lido com todos os campos de getJsonHistoryFields possa ser inserido
+     * na base, evitando que um JSON incompleto só seja detectado pelas constraints do provider.
+     */
+    public static void checkCompleteHistory(Context context, ContentValues historyValues)
+            throws JSONException {
+        if (historyValues.getAsString(HistoryContract.HistoriesEntry.COLUMN_HISTORY_TITLE) == null ||
+                historyValues.getAsString(HistoryContract.HistoriesEntry.COLUMN_HISTORY_URL) == null ||
+                historyValues.getAsString(context.getString(R.string.history_raw_content)) == null) {
+            throw new JSONException("Post incompleto: " +
+                    historyValues.getAsLong(HistoryContract.HistoriesEntry._ID));
         }
+    }
 
-        return historiesValues;
+    /*
+     * Garante que um post lido com os campos de getJsonMetadataFields possa ser inserido na base
+     * apenas com os dados da listagem.
+     */
+    public static void checkListedHistory(ContentValues historyValues) throws JSONException {
+        if (historyValues.getAsString(HistoryContract.HistoriesEntry.COLUMN_HISTORY_TITLE) == null ||
+                historyValues.getAsString(HistoryContract.HistoriesEntry.COLUMN_HISTORY_URL) == null) {
+            throw new JSONException("Post incompleto: " +
+                    historyValues.getAsLong(HistoryContract.HistoriesEntry._ID));
+        }
     }
 
     /**
-     * Converte uma data em String para milisegundos
+     * Converte uma data em String para milisegundos, ou -1 se a data for inválida
      * Ex de data retornada pela API: "2017-05-06T08:00:19-03:00"
      */
     public static long dateInMillis(String dateString) {
-        SimpleDateFormat formatter;
-        formatter = new SimpleDateFormat("yyyy-MM-dd'T'hh:mm:ssZ");
-        try {
-            Date date = formatter.parse(dateString.replaceFirst(":(?=[0-9]{2}$)", ""));
-            return date.getTime();
-        } catch (java.text.ParseException e) {
-            return -1;
-        }
+        return IsoDateParser.parse(dateString);
     }
 }
\ No newline at end of file
@@ -0,0 +1,78 @@
+package com.abobrinha.caixinha.sync;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Relatório de uma sincronização, registrado no log ao seu final: tempo de cada etapa (rede,
+ * parsing ou escrita na base) e quantas histórias tiveram o conteúdo regravado ou mantido por
+ * não ter mudado (mesmo hash do HTML).
+ *
+ * O tempo de parsing é a soma do tempo de CPU de todas as threads do ParagraphParseStage e
+ * por isso pode ser maior que o tempo total da etapa de conteúdo, que é medido de ponta a ponta.
+ */
+public class HistorySyncReport {
+
+    public static final String STAGE_LOCAL_QUERY = "consulta local";
+    public static final String STAGE_METADATA = "metadados";
+    public static final String STAGE_LIST_WRITE = "gravação da listagem";
+    public static final String STAGE_CONTENT = "conteúdo";
+    public static final String STAGE_CONTENT_PARSE = "parsing do conteúdo";
+    public static final String STAGE_CONTENT_WRITE = "gravação do conteúdo";
+
+    private final Map<String, Long> mStageNanos = new LinkedHashMap<>();
+    private int mContentRewritten = 0;
+    private int mContentSkipped = 0;
+
+    /*
+     * Soma ao tempo da etapa o intervalo entre startNanos (System.nanoTime) e agora.
+     */
+    void record(String stage, long startNanos) {
+        add(stage, System.nanoTime() - startNanos);
+    }
+
+    void add(String stage, long nanos) {
+        Long current = mStageNanos.get(stage);
+        mStageNanos.put(stage, current == null ? nanos : current + nanos);
+    }
+
+    void addContentRewritten() {
+        mContentRewritten++;
+    }
+
+    void addContentSkipped() {
+        mContentSkipped++;
+    }
+
+    public boolean hasStage(String stage) {
+        return mStageNanos.containsKey(stage);
+    }
+
+    public long getStageMillis(String stage) {
+        Long nanos = mStageNanos.get(stage);
+        return nanos == null ? 0 : TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    // Histórias cujo conteúdo foi parseado e regravado
+    public int getContentRewritten() {
+        return mContentRewritten;
+    }
+
+    // Histórias cujo conteúdo baixado era igual ao já gravado
+    public int getContentSkipped() {
+        return mContentSkipped;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        for (String stage : mStageNanos.keySet()) {
+            builder.append(stage).append(": ").append(getStageMillis(stage)).append(" ms, ");
+        }
+        builder.append(String.format(Locale.US, "conteúdo regravado: %d, conteúdo mantido: %d",
+                mContentRewritten, mContentSkipped));
+        return builder.toString();
+    }
+}
@@ -1,90 +1,184 @@
 package com.abobrinha.caixinha.sync;
 
+import android.content.ContentProviderOperation;
 import android.content.ContentValues;
 import android.content.Context;
+import android.content.OperationApplicationException;
 import android.database.Cursor;
 import android.net.Uri;
+import android.os.RemoteException;
+import android.text.TextUtils;
 import android.util.Log;
 
 import com.abobrinha.caixinha.data.HistoryContract;
 import com.abobrinha.caixinha.data.PreferencesUtils;
 import com.abobrinha.caixinha.network.WordPressConn;
+import com.abobrinha.caixinha.network.WordPressJson;
 
 import org.json.JSONException;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 
 public class HistorySyncTask {
 
     private final static String LOG_TAG = HistorySyncTask.class.getSimpleName();
 
+    private final static String[] LOCAL_HISTORIES_PROJECTION = {
+            HistoryContract.HistoriesEntry._ID,
+            HistoryContract.HistoriesEntry.COLUMN_HISTORY_MODIFIED,
+            HistoryContract.HistoriesEntry.COLUMN_CONTENT_FETCHED,
+            HistoryContract.HistoriesEntry.COLUMN_CONTENT_HASH
+    };
+
+    private final static int INDEX_LOCAL_ID = 0;
+    private final static int INDEX_LOCAL_MODIFIED = 1;
+    private final static int INDEX_LOCAL_CONTENT_FETCHED = 2;
+    private final static int INDEX_LOCAL_CONTENT_HASH = 3;
+
+    // Limite seguro de parâmetros por comando no SQLite (SQLITE_MAX_VARIABLE_NUMBER = 999)
+    private final static int MAX_DELETE_ARGS = 500;
+
+    private static volatile HistorySyncReport sLastReport;
+
     /*
      *  Essa rotina sincroniza a base de dados com a API utilizando a seguinte estratégia:
-     * 1) Guardar os ID's das histórias marcadas como favoritas
-     * 2) Deletar todas as histórias da base
-     * 3) Recriar toda a base incluindo novas histórias
-     * 4) Restaurar as marcações prévias de favoritos
-     * 5) Indicar quantidade de novas histórias
+     * 1) Buscar apenas os dados da listagem (sem o conteúdo) na API, ordenados pela data de
+     * modificação. Se a base local não estiver vazia, a primeira página é requisitada de forma
+     * condicional (ETag / Last-Modified) e uma resposta 304 encerra a sincronização
+     * https://public-api.wordpress.com/rest/v1.1/sites/113100833/posts?category=historias-infantis-abobrinha&number=100&fields=ID,date,modified,title,URL,featured_image&order_by=modified
      *
-     * Todo: Idéias para melhor sincronia e otimizar tráfego de dados:
-     * 1) Inicialmente, buscar apenas os ID's e datas de criação e modificação na API
-     * https://public-api.wordpress.com/rest/v1.1/sites/113100833/posts?category=historias-infantis-abobrinha&number=100&fields=ID,date,modified
+     * 2) Comparar com a base e gerar lista dos ID's que estão diferentes ou ausentes e ID's que
+     * estão a mais na base (foram deletados na fonte)
      *
-     * 2) Comparar com a base e gerar lista dos ID's que estão diferentes ou ausentes e ID's que estão a mais na base (foram deletados na fonte)
+     * 3) Em uma única transação (applyBatch), deletar ID's a mais da base, inserir as ausentes e,
+     * nas modificadas, atualizar apenas os dados da listagem, preservando o status de favorito e
+     * os parágrafos destas. As telas e widgets são notificados uma única vez, ao final, e nunca
+     * veem a base pela metade
      *
-     * 3) Deletar ID's a mais da base
+     * 4) Com isso a tela principal já pode ser exibida
      *
-     * 4) Buscar dados completos de cada ID ausente ou modificado:
-     * https://public-api.wordpress.com/rest/v1.1/sites/113100833/posts/2436?fields=ID,date,modified,title,URL,featured_image,content
+     * 5) Indicar quantidade de novas histórias
+     *
+     * 6) Confirmar os validadores HTTP recebidos, somente após a base estar atualizada
      *
-     * 5) Inserir dados ausentes e atualizar os modificados
+     * 7) Se configurado para baixar tudo na sincronização, ou em redes sem cobrança por uso,
+     * baixar o conteúdo das histórias que ainda não o possuem:
+     * https://public-api.wordpress.com/rest/v1.1/sites/113100833/posts/2436?fields=ID,date,modified,title,URL,featured_image,content
+     * Caso contrário, o conteúdo é baixado pelo HistoryProvider ao abrir a história. Em ambos os
+     * casos, se o hash do conteúdo baixado for igual ao do já gravado, os parágrafos não são
+     * parseados nem regravados
      */
     synchronized public static void syncHistories(Context context) {
+        HistorySyncReport report = new HistorySyncReport();
         try {
             Log.i(LOG_TAG, "Sincronizando dados...");
             PreferencesUtils.setHistoryStatus(context, PreferencesUtils.HISTORY_STATUS_UNKNOWN);
 
-            ContentValues[] historiesValues = WordPressConn.getDataFromAllApiPages(context);
-            if (historiesValues == null) {
-                PreferencesUtils.setHistoryStatus(context, PreferencesUtils.HISTORY_STATUS_SERVER_DOWN);
-                return;
-            }
+            long stageStart = System.nanoTime();
 
             Uri allHistoriesUri = HistoryContract.HistoriesEntry.CONTENT_URI;
-            Uri favoritesUri = HistoryContract.HistoriesEntry.buildFavoritesUri();
 
-            String[] favoritesSaved = null;
+            Map<Long, Long> localModified = new HashMap<>();
+            Set<Long> localWithoutContent = new HashSet<>();
+            Map<Long, String> localHashes = new HashMap<>();
 
-            String[] projection = new String[]{HistoryContract.HistoriesEntry._ID};
             Cursor cursor = context.getContentResolver()
-                    .query(favoritesUri, projection, null, null, null);
+                    .query(allHistoriesUri, LOCAL_HISTORIES_PROJECTION, null, null, null);
 
-            if (cursor != null && cursor.moveToFirst()) {
-                int i = 0;
-                favoritesSaved = new String[cursor.getCount()];
+            if (cursor != null) {
+                while (cursor.moveToNext()) {
+                    long id = cursor.getLong(INDEX_LOCAL_ID);
+                    localModified.put(id, cursor.isNull(INDEX_LOCAL_MODIFIED) ? null :
+                            cursor.getLong(INDEX_LOCAL_MODIFIED));
+                    if (cursor.getInt(INDEX_LOCAL_CONTENT_FETCHED) ==
+                            HistoryContract.CONTENT_NOT_FETCHED) {
+                        localWithoutContent.add(id);
+                    }
+                    if (!cursor.isNull(INDEX_LOCAL_CONTENT_HASH)) {
+                        localHashes.put(id, cursor.getString(INDEX_LOCAL_CONTENT_HASH));
+                    }
+                }
+                cursor.close();
+            }
+            report.record(HistorySyncReport.STAGE_LOCAL_QUERY, stageStart);
 
-                do {
-                    favoritesSaved[i++] = cursor.getString(0);
-                } while (cursor.moveToNext());
+            // Sem histórias locais não há o que validar: a consulta deve trazer tudo
+            stageStart = System.nanoTime();
+            ContentValues[] remoteMetadata = WordPressConn.getMetadataFromAllApiPages(context,
+                    !localModified.isEmpty());
+            report.record(HistorySyncReport.STAGE_METADATA, stageStart);
+            if (remoteMetadata == WordPressConn.NOT_MODIFIED) {
+                Log.i(LOG_TAG, "Nenhuma alteração encontrada (HTTP 304).");
+                PreferencesUtils.setHistoryStatus(context, PreferencesUtils.HISTORY_STATUS_OK);
+                downloadPendingContent(context, localWithoutContent, localHashes, report);
+                return;
+            }
+            if (remoteMetadata == null) {
+                PreferencesUtils.setHistoryStatus(context, PreferencesUtils.HISTORY_STATUS_SERVER_DOWN);
+                return;
+            }
 
-                cursor.close();
+            Set<Long> remoteIds = new HashSet<>();
+            List<ContentValues> changedHistories = new ArrayList<>();
+            int newHistories = 0;
+
+            for (ContentValues metadata : remoteMetadata) {
+                long id = metadata.getAsLong(HistoryContract.HistoriesEntry._ID);
+                Long remoteModified =
+                        metadata.getAsLong(HistoryContract.HistoriesEntry.COLUMN_HISTORY_MODIFIED);
+                remoteIds.add(id);
+
+                if (!localModified.containsKey(id)) {
+                    WordPressJson.checkListedHistory(metadata);
+                    changedHistories.add(metadata);
+                    newHistories++;
+                } else if (!isSameDate(localModified.get(id), remoteModified)) {
+                    WordPressJson.checkListedHistory(metadata);
+                    changedHistories.add(metadata);
+                }
             }
 
-            int oldHistoryQuantity = context.getContentResolver()
-                    .delete(allHistoriesUri, null, null);
+            // A listagem está sempre completa (ver WordPressConn.getMetadataFromAllApiPages):
+            // as histórias ausentes foram removidas na fonte
+            List<Long> idsToDelete = new ArrayList<>();
+            for (long id : localModified.keySet()) {
+                if (!remoteIds.contains(id)) idsToDelete.add(id);
+            }
 
-            int newHistoryQuantity = context.getContentResolver()
-                    .bulkInsert(allHistoriesUri, historiesValues);
+            if (changedHistories.isEmpty() && idsToDelete.isEmpty()) {
+                Log.i(LOG_TAG, "Nenhuma alteração encontrada.");
+                WordPressConn.commitValidators(context);
+                PreferencesUtils.setHistoryStatus(context, PreferencesUtils.HISTORY_STATUS_OK);
+                downloadPendingContent(context, localWithoutContent, localHashes, report);
+                return;
+            }
 
-            if (favoritesSaved != null) {
-                context.getContentResolver().update(favoritesUri, null, null, favoritesSaved);
+            stageStart = System.nanoTime();
+            context.getContentResolver().applyBatch(HistoryContract.CONTENT_AUTHORITY,
+                    buildSyncOperations(idsToDelete, changedHistories));
+            localWithoutContent.removeAll(idsToDelete);
+            for (ContentValues historyValues : changedHistories) {
+                localWithoutContent.add(
+                        historyValues.getAsLong(HistoryContract.HistoriesEntry._ID));
             }
+            report.record(HistorySyncReport.STAGE_LIST_WRITE, stageStart);
+
+            Log.i(LOG_TAG, String.format("Sincronização concluída: %d alteradas, %d removidas.",
+                    changedHistories.size(), idsToDelete.size()));
+
+            WordPressConn.commitValidators(context);
 
             boolean notificationsEnabled = PreferencesUtils.areNotificationsEnabled(context);
 
-            if (notificationsEnabled && oldHistoryQuantity > 0 && newHistoryQuantity > oldHistoryQuantity) {
-                int newHistories = newHistoryQuantity - oldHistoryQuantity;
+            if (notificationsEnabled && !localModified.isEmpty() && newHistories > 0) {
                 NotificationUtils.notifyUserOfNewHistories(context, newHistories);
             }
 
@@ -92,10 +186,103 @@ public class HistorySyncTask {
 
             NotificationUtils.updateWidgets(context);
 
+            downloadPendingContent(context, localWithoutContent, localHashes, report);
+
         } catch (IOException e) {
             PreferencesUtils.setHistoryStatus(context, PreferencesUtils.HISTORY_STATUS_SERVER_DOWN);
         } catch (JSONException e) {
             PreferencesUtils.setHistoryStatus(context, PreferencesUtils.HISTORY_STATUS_SERVER_INVALID);
+        } catch (RemoteException | OperationApplicationException e) {
+            // A transação foi desfeita e a base local continua como antes da sincronização. O
+            // status de erro tira as telas do estado de carregamento, como nas falhas de leitura
+            Log.e(LOG_TAG, "Falha ao gravar a sincronização na base.", e);
+            PreferencesUtils.setHistoryStatus(context, PreferencesUtils.HISTORY_STATUS_SERVER_INVALID);
+        } finally {
+            Log.i(LOG_TAG, "Relatório da sincronização: " + report);
+            sLastReport = report;
         }
     }
+
+    /*
+     * Relatório (tempos por etapa e conteúdo regravado ou mantido) da última sincronização
+     * executada, ou null se nenhuma foi executada.
+     */
+    public static HistorySyncReport getLastReport() {
+        return sLastReport;
+    }
+
+    /*
+     * Segunda etapa da sincronização: baixa o conteúdo das histórias que ainda não o possuem,
+     * caso o usuário tenha optado por baixar tudo na sincronização ou a rede não tenha cobrança
+     * por uso. Falhas aqui não afetam o status da sincronização, pois o conteúdo ainda pode ser
+     * baixado ao abrir a história.
+     *
+     * O parsing do HTML é feito em paralelo pelo ParagraphParseStage, enquanto as próximas
+     * histórias ainda são baixadas, e o provider recebe os parágrafos prontos.
+     */
+    private static void downloadPendingContent(Context context, Set<Long> historyIds,
+                                               Map<Long, String> localHashes,
+                                               HistorySyncReport report) {
+        if (historyIds.isEmpty()) return;
+
+        if (!PreferencesUtils.isContentDownloadedOnSync(context) &&
+                !WordPressConn.isNetworkUnmetered(context)) {
+            return;
+        }
+
+        long stageStart = System.nanoTime();
+        ParagraphParseStage parseStage = new ParagraphParseStage(context, localHashes, report);
+        try {
+            WordPressConn.readHistoriesById(context, historyIds, parseStage);
+            parseStage.finish();
+            Log.i(LOG_TAG, String.format("Conteúdo de %d histórias baixado.",
+                    parseStage.getHistoriesWritten()));
+        } catch (IOException | JSONException e) {
+            Log.w(LOG_TAG, "Falha ao baixar o conteúdo das histórias.", e);
+        } finally {
+            parseStage.shutdown();
+            report.record(HistorySyncReport.STAGE_CONTENT, stageStart);
+        }
+    }
+
+    private static boolean isSameDate(Long localDate, Long remoteDate) {
+        return localDate == null ? remoteDate == null : localDate.equals(remoteDate);
+    }
+
+    /*
+     * Monta as operações da sincronização: remoção das histórias informadas (e seus parágrafos,
+     * em cascata) em lotes, respeitando o limite de parâmetros por comando do SQLite, seguida do
+     * upsert das histórias alteradas.
+     */
+    private static ArrayList<ContentProviderOperation> buildSyncOperations(
+            List<Long> idsToDelete, List<ContentValues> changedHistories) {
+        final Uri uri = HistoryContract.HistoriesEntry.CONTENT_URI;
+        ArrayList<ContentProviderOperation> operations =
+                new ArrayList<>(changedHistories.size() + 1);
+
+        for (int from = 0; from < idsToDelete.size(); from += MAX_DELETE_ARGS) {
+            List<Long> batch =
+                    idsToDelete.subList(from, Math.min(from + MAX_DELETE_ARGS, idsToDelete.size()));
+
+            String[] selectionArgs = new String[batch.size()];
+            for (int i = 0; i < batch.size(); i++) {
+                selectionArgs[i] = String.valueOf(batch.get(i));
+            }
+
+            String selection = HistoryContract.HistoriesEntry._ID + " IN (" +
+                    TextUtils.join(",", Collections.nCopies(batch.size(), "?")) + ")";
+
+            operations.add(ContentProviderOperation.newDelete(uri)
+                    .withSelection(selection, selectionArgs)
+                    .build());
+        }
+
+        for (ContentValues historyValues : changedHistories) {
+            operations.add(ContentProviderOperation.newInsert(uri)
+                    .withValues(historyValues)
+                    .build());
+        }
+
+        return operations;
+    }
 }
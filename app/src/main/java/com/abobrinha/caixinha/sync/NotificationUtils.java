@@ -31,6 +31,8 @@ public class NotificationUtils {
 
     private static final int HISTORY_NOTIFICATION_ID = 1234;
     public static final String ACTION_DATA_UPDATED = "com.abobrinha.caixinha.ACTION_DATA_UPDATED";
+    public static final String ACTION_FAVORITES_UPDATED =
+            "com.abobrinha.caixinha.ACTION_FAVORITES_UPDATED";
     public static final String CHANNEL_ID = "com.abobrinha.caixinha.notifications";
 
     /*
@@ -146,4 +148,14 @@ public class NotificationUtils {
                 .setPackage(context.getPackageName());
         context.sendBroadcast(dataUpdatedIntent);
     }
+
+    /*
+     * Atualiza apenas os widgets de lista da categoria de favoritos, após uma alteração que muda
+     * somente o status de favorito das histórias e não o que é exibido nos demais widgets.
+     */
+    public static void updateFavoritesWidgets(Context context) {
+        Intent favoritesUpdatedIntent = new Intent(ACTION_FAVORITES_UPDATED)
+                .setPackage(context.getPackageName());
+        context.sendBroadcast(favoritesUpdatedIntent);
+    }
 }
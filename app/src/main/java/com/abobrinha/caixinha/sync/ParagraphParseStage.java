@@ -0,0 +1,182 @@
+package com.abobrinha.caixinha.sync;
+
+import android.content.ContentValues;
+import android.content.Context;
+
+import com.abobrinha.caixinha.R;
+import com.abobrinha.caixinha.core.ContentDigest;
+import com.abobrinha.caixinha.data.HistoryContract;
+import com.abobrinha.caixinha.data.HistoryProvider;
+import com.abobrinha.caixinha.network.WordPressJson;
+
+import org.json.JSONException;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Etapa da sincronização que recebe as histórias completas (com o conteúdo HTML), faz o parsing
+ * dos parágrafos em paralelo e grava cada história já parseada pelo provider.
+ *
+ * O parsing (Jsoup) é a parte mais cara da gravação do conteúdo. Feito aqui, fora do provider,
+ * ele roda em todos os núcleos e a transação de cada história contém apenas escritas, não
+ * bloqueando as leituras da base enquanto o HTML é processado.
+ *
+ * Histórias cujo conteúdo tem o mesmo hash do já gravado (apenas a data de modificação mudou na
+ * fonte) não são parseadas nem regravadas: apenas são marcadas como baixadas.
+ *
+ * As histórias são gravadas na ordem em que foram recebidas, sempre na thread chamadora, e no
+ * máximo MAX_PENDING_HISTORIES ficam em memória aguardando a gravação.
+ */
+class ParagraphParseStage implements WordPressJson.OnHistoryReadListener {
+
+    private static final int POOL_SIZE =
+            Math.max(2, Runtime.getRuntime().availableProcessors());
+    private static final int MAX_PENDING_HISTORIES = POOL_SIZE * 2;
+
+    private final Context mContext;
+    private final String mRawContentKey;
+    private final Map<Long, String> mLocalHashes;
+    private final HistorySyncReport mReport;
+    private final ExecutorService mExecutor = Executors.newFixedThreadPool(POOL_SIZE);
+    private final Deque<Future<ParsedHistory>> mPendingHistories = new ArrayDeque<>();
+    private final AtomicLong mParseNanos = new AtomicLong();
+    private int mHistoriesWritten = 0;
+
+    /*
+     * localHashes: hash do conteúdo atualmente gravado de cada história, quando conhecido.
+     */
+    ParagraphParseStage(Context context, Map<Long, String> localHashes, HistorySyncReport report) {
+        mContext = context;
+        mRawContentKey = context.getString(R.string.history_raw_content);
+        mLocalHashes = localHashes;
+        mReport = report;
+    }
+
+    @Override
+    public void onHistoryRead(ContentValues historyValues) throws IOException, JSONException {
+        final long id = historyValues.getAsLong(HistoryContract.HistoriesEntry._ID);
+        final String rawContent = historyValues.getAsString(mRawContentKey);
+        if (rawContent == null) return;
+
+        final String localHash = mLocalHashes.get(id);
+        mPendingHistories.add(mExecutor.submit(new Callable<ParsedHistory>() {
+            @Override
+            public ParsedHistory call() {
+                String contentHash = ContentDigest.of(rawContent);
+                if (contentHash.equals(localHash)) {
+                    return new ParsedHistory(id, rawContent, contentHash, null);
+                }
+                return new ParsedHistory(id, rawContent, contentHash, parse(id, rawContent));
+            }
+        }));
+
+        // Grava o que já estiver pronto, e aguarda caso o limite em memória seja atingido
+        while (!mPendingHistories.isEmpty() &&
+                (mPendingHistories.size() >= MAX_PENDING_HISTORIES ||
+                        mPendingHistories.peek().isDone())) {
+            writeNext();
+        }
+    }
+
+    /*
+     * Aguarda e grava todas as histórias pendentes.
+     */
+    void finish() throws IOException {
+        while (!mPendingHistories.isEmpty()) {
+            writeNext();
+        }
+    }
+
+    /*
+     * Libera as threads de parsing e registra os tempos da etapa. Deve ser chamado sempre, mesmo
+     * em caso de falha.
+     */
+    void shutdown() {
+        mExecutor.shutdownNow();
+        mReport.add(HistorySyncReport.STAGE_CONTENT_PARSE, mParseNanos.get());
+    }
+
+    int getHistoriesWritten() {
+        return mHistoriesWritten;
+    }
+
+    private void writeNext() throws IOException {
+        ParsedHistory history = getParsedHistory(mPendingHistories.poll());
+
+        long start = System.nanoTime();
+        ContentValues[] paragraphs = history.paragraphs;
+        if (paragraphs == null) {
+            ContentValues hashValues = new ContentValues();
+            hashValues.put(HistoryContract.HistoriesEntry.COLUMN_CONTENT_HASH, history.contentHash);
+            int rowsUpdated = mContext.getContentResolver().update(
+                    HistoryContract.ParagraphsEntry.buildParagraphsFromHistoryId(history.id),
+                    hashValues, null, null);
+
+            if (rowsUpdated > 0) {
+                mReport.record(HistorySyncReport.STAGE_CONTENT_WRITE, start);
+                mReport.addContentSkipped();
+                mHistoriesWritten++;
+                return;
+            }
+
+            // O conteúdo gravado mudou desde a consulta inicial: segue com a regravação
+            paragraphs = parse(history.id, history.rawContent);
+            start = System.nanoTime();
+        }
+
+        mContext.getContentResolver().bulkInsert(
+                HistoryContract.ParagraphsEntry.buildParagraphsFromHistoryId(history.id,
+                        history.contentHash),
+                paragraphs);
+        mReport.record(HistorySyncReport.STAGE_CONTENT_WRITE, start);
+        mReport.addContentRewritten();
+
+        mHistoriesWritten++;
+    }
+
+    private ContentValues[] parse(long id, String rawContent) {
+        long start = System.nanoTime();
+        ContentValues[] paragraphs = HistoryProvider.historyContentParser(id, rawContent);
+        mParseNanos.addAndGet(System.nanoTime() - start);
+        return paragraphs;
+    }
+
+    private static ParsedHistory getParsedHistory(Future<ParsedHistory> pendingHistory)
+            throws IOException {
+        try {
+            return pendingHistory.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Parsing das histórias interrompido.");
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    /*
+     * Resultado do processamento de uma história. paragraphs é null quando o conteúdo não mudou.
+     */
+    private static class ParsedHistory {
+        final long id;
+        final String rawContent;
+        final String contentHash;
+        final ContentValues[] paragraphs;
+
+        ParsedHistory(long id, String rawContent, String contentHash, ContentValues[] paragraphs) {
+            this.id = id;
+            this.rawContent = rawContent;
+            this.contentHash = contentHash;
+            this.paragraphs = paragraphs;
+        }
+    }
+}
@@ -7,16 +7,14 @@ import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
 import android.preference.PreferenceManager;
-import androidx.annotation.NonNull;
-import com.google.android.material.navigation.NavigationView;
 import androidx.loader.app.LoaderManager;
 import androidx.loader.content.CursorLoader;
 import androidx.loader.content.Loader;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
 import androidx.viewpager.widget.ViewPager;
 import androidx.drawerlayout.widget.DrawerLayout;
 import androidx.appcompat.app.AppCompatActivity;
-import android.view.MenuItem;
-import android.view.SubMenu;
 import android.view.View;
 
 import com.abobrinha.caixinha.R;
@@ -30,13 +28,13 @@ public class HistoryActivity extends AppCompatActivity implements
     private long mHistoryId;
     private int mCategory;
     private int mPosition;
-    private Cursor mCursor;
+    private HistoryListItems mItems = HistoryListItems.EMPTY;
 
     private final int HISTORY_LOADER_ID = 1;
 
     public static final String[] MAIN_HISTORIES_PROJECTION = {
             HistoryContract.HistoriesEntry._ID,
-            HistoryContract.HistoriesEntry.COLUMN_HISTORY_TITLE,
+            HistoryContract.HistoriesEntry.COLUMN_HISTORY_TITLE_PLAIN,
             HistoryContract.HistoriesEntry.COLUMN_HISTORY_DATE
     };
 
@@ -55,7 +53,11 @@ public class HistoryActivity extends AppCompatActivity implements
 
     private final String SELECTED_HISTORY = "selected_history";
 
-    private NavigationView mNavigationView;
+    private ViewPager mViewPager;
+    private HistoryFragmentAdapter mPagerAdapter;
+    private RecyclerView mDrawerList;
+    private HistoryDrawerAdapter mDrawerAdapter;
+    private HistoryPrefetcher mPrefetcher;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -90,6 +92,9 @@ public class HistoryActivity extends AppCompatActivity implements
         if (mHistoryId == HistoryContract.HistoriesEntry.INVALID_ID) throw
                 new NullPointerException("id da história inválido.");
 
+        setupPager();
+        setupDrawer();
+        mPrefetcher = new HistoryPrefetcher(this);
         getSupportLoaderManager().initLoader(HISTORY_LOADER_ID, null, this);
 
         SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(this);
@@ -107,6 +112,7 @@ public class HistoryActivity extends AppCompatActivity implements
     @Override
     protected void onDestroy() {
         super.onDestroy();
+        mPrefetcher.release();
         SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(this);
         sp.unregisterOnSharedPreferenceChangeListener(this);
     }
@@ -121,6 +127,11 @@ public class HistoryActivity extends AppCompatActivity implements
                 PreferencesUtils.getGridHistoryOrder(this));
     }
 
+    /*
+     * A cada nova listagem (favorito alterado, ordenação alterada, sincronização), o ViewPager e
+     * o drawer recebem apenas as diferenças para a anterior, mantendo as páginas e as linhas das
+     * histórias que não mudaram.
+     */
     @Override
     public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
         if (data == null || !data.moveToFirst()) {
@@ -128,96 +139,81 @@ public class HistoryActivity extends AppCompatActivity implements
             return;
         }
 
-        mCursor = data;
+        mItems = HistoryListItems.from(data, INDEX_HISTORY_ID, INDEX_HISTORY_TITLE);
 
-        boolean favoriteRemoved = true;
-        int position = -1;
-        data.moveToFirst();
-        do {
-            position++;
-            if (data.getLong(INDEX_HISTORY_ID) == mHistoryId) {
-                favoriteRemoved = false;
-                break;
-            }
-        } while (data.moveToNext());
+        // Se a história exibida saiu da listagem (favorito removido), exibe a que ocupou a sua
+        // posição, ou a última
+        int position = mItems.indexOf(mHistoryId);
+        if (position < 0) {
+            position = Math.min(mPosition, mItems.size() - 1);
+        }
 
-        // Ajuste necessário, pois o drawer perde o favorito removido, assim como como o Pager.
-        if (favoriteRemoved) {
-            if (mPosition == data.getCount()) mPosition--;
-            position = mPosition;
+        mPagerAdapter.swapItems(mItems);
+        mDrawerAdapter.swapItems(mItems);
+        if (mViewPager.getAdapter() == null) {
+            // Apenas agora, para que o ViewPager restaure as páginas com as histórias carregadas
+            mViewPager.setAdapter(mPagerAdapter);
         }
 
-        loadDrawer(position);
-        loadHistory(position);
+        if (mViewPager.getCurrentItem() != position) {
+            mViewPager.setCurrentItem(position, false);
+        } else {
+            selectHistory(position);
+        }
     }
 
     @Override
     public void onLoaderReset(Loader<Cursor> loader) {
     }
 
-    private void loadDrawer(int initialPosition) {
-        mNavigationView = (NavigationView) findViewById(R.id.navigation_view);
+    private void setupDrawer() {
         final DrawerLayout drawerLayout = (DrawerLayout) findViewById(R.id.drawer_layout);
 
-        if (mCursor.moveToFirst()) {
-            SubMenu menu = mNavigationView.getMenu().getItem(0).getSubMenu();
-            menu.clear();
-
-            int i = 1;
-            do {
-                MenuItem item = menu.add(R.id.history_group, i, i, mCursor.getString(INDEX_HISTORY_TITLE));
-                item.setIcon(mCategoryIcon[mCategory]);
-                i++;
-            } while (mCursor.moveToNext());
-
-            menu.setGroupCheckable(R.id.history_group, true, true);
-
-            int id = mNavigationView.getMenu().getItem(0).getSubMenu().getItem(initialPosition).getItemId();
-            mNavigationView.setCheckedItem(id);
-
-            mNavigationView.setNavigationItemSelectedListener(new NavigationView.OnNavigationItemSelectedListener() {
-                @Override
-                public boolean onNavigationItemSelected(@NonNull MenuItem menuItem) {
-                    drawerLayout.closeDrawers();
-                    if (menuItem.getItemId() == R.id.menu_settings) {
-                        startActivity(new Intent(HistoryActivity.this, SettingsActivity.class));
-                    } else {
-                        loadHistory(menuItem.getItemId() - 1);
+        mDrawerAdapter = new HistoryDrawerAdapter(this,
+                new HistoryDrawerAdapter.OnHistoryClickListener() {
+                    @Override
+                    public void onHistoryClick(int position) {
+                        drawerLayout.closeDrawers();
+                        mViewPager.setCurrentItem(position, false);
                     }
-                    return true;
-                }
-            });
-        }
-    }
+                });
+        mDrawerAdapter.setIcon(mCategoryIcon[mCategory]);
 
-    private void loadHistory(int position) {
-        ViewPager viewPager = (ViewPager) findViewById(R.id.viewpager);
-        HistoryFragmentAdapter adapter = new HistoryFragmentAdapter(getSupportFragmentManager(), mCursor);
-        viewPager.setAdapter(adapter);
-        viewPager.setCurrentItem(position);
-        viewPager.setPageMargin(getResources().getDimensionPixelOffset(R.dimen.page_margin));
-        viewPager.setPageMarginDrawable(R.color.colorPrimaryLight);
-        viewPager.addOnPageChangeListener(new ViewPager.OnPageChangeListener() {
-            @Override
-            public void onPageScrolled(int i, float v, int i1) {
+        mDrawerList = (RecyclerView) findViewById(R.id.drawer_histories);
+        mDrawerList.setLayoutManager(new LinearLayoutManager(this));
+        mDrawerList.setHasFixedSize(true);
+        mDrawerList.setAdapter(mDrawerAdapter);
 
+        findViewById(R.id.drawer_settings).setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                drawerLayout.closeDrawers();
+                startActivity(new Intent(HistoryActivity.this, SettingsActivity.class));
             }
+        });
+    }
 
+    private void setupPager() {
+        mViewPager = (ViewPager) findViewById(R.id.viewpager);
+        mPagerAdapter = new HistoryFragmentAdapter(getSupportFragmentManager());
+        mViewPager.setPageMargin(getResources().getDimensionPixelOffset(R.dimen.page_margin));
+        mViewPager.setPageMarginDrawable(R.color.colorPrimaryLight);
+        mViewPager.addOnPageChangeListener(new ViewPager.SimpleOnPageChangeListener() {
             @Override
             public void onPageSelected(int position) {
-                if (mCursor.moveToPosition(position)) {
-                    mPosition = position;
-                    mHistoryId = mCursor.getLong(INDEX_HISTORY_ID);
-                    int id = mNavigationView.getMenu().getItem(0).getSubMenu().getItem(position).getItemId();
-                    mNavigationView.setCheckedItem(id);
-                }
+                selectHistory(position);
             }
+        });
+    }
 
-            @Override
-            public void onPageScrollStateChanged(int i) {
+    private void selectHistory(int position) {
+        if (position < 0 || position >= mItems.size()) return;
 
-            }
-        });
+        mPosition = position;
+        mHistoryId = mItems.getId(position);
+        mDrawerAdapter.setSelectedHistory(mHistoryId);
+        mDrawerList.scrollToPosition(position);
+        mPrefetcher.onPageSelected(mItems, position, mViewPager.getWidth());
     }
 
     @Override
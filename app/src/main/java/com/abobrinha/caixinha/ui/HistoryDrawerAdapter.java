@@ -0,0 +1,131 @@
+package com.abobrinha.caixinha.ui;
+
+import android.content.Context;
+import androidx.annotation.NonNull;
+import androidx.core.widget.TextViewCompat;
+import androidx.appcompat.content.res.AppCompatResources;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.RecyclerView;
+import android.text.TextUtils;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import com.abobrinha.caixinha.R;
+
+/**
+ * Lista de histórias do drawer da HistoryActivity, com as mesmas histórias do ViewPager. Cada
+ * nova listagem é aplicada apenas com as diferenças para a anterior (DiffUtil), e a história
+ * exibida no ViewPager fica marcada, identificada pelo ID para não depender da posição.
+ */
+class HistoryDrawerAdapter extends RecyclerView.Adapter<HistoryDrawerAdapter.HistoryViewHolder> {
+
+    interface OnHistoryClickListener {
+        void onHistoryClick(int position);
+    }
+
+    private final Context mContext;
+    private final OnHistoryClickListener mClickListener;
+    private HistoryListItems mItems = HistoryListItems.EMPTY;
+    private int mIconResId;
+    private long mSelectedId = RecyclerView.NO_ID;
+
+    HistoryDrawerAdapter(@NonNull Context context, OnHistoryClickListener listener) {
+        mContext = context;
+        mClickListener = listener;
+        setHasStableIds(true);
+    }
+
+    // Ícone da categoria exibido em todas as histórias
+    void setIcon(int iconResId) {
+        if (iconResId == mIconResId) return;
+        mIconResId = iconResId;
+        notifyItemRangeChanged(0, getItemCount());
+    }
+
+    void swapItems(final HistoryListItems items) {
+        final HistoryListItems oldItems = mItems;
+        DiffUtil.DiffResult diff = DiffUtil.calculateDiff(new DiffUtil.Callback() {
+            @Override
+            public int getOldListSize() {
+                return oldItems.size();
+            }
+
+            @Override
+            public int getNewListSize() {
+                return items.size();
+            }
+
+            @Override
+            public boolean areItemsTheSame(int oldPosition, int newPosition) {
+                return oldItems.getId(oldPosition) == items.getId(newPosition);
+            }
+
+            @Override
+            public boolean areContentsTheSame(int oldPosition, int newPosition) {
+                return TextUtils.equals(oldItems.getTitle(oldPosition), items.getTitle(newPosition));
+            }
+        });
+
+        mItems = items;
+        diff.dispatchUpdatesTo(this);
+    }
+
+    void setSelectedHistory(long historyId) {
+        if (historyId == mSelectedId) return;
+
+        int previous = mItems.indexOf(mSelectedId);
+        mSelectedId = historyId;
+        if (previous >= 0) notifyItemChanged(previous);
+
+        int position = mItems.indexOf(historyId);
+        if (position >= 0) notifyItemChanged(position);
+    }
+
+    @NonNull
+    @Override
+    public HistoryViewHolder onCreateViewHolder(@NonNull ViewGroup viewGroup, int viewType) {
+        View view = LayoutInflater.from(mContext)
+                .inflate(R.layout.drawer_history_item, viewGroup, false);
+        return new HistoryViewHolder(view);
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull HistoryViewHolder holder, int position) {
+        holder.title.setText(mItems.getTitle(position));
+        holder.title.setActivated(mItems.getId(position) == mSelectedId);
+        if (holder.iconResId != mIconResId) {
+            holder.iconResId = mIconResId;
+            TextViewCompat.setCompoundDrawablesRelativeWithIntrinsicBounds(holder.title,
+                    AppCompatResources.getDrawable(mContext, mIconResId), null, null, null);
+        }
+    }
+
+    @Override
+    public int getItemCount() {
+        return mItems.size();
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return mItems.getId(position);
+    }
+
+    class HistoryViewHolder extends RecyclerView.ViewHolder implements View.OnClickListener {
+        private final TextView title;
+        private int iconResId;
+
+        private HistoryViewHolder(View itemView) {
+            super(itemView);
+            title = (TextView) itemView;
+            itemView.setOnClickListener(this);
+        }
+
+        @Override
+        public void onClick(View v) {
+            int position = getAdapterPosition();
+            if (position != RecyclerView.NO_POSITION) mClickListener.onHistoryClick(position);
+        }
+    }
+}
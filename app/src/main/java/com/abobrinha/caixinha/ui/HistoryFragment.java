@@ -29,6 +29,7 @@ import android.view.Window;
 import android.widget.FrameLayout;
 import android.widget.ImageView;
 import android.widget.ProgressBar;
+import android.widget.TextView;
 import android.widget.Toast;
 
 import com.abobrinha.caixinha.R;
@@ -37,8 +38,6 @@ import com.abobrinha.caixinha.sync.NotificationUtils;
 import com.bumptech.glide.Glide;
 import com.bumptech.glide.load.engine.DiskCacheStrategy;
 
-import org.jsoup.Jsoup;
-
 
 public class HistoryFragment extends Fragment implements LoaderManager.LoaderCallbacks<Cursor> {
 
@@ -46,6 +45,7 @@ public class HistoryFragment extends Fragment implements LoaderManager.LoaderCal
     }
 
     private Uri mHistoryUri;
+    private Uri mDetailUri;
     private Uri mParagraphsUri;
     private int mPosition = RecyclerView.NO_POSITION;
     private boolean mIsFavorite;
@@ -60,19 +60,35 @@ public class HistoryFragment extends Fragment implements LoaderManager.LoaderCal
 
     private HistoryAdapter mAdapter;
     private ProgressBar mLoadingIndicator;
+    private TextView mLoadingMessage;
 
-    private final int HISTORY_LOADER_ID = 1;
+    // O loader de detalhe lê o cabeçalho e os parágrafos de uma vez. O de parágrafos só é usado
+    // se o conteúdo ainda não foi baixado, já que a sua consulta faz o download.
+    private final int DETAIL_LOADER_ID = 1;
     private final int PARAGRAPH_LOADER_ID = 2;
 
+    // Loader cujo cursor está no adapter
+    private int mParagraphsLoaderId = DETAIL_LOADER_ID;
+
     public final String[] MAIN_HISTORY_PROJECTION = {
-            HistoryContract.HistoriesEntry.COLUMN_HISTORY_TITLE,
+            HistoryContract.HistoriesEntry.COLUMN_HISTORY_TITLE_PLAIN,
             HistoryContract.HistoriesEntry.COLUMN_HISTORY_IMAGE,
-            HistoryContract.HistoriesEntry.COLUMN_FAVORITE
+            HistoryContract.HistoriesEntry.COLUMN_FAVORITE,
+            HistoryContract.HistoriesEntry.COLUMN_CONTENT_FETCHED,
+            HistoryContract.ParagraphsEntry.COLUMN_PARAGRAPH_TYPE,
+            HistoryContract.ParagraphsEntry.COLUMN_PARAGRAPH_CONTENT
     };
 
     public static final int INDEX_HISTORY_TITLE = 0;
     public static final int INDEX_HISTORY_IMAGE = 1;
     public static final int INDEX_FAVORITE = 2;
+    public static final int INDEX_CONTENT_FETCHED = 3;
+    public static final int INDEX_PARAGRAPH_TYPE = 4;
+
+    public final String[] PARAGRAPH_PROJECTION = {
+            HistoryContract.ParagraphsEntry.COLUMN_PARAGRAPH_TYPE,
+            HistoryContract.ParagraphsEntry.COLUMN_PARAGRAPH_CONTENT
+    };
 
     private int mStatusBarHeight;
     private int mUpButtonBaseTop = 0;
@@ -112,9 +128,17 @@ public class HistoryFragment extends Fragment implements LoaderManager.LoaderCal
         View rootView = inflater.inflate(R.layout.fragment_history, container, false);
 
         long historyId = ContentUris.parseId(mHistoryUri);
+        mDetailUri = HistoryContract.HistoriesEntry.buildHistoryDetailUri(historyId);
         mParagraphsUri = HistoryContract.ParagraphsEntry.buildParagraphsFromHistoryId(historyId);
 
         mLoadingIndicator = (ProgressBar) rootView.findViewById(R.id.loading_indicator);
+        mLoadingMessage = (TextView) rootView.findViewById(R.id.loading_message);
+        mLoadingMessage.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                retryContentDownload();
+            }
+        });
         mHistoryView = (RecyclerView) rootView.findViewById(R.id.rv_history);
 
         mFabFavorite = (FloatingActionButton) rootView.findViewById(R.id.fabFavorite);
@@ -163,7 +187,7 @@ public class HistoryFragment extends Fragment implements LoaderManager.LoaderCal
 
         showLoading();
 
-        getLoaderManager().initLoader(HISTORY_LOADER_ID, null, this);
+        getLoaderManager().initLoader(DETAIL_LOADER_ID, null, this);
 
         return rootView;
     }
@@ -268,17 +292,45 @@ public class HistoryFragment extends Fragment implements LoaderManager.LoaderCal
         mLoadingIndicator.setVisibility(View.VISIBLE);
     }
 
+    // Conteúdo da história ainda não baixado: o loader de parágrafos fará o download
+    private void showContentDownloading() {
+        mLoadingMessage.setText(R.string.history_content_loading);
+        mLoadingMessage.setClickable(false);
+        mLoadingMessage.setVisibility(View.VISIBLE);
+    }
+
+    // Falha no download do conteúdo (ex: sem conexão). Um toque na mensagem tenta novamente.
+    private void showContentError() {
+        mHistoryView.setVisibility(View.INVISIBLE);
+        mLoadingIndicator.setVisibility(View.INVISIBLE);
+        mLoadingMessage.setText(R.string.history_content_error);
+        mLoadingMessage.setClickable(true);
+        mLoadingMessage.setVisibility(View.VISIBLE);
+
+        Activity activity = getActivity();
+        if (activity != null)
+            ActivityCompat.startPostponedEnterTransition(activity);
+    }
+
+    private void retryContentDownload() {
+        showLoading();
+        showContentDownloading();
+        getLoaderManager().restartLoader(PARAGRAPH_LOADER_ID, null, this);
+    }
+
     private void showHistoryDataView() {
         if (getResources().getInteger(R.integer.grid_columns) > 2) {
             keepHistoryPortraitWidth();
         }
         mHistoryView.setVisibility(View.VISIBLE);
         mLoadingIndicator.setVisibility(View.INVISIBLE);
+        mLoadingMessage.setVisibility(View.INVISIBLE);
 
         mHistoryView.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
             @Override
             public boolean onPreDraw() {
                 mHistoryView.getViewTreeObserver().removeOnPreDrawListener(this);
+                HistoryOpenTimer.stop(ContentUris.parseId(mHistoryUri));
                 Activity activity = getActivity();
                 if (activity != null)
                     ActivityCompat.startPostponedEnterTransition(activity);
@@ -290,9 +342,9 @@ public class HistoryFragment extends Fragment implements LoaderManager.LoaderCal
     @Override
     public Loader<Cursor> onCreateLoader(int loaderId, Bundle args) {
         switch (loaderId) {
-            case HISTORY_LOADER_ID:
+            case DETAIL_LOADER_ID:
                 return new CursorLoader(getActivity(),
-                        mHistoryUri,
+                        mDetailUri,
                         MAIN_HISTORY_PROJECTION,
                         null,
                         null,
@@ -301,7 +353,7 @@ public class HistoryFragment extends Fragment implements LoaderManager.LoaderCal
             case PARAGRAPH_LOADER_ID:
                 return new CursorLoader(getActivity(),
                         mParagraphsUri,
-                        null,
+                        PARAGRAPH_PROJECTION,
                         null,
                         null,
                         null);
@@ -313,11 +365,14 @@ public class HistoryFragment extends Fragment implements LoaderManager.LoaderCal
 
     @Override
     public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
-        if (data == null || !data.moveToFirst()) return;
+        if (data == null || !data.moveToFirst()) {
+            if (loader.getId() == PARAGRAPH_LOADER_ID) showContentError();
+            return;
+        }
 
         switch (loader.getId()) {
-            case HISTORY_LOADER_ID:
-                mAdapter.setTitle(Jsoup.parse(data.getString(INDEX_HISTORY_TITLE)).text());
+            case DETAIL_LOADER_ID:
+                mAdapter.setTitle(data.getString(INDEX_HISTORY_TITLE));
                 mIsFavorite = (data.getInt(INDEX_FAVORITE) == HistoryContract.IS_FAVORITE);
 
                 Glide.with(getActivity().getApplicationContext())
@@ -331,21 +386,36 @@ public class HistoryFragment extends Fragment implements LoaderManager.LoaderCal
 
                 setFavoriteFabColor();
 
-                getLoaderManager().initLoader(PARAGRAPH_LOADER_ID, null, this);
+                // Sem parágrafos no detalhe, o loader de parágrafos baixa o conteúdo
+                if (data.isNull(INDEX_PARAGRAPH_TYPE)) {
+                    if (data.getInt(INDEX_CONTENT_FETCHED) == HistoryContract.CONTENT_NOT_FETCHED) {
+                        showContentDownloading();
+                    }
+                    getLoaderManager().initLoader(PARAGRAPH_LOADER_ID, null, this);
+                    break;
+                }
+
+                showParagraphs(DETAIL_LOADER_ID, data);
+                getLoaderManager().destroyLoader(PARAGRAPH_LOADER_ID);
                 break;
 
             case PARAGRAPH_LOADER_ID:
-                mAdapter.swapCursor(data);
-                if (mPosition != RecyclerView.NO_POSITION)
-                    mHistoryView.scrollToPosition(mPosition);
-                showHistoryDataView();
+                showParagraphs(PARAGRAPH_LOADER_ID, data);
                 break;
         }
     }
 
+    private void showParagraphs(int loaderId, Cursor data) {
+        mParagraphsLoaderId = loaderId;
+        mAdapter.swapCursor(data);
+        if (mPosition != RecyclerView.NO_POSITION)
+            mHistoryView.scrollToPosition(mPosition);
+        showHistoryDataView();
+    }
+
     @Override
     public void onLoaderReset(Loader<Cursor> loader) {
-        mAdapter.swapCursor(null);
+        if (loader.getId() == mParagraphsLoaderId) mAdapter.swapCursor(null);
     }
 
     public void setFavoriteFabColor() {
@@ -374,7 +444,7 @@ public class HistoryFragment extends Fragment implements LoaderManager.LoaderCal
                     mIsFavorite ? getString(R.string.favorite_added) : getString(R.string.favorite_removed),
                     Toast.LENGTH_SHORT).show();
 
-            NotificationUtils.updateWidgets(getActivity());
+            NotificationUtils.updateFavoritesWidgets(getActivity());
         }
     }
 }
\ No newline at end of file
@@ -1,35 +1,215 @@
 package com.abobrinha.caixinha.ui;
 
-import android.database.Cursor;
-import android.net.Uri;
+import android.os.Bundle;
+import android.os.Parcelable;
+import android.util.LongSparseArray;
+import android.view.View;
+import android.view.ViewGroup;
+import androidx.annotation.NonNull;
 import androidx.fragment.app.Fragment;
 import androidx.fragment.app.FragmentManager;
-import androidx.fragment.app.FragmentStatePagerAdapter;
+import androidx.fragment.app.FragmentTransaction;
+import androidx.viewpager.widget.PagerAdapter;
 
 import com.abobrinha.caixinha.data.HistoryContract;
 
+import java.util.ArrayList;
+import java.util.List;
 
-public class HistoryFragmentAdapter extends FragmentStatePagerAdapter {
-    private Cursor mCursor;
 
-    public HistoryFragmentAdapter(FragmentManager fm, Cursor cursor) {
-        super(fm);
-        mCursor = cursor;
+/**
+ * Adapter das histórias do ViewPager, criado uma única vez pela HistoryActivity. Funciona como o
+ * FragmentStatePagerAdapter, mas os fragments e os seus estados salvos são identificados pelo ID
+ * da história, e não pela posição. Assim, ao receber uma nova listagem (swapItems), o ViewPager
+ * apenas move as páginas existentes para as novas posições (getItemPosition) e remove as das
+ * histórias que saíram, sem recriar as demais.
+ */
+public class HistoryFragmentAdapter extends PagerAdapter {
+    private static final String STATE_IDS = "ids";
+    private static final String STATE_SAVED = "saved";
+    private static final String STATE_FRAGMENT = "f";
+
+    private final FragmentManager mFragmentManager;
+    private FragmentTransaction mCurTransaction;
+    private Fragment mCurrentPrimaryItem;
+
+    private HistoryListItems mItems = HistoryListItems.EMPTY;
+    private final LongSparseArray<Fragment> mFragments = new LongSparseArray<>();
+    private final LongSparseArray<Fragment.SavedState> mSavedStates = new LongSparseArray<>();
+
+    // Fragments recriados pelo FragmentManager (restoreState) ainda não exibidos pelo ViewPager
+    private final List<Fragment> mRestoredFragments = new ArrayList<>();
+
+    public HistoryFragmentAdapter(FragmentManager fm) {
+        mFragmentManager = fm;
+    }
+
+    // Os estados salvos das histórias que saíram da listagem são descartados
+    void swapItems(HistoryListItems items) {
+        mItems = items;
+        for (int i = mSavedStates.size() - 1; i >= 0; i--) {
+            if (items.indexOf(mSavedStates.keyAt(i)) < 0) mSavedStates.removeAt(i);
+        }
+        notifyDataSetChanged();
+    }
+
+    @Override
+    public int getCount() {
+        return mItems.size();
+    }
+
+    @Override
+    public int getItemPosition(@NonNull Object object) {
+        int index = mFragments.indexOfValue((Fragment) object);
+        if (index < 0) return POSITION_NONE;
+
+        int position = mItems.indexOf(mFragments.keyAt(index));
+        return position < 0 ? POSITION_NONE : position;
+    }
+
+    @Override
+    public void startUpdate(@NonNull ViewGroup container) {
+        if (container.getId() == View.NO_ID) {
+            throw new IllegalStateException("ViewPager com o adapter " + this +
+                    " precisa de um id.");
+        }
     }
 
+    @NonNull
     @Override
-    public Fragment getItem(int position) {
-        mCursor.moveToPosition(position);
-        long historyId = mCursor.getLong(0);
-        Uri historyUri = HistoryContract.HistoriesEntry.buildSingleHistoryUri(historyId);
+    public Object instantiateItem(@NonNull ViewGroup container, int position) {
+        long historyId = mItems.getId(position);
+        Fragment fragment = mFragments.get(historyId);
+        if (fragment != null) {
+            mRestoredFragments.remove(fragment);
+            return fragment;
+        }
 
         HistoryFragment historyFragment = new HistoryFragment();
-        historyFragment.setHistoryUri(historyUri);
+        historyFragment.setHistoryUri(
+                HistoryContract.HistoriesEntry.buildSingleHistoryUri(historyId));
+        Fragment.SavedState savedState = mSavedStates.get(historyId);
+        if (savedState != null) historyFragment.setInitialSavedState(savedState);
+        historyFragment.setMenuVisibility(false);
+
+        mFragments.put(historyId, historyFragment);
+        getTransaction().add(container.getId(), historyFragment);
         return historyFragment;
     }
 
     @Override
-    public int getCount() {
-        return (mCursor == null) ? 0 : mCursor.getCount();
+    public void destroyItem(@NonNull ViewGroup container, int position, @NonNull Object object) {
+        removeFragment((Fragment) object);
+    }
+
+    // Salva o estado do fragment, se a história continuar na listagem, e o remove
+    private void removeFragment(Fragment fragment) {
+        int index = mFragments.indexOfValue(fragment);
+        if (index >= 0) {
+            long historyId = mFragments.keyAt(index);
+            mFragments.removeAt(index);
+
+            if (fragment.isAdded() && mItems.indexOf(historyId) >= 0) {
+                mSavedStates.put(historyId, mFragmentManager.saveFragmentInstanceState(fragment));
+            } else {
+                mSavedStates.remove(historyId);
+            }
+        }
+
+        if (fragment == mCurrentPrimaryItem) mCurrentPrimaryItem = null;
+        getTransaction().remove(fragment);
+    }
+
+    @Override
+    public void setPrimaryItem(@NonNull ViewGroup container, int position, @NonNull Object object) {
+        Fragment fragment = (Fragment) object;
+        if (fragment != mCurrentPrimaryItem) {
+            if (mCurrentPrimaryItem != null) mCurrentPrimaryItem.setMenuVisibility(false);
+            fragment.setMenuVisibility(true);
+            mCurrentPrimaryItem = fragment;
+        }
+    }
+
+    /*
+     * Os fragments recriados que não voltaram a ser exibidos (a história mudou de posição ou
+     * saiu da listagem enquanto a Activity era recriada) são removidos na primeira atualização
+     * com as histórias carregadas.
+     */
+    @Override
+    public void finishUpdate(@NonNull ViewGroup container) {
+        if (!mRestoredFragments.isEmpty() && getCount() > 0) {
+            for (Fragment fragment : mRestoredFragments) {
+                removeFragment(fragment);
+            }
+            mRestoredFragments.clear();
+        }
+
+        if (mCurTransaction != null) {
+            mCurTransaction.commitNowAllowingStateLoss();
+            mCurTransaction = null;
+        }
+    }
+
+    private FragmentTransaction getTransaction() {
+        if (mCurTransaction == null) mCurTransaction = mFragmentManager.beginTransaction();
+        return mCurTransaction;
+    }
+
+    @Override
+    public boolean isViewFromObject(@NonNull View view, @NonNull Object object) {
+        return ((Fragment) object).getView() == view;
+    }
+
+    @Override
+    public Parcelable saveState() {
+        Bundle state = new Bundle();
+
+        long[] ids = new long[mSavedStates.size()];
+        Fragment.SavedState[] savedStates = new Fragment.SavedState[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = mSavedStates.keyAt(i);
+            savedStates[i] = mSavedStates.valueAt(i);
+        }
+        state.putLongArray(STATE_IDS, ids);
+        state.putParcelableArray(STATE_SAVED, savedStates);
+
+        for (int i = 0; i < mFragments.size(); i++) {
+            Fragment fragment = mFragments.valueAt(i);
+            if (fragment.isAdded()) {
+                mFragmentManager.putFragment(state, STATE_FRAGMENT + mFragments.keyAt(i),
+                        fragment);
+            }
+        }
+        return state;
+    }
+
+    @Override
+    public void restoreState(Parcelable state, ClassLoader loader) {
+        if (state == null) return;
+
+        Bundle bundle = (Bundle) state;
+        bundle.setClassLoader(loader);
+        mSavedStates.clear();
+        mFragments.clear();
+        mRestoredFragments.clear();
+
+        long[] ids = bundle.getLongArray(STATE_IDS);
+        Parcelable[] savedStates = bundle.getParcelableArray(STATE_SAVED);
+        if (ids != null && savedStates != null) {
+            for (int i = 0; i < ids.length; i++) {
+                mSavedStates.put(ids[i], (Fragment.SavedState) savedStates[i]);
+            }
+        }
+
+        for (String key : bundle.keySet()) {
+            if (!key.startsWith(STATE_FRAGMENT)) continue;
+
+            Fragment fragment = mFragmentManager.getFragment(bundle, key);
+            if (fragment != null) {
+                fragment.setMenuVisibility(false);
+                mFragments.put(Long.parseLong(key.substring(STATE_FRAGMENT.length())), fragment);
+                mRestoredFragments.add(fragment);
+            }
+        }
     }
 }
@@ -0,0 +1,51 @@
+package com.abobrinha.caixinha.ui;
+
+import android.database.Cursor;
+
+/**
+ * Cópia imutável dos IDs e títulos de uma listagem de histórias, compartilhada pelo ViewPager e
+ * pela lista do drawer da HistoryActivity. Ao contrário do cursor, continua válida depois que o
+ * loader entrega o próximo, o que permite comparar as duas listagens (ver HistoryDrawerAdapter).
+ */
+final class HistoryListItems {
+
+    static final HistoryListItems EMPTY = new HistoryListItems(new long[0], new String[0]);
+
+    private final long[] mIds;
+    private final String[] mTitles;
+
+    private HistoryListItems(long[] ids, String[] titles) {
+        mIds = ids;
+        mTitles = titles;
+    }
+
+    static HistoryListItems from(Cursor cursor, int idIndex, int titleIndex) {
+        long[] ids = new long[cursor.getCount()];
+        String[] titles = new String[ids.length];
+        for (int i = 0; cursor.moveToPosition(i); i++) {
+            ids[i] = cursor.getLong(idIndex);
+            titles[i] = cursor.getString(titleIndex);
+        }
+        return new HistoryListItems(ids, titles);
+    }
+
+    int size() {
+        return mIds.length;
+    }
+
+    long getId(int position) {
+        return mIds[position];
+    }
+
+    String getTitle(int position) {
+        return mTitles[position];
+    }
+
+    // Posição da história, ou -1 se não estiver na listagem
+    int indexOf(long historyId) {
+        for (int i = 0; i < mIds.length; i++) {
+            if (mIds[i] == historyId) return i;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,34 @@
+package com.abobrinha.caixinha.ui;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.abobrinha.caixinha.data.HistoryContract;
+
+/**
+ * Mede o tempo de abertura de uma história, do toque na grade ou nos resultados da busca até o
+ * primeiro parágrafo desenhado (ver HistoryFragment.showHistoryDataView), e o registra no log.
+ * As histórias vizinhas criadas pelo ViewPager não são medidas. Usado apenas na thread principal.
+ */
+final class HistoryOpenTimer {
+    private static final String LOG_TAG = HistoryOpenTimer.class.getSimpleName();
+
+    private static long sHistoryId = HistoryContract.HistoriesEntry.INVALID_ID;
+    private static long sStartMillis;
+
+    private HistoryOpenTimer() {
+    }
+
+    static void start(long historyId) {
+        sHistoryId = historyId;
+        sStartMillis = SystemClock.uptimeMillis();
+    }
+
+    static void stop(long historyId) {
+        if (historyId != sHistoryId) return;
+
+        sHistoryId = HistoryContract.HistoriesEntry.INVALID_ID;
+        Log.i(LOG_TAG, "História " + historyId + " aberta em " +
+                (SystemClock.uptimeMillis() - sStartMillis) + " ms");
+    }
+}
@@ -0,0 +1,318 @@
+package com.abobrinha.caixinha.ui;
+
+import android.content.Context;
+import android.database.AbstractCursor;
+import android.database.Cursor;
+import android.net.Uri;
+
+import androidx.annotation.NonNull;
+import androidx.loader.content.AsyncTaskLoader;
+
+import com.abobrinha.caixinha.data.HistoryContract;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Carrega uma listagem de histórias em páginas de PAGE_SIZE histórias (ver
+ * HistoriesEntry.buildPageUri), para que o tempo de abertura da lista e a memória usada não
+ * cresçam com a quantidade de histórias da base. A primeira carga traz apenas as páginas que
+ * cobrem a posição inicial; as seguintes são buscadas por loadNextPage, conforme o usuário rola
+ * a lista, e acrescentadas às já carregadas sem consultá-las novamente.
+ *
+ * O Cursor entregue reúne as páginas carregadas e, como o de um CursorLoader, é fechado pelo
+ * próprio loader. Uma alteração nas histórias recarrega todas as páginas, já que as histórias
+ * que delimitam cada uma podem ter mudado.
+ */
+public class HistoryPagesLoader extends AsyncTaskLoader<Cursor> {
+
+    public static final int PAGE_SIZE = 60;
+
+    // Quantidade de histórias ainda não exibidas abaixo da qual a próxima página é buscada
+    public static final int PREFETCH_DISTANCE = PAGE_SIZE / 2;
+
+    private final ForceLoadContentObserver mObserver = new ForceLoadContentObserver();
+    private final Uri mListUri;
+    private final String[] mProjection;
+    private final String mSortOrder;
+    private final int mKeyIndex;
+    private final int mIdIndex;
+
+    private volatile int mRequestedPages;
+    private final AtomicBoolean mReloadPages = new AtomicBoolean(true);
+    private volatile PagedCursor mCursor;
+
+    /*
+     * sortOrder deve ser uma das ordenações aceitas pela paginação (ver
+     * PreferencesUtils.getGridHistoryOrder). A coluna de ordenação e o _ID são acrescentados ao
+     * final da projeção, se não estiverem nela, sem alterar a posição das demais colunas.
+     */
+    public HistoryPagesLoader(@NonNull Context context, Uri listUri, String[] projection,
+                              String sortOrder, int initialPosition) {
+        super(context);
+        mListUri = listUri;
+        mSortOrder = sortOrder;
+
+        List<String> columns = new ArrayList<>(Arrays.asList(projection));
+        String keyColumn = sortOrder.trim().split("\\s+")[0];
+        if (!columns.contains(keyColumn)) columns.add(keyColumn);
+        if (!columns.contains(HistoryContract.HistoriesEntry._ID)) {
+            columns.add(HistoryContract.HistoriesEntry._ID);
+        }
+
+        mProjection = columns.toArray(new String[0]);
+        mKeyIndex = columns.indexOf(keyColumn);
+        mIdIndex = columns.indexOf(HistoryContract.HistoriesEntry._ID);
+        mRequestedPages = Math.max(initialPosition, 0) / PAGE_SIZE + 1;
+    }
+
+    /*
+     * Busca a próxima página, caso a última carregada esteja completa e nenhuma outra já esteja
+     * sendo buscada. Deve ser chamado na thread principal.
+     */
+    public void loadNextPage() {
+        PagedCursor cursor = mCursor;
+        if (cursor == null || !cursor.hasMorePages() ||
+                mRequestedPages > cursor.getPageCount()) return;
+
+        mRequestedPages++;
+        forceLoad();
+    }
+
+    @Override
+    public Cursor loadInBackground() {
+        boolean reload = mReloadPages.getAndSet(false);
+        PagedCursor previous = mCursor;
+
+        List<Page> pages = new ArrayList<>();
+        if (!reload && previous != null) {
+            pages.addAll(previous.mPages);
+        }
+
+        int reusedPages = pages.size();
+        try {
+            while (pages.size() < mRequestedPages &&
+                    (pages.isEmpty() || pages.get(pages.size() - 1).isFull())) {
+                Page page = queryPageAfter(pages.isEmpty() ? null : pages.get(pages.size() - 1));
+                if (page == null) break;
+
+                if (pages.isEmpty()) page.cursor.registerContentObserver(mObserver);
+                pages.add(page);
+            }
+        } catch (RuntimeException e) {
+            for (Page page : pages.subList(reusedPages, pages.size())) {
+                page.cursor.close();
+            }
+            throw e;
+        }
+
+        return new PagedCursor(pages, mProjection, reload);
+    }
+
+    // A primeira página, ou a seguinte à última história de lastPage
+    private Page queryPageAfter(Page lastPage) {
+        Uri pageUri = (lastPage == null)
+                ? HistoryContract.HistoriesEntry.buildPageUri(mListUri, PAGE_SIZE)
+                : HistoryContract.HistoriesEntry.buildPageUri(mListUri, PAGE_SIZE,
+                lastPage.lastKey, lastPage.lastId);
+
+        Cursor cursor = getContext().getContentResolver().query(pageUri, mProjection, null, null,
+                mSortOrder);
+        if (cursor == null) return null;
+
+        // A chave da última história é lida aqui, antes de o cursor ser usado pela thread
+        // principal, que move a sua posição. O getCount já preenche a janela do cursor.
+        Page page = new Page(cursor);
+        if (cursor.moveToLast()) {
+            page.lastKey = cursor.getString(mKeyIndex);
+            page.lastId = cursor.getLong(mIdIndex);
+        }
+        return page;
+    }
+
+    @Override
+    public void deliverResult(Cursor cursor) {
+        PagedCursor pages = (PagedCursor) cursor;
+        if (isReset()) {
+            if (pages != null) releasePages(pages);
+            return;
+        }
+
+        PagedCursor oldPages = mCursor;
+        mCursor = pages;
+
+        if (isStarted()) {
+            super.deliverResult(cursor);
+        }
+
+        if (oldPages != null && oldPages != pages) {
+            releasePages(oldPages);
+        }
+    }
+
+    /*
+     * Uma alteração nas histórias descarta as páginas carregadas na próxima carga.
+     */
+    @Override
+    public void onContentChanged() {
+        mReloadPages.set(true);
+        super.onContentChanged();
+    }
+
+    @Override
+    protected void onStartLoading() {
+        if (mCursor != null) {
+            deliverResult(mCursor);
+        }
+        if (takeContentChanged() || mCursor == null) {
+            forceLoad();
+        }
+    }
+
+    @Override
+    protected void onStopLoading() {
+        cancelLoad();
+    }
+
+    // Uma recarga cancelada (por uma nova página pedida durante ela) precisa ser refeita
+    @Override
+    public void onCanceled(Cursor cursor) {
+        PagedCursor pages = (PagedCursor) cursor;
+        if (pages == null) return;
+
+        if (pages.mReloaded) mReloadPages.set(true);
+        releasePages(pages);
+    }
+
+    @Override
+    protected void onReset() {
+        super.onReset();
+        onStopLoading();
+
+        PagedCursor pages = mCursor;
+        mCursor = null;
+        if (pages != null) releasePages(pages);
+    }
+
+    // Fecha as páginas que não fazem parte do cursor entregue atualmente
+    private void releasePages(PagedCursor pages) {
+        PagedCursor current = mCursor;
+        for (Page page : pages.mPages) {
+            if (current == null || !current.mPages.contains(page)) {
+                page.cursor.close();
+            }
+        }
+    }
+
+    private static class Page {
+        final Cursor cursor;
+        final int count;
+        String lastKey;
+        long lastId;
+
+        Page(Cursor cursor) {
+            this.cursor = cursor;
+            this.count = cursor.getCount();
+        }
+
+        boolean isFull() {
+            return count == PAGE_SIZE;
+        }
+    }
+
+    /**
+     * Páginas carregadas vistas como um único cursor. Todas as páginas, exceto a última, têm
+     * PAGE_SIZE linhas, então a página de cada posição é obtida por divisão.
+     */
+    private static class PagedCursor extends AbstractCursor {
+        private final List<Page> mPages;
+        private final String[] mColumns;
+        private final boolean mReloaded;
+        private final int mCount;
+        private Cursor mCurrentPage;
+
+        PagedCursor(List<Page> pages, String[] columns, boolean reloaded) {
+            mPages = Collections.unmodifiableList(pages);
+            mColumns = columns;
+            mReloaded = reloaded;
+
+            int count = 0;
+            for (Page page : pages) {
+                count += page.count;
+            }
+            mCount = count;
+        }
+
+        int getPageCount() {
+            return mPages.size();
+        }
+
+        boolean hasMorePages() {
+            return !mPages.isEmpty() && mPages.get(mPages.size() - 1).isFull();
+        }
+
+        @Override
+        public boolean onMove(int oldPosition, int newPosition) {
+            mCurrentPage = mPages.get(newPosition / PAGE_SIZE).cursor;
+            return mCurrentPage.moveToPosition(newPosition % PAGE_SIZE);
+        }
+
+        @Override
+        public int getCount() {
+            return mCount;
+        }
+
+        @Override
+        public String[] getColumnNames() {
+            return mColumns;
+        }
+
+        @Override
+        public String getString(int column) {
+            return mCurrentPage.getString(column);
+        }
+
+        @Override
+        public short getShort(int column) {
+            return mCurrentPage.getShort(column);
+        }
+
+        @Override
+        public int getInt(int column) {
+            return mCurrentPage.getInt(column);
+        }
+
+        @Override
+        public long getLong(int column) {
+            return mCurrentPage.getLong(column);
+        }
+
+        @Override
+        public float getFloat(int column) {
+            return mCurrentPage.getFloat(column);
+        }
+
+        @Override
+        public double getDouble(int column) {
+            return mCurrentPage.getDouble(column);
+        }
+
+        @Override
+        public byte[] getBlob(int column) {
+            return mCurrentPage.getBlob(column);
+        }
+
+        @Override
+        public int getType(int column) {
+            return mCurrentPage.getType(column);
+        }
+
+        @Override
+        public boolean isNull(int column) {
+            return mCurrentPage.isNull(column);
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package com.abobrinha.caixinha.ui;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.database.Cursor;
+import android.os.Handler;
+import android.os.Looper;
+
+import com.abobrinha.caixinha.R;
+import com.abobrinha.caixinha.data.HistoryContract;
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.load.engine.DiskCacheStrategy;
+import com.bumptech.glide.request.target.Target;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Prepara as histórias vizinhas à exibida no ViewPager da HistoryActivity, para que a próxima
+ * troca de página não espere pela base nem pelas imagens. Para cada história a até
+ * history_prefetch_distance posições da selecionada, a URI de detalhe é consultada em segundo
+ * plano, o que guarda os parágrafos já decodificados no HistoryCache do provider, e a imagem do
+ * cabeçalho e a primeira imagem do texto são carregadas pelo Glide nos tamanhos em que serão
+ * exibidas (ver HistoryFragment e HistoryAdapter), ficando nos seus caches.
+ *
+ * O ViewPager já cria as páginas imediatamente vizinhas, então o ganho está nas seguintes, que
+ * passam a ser criadas a cada troca. A consulta de detalhe nunca baixa o conteúdo de uma
+ * história: apenas as já baixadas são preparadas por completo. Ao selecionar outra página, as
+ * preparações pendentes das histórias que saíram do intervalo são canceladas.
+ *
+ * Deve ser usado apenas na thread principal.
+ */
+class HistoryPrefetcher {
+
+    private static final String[] DETAIL_PROJECTION = {
+            HistoryContract.HistoriesEntry.COLUMN_HISTORY_IMAGE,
+            HistoryContract.ParagraphsEntry.COLUMN_PARAGRAPH_TYPE,
+            HistoryContract.ParagraphsEntry.COLUMN_PARAGRAPH_CONTENT
+    };
+
+    private static final int INDEX_HISTORY_IMAGE = 0;
+    private static final int INDEX_PARAGRAPH_TYPE = 1;
+    private static final int INDEX_PARAGRAPH_CONTENT = 2;
+
+    private final Context mContext;
+    private final int mDistance;
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    // Imagens em carregamento ou já carregadas, por história, no intervalo atual
+    private final Map<Long, List<Target<?>>> mImageTargets = new HashMap<>();
+
+    private Future<?> mPendingTask;
+    // Incrementado a cada seleção, para descartar os resultados de seleções anteriores
+    private int mGeneration;
+
+    HistoryPrefetcher(Context context) {
+        mContext = context.getApplicationContext();
+        mDistance = context.getResources().getInteger(R.integer.history_prefetch_distance);
+    }
+
+    /*
+     * Prepara as histórias próximas da página selecionada, a partir das histórias do ViewPager.
+     * pageWidth é a largura da página, ou 0 se ainda não foi medida.
+     */
+    void onPageSelected(HistoryListItems items, int position, int pageWidth) {
+        final List<Long> historyIds = new ArrayList<>();
+        for (int distance = 1; distance <= mDistance; distance++) {
+            if (position + distance < items.size()) {
+                historyIds.add(items.getId(position + distance));
+            }
+            if (position - distance >= 0) {
+                historyIds.add(items.getId(position - distance));
+            }
+        }
+
+        cancelOutside(historyIds);
+
+        // Histórias que continuam no intervalo já foram preparadas
+        historyIds.removeAll(mImageTargets.keySet());
+        if (historyIds.isEmpty()) return;
+
+        for (long historyId : historyIds) {
+            mImageTargets.put(historyId, new ArrayList<Target<?>>());
+        }
+
+        final ImageSizes sizes = new ImageSizes(mContext.getResources(), pageWidth);
+        final int generation = mGeneration;
+        mPendingTask = mExecutor.submit(new Runnable() {
+            @Override
+            public void run() {
+                for (final long historyId : historyIds) {
+                    if (Thread.currentThread().isInterrupted()) return;
+
+                    final String[] images = readImages(historyId);
+                    mMainHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (generation == mGeneration) {
+                                preloadImages(historyId, images, sizes);
+                            }
+                        }
+                    });
+                }
+            }
+        });
+    }
+
+    // Cancela todas as preparações, ao fechar a tela
+    void release() {
+        cancelOutside(new ArrayList<Long>());
+        mExecutor.shutdownNow();
+    }
+
+    /*
+     * Cancela a leitura pendente e as imagens das histórias fora do intervalo. A leitura é
+     * refeita para as que continuam no intervalo e ainda não haviam sido lidas.
+     */
+    private void cancelOutside(List<Long> historyIds) {
+        mGeneration++;
+        if (mPendingTask != null) {
+            mPendingTask.cancel(true);
+            mPendingTask = null;
+        }
+
+        Iterator<Map.Entry<Long, List<Target<?>>>> entries = mImageTargets.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<Long, List<Target<?>>> entry = entries.next();
+            // Sem imagens iniciadas, a leitura da história foi cancelada junto com a tarefa
+            if (!historyIds.contains(entry.getKey()) || entry.getValue().isEmpty()) {
+                for (Target<?> target : entry.getValue()) {
+                    Glide.clear(target);
+                }
+                entries.remove();
+            }
+        }
+    }
+
+    /*
+     * Consulta o detalhe da história, guardando-a no HistoryCache, e retorna a URL da imagem do
+     * cabeçalho e da primeira imagem do texto (null se não houver).
+     */
+    private String[] readImages(long historyId) {
+        String[] images = new String[2];
+        Cursor cursor = mContext.getContentResolver().query(
+                HistoryContract.HistoriesEntry.buildHistoryDetailUri(historyId),
+                DETAIL_PROJECTION,
+                null,
+                null,
+                null);
+        if (cursor == null) return images;
+
+        try {
+            if (!cursor.moveToFirst()) return images;
+            images[0] = cursor.getString(INDEX_HISTORY_IMAGE);
+
+            do {
+                if (!cursor.isNull(INDEX_PARAGRAPH_TYPE) && cursor.getInt(INDEX_PARAGRAPH_TYPE) ==
+                        HistoryContract.ParagraphsEntry.TYPE_IMAGE) {
+                    images[1] = cursor.getString(INDEX_PARAGRAPH_CONTENT);
+                    break;
+                }
+            } while (cursor.moveToNext());
+        } finally {
+            cursor.close();
+        }
+        return images;
+    }
+
+    /*
+     * As transformações são as que o Glide aplica nas ImageViews de destino (centerCrop no
+     * cabeçalho e fitCenter no texto), para que a imagem seja encontrada no cache.
+     */
+    private void preloadImages(long historyId, String[] images, ImageSizes sizes) {
+        List<Target<?>> targets = mImageTargets.get(historyId);
+        if (targets == null) return;
+
+        if (images[0] != null) {
+            targets.add(Glide.with(mContext)
+                    .load(images[0])
+                    .diskCacheStrategy(DiskCacheStrategy.ALL)
+                    .centerCrop()
+                    .preload(sizes.headerWidth, sizes.headerHeight));
+        }
+        if (images[1] != null) {
+            targets.add(Glide.with(mContext)
+                    .load(images[1])
+                    .diskCacheStrategy(DiskCacheStrategy.ALL)
+                    .fitCenter()
+                    .preload(sizes.paragraphWidth, sizes.paragraphHeight));
+        }
+    }
+
+    /*
+     * Tamanhos das imagens na página (ver fragment_history e history_paragraph_image). Em tablets
+     * na horizontal o texto é mais estreito que a página (ver
+     * HistoryFragment.keepHistoryPortraitWidth), e a imagem do texto é lida do cache em disco, sem
+     * novo download, mas redimensionada.
+     */
+    private static class ImageSizes {
+        final int headerWidth;
+        final int headerHeight;
+        final int paragraphWidth;
+        final int paragraphHeight;
+
+        ImageSizes(Resources resources, int pageWidth) {
+            headerWidth = pageWidth > 0 ? pageWidth : resources.getDisplayMetrics().widthPixels;
+            headerHeight = resources.getDimensionPixelSize(R.dimen.history_header_image_height);
+            paragraphWidth = headerWidth - 2 *
+                    (resources.getDimensionPixelSize(R.dimen.history_vertical_margins) +
+                            resources.getDimensionPixelSize(R.dimen.history_vertical_padding));
+            paragraphHeight =
+                    resources.getDimensionPixelSize(R.dimen.history_images_loading_height);
+        }
+    }
+}
@@ -2,6 +2,7 @@ package com.abobrinha.caixinha.ui;
 
 import android.content.Intent;
 import android.os.Bundle;
+import android.os.Handler;
 import com.google.android.material.appbar.AppBarLayout;
 import com.google.android.material.appbar.CollapsingToolbarLayout;
 import com.google.android.material.navigation.NavigationView;
@@ -10,7 +11,9 @@ import androidx.fragment.app.FragmentManager;
 import androidx.drawerlayout.widget.DrawerLayout;
 import androidx.appcompat.app.ActionBarDrawerToggle;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.appcompat.widget.SearchView;
 import androidx.appcompat.widget.Toolbar;
+import android.view.Menu;
 import android.view.MenuItem;
 import android.view.SubMenu;
 import android.view.View;
@@ -27,6 +30,18 @@ public class MainActivity extends AppCompatActivity {
 
     private final String IS_HISTORY_PAGE = "is_history_page";
 
+    // Tempo sem digitação até a busca ser executada, para não consultar a cada letra
+    private static final long SEARCH_DEBOUNCE_MILLIS = 300;
+
+    private final Handler mSearchHandler = new Handler();
+    private String mPendingQuery;
+    private final Runnable mSearchRunnable = new Runnable() {
+        @Override
+        public void run() {
+            showSearchResults(mPendingQuery);
+        }
+    };
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -60,12 +75,100 @@ public class MainActivity extends AppCompatActivity {
         HistorySyncUtils.initialize(this);
     }
 
+    /*
+     * A busca pendente não pode ser executada depois que o estado foi salvo, quando a troca de
+     * fragments lançaria IllegalStateException.
+     */
     @Override
     public void onSaveInstanceState(Bundle outState) {
+        mSearchHandler.removeCallbacks(mSearchRunnable);
         outState.putBoolean(IS_HISTORY_PAGE, mIsHistoryPage);
         super.onSaveInstanceState(outState);
     }
 
+    @Override
+    protected void onStop() {
+        mSearchHandler.removeCallbacks(mSearchRunnable);
+        super.onStop();
+    }
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.main_menu, menu);
+
+        MenuItem searchItem = menu.findItem(R.id.action_search);
+        SearchView searchView = (SearchView) searchItem.getActionView();
+        searchView.setQueryHint(getString(R.string.search_hint));
+
+        // Resultados restaurados após uma rotação: a busca volta aberta com o mesmo texto, para
+        // que fechá-la retorne à lista. O texto é preenchido antes do listener para não refazer
+        // a busca.
+        Fragment current = getSupportFragmentManager().findFragmentById(R.id.frame);
+        if (current instanceof SearchResultsFragment) {
+            searchItem.expandActionView();
+            searchView.setQuery(((SearchResultsFragment) current).getQuery(), false);
+            searchView.clearFocus();
+        }
+
+        searchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
+            @Override
+            public boolean onQueryTextSubmit(String query) {
+                mSearchHandler.removeCallbacks(mSearchRunnable);
+                showSearchResults(query);
+                return true;
+            }
+
+            @Override
+            public boolean onQueryTextChange(String newText) {
+                mPendingQuery = newText;
+                mSearchHandler.removeCallbacks(mSearchRunnable);
+                mSearchHandler.postDelayed(mSearchRunnable, SEARCH_DEBOUNCE_MILLIS);
+                return true;
+            }
+        });
+
+        searchItem.setOnActionExpandListener(new MenuItem.OnActionExpandListener() {
+            @Override
+            public boolean onMenuItemActionExpand(MenuItem item) {
+                return true;
+            }
+
+            @Override
+            public boolean onMenuItemActionCollapse(MenuItem item) {
+                mSearchHandler.removeCallbacks(mSearchRunnable);
+                if (getSupportFragmentManager().findFragmentById(R.id.frame)
+                        instanceof SearchResultsFragment) {
+                    if (mIsHistoryPage) {
+                        loadHistories();
+                    } else {
+                        loadContacts();
+                    }
+                }
+                return true;
+            }
+        });
+        return super.onCreateOptionsMenu(menu);
+    }
+
+    /*
+     * Exibe os resultados da busca no lugar da lista atual, reaproveitando o fragment de
+     * resultados enquanto o usuário continua digitando.
+     */
+    private void showSearchResults(String query) {
+        if (query == null || query.trim().isEmpty()) return;
+
+        FragmentManager fragmentManager = getSupportFragmentManager();
+        Fragment current = fragmentManager.findFragmentById(R.id.frame);
+        if (current instanceof SearchResultsFragment) {
+            ((SearchResultsFragment) current).setQuery(query);
+            return;
+        }
+
+        fragmentManager.beginTransaction()
+                .replace(R.id.frame, SearchResultsFragment.newInstance(query))
+                .commit();
+    }
+
     private void initializeUIElements() {
         Toolbar toolbar = (Toolbar) findViewById(R.id.toolbar);
         setSupportActionBar(toolbar);
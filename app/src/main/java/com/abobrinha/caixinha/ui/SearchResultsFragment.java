@@ -0,0 +1,213 @@
+package com.abobrinha.caixinha.ui;
+
+import android.content.Context;
+import android.content.Intent;
+import android.database.Cursor;
+import android.os.Bundle;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import androidx.core.app.ActivityCompat;
+import androidx.core.app.ActivityOptionsCompat;
+import androidx.core.text.HtmlCompat;
+import androidx.fragment.app.Fragment;
+import androidx.loader.app.LoaderManager;
+import androidx.loader.content.CursorLoader;
+import androidx.loader.content.Loader;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.abobrinha.caixinha.R;
+import com.abobrinha.caixinha.data.HistoryContract;
+
+/**
+ * Resultados da busca textual nas histórias, do mais para o menos relevante, com o título e um
+ * trecho do texto com as palavras encontradas em destaque.
+ *
+ * A consulta é feita pelo CursorLoader, fora da thread principal, e refeita a cada chamada de
+ * setQuery.
+ */
+public class SearchResultsFragment extends Fragment implements
+        LoaderManager.LoaderCallbacks<Cursor> {
+
+    private static final int SEARCH_LOADER_ID = 100;
+    private static final String ARG_QUERY = "query";
+
+    // Intervalo mínimo entre recargas da busca enquanto a sincronização grava o conteúdo das
+    // histórias, que notifica a busca a cada história gravada
+    private static final long SEARCH_UPDATE_THROTTLE_MILLIS = 1000;
+
+    // Colunas retornadas por SearchEntry.buildSearchUri
+    private static final int INDEX_HISTORY_ID = 0;
+    private static final int INDEX_HISTORY_TITLE = 1;
+    private static final int INDEX_SNIPPET = 3;
+
+    private RecyclerView mResultsList;
+    private TextView mEmptyView;
+    private SearchResultsAdapter mAdapter;
+
+    private String mQuery;
+
+    public SearchResultsFragment() {
+    }
+
+    public static SearchResultsFragment newInstance(String query) {
+        Bundle args = new Bundle();
+        args.putString(ARG_QUERY, query);
+
+        SearchResultsFragment fragment = new SearchResultsFragment();
+        fragment.setArguments(args);
+        return fragment;
+    }
+
+    @Override
+    public void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+
+        // Os argumentos guardam só a busca inicial; as seguintes vêm de setQuery
+        Bundle state = (savedInstanceState != null) ? savedInstanceState : getArguments();
+        mQuery = (state == null) ? "" : state.getString(ARG_QUERY, "");
+    }
+
+    @Override
+    public void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+        outState.putString(ARG_QUERY, mQuery);
+    }
+
+    @Override
+    public View onCreateView(LayoutInflater inflater, ViewGroup container, Bundle savedInstanceState) {
+        View rootView = inflater.inflate(R.layout.fragment_search, container, false);
+
+        mResultsList = (RecyclerView) rootView.findViewById(R.id.rv_search_results);
+        mEmptyView = (TextView) rootView.findViewById(R.id.search_empty_view);
+
+        mAdapter = new SearchResultsAdapter(getActivity());
+        mResultsList.setLayoutManager(new LinearLayoutManager(getActivity()));
+        mResultsList.setHasFixedSize(true);
+        mResultsList.setAdapter(mAdapter);
+
+        getLoaderManager().initLoader(SEARCH_LOADER_ID, buildQueryArgs(), this);
+        return rootView;
+    }
+
+    public String getQuery() {
+        return mQuery;
+    }
+
+    /*
+     * Refaz a busca com o novo texto digitado pelo usuário. Não altera os argumentos do
+     * fragment, que não podem mais ser trocados depois que o estado da activity foi salvo.
+     */
+    public void setQuery(String query) {
+        mQuery = query;
+
+        if (isAdded()) {
+            getLoaderManager().restartLoader(SEARCH_LOADER_ID, buildQueryArgs(), this);
+        }
+    }
+
+    private Bundle buildQueryArgs() {
+        Bundle args = new Bundle();
+        args.putString(ARG_QUERY, mQuery);
+        return args;
+    }
+
+    @Override
+    public Loader<Cursor> onCreateLoader(int id, Bundle args) {
+        String query = (args == null) ? "" : args.getString(ARG_QUERY, "");
+        CursorLoader loader = new CursorLoader(getActivity(),
+                HistoryContract.SearchEntry.buildSearchUri(query),
+                null,
+                null,
+                null,
+                null);
+        loader.setUpdateThrottle(SEARCH_UPDATE_THROTTLE_MILLIS);
+        return loader;
+    }
+
+    @Override
+    public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
+        mAdapter.swapCursor(data);
+        boolean hasData = data != null && data.getCount() > 0;
+        mResultsList.setVisibility(hasData ? View.VISIBLE : View.INVISIBLE);
+        mEmptyView.setVisibility(hasData ? View.INVISIBLE : View.VISIBLE);
+    }
+
+    @Override
+    public void onLoaderReset(Loader<Cursor> loader) {
+        mAdapter.swapCursor(null);
+    }
+
+    private void openHistory(long historyId) {
+        HistoryOpenTimer.start(historyId);
+        Intent intent = new Intent(getActivity(), HistoryActivity.class);
+        intent.putExtra(Intent.EXTRA_TEXT, historyId);
+        ActivityOptionsCompat activityOptions =
+                ActivityOptionsCompat.makeSceneTransitionAnimation(getActivity());
+        ActivityCompat.startActivity(getActivity(), intent, activityOptions.toBundle());
+    }
+
+    private class SearchResultsAdapter extends
+            RecyclerView.Adapter<SearchResultsAdapter.SearchResultViewHolder> {
+        private Context mContext;
+        private Cursor mCursor;
+
+        public SearchResultsAdapter(Context context) {
+            mContext = context;
+        }
+
+        public void swapCursor(Cursor newCursor) {
+            mCursor = newCursor;
+            notifyDataSetChanged();
+        }
+
+        @Override
+        public SearchResultViewHolder onCreateViewHolder(ViewGroup viewGroup, int viewType) {
+            View view = LayoutInflater.from(mContext)
+                    .inflate(R.layout.search_result_item, viewGroup, false);
+            final SearchResultViewHolder holder = new SearchResultViewHolder(view);
+
+            view.setOnClickListener(new View.OnClickListener() {
+                @Override
+                public void onClick(View view) {
+                    mCursor.moveToPosition(holder.getAdapterPosition());
+                    openHistory(mCursor.getLong(INDEX_HISTORY_ID));
+                }
+            });
+            return holder;
+        }
+
+        @Override
+        public void onBindViewHolder(SearchResultViewHolder holder, int position) {
+            mCursor.moveToPosition(position);
+
+            holder.historyTitle.setText(mCursor.getString(INDEX_HISTORY_TITLE));
+
+            // O trecho vem com as palavras encontradas entre <b> e </b>
+            String snippet = mCursor.getString(INDEX_SNIPPET);
+            holder.historySnippet.setText(snippet == null ? null :
+                    HtmlCompat.fromHtml(snippet, HtmlCompat.FROM_HTML_MODE_LEGACY));
+            holder.historySnippet.setVisibility(
+                    snippet == null || snippet.isEmpty() ? View.GONE : View.VISIBLE);
+        }
+
+        @Override
+        public int getItemCount() {
+            return (mCursor == null) ? 0 : mCursor.getCount();
+        }
+
+        public class SearchResultViewHolder extends RecyclerView.ViewHolder {
+            public TextView historyTitle;
+            public TextView historySnippet;
+
+            public SearchResultViewHolder(View itemView) {
+                super(itemView);
+                historyTitle = (TextView) itemView.findViewById(R.id.title_text_view);
+                historySnippet = (TextView) itemView.findViewById(R.id.snippet_text_view);
+            }
+        }
+    }
+}
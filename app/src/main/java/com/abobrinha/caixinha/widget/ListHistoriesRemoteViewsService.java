@@ -18,6 +18,9 @@ import com.abobrinha.caixinha.data.PreferencesUtils;
 import com.bumptech.glide.Glide;
 import com.bumptech.glide.load.engine.DiskCacheStrategy;
 
+import java.util.ArrayList;
+import java.util.List;
+
 
 public class ListHistoriesRemoteViewsService extends RemoteViewsService {
     @Override
@@ -36,14 +39,20 @@ class ListHistoriesRemoteViewsFactory implements RemoteViewsService.RemoteViewsF
 
     private static final String[] MAIN_HISTORIES_PROJECTION = {
             HistoryContract.HistoriesEntry._ID,
-            HistoryContract.HistoriesEntry.COLUMN_HISTORY_TITLE,
+            HistoryContract.HistoriesEntry.COLUMN_HISTORY_TITLE_PLAIN,
             HistoryContract.HistoriesEntry.COLUMN_HISTORY_IMAGE,
-            HistoryContract.HistoriesEntry.COLUMN_HISTORY_DATE
+            HistoryContract.HistoriesEntry.COLUMN_HISTORY_DATE,
+            HistoryContract.HistoriesEntry.COLUMN_HISTORY_TITLE_SORT
     };
 
     private static final int INDEX_HISTORY_ID = 0;
     private static final int INDEX_HISTORY_TITLE = 1;
     private static final int INDEX_HISTORY_IMAGE = 2;
+    private static final int INDEX_HISTORY_DATE = 3;
+    private static final int INDEX_HISTORY_TITLE_SORT = 4;
+
+    // Histórias lidas por consulta (ver HistoriesEntry.buildPageUri)
+    private static final int PAGE_SIZE = 60;
 
     private final Uri[] mCategoryUri = new Uri[]{
             HistoryContract.HistoriesEntry.CONTENT_URI,
@@ -51,9 +60,15 @@ class ListHistoriesRemoteViewsFactory implements RemoteViewsService.RemoteViewsF
     };
 
     private Context mContext;
-    private Cursor mCursor = null;
     private int mAppWidgetId;
 
+    // Páginas já lidas, em ordem, e a quantidade total de histórias da listagem
+    private final List<Cursor> mPages = new ArrayList<>();
+    private int mCount;
+    private Uri mListUri;
+    private String mSortOrder;
+    private int mKeyIndex;
+
     public ListHistoriesRemoteViewsFactory(Context applicationContext, int appWidgetId) {
         mContext = applicationContext;
         mAppWidgetId = appWidgetId;
@@ -63,44 +78,89 @@ class ListHistoriesRemoteViewsFactory implements RemoteViewsService.RemoteViewsF
     public void onCreate() {
     }
 
+    /*
+     * Apenas conta as histórias da listagem. As páginas são lidas em getViewAt, que roda fora da
+     * thread principal, à medida que o usuário rola o widget.
+     */
     @Override
     public void onDataSetChanged() {
-        if (mCursor != null) {
-            mCursor.close();
-        }
+        closePages();
 
         int category = PreferencesUtils.loadWidgetCategoryPref(mContext, mAppWidgetId);
+        mListUri = mCategoryUri[category];
+        mSortOrder = PreferencesUtils.getDatabaseOrderByPref(mContext, mAppWidgetId);
+        mKeyIndex = mSortOrder.startsWith(HistoryContract.HistoriesEntry.COLUMN_HISTORY_TITLE_SORT)
+                ? INDEX_HISTORY_TITLE_SORT : INDEX_HISTORY_DATE;
 
         final long identityToken = Binder.clearCallingIdentity();
 
-        mCursor = mContext.getContentResolver().query(mCategoryUri[category],
-                MAIN_HISTORIES_PROJECTION,
-                null,
-                null,
-                PreferencesUtils.getDatabaseOrderByPref(mContext, mAppWidgetId));
+        Cursor countCursor = mContext.getContentResolver().query(mListUri,
+                new String[]{"COUNT(*)"}, null, null, null);
+        mCount = 0;
+        if (countCursor != null) {
+            if (countCursor.moveToFirst()) mCount = countCursor.getInt(0);
+            countCursor.close();
+        }
 
         Binder.restoreCallingIdentity(identityToken);
     }
 
     @Override
     public void onDestroy() {
-        if (mCursor != null) {
-            mCursor.close();
-            mCursor = null;
-        }
+        closePages();
     }
 
     @Override
     public int getCount() {
-        return mCursor == null ? 0 : mCursor.getCount();
+        return mCount;
+    }
+
+    /*
+     * Cursor da página que contém a posição, lendo as páginas anteriores que ainda faltam, já
+     * que cada uma começa após a última história da anterior. Retorna null se a listagem tiver
+     * diminuído desde a contagem.
+     */
+    private Cursor getPageAt(int position) {
+        int pageIndex = position / PAGE_SIZE;
+
+        final long identityToken = Binder.clearCallingIdentity();
+        try {
+            while (mPages.size() <= pageIndex) {
+                Uri pageUri;
+                if (mPages.isEmpty()) {
+                    pageUri = HistoryContract.HistoriesEntry.buildPageUri(mListUri, PAGE_SIZE);
+                } else {
+                    Cursor lastPage = mPages.get(mPages.size() - 1);
+                    if (lastPage.getCount() < PAGE_SIZE || !lastPage.moveToLast()) return null;
+                    pageUri = HistoryContract.HistoriesEntry.buildPageUri(mListUri, PAGE_SIZE,
+                            lastPage.getString(mKeyIndex), lastPage.getLong(INDEX_HISTORY_ID));
+                }
+
+                Cursor page = mContext.getContentResolver().query(pageUri,
+                        MAIN_HISTORIES_PROJECTION, null, null, mSortOrder);
+                if (page == null) return null;
+                mPages.add(page);
+            }
+        } finally {
+            Binder.restoreCallingIdentity(identityToken);
+        }
+
+        return mPages.get(pageIndex);
+    }
+
+    private void closePages() {
+        for (Cursor page : mPages) {
+            page.close();
+        }
+        mPages.clear();
     }
 
     @Override
     public RemoteViews getViewAt(int position) {
-        if (position == AdapterView.INVALID_POSITION ||
-                mCursor == null || !mCursor.moveToPosition(position)) {
-            return null;
-        }
+        if (position == AdapterView.INVALID_POSITION || position >= mCount) return null;
+
+        Cursor cursor = getPageAt(position);
+        if (cursor == null || !cursor.moveToPosition(position % PAGE_SIZE)) return null;
 
         RemoteViews views = new RemoteViews(mContext.getPackageName(),
                 R.layout.list_history_widget_item);
@@ -108,7 +168,7 @@ class ListHistoriesRemoteViewsFactory implements RemoteViewsService.RemoteViewsF
         Bitmap image;
         try {
             image = Glide.with(mContext.getApplicationContext())
-                    .load(mCursor.getString(INDEX_HISTORY_IMAGE))
+                    .load(cursor.getString(INDEX_HISTORY_IMAGE))
                     .asBitmap()
                     .diskCacheStrategy(DiskCacheStrategy.ALL)
                     .placeholder(R.drawable.img_about)
@@ -119,12 +179,12 @@ class ListHistoriesRemoteViewsFactory implements RemoteViewsService.RemoteViewsF
             image = BitmapFactory.decodeResource(mContext.getResources(), R.drawable.img_about);
         }
         views.setImageViewBitmap(R.id.history_image, image);
-        views.setContentDescription(R.id.history_image, mCursor.getString(INDEX_HISTORY_TITLE));
+        views.setContentDescription(R.id.history_image, cursor.getString(INDEX_HISTORY_TITLE));
 
-        views.setTextViewText(R.id.history_title, mCursor.getString(INDEX_HISTORY_TITLE));
+        views.setTextViewText(R.id.history_title, cursor.getString(INDEX_HISTORY_TITLE));
 
         final Intent fillInIntent = new Intent();
-        fillInIntent.putExtra(Intent.EXTRA_TEXT, mCursor.getLong(INDEX_HISTORY_ID));
+        fillInIntent.putExtra(Intent.EXTRA_TEXT, cursor.getLong(INDEX_HISTORY_ID));
         views.setOnClickFillInIntent(R.id.list_item, fillInIntent);
 
         return views;
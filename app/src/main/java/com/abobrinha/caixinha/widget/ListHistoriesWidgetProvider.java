@@ -69,6 +69,16 @@ public class ListHistoriesWidgetProvider extends AppWidgetProvider {
             int[] appWidgetIds = appWidgetManager.getAppWidgetIds(
                     new ComponentName(context, getClass()));
             appWidgetManager.notifyAppWidgetViewDataChanged(appWidgetIds, R.id.widget_list);
+        } else if (NotificationUtils.ACTION_FAVORITES_UPDATED.equals(intent.getAction())) {
+            AppWidgetManager appWidgetManager = AppWidgetManager.getInstance(context);
+            for (int appWidgetId : appWidgetManager.getAppWidgetIds(
+                    new ComponentName(context, getClass()))) {
+                if (PreferencesUtils.loadWidgetCategoryPref(context, appWidgetId) ==
+                        PreferencesUtils.CATEGORY_FAVORITES) {
+                    appWidgetManager.notifyAppWidgetViewDataChanged(appWidgetId,
+                            R.id.widget_list);
+                }
+            }
         }
     }
 
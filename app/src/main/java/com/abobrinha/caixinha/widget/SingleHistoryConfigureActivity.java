@@ -7,7 +7,6 @@ import android.content.SharedPreferences;
 import android.database.Cursor;
 import android.os.Bundle;
 import androidx.loader.app.LoaderManager;
-import androidx.loader.content.CursorLoader;
 import androidx.loader.content.Loader;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.preference.PreferenceManager;
@@ -24,6 +23,7 @@ import com.abobrinha.caixinha.data.HistoryContract;
 import com.abobrinha.caixinha.data.PreferencesUtils;
 import com.abobrinha.caixinha.network.WordPressConn;
 import com.abobrinha.caixinha.sync.HistorySyncUtils;
+import com.abobrinha.caixinha.ui.HistoryPagesLoader;
 
 
 public class SingleHistoryConfigureActivity extends AppCompatActivity implements
@@ -33,7 +33,7 @@ public class SingleHistoryConfigureActivity extends AppCompatActivity implements
 
     public static final String[] MAIN_HISTORIES_PROJECTION = {
             HistoryContract.HistoriesEntry._ID,
-            HistoryContract.HistoriesEntry.COLUMN_HISTORY_TITLE,
+            HistoryContract.HistoriesEntry.COLUMN_HISTORY_TITLE_PLAIN,
             HistoryContract.HistoriesEntry.COLUMN_HISTORY_IMAGE
     };
     private final String SELECTED_KEY = "selected_position";
@@ -79,6 +79,13 @@ public class SingleHistoryConfigureActivity extends AppCompatActivity implements
         mLayoutManager = new LinearLayoutManager(this);
         mAdapter = new SingleHistoryConfigureAdapter(this, this);
 
+        mHistoriesList.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                loadNextPageIfNeeded();
+            }
+        });
+
         Button cancelButton = (Button) findViewById(R.id.button_cancel);
         cancelButton.setOnClickListener(new View.OnClickListener() {
             @Override
@@ -194,13 +201,16 @@ public class SingleHistoryConfigureActivity extends AppCompatActivity implements
     }
 
     private void showHistoriesDataView() {
-        mHistoriesList.setLayoutManager(mLayoutManager);
-        mHistoriesList.setHasFixedSize(true);
+        // Configurada apenas na primeira carga, e não a cada nova página
+        if (mHistoriesList.getAdapter() != mAdapter) {
+            mHistoriesList.setLayoutManager(mLayoutManager);
+            mHistoriesList.setHasFixedSize(true);
 
-        mHistoriesList.setAdapter(mAdapter);
+            mHistoriesList.setAdapter(mAdapter);
 
-        if (mPosition != RecyclerView.NO_POSITION)
-            mHistoriesList.scrollToPosition(mPosition);
+            if (mPosition != RecyclerView.NO_POSITION)
+                mHistoriesList.scrollToPosition(mPosition);
+        }
 
         mEmptyStateTextView.setVisibility(View.INVISIBLE);
         mHistoriesList.setVisibility(View.VISIBLE);
@@ -210,14 +220,24 @@ public class SingleHistoryConfigureActivity extends AppCompatActivity implements
         mOkButton.setEnabled(mHistorySelected != SingleHistoryConfigureAdapter.INVALID_HISTORY_ID);
     }
 
+    // Busca a próxima página de histórias quando a rolagem se aproxima do fim das já carregadas
+    private void loadNextPageIfNeeded() {
+        Loader<Cursor> loader = getSupportLoaderManager().getLoader(HISTORY_LOADER_ID);
+        int lastVisible = mLayoutManager.findLastVisibleItemPosition();
+
+        if (loader != null && lastVisible != RecyclerView.NO_POSITION &&
+                lastVisible >= mAdapter.getItemCount() - HistoryPagesLoader.PREFETCH_DISTANCE) {
+            ((HistoryPagesLoader) loader).loadNextPage();
+        }
+    }
+
     @Override
     public Loader<Cursor> onCreateLoader(int id, Bundle bundle) {
-        return new CursorLoader(this,
+        return new HistoryPagesLoader(this,
                 HistoryContract.HistoriesEntry.CONTENT_URI,
                 MAIN_HISTORIES_PROJECTION,
-                null,
-                null,
-                HistoryContract.HistoriesEntry.COLUMN_HISTORY_TITLE + " ASC");
+                HistoryContract.HistoriesEntry.COLUMN_HISTORY_TITLE_SORT + " ASC",
+                mPosition);
     }
 
     @Override
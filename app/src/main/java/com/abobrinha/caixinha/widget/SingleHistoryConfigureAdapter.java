@@ -12,8 +12,6 @@ import android.widget.RadioButton;
 import com.abobrinha.caixinha.R;
 import com.abobrinha.caixinha.ui.HistoryGridFragment;
 
-import org.jsoup.Jsoup;
-
 public class SingleHistoryConfigureAdapter extends
         RecyclerView.Adapter<SingleHistoryConfigureAdapter.HistoryConfigWidgetViewHolder> {
 
@@ -60,7 +58,7 @@ public class SingleHistoryConfigureAdapter extends
     @Override
     public void onBindViewHolder(HistoryConfigWidgetViewHolder holder, int position) {
         mCursor.moveToPosition(position);
-        String title = Jsoup.parse(mCursor.getString(HistoryGridFragment.INDEX_HISTORY_TITLE)).text();
+        String title = mCursor.getString(HistoryGridFragment.INDEX_HISTORY_TITLE);
         holder.historyRadio.setText(title);
         holder.historyRadio.setChecked(sItemSelected == position);
     }
@@ -67,7 +67,7 @@ public class SingleHistoryJobIntentService extends JobIntentService {
 
         final String[] projection = {
                 HistoryContract.HistoriesEntry._ID,
-                HistoryContract.HistoriesEntry.COLUMN_HISTORY_TITLE,
+                HistoryContract.HistoriesEntry.COLUMN_HISTORY_TITLE_PLAIN,
                 HistoryContract.HistoriesEntry.COLUMN_HISTORY_IMAGE
         };
 
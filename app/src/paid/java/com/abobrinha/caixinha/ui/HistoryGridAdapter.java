@@ -20,8 +20,6 @@ import com.abobrinha.caixinha.R;
 import com.bumptech.glide.Glide;
 import com.bumptech.glide.load.engine.DiskCacheStrategy;
 
-import org.jsoup.Jsoup;
-
 public class HistoryGridAdapter extends RecyclerView.Adapter<HistoryGridAdapter.HistoryGridViewHolder> {
 
     final private GridOnItemClickListener mOnClickListener;
@@ -60,7 +58,7 @@ public class HistoryGridAdapter extends RecyclerView.Adapter<HistoryGridAdapter.
     public void onBindViewHolder(HistoryGridViewHolder holder, int position) {
         mCursor.moveToPosition(position);
 
-        String title = Jsoup.parse(mCursor.getString(HistoryGridFragment.INDEX_HISTORY_TITLE)).text();
+        String title = mCursor.getString(HistoryGridFragment.INDEX_HISTORY_TITLE);
 
         Glide.with(mContext.getApplicationContext())
                 .load(mCursor.getString(HistoryGridFragment.INDEX_HISTORY_IMAGE))
@@ -0,0 +1,57 @@
+package com.abobrinha.caixinha.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Todo o processamento de uma página da API antes da gravação na base, na ordem em que o app o
+ * faz na sincronização: leitura do JSON, título para exibição e ordenação, hash do conteúdo e
+ * extração dos parágrafos. Não inclui a escrita no SQLite, que depende do Android.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class IngestionBenchmark {
+
+    @Param({"1", "100", "10000"})
+    public int posts;
+
+    private String mPage;
+
+    @Setup
+    public void setUp() throws IOException {
+        mPage = WordPressCorpus.buildPage(posts);
+    }
+
+    @Benchmark
+    public void ingestPage(final Blackhole blackhole) throws Exception {
+        WordPressPageReader reader = new WordPressPageReader(new StringReader(mPage));
+        ParagraphExtractor.OnParagraphListener listener =
+                new ParagraphExtractor.OnParagraphListener() {
+                    @Override
+                    public void onParagraph(int type, String content) {
+                        blackhole.consume(content);
+                    }
+                };
+
+        PostRow row = new PostRow();
+        while (reader.nextPost(row)) {
+            String plainTitle = HistoryTitle.toPlainText(row.title);
+            blackhole.consume(HistoryTitle.toSortKey(plainTitle));
+            blackhole.consume(ContentDigest.of(row.rawContent));
+            ParagraphExtractor.extract(row.rawContent, listener);
+            row = new PostRow();
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.abobrinha.caixinha.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Conversão das datas da API, em datas por segundo. Não deve alocar (gc.alloc.rate.norm ≈ 0).
+ * simpleDateFormat é a referência: a conversão anterior do app, com um SimpleDateFormat criado a
+ * cada data.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class IsoDateParserBenchmark {
+
+    private final String[] mDates = {
+            "2018-06-15T17:17:01-03:00",
+            "2017-05-06T08:00:19-03:00",
+            "2017-05-06T15:00:19Z",
+            "2020-02-29T23:59:59+05:30"
+    };
+
+    @Benchmark
+    @OperationsPerInvocation(4)
+    public void parse(Blackhole blackhole) {
+        for (String date : mDates) {
+            blackhole.consume(IsoDateParser.parse(date));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(4)
+    public void simpleDateFormat(Blackhole blackhole) throws ParseException {
+        for (String date : mDates) {
+            SimpleDateFormat formatter =
+                    new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssXXX", Locale.US);
+            blackhole.consume(formatter.parse(date).getTime());
+        }
+    }
+}
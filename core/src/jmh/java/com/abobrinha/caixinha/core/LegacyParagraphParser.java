@@ -0,0 +1,73 @@
+package com.abobrinha.caixinha.core;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Cópia da implementação anterior de HistoryProvider.historyContentParser (pré-processamento
+ * com expressões regulares + Element.text()), mantida apenas como referência para o
+ * ParagraphExtractorBenchmark. A saída dela para o corpus está gravada nos testes (ver
+ * TestParagraphExtractor).
+ *
+ * Cada parágrafo é retornado como "tipo|conteúdo". Assim como na implementação original, todas
+ * as imagens de um mesmo parágrafo repetem a URL da última (o ContentValues era reaproveitado).
+ */
+class LegacyParagraphParser {
+
+    static List<String> parse(String htmlContent) {
+
+        final String BR_TOKEN = "#!#br2n#!#";
+        final String TAG_P = "p";
+        final String TAG_IMG = "img";
+        final String TAG_SRC = "src";
+        final String TAG_FIGURE = "figure";
+
+        List<String> historyValues = new ArrayList<>();
+
+        Document doc = Jsoup.parse(
+                htmlContent
+                        .replaceAll("(?i)<br[^>]*>", BR_TOKEN)
+                        .replaceAll("<((\\\\/)?)" + TAG_FIGURE, "<$1" + TAG_P)
+        );
+
+        for (Element p : doc.select(TAG_P)) {
+            if (!p.text().trim().isEmpty()) {
+                String paragraphString = p.text().replaceAll(BR_TOKEN, "\n");
+                int paragraphType;
+                boolean isAuthor = false;
+
+                if (paragraphString.trim().toLowerCase()
+                        .equals(ParagraphExtractor.AUTHOR.toLowerCase())) {
+                    paragraphType = ParagraphExtractor.TYPE_AUTHOR;
+                    isAuthor = true;
+                } else if (paragraphString.trim().toLowerCase()
+                        .equals(ParagraphExtractor.END.toLowerCase())) {
+                    paragraphType = ParagraphExtractor.TYPE_END;
+                } else {
+                    paragraphType = ParagraphExtractor.TYPE_TEXT;
+                }
+
+                historyValues.add(paragraphType + "|" + paragraphString);
+
+                if (isAuthor) break;
+            }
+
+            List<String> images = new ArrayList<>();
+            String lastImage = null;
+            for (Element img : p.select(TAG_IMG)) {
+                lastImage = img.absUrl(TAG_SRC).contains("?") ?
+                        img.absUrl(TAG_SRC).substring(0, img.absUrl(TAG_SRC).indexOf("?")) :
+                        img.absUrl(TAG_SRC);
+                images.add(lastImage);
+            }
+            for (int i = 0; i < images.size(); i++) {
+                historyValues.add(ParagraphExtractor.TYPE_IMAGE + "|" + lastImage);
+            }
+        }
+        return historyValues;
+    }
+}
@@ -0,0 +1,45 @@
+package com.abobrinha.caixinha.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Leitura de uma página da API (JSON para rows), como em WordPressJson.readHistories. O
+ * resultado é em páginas por segundo: para posts por segundo, multiplicar por posts.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class PageReaderBenchmark {
+
+    @Param({"1", "100", "10000"})
+    public int posts;
+
+    private String mPage;
+
+    @Setup
+    public void setUp() throws IOException {
+        mPage = WordPressCorpus.buildPage(posts);
+    }
+
+    @Benchmark
+    public void readPage(Blackhole blackhole) throws Exception {
+        WordPressPageReader reader = new WordPressPageReader(new StringReader(mPage));
+        PostRow row = new PostRow();
+        while (reader.nextPost(row)) {
+            blackhole.consume(row);
+            row = new PostRow();
+        }
+    }
+}
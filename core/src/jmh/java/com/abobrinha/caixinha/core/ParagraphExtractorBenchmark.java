@@ -0,0 +1,68 @@
+package com.abobrinha.caixinha.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Extração dos parágrafos do corpus de TestParagraphExtractor, em histórias por segundo.
+ * legacyParser é a referência: o parser anterior (expressões regulares sobre o HTML inteiro +
+ * Element.text() chamado várias vezes por parágrafo).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ParagraphExtractorBenchmark {
+
+    private static final String[] CORPUS = {
+            "paragraphs/fixture_1.html",
+            "paragraphs/fixture_2.html",
+            "paragraphs/fixture_3.html",
+            "paragraphs/classic_editor.html",
+            "paragraphs/block_editor.html",
+            "paragraphs/edge_cases.html"
+    };
+
+    private String[] mHistories;
+
+    @Setup
+    public void setUp() throws IOException {
+        mHistories = new String[CORPUS.length];
+        for (int i = 0; i < CORPUS.length; i++) {
+            mHistories[i] = WordPressCorpus.readResource(CORPUS[i]);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(6)
+    public void extract(final Blackhole blackhole) {
+        ParagraphExtractor.OnParagraphListener listener =
+                new ParagraphExtractor.OnParagraphListener() {
+                    @Override
+                    public void onParagraph(int type, String content) {
+                        blackhole.consume(content);
+                    }
+                };
+
+        for (String html : mHistories) {
+            ParagraphExtractor.extract(html, listener);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(6)
+    public void legacyParser(Blackhole blackhole) {
+        for (String html : mHistories) {
+            blackhole.consume(LegacyParagraphParser.parse(html));
+        }
+    }
+}
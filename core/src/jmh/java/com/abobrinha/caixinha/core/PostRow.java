@@ -0,0 +1,49 @@
+package com.abobrinha.caixinha.core;
+
+/**
+ * HistoryRow com um campo por coluna, equivalente em alocações ao que o app guarda por post.
+ */
+class PostRow implements HistoryRow {
+    long id;
+    long date;
+    long modified;
+    String title;
+    String url;
+    String image;
+    String rawContent;
+
+    @Override
+    public void putId(long id) {
+        this.id = id;
+    }
+
+    @Override
+    public void putDate(long dateMillis) {
+        this.date = dateMillis;
+    }
+
+    @Override
+    public void putModified(long dateMillis) {
+        this.modified = dateMillis;
+    }
+
+    @Override
+    public void putTitle(String title) {
+        this.title = title;
+    }
+
+    @Override
+    public void putUrl(String url) {
+        this.url = url;
+    }
+
+    @Override
+    public void putImage(String imageUrl) {
+        this.image = imageUrl;
+    }
+
+    @Override
+    public void putRawContent(String rawContent) {
+        this.rawContent = rawContent;
+    }
+}
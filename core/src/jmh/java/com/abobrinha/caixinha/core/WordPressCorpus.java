@@ -0,0 +1,74 @@
+package com.abobrinha.caixinha.core;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Páginas da API de posts do WordPress para os benchmarks, geradas a partir dos posts gravados
+ * em fixtures/posts.json. Corpora maiores que o gravado replicam os posts com novos ID's e datas,
+ * como o FakeWordPressServer dos testes instrumentados.
+ */
+final class WordPressCorpus {
+
+    private static final String FIXTURE_POSTS = "fixtures/posts.json";
+
+    private WordPressCorpus() {
+    }
+
+    /*
+     * Página com totalPosts posts completos (com o conteúdo HTML), no formato da resposta da API.
+     */
+    static String buildPage(int totalPosts) throws IOException {
+        JsonArray recorded = JsonParser.parseString(readResource(FIXTURE_POSTS))
+                .getAsJsonObject().getAsJsonArray("posts");
+
+        JsonArray posts = new JsonArray();
+        for (int i = 0; i < totalPosts; i++) {
+            JsonObject post = recorded.get(i % recorded.size()).getAsJsonObject().deepCopy();
+            int copy = i / recorded.size();
+            if (copy > 0) {
+                post.addProperty(WordPressPageReader.FIELD_ID,
+                        post.get(WordPressPageReader.FIELD_ID).getAsLong() + copy * 1000000L);
+                shiftYear(post, WordPressPageReader.FIELD_DATE, copy);
+                shiftYear(post, WordPressPageReader.FIELD_MODIFIED, copy);
+            }
+            posts.add(post);
+        }
+
+        JsonObject page = new JsonObject();
+        page.addProperty("found", totalPosts);
+        page.add("posts", posts);
+        return page.toString();
+    }
+
+    private static void shiftYear(JsonObject post, String field, int years) {
+        JsonElement date = post.get(field);
+        if (date == null || date.isJsonNull()) return;
+
+        String isoDate = date.getAsString();
+        int year = Integer.parseInt(isoDate.substring(0, 4));
+        post.addProperty(field, (year + years) + isoDate.substring(4));
+    }
+
+    static String readResource(String name) throws IOException {
+        InputStream in = WordPressCorpus.class.getClassLoader().getResourceAsStream(name);
+        if (in == null) throw new IOException("Recurso não encontrado: " + name);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toString("UTF-8");
+        } finally {
+            in.close();
+        }
+    }
+}
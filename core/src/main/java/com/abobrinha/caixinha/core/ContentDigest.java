@@ -0,0 +1,37 @@
+package com.abobrinha.caixinha.core;
+
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Hash (SHA-1, em hexadecimal) do conteúdo HTML de uma história, guardado na coluna
+ * COLUMN_CONTENT_HASH. O WordPress altera a data de modificação mesmo em edições que não mudam
+ * o texto, então é o hash que indica se os parágrafos precisam ser parseados e regravados.
+ */
+public final class ContentDigest {
+
+    private static final String ALGORITHM = "SHA-1";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private ContentDigest() {
+    }
+
+    public static String of(String rawContent) {
+        byte[] digest;
+        try {
+            digest = MessageDigest.getInstance(ALGORITHM).digest(rawContent.getBytes(UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-1 faz parte dos algoritmos obrigatórios de toda implementação Java
+            throw new IllegalStateException(e);
+        }
+
+        char[] hex = new char[digest.length * 2];
+        for (int i = 0; i < digest.length; i++) {
+            hex[i * 2] = HEX_DIGITS[(digest[i] >> 4) & 0x0f];
+            hex[i * 2 + 1] = HEX_DIGITS[digest[i] & 0x0f];
+        }
+        return new String(hex);
+    }
+}
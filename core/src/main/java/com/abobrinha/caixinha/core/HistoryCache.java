@@ -0,0 +1,206 @@
+package com.abobrinha.caixinha.core;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+
+/**
+ * Cache em memória das histórias abertas recentemente: os dados do cabeçalho e os parágrafos já
+ * decodificados, de forma que reabrir uma história não precise ler a base. O tamanho total é
+ * limitado (aproximado, em bytes) e, ao ultrapassá-lo, as histórias usadas há mais tempo são
+ * descartadas primeiro (LRU).
+ *
+ * As entradas são imutáveis. Uma alteração gravada em uma história deve removê-la do cache
+ * (invalidate). Uma entrada lida da base antes de uma alteração e guardada depois dela tem a
+ * geração anterior e é ignorada pelo put, para que o cache nunca volte a ter dados antigos.
+ */
+public final class HistoryCache {
+
+    private final LinkedHashMap<Long, Entry> mEntries = new LinkedHashMap<>(16, 0.75f, true);
+    private final int mMaxSize;
+    private int mSize;
+    private long mGeneration;
+
+    private int mHitCount;
+    private int mMissCount;
+    private int mEvictionCount;
+
+    public HistoryCache(int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Tamanho máximo do cache inválido: " + maxSize);
+        }
+        mMaxSize = maxSize;
+    }
+
+    /*
+     * Retorna a história, que passa a ser a usada mais recentemente, ou null se não estiver no
+     * cache.
+     */
+    public synchronized Entry get(long historyId) {
+        Entry entry = mEntries.get(historyId);
+        if (entry != null) {
+            mHitCount++;
+        } else {
+            mMissCount++;
+        }
+        return entry;
+    }
+
+    /*
+     * Geração atual do cache, que deve ser obtida antes de ler da base os dados de uma entrada.
+     */
+    public synchronized long getGeneration() {
+        return mGeneration;
+    }
+
+    /*
+     * Guarda a história, descartando as usadas há mais tempo se o tamanho máximo for
+     * ultrapassado. Retorna false, sem guardá-la, se alguma história foi invalidada depois de
+     * obtida a geração, ou se a entrada sozinha for maior que o cache.
+     */
+    public synchronized boolean put(long historyId, Entry entry, long generation) {
+        if (generation != mGeneration || entry.getSize() > mMaxSize) return false;
+
+        Entry previous = mEntries.put(historyId, entry);
+        if (previous != null) mSize -= previous.getSize();
+        mSize += entry.getSize();
+
+        Iterator<Entry> eldest = mEntries.values().iterator();
+        while (mSize > mMaxSize) {
+            mSize -= eldest.next().getSize();
+            eldest.remove();
+            mEvictionCount++;
+        }
+        return true;
+    }
+
+    public synchronized void invalidate(long historyId) {
+        mGeneration++;
+        Entry removed = mEntries.remove(historyId);
+        if (removed != null) mSize -= removed.getSize();
+    }
+
+    public synchronized void invalidateAll() {
+        mGeneration++;
+        mEntries.clear();
+        mSize = 0;
+    }
+
+    public synchronized int getSize() {
+        return mSize;
+    }
+
+    public int getMaxSize() {
+        return mMaxSize;
+    }
+
+    public synchronized int getHitCount() {
+        return mHitCount;
+    }
+
+    public synchronized int getMissCount() {
+        return mMissCount;
+    }
+
+    // Histórias descartadas para liberar espaço (não conta as invalidadas)
+    public synchronized int getEvictionCount() {
+        return mEvictionCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format(Locale.US,
+                "HistoryCache[tamanho=%d/%d, histórias=%d, acertos=%d, faltas=%d, descartes=%d]",
+                mSize, mMaxSize, mEntries.size(), mHitCount, mMissCount, mEvictionCount);
+    }
+
+    /**
+     * Dados de uma história já baixada. Os parágrafos são copiados e decodificados na criação.
+     */
+    public static final class Entry {
+        // Estimativas do espaço ocupado por um objeto e por uma String vazia na JVM
+        private static final int OBJECT_OVERHEAD = 16;
+        private static final int STRING_OVERHEAD = 40;
+
+        private final String mTitle;
+        private final String mImage;
+        private final int mFavorite;
+        private final Paragraphs mParagraphs;
+        private final int mSize;
+
+        public Entry(String title, String image, int favorite, ParagraphList paragraphs) {
+            mTitle = title;
+            mImage = image;
+            mFavorite = favorite;
+            mParagraphs = new Paragraphs(paragraphs);
+
+            int size = 4 * OBJECT_OVERHEAD + sizeOf(title) + sizeOf(image);
+            for (int i = 0; i < mParagraphs.getCount(); i++) {
+                size += 12 + sizeOf(mParagraphs.getContent(i));
+            }
+            mSize = size;
+        }
+
+        private static int sizeOf(String value) {
+            return value == null ? 0 : STRING_OVERHEAD + 2 * value.length();
+        }
+
+        public String getTitle() {
+            return mTitle;
+        }
+
+        public String getImage() {
+            return mImage;
+        }
+
+        public int getFavorite() {
+            return mFavorite;
+        }
+
+        public ParagraphList getParagraphs() {
+            return mParagraphs;
+        }
+
+        // Tamanho aproximado, em bytes, ocupado pela entrada
+        public int getSize() {
+            return mSize;
+        }
+    }
+
+    private static final class Paragraphs implements ParagraphList {
+        private final long[] mIds;
+        private final int[] mTypes;
+        private final String[] mContents;
+
+        Paragraphs(ParagraphList paragraphs) {
+            mIds = new long[paragraphs.getCount()];
+            mTypes = new int[mIds.length];
+            mContents = new String[mIds.length];
+            for (int i = 0; i < mIds.length; i++) {
+                mIds[i] = paragraphs.getId(i);
+                mTypes[i] = paragraphs.getType(i);
+                mContents[i] = paragraphs.getContent(i);
+            }
+        }
+
+        @Override
+        public int getCount() {
+            return mTypes.length;
+        }
+
+        @Override
+        public long getId(int index) {
+            return mIds[index];
+        }
+
+        @Override
+        public int getType(int index) {
+            return mTypes[index];
+        }
+
+        @Override
+        public String getContent(int index) {
+            return mContents[index];
+        }
+    }
+}
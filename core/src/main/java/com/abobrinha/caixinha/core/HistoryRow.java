@@ -0,0 +1,27 @@
+package com.abobrinha.caixinha.core;
+
+/**
+ * Destino dos campos de um post lido pelo WordPressPageReader. Mantém a leitura do JSON livre
+ * das classes do Android: o app grava os campos em um ContentValues, com as colunas da tabela de
+ * histórias, e os benchmarks e testes da JVM podem usar qualquer outra implementação.
+ *
+ * Apenas os campos presentes no JSON são informados, e campos nulos no JSON chegam como null.
+ */
+public interface HistoryRow {
+
+    void putId(long id);
+
+    // Datas em milisegundos, ou IsoDateParser.INVALID_DATE se inválidas
+    void putDate(long dateMillis);
+
+    void putModified(long dateMillis);
+
+    void putTitle(String title);
+
+    void putUrl(String url);
+
+    void putImage(String imageUrl);
+
+    // Conteúdo HTML da história, a ser processado pelo ParagraphExtractor
+    void putRawContent(String rawContent);
+}
@@ -0,0 +1,107 @@
+package com.abobrinha.caixinha.core;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.text.Normalizer;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Busca textual nas histórias, com um índice FTS4 do SQLite sobre o título e o texto dos
+ * parágrafos.
+ *
+ * O tokenizador do FTS4 disponível em todas as versões do Android ("simple") não ignora acentos,
+ * então o texto é gravado no índice já sem acentos e em minúsculas (fold), e a consulta do
+ * usuário passa pela mesma conversão. Assim "coracao" encontra "Coração" e vice-versa.
+ */
+public final class HistorySearch {
+
+    private static final Locale PORTUGUESE = new Locale("pt", "BR");
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{InCombiningDiacriticalMarks}+");
+    private static final Pattern NON_WORD = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    // Colunas do índice, na ordem em que aparecem no matchinfo
+    public static final int COLUMN_TITLE = 0;
+    public static final int COLUMN_CONTENT = 1;
+
+    // Peso de cada coluna no rank: uma palavra do título vale mais que uma do texto
+    private static final double[] COLUMN_WEIGHTS = {10.0, 1.0};
+
+    // Formato do matchinfo esperado por rank: frases, colunas, linhas e acertos por frase/coluna
+    public static final String MATCHINFO_FORMAT = "pcnx";
+
+    private HistorySearch() {
+    }
+
+    public static String fold(String text) {
+        String folded = Normalizer.normalize(text, Normalizer.Form.NFD);
+        folded = DIACRITICS.matcher(folded).replaceAll("");
+        return folded.toLowerCase(PORTUGUESE);
+    }
+
+    /*
+     * Monta a expressão do MATCH a partir do texto digitado pelo usuário: todas as palavras
+     * devem estar presentes, e a última é buscada como prefixo, para que a busca funcione
+     * enquanto a palavra ainda está sendo digitada. Pontuação e operadores do FTS digitados pelo
+     * usuário são descartados. Retorna null se não houver nenhuma palavra.
+     */
+    public static String buildMatchQuery(String userQuery) {
+        if (userQuery == null) return null;
+
+        StringBuilder match = new StringBuilder();
+        for (String word : NON_WORD.split(fold(userQuery))) {
+            if (word.isEmpty()) continue;
+            if (match.length() > 0) match.append(' ');
+            match.append(word);
+        }
+
+        if (match.length() == 0) return null;
+        return match.append('*').toString();
+    }
+
+    /*
+     * Relevância de um resultado a partir do matchinfo (formato MATCHINFO_FORMAT) do SQLite,
+     * que é um array de inteiros de 32 bits na ordem de bytes nativa. Para cada palavra da busca
+     * e coluna, os acertos na história são saturados (palavras repetidas contam cada vez menos)
+     * e ponderados pela raridade da palavra entre as histórias e pelo peso da coluna.
+     */
+    public static double rank(byte[] matchinfo) {
+        ByteBuffer info = ByteBuffer.wrap(matchinfo).order(ByteOrder.nativeOrder());
+        int phrases = info.getInt(0);
+        int columns = info.getInt(4);
+        int rows = info.getInt(8);
+
+        double score = 0;
+        for (int phrase = 0; phrase < phrases; phrase++) {
+            for (int column = 0; column < columns && column < COLUMN_WEIGHTS.length; column++) {
+                int offset = 12 + 12 * (phrase * columns + column);
+                int hitsInRow = info.getInt(offset);
+                int rowsWithHits = info.getInt(offset + 8);
+                if (hitsInRow == 0) continue;
+
+                double idf = Math.log(1.0 + (double) rows / rowsWithHits);
+                score += COLUMN_WEIGHTS[column] * idf * hitsInRow / (hitsInRow + 1.0);
+            }
+        }
+        return score;
+    }
+
+    /**
+     * Texto indexado de uma história: apenas os parágrafos de texto, sem imagens, autor e fim.
+     */
+    public static class ContentBuilder {
+        private final StringBuilder mContent = new StringBuilder();
+
+        public ContentBuilder add(int type, String content) {
+            if (type != ParagraphExtractor.TYPE_TEXT) return this;
+
+            if (mContent.length() > 0) mContent.append('\n');
+            mContent.append(content);
+            return this;
+        }
+
+        public String build() {
+            return fold(mContent.toString());
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.abobrinha.caixinha.core;
+
+import org.jsoup.Jsoup;
+
+import java.text.Normalizer;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Os títulos retornados pelo WordPress vêm em HTML (ex: "A Raposa &#8220;Esperta&#8221;"). O
+ * texto para exibição e a chave de ordenação são gerados uma única vez, na gravação da história
+ * (COLUMN_HISTORY_TITLE_PLAIN e COLUMN_HISTORY_TITLE_SORT), e não a cada exibição do título.
+ */
+public final class HistoryTitle {
+
+    private static final Locale PORTUGUESE = new Locale("pt", "BR");
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{InCombiningDiacriticalMarks}+");
+    private static final Pattern LEADING_SYMBOLS = Pattern.compile("^[^\\p{L}\\p{N}]+");
+
+    private HistoryTitle() {
+    }
+
+    public static String toPlainText(String htmlTitle) {
+        return Jsoup.parse(htmlTitle).text();
+    }
+
+    /*
+     * Remove acentos, maiúsculas e símbolos iniciais (aspas, travessões), para que "Árvore"
+     * fique junto de "arvore" e "“Zebra”" junto das demais histórias com Z na ordenação.
+     */
+    public static String toSortKey(String plainTitle) {
+        String key = Normalizer.normalize(plainTitle, Normalizer.Form.NFD);
+        key = DIACRITICS.matcher(key).replaceAll("");
+        key = LEADING_SYMBOLS.matcher(key).replaceFirst("");
+        return key.toLowerCase(PORTUGUESE);
+    }
+}
@@ -0,0 +1,119 @@
+package com.abobrinha.caixinha.core;
+
+/**
+ * Conversor das datas retornadas pela API do WordPress para milisegundos (epoch, UTC).
+ *
+ * Aceita apenas o formato fixo utilizado pela API, "yyyy-MM-ddTHH:mm:ss±HH:MM" (ou "Z" no lugar
+ * do fuso), lendo os dígitos diretamente da String. Não aloca objetos nem guarda estado, podendo
+ * ser utilizado simultaneamente por várias threads, ao contrário do SimpleDateFormat.
+ */
+public final class IsoDateParser {
+
+    public static final long INVALID_DATE = -1;
+
+    private static final int LENGTH_WITH_OFFSET = 25;   // 2017-05-06T08:00:19-03:00
+    private static final int LENGTH_UTC = 20;           // 2017-05-06T08:00:19Z
+
+    private static final long MILLIS_PER_SECOND = 1000L;
+    private static final long SECONDS_PER_MINUTE = 60L;
+    private static final long SECONDS_PER_HOUR = 3600L;
+    private static final long SECONDS_PER_DAY = 86400L;
+
+    private IsoDateParser() {
+    }
+
+    /**
+     * Retorna a data em milisegundos ou INVALID_DATE caso a String não esteja no formato
+     * esperado ou represente uma data inexistente.
+     */
+    public static long parse(String date) {
+        if (date == null) return INVALID_DATE;
+
+        int length = date.length();
+        if (length != LENGTH_WITH_OFFSET && length != LENGTH_UTC) return INVALID_DATE;
+
+        if (date.charAt(4) != '-' || date.charAt(7) != '-' || date.charAt(10) != 'T' ||
+                date.charAt(13) != ':' || date.charAt(16) != ':') {
+            return INVALID_DATE;
+        }
+
+        int year = digits(date, 0, 4);
+        int month = digits(date, 5, 2);
+        int day = digits(date, 8, 2);
+        int hour = digits(date, 11, 2);
+        int minute = digits(date, 14, 2);
+        int second = digits(date, 17, 2);
+
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month) ||
+                hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59) {
+            return INVALID_DATE;
+        }
+
+        int offsetSeconds;
+        char sign = date.charAt(19);
+        if (length == LENGTH_UTC) {
+            if (sign != 'Z') return INVALID_DATE;
+            offsetSeconds = 0;
+        } else {
+            if ((sign != '+' && sign != '-') || date.charAt(22) != ':') return INVALID_DATE;
+
+            int offsetHours = digits(date, 20, 2);
+            int offsetMinutes = digits(date, 23, 2);
+            if (offsetHours < 0 || offsetHours > 23 || offsetMinutes < 0 || offsetMinutes > 59) {
+                return INVALID_DATE;
+            }
+
+            offsetSeconds = (int) (offsetHours * SECONDS_PER_HOUR + offsetMinutes * SECONDS_PER_MINUTE);
+            if (sign == '-') offsetSeconds = -offsetSeconds;
+        }
+
+        long epochSeconds = daysFromCivil(year, month, day) * SECONDS_PER_DAY +
+                hour * SECONDS_PER_HOUR + minute * SECONDS_PER_MINUTE + second - offsetSeconds;
+
+        return epochSeconds * MILLIS_PER_SECOND;
+    }
+
+    /*
+     * Lê count dígitos decimais a partir de start. Retorna -1 se algum caractere não for dígito.
+     */
+    private static int digits(String s, int start, int count) {
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            int digit = s.charAt(i) - '0';
+            if (digit < 0 || digit > 9) return -1;
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    private static int daysInMonth(int year, int month) {
+        switch (month) {
+            case 2:
+                return isLeapYear(year) ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
+    private static boolean isLeapYear(int year) {
+        return (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+    }
+
+    /*
+     * Quantidade de dias desde 1970-01-01 no calendário gregoriano proléptico
+     * (algoritmo "days_from_civil" de Howard Hinnant).
+     */
+    private static long daysFromCivil(int year, int month, int day) {
+        long y = month <= 2 ? year - 1 : year;
+        long era = (y >= 0 ? y : y - 399) / 400;
+        long yearOfEra = y - era * 400;
+        long dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+}
@@ -0,0 +1,132 @@
+package com.abobrinha.caixinha.core;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+
+/**
+ * Formato binário compacto com todos os parágrafos de uma história, gravado em uma única coluna
+ * (ParagraphBlobsEntry) como alternativa a uma linha por parágrafo:
+ *
+ * [versão: 1 byte] [quantidade: varint] ([tipo: 1 byte] [tamanho: varint] [texto em UTF-8])*
+ *
+ * A leitura (Reader) percorre apenas os cabeçalhos para localizar cada parágrafo, e o texto só é
+ * decodificado quando solicitado, de forma que abrir uma história não exige decodificar os
+ * parágrafos que ainda não foram exibidos.
+ */
+public final class ParagraphBlob {
+
+    static final int FORMAT_VERSION = 1;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private ParagraphBlob() {
+    }
+
+    public static class Builder {
+        private final ByteArrayOutputStream mBody = new ByteArrayOutputStream();
+        private int mCount = 0;
+
+        public Builder add(int type, String content) {
+            byte[] bytes = content.getBytes(UTF_8);
+            mBody.write(type);
+            writeVarint(mBody, bytes.length);
+            mBody.write(bytes, 0, bytes.length);
+            mCount++;
+            return this;
+        }
+
+        public byte[] build() {
+            ByteArrayOutputStream blob = new ByteArrayOutputStream(mBody.size() + 6);
+            blob.write(FORMAT_VERSION);
+            writeVarint(blob, mCount);
+            byte[] body = mBody.toByteArray();
+            blob.write(body, 0, body.length);
+            return blob.toByteArray();
+        }
+    }
+
+    public static class Reader implements ParagraphList {
+        private final byte[] mData;
+        private final int[] mTypes;
+        private final int[] mOffsets;
+        private final int[] mLengths;
+        private final String[] mContents;
+
+        /*
+         * Lança IllegalArgumentException se os dados não estiverem no formato esperado.
+         */
+        public Reader(byte[] data) {
+            mData = data;
+            if (data.length == 0 || data[0] != FORMAT_VERSION) {
+                throw new IllegalArgumentException("Versão de blob de parágrafos desconhecida.");
+            }
+
+            int[] position = {1};
+            int count = readVarint(data, position);
+            mTypes = new int[count];
+            mOffsets = new int[count];
+            mLengths = new int[count];
+            mContents = new String[count];
+
+            for (int i = 0; i < count; i++) {
+                if (position[0] >= data.length) throw truncated();
+                mTypes[i] = data[position[0]++];
+                mLengths[i] = readVarint(data, position);
+                mOffsets[i] = position[0];
+                position[0] += mLengths[i];
+                if (position[0] > data.length) throw truncated();
+            }
+        }
+
+        @Override
+        public int getCount() {
+            return mTypes.length;
+        }
+
+        @Override
+        public long getId(int index) {
+            return index + 1;
+        }
+
+        @Override
+        public int getType(int index) {
+            return mTypes[index];
+        }
+
+        @Override
+        public String getContent(int index) {
+            String content = mContents[index];
+            if (content == null) {
+                content = new String(mData, mOffsets[index], mLengths[index], UTF_8);
+                mContents[index] = content;
+            }
+            return content;
+        }
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7f) != 0) {
+            out.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readVarint(byte[] data, int[] position) {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            if (position[0] >= data.length) throw truncated();
+            byte b = data[position[0]++];
+            value |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                if (value < 0) break;
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Tamanho inválido no blob de parágrafos.");
+    }
+
+    private static IllegalArgumentException truncated() {
+        return new IllegalArgumentException("Blob de parágrafos incompleto.");
+    }
+}
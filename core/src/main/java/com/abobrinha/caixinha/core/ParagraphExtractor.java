@@ -0,0 +1,187 @@
+package com.abobrinha.caixinha.core;
+
+import org.jsoup.Jsoup;
+import org.jsoup.internal.StringUtil;
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Node;
+import org.jsoup.nodes.TextNode;
+import org.jsoup.select.NodeFilter;
+import org.jsoup.select.NodeTraversor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Extrai os parágrafos (texto, imagem, autor e fim) do conteúdo HTML de uma história em uma
+ * única passagem pela árvore do Jsoup.
+ *
+ * Substitui o pré-processamento anterior com expressões regulares (BR trocado por um token e
+ * FIGURE renomeado para P) reproduzindo o mesmo resultado diretamente na árvore:
+ * - P e FIGURE são os elementos de parágrafo. Um FIGURE termina no primeiro elemento de bloco
+ * que contiver (ex: FIGCAPTION), como ocorria com o P renomeado;
+ * - BR vira uma quebra de linha no texto, sem remover os espaços ao seu redor;
+ * - O texto segue a mesma normalização de espaços do Element.text() do Jsoup;
+ * - Após o parágrafo do autor nada mais é extraído.
+ *
+ * Diferentemente do parser anterior, um parágrafo com várias imagens gera uma linha para cada
+ * imagem (antes todas repetiam a URL da última).
+ */
+public class ParagraphExtractor {
+
+    // Tipos de parágrafo, gravados pelo app na coluna de tipo da tabela de parágrafos
+    public static final int TYPE_TEXT = 0;
+    public static final int TYPE_IMAGE = 1;
+    public static final int TYPE_AUTHOR = 2;
+    public static final int TYPE_END = 3;
+
+    // Textos que identificam os parágrafos de autor e de fim da história
+    public static final String AUTHOR = "Rodrigo Lopes";
+    public static final String END = "FIM";
+
+    public interface OnParagraphListener {
+        void onParagraph(int type, String content);
+    }
+
+    private static final String TAG_P = "p";
+    private static final String TAG_FIGURE = "figure";
+    private static final String TAG_BR = "br";
+    private static final String TAG_IMG = "img";
+    private static final String ATTR_SRC = "src";
+
+    // Elementos que fechavam o P gerado a partir de um FIGURE no parsing do HTML
+    private static final Set<String> FIGURE_CLOSERS = new HashSet<>(Arrays.asList(
+            "address", "article", "aside", "blockquote", "center", "details", "dir", "div", "dl",
+            "dd", "dt", "fieldset", "figcaption", "figure", "footer", "form", "h1", "h2", "h3",
+            "h4", "h5", "h6", "header", "hgroup", "hr", "li", "listing", "menu", "nav", "ol", "p",
+            "plaintext", "pre", "section", "summary", "ul", "xmp"));
+
+    private ParagraphExtractor() {
+    }
+
+    public static void extract(String htmlContent, OnParagraphListener listener) {
+        NodeTraversor.filter(new Extractor(listener), Jsoup.parse(htmlContent));
+    }
+
+    private static class Extractor implements NodeFilter {
+        private final OnParagraphListener mListener;
+        private final StringBuilder mText = new StringBuilder();
+        private final List<String> mImages = new ArrayList<>();
+        private Element mParagraph;
+
+        Extractor(OnParagraphListener listener) {
+            mListener = listener;
+        }
+
+        @Override
+        public FilterResult head(Node node, int depth) {
+            if (node instanceof TextNode) {
+                if (mParagraph != null) {
+                    StringUtil.appendNormalisedWhitespace(mText, ((TextNode) node).getWholeText(),
+                            lastCharIsSpace());
+                }
+                return FilterResult.CONTINUE;
+            }
+
+            if (!(node instanceof Element)) return FilterResult.CONTINUE;
+
+            Element element = (Element) node;
+            String tagName = element.normalName();
+
+            if (mParagraph == null) {
+                if (tagName.equals(TAG_P) || tagName.equals(TAG_FIGURE)) {
+                    mParagraph = element;
+                }
+                return FilterResult.CONTINUE;
+            }
+
+            if (mParagraph.normalName().equals(TAG_FIGURE) && FIGURE_CLOSERS.contains(tagName)) {
+                // O restante do FIGURE não fazia parte do parágrafo, mas este elemento pode
+                // ser um novo parágrafo
+                if (endParagraph()) return FilterResult.STOP;
+                return head(node, depth);
+            }
+
+            if (tagName.equals(TAG_BR)) {
+                mText.append('\n');
+            } else if (tagName.equals(TAG_IMG)) {
+                mImages.add(element.absUrl(ATTR_SRC));
+            } else if (element.isBlock() && mText.length() > 0 && !lastCharIsSpace()) {
+                mText.append(' ');
+            }
+            return FilterResult.CONTINUE;
+        }
+
+        @Override
+        public FilterResult tail(Node node, int depth) {
+            if (mParagraph == null) return FilterResult.CONTINUE;
+
+            if (node == mParagraph) {
+                return endParagraph() ? FilterResult.STOP : FilterResult.CONTINUE;
+            }
+
+            if (node instanceof Element && ((Element) node).isBlock() &&
+                    node.nextSibling() instanceof TextNode && !lastCharIsSpace()) {
+                mText.append(' ');
+            }
+            return FilterResult.CONTINUE;
+        }
+
+        /*
+         * Entrega o parágrafo atual ao listener. Retorna true se for o parágrafo do autor, que
+         * encerra a extração.
+         */
+        private boolean endParagraph() {
+            mParagraph = null;
+
+            String text = trimSpaces(mText);
+            mText.setLength(0);
+
+            // Parágrafos apenas com BR não são vazios, como no parser anterior
+            if (!text.isEmpty()) {
+                String trimmedText = text.trim();
+                if (trimmedText.equalsIgnoreCase(AUTHOR)) {
+                    mListener.onParagraph(TYPE_AUTHOR, text);
+                    mImages.clear();
+                    return true;
+                }
+
+                mListener.onParagraph(
+                        trimmedText.equalsIgnoreCase(END) ?
+                                TYPE_END :
+                                TYPE_TEXT, text);
+            }
+
+            for (String imageUrl : mImages) {
+                int queryStart = imageUrl.indexOf('?');
+                mListener.onParagraph(TYPE_IMAGE,
+                        queryStart == -1 ? imageUrl : imageUrl.substring(0, queryStart));
+            }
+            mImages.clear();
+
+            return false;
+        }
+
+        /*
+         * Equivalente ao trim() do Element.text(), preservando as quebras de linha dos BR nas
+         * pontas (antes eram um token, e não espaço, no momento do trim).
+         */
+        private static String trimSpaces(StringBuilder text) {
+            int start = 0;
+            int end = text.length();
+            while (start < end && isTrimmable(text.charAt(start))) start++;
+            while (end > start && isTrimmable(text.charAt(end - 1))) end--;
+            return text.substring(start, end);
+        }
+
+        private static boolean isTrimmable(char c) {
+            return c <= ' ' && c != '\n';
+        }
+
+        private boolean lastCharIsSpace() {
+            return mText.length() != 0 && mText.charAt(mText.length() - 1) == ' ';
+        }
+    }
+}
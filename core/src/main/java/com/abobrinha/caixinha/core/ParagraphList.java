@@ -0,0 +1,17 @@
+package com.abobrinha.caixinha.core;
+
+/**
+ * Parágrafos de uma história, na ordem em que são exibidos: lidos de um blob
+ * (ParagraphBlob.Reader) ou já decodificados em memória (HistoryCache.Entry).
+ */
+public interface ParagraphList {
+
+    int getCount();
+
+    // Identificador do parágrafo: a posição no blob (a partir de 1) ou o _ID da linha gravada
+    long getId(int index);
+
+    int getType(int index);
+
+    String getContent(int index);
+}
@@ -0,0 +1,14 @@
+package com.abobrinha.caixinha.core;
+
+/**
+ * Resposta da API do WordPress inválida: JSON malformado, post sem os campos obrigatórios ou
+ * erro informado pela própria API.
+ */
+public class WordPressFormatException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    public WordPressFormatException(String message) {
+        super(message);
+    }
+}
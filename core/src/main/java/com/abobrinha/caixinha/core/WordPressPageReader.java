@@ -0,0 +1,213 @@
+package com.abobrinha.caixinha.core;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.MalformedJsonException;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Leitura das respostas da API de posts do WordPress diretamente do stream, um post por vez.
+ *
+ * Uma página de resultados é lida chamando nextPost até que retorne false. Os campos fora da
+ * lista de posts ("found" e os de erro da API) podem vir antes ou depois dela e ficam disponíveis
+ * ao final da página. O pico de memória fica limitado a um único post.
+ */
+public class WordPressPageReader {
+
+    public static final String FIELD_ID = "ID";
+    public static final String FIELD_DATE = "date";
+    public static final String FIELD_MODIFIED = "modified";
+    public static final String FIELD_TITLE = "title";
+    public static final String FIELD_URL = "URL";
+    public static final String FIELD_IMAGE = "featured_image";
+    public static final String FIELD_CONTENT = "content";
+
+    // Total de posts encontrados na consulta, quando não informado pela API
+    public static final int NOT_FOUND = -1;
+
+    private static final String FIELD_POSTS = "posts";
+    private static final String FIELD_FOUND = "found";
+    private static final String FIELD_ERROR_TYPE = "error";
+    private static final String FIELD_ERROR_MESSAGE = "message";
+
+    private final JsonReader mReader;
+    private boolean mStarted = false;
+    private boolean mInPosts = false;
+    private boolean mFinished = false;
+    private int mFound = NOT_FOUND;
+    private String mErrorType;
+    private String mErrorMessage;
+
+    public WordPressPageReader(Reader in) {
+        mReader = new JsonReader(in);
+    }
+
+    /*
+     * Lê o próximo post da página para a row informada. Retorna false ao final da página, depois
+     * de verificar se a API retornou um erro.
+     */
+    public boolean nextPost(HistoryRow row) throws IOException, WordPressFormatException {
+        if (mFinished) return false;
+
+        try {
+            if (!mStarted) {
+                mReader.beginObject();
+                mStarted = true;
+            }
+
+            if (mInPosts && nextPostInList(row)) return true;
+
+            while (mReader.hasNext()) {
+                String name = mReader.nextName();
+                if (name.equals(FIELD_ERROR_TYPE)) {
+                    mErrorType = nextStringOrNull(mReader);
+                } else if (name.equals(FIELD_ERROR_MESSAGE)) {
+                    mErrorMessage = nextStringOrNull(mReader);
+                } else if (name.equals(FIELD_FOUND) && mReader.peek() == JsonToken.NUMBER) {
+                    mFound = mReader.nextInt();
+                } else if (name.equals(FIELD_POSTS) && mReader.peek() == JsonToken.BEGIN_ARRAY) {
+                    mReader.beginArray();
+                    mInPosts = true;
+                    if (nextPostInList(row)) return true;
+                } else {
+                    mReader.skipValue();
+                }
+            }
+            mReader.endObject();
+        } catch (IllegalStateException | MalformedJsonException | NumberFormatException e) {
+            throw new WordPressFormatException(e.getMessage());
+        }
+
+        mFinished = true;
+        checkApiError(mErrorType, mErrorMessage);
+        return false;
+    }
+
+    /*
+     * Total de posts encontrados na consulta (campo "found"), ou NOT_FOUND. Completo apenas ao
+     * final da página.
+     */
+    public int getFound() {
+        return mFound;
+    }
+
+    /*
+     * Lê uma única história, consultada diretamente pelo seu ID na API.
+     */
+    public static void readSinglePost(Reader in, HistoryRow row)
+            throws IOException, WordPressFormatException {
+        JsonReader reader = new JsonReader(in);
+        String errorType = null;
+        String errorMessage = null;
+        RequiredFields required = new RequiredFields();
+
+        try {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (name.equals(FIELD_ERROR_TYPE)) {
+                    errorType = nextStringOrNull(reader);
+                } else if (name.equals(FIELD_ERROR_MESSAGE)) {
+                    errorMessage = nextStringOrNull(reader);
+                } else {
+                    readPostField(reader, name, row, required);
+                }
+            }
+            reader.endObject();
+        } catch (IllegalStateException | MalformedJsonException | NumberFormatException e) {
+            throw new WordPressFormatException(e.getMessage());
+        }
+
+        checkApiError(errorType, errorMessage);
+        required.check();
+    }
+
+    private boolean nextPostInList(HistoryRow row) throws IOException, WordPressFormatException {
+        if (mReader.hasNext()) {
+            readPost(mReader, row);
+            return true;
+        }
+
+        mReader.endArray();
+        mInPosts = false;
+        return false;
+    }
+
+    private static void readPost(JsonReader reader, HistoryRow row)
+            throws IOException, WordPressFormatException {
+        RequiredFields required = new RequiredFields();
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            readPostField(reader, reader.nextName(), row, required);
+        }
+        reader.endObject();
+
+        required.check();
+    }
+
+    /*
+     * Lê um campo de um post para a row. Apenas os campos efetivamente retornados pela API são
+     * informados, o que permite utilizar o mesmo método tanto para os dados completos quanto
+     * apenas para os metadados.
+     */
+    private static void readPostField(JsonReader reader, String name, HistoryRow row,
+                                      RequiredFields required) throws IOException {
+        switch (name) {
+            case FIELD_ID:
+                row.putId(reader.nextLong());
+                required.id = true;
+                break;
+            case FIELD_DATE:
+                row.putDate(IsoDateParser.parse(nextStringOrNull(reader)));
+                required.date = true;
+                break;
+            case FIELD_MODIFIED:
+                row.putModified(IsoDateParser.parse(nextStringOrNull(reader)));
+                break;
+            case FIELD_TITLE:
+                row.putTitle(nextStringOrNull(reader));
+                break;
+            case FIELD_URL:
+                row.putUrl(nextStringOrNull(reader));
+                break;
+            case FIELD_IMAGE:
+                row.putImage(nextStringOrNull(reader));
+                break;
+            case FIELD_CONTENT:
+                row.putRawContent(nextStringOrNull(reader));
+                break;
+            default:
+                reader.skipValue();
+        }
+    }
+
+    private static String nextStringOrNull(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        return reader.nextString();
+    }
+
+    private static void checkApiError(String errorType, String errorMessage)
+            throws WordPressFormatException {
+        if (errorType != null) {
+            throw new WordPressFormatException(
+                    String.format("API Error (%s): %s", errorType, errorMessage));
+        }
+    }
+
+    private static class RequiredFields {
+        boolean id;
+        boolean date;
+
+        void check() throws WordPressFormatException {
+            if (!id || !date) {
+                throw new WordPressFormatException("Post sem os campos obrigatórios (ID e data).");
+            }
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.abobrinha.caixinha.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+
+public class TestHistoryCache {
+
+    @Test
+    public void testHitsAndMisses() {
+        HistoryCache cache = new HistoryCache(100000);
+        HistoryCache.Entry entry = createEntry("Primeiro parágrafo", "Fim");
+
+        assertNull(cache.get(1));
+        assertTrue(cache.put(1, entry, cache.getGeneration()));
+        assertSame(entry, cache.get(1));
+        assertSame(entry, cache.get(1));
+        assertNull(cache.get(2));
+
+        assertEquals(2, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+        assertEquals(0, cache.getEvictionCount());
+        assertEquals(entry.getSize(), cache.getSize());
+    }
+
+    /**
+     * Ao ultrapassar o tamanho máximo, é descartada a história usada há mais tempo, e não a
+     * guardada há mais tempo.
+     */
+    @Test
+    public void testLeastRecentlyUsedEvicted() {
+        HistoryCache.Entry entry = createEntry("Era uma vez");
+        HistoryCache cache = new HistoryCache(3 * entry.getSize());
+
+        for (long id = 1; id <= 3; id++) {
+            assertTrue(cache.put(id, createEntry("Era uma vez"), cache.getGeneration()));
+        }
+        assertNotNull(cache.get(1));
+
+        assertTrue(cache.put(4, entry, cache.getGeneration()));
+        assertNull("A história usada há mais tempo deveria ter sido descartada.", cache.get(2));
+        assertNotNull(cache.get(1));
+        assertNotNull(cache.get(3));
+        assertNotNull(cache.get(4));
+
+        assertEquals(1, cache.getEvictionCount());
+        assertEquals(3 * entry.getSize(), cache.getSize());
+    }
+
+    @Test
+    public void testEntryLargerThanCacheNotStored() {
+        HistoryCache.Entry entry = createEntry("Um parágrafo maior que o cache inteiro");
+        HistoryCache cache = new HistoryCache(entry.getSize() - 1);
+
+        assertFalse(cache.put(1, entry, cache.getGeneration()));
+        assertNull(cache.get(1));
+        assertEquals(0, cache.getSize());
+        assertEquals(0, cache.getEvictionCount());
+    }
+
+    @Test
+    public void testInvalidate() {
+        HistoryCache cache = new HistoryCache(100000);
+        cache.put(1, createEntry("Um"), cache.getGeneration());
+        cache.put(2, createEntry("Dois"), cache.getGeneration());
+        int secondSize = cache.get(2).getSize();
+
+        cache.invalidate(1);
+        assertNull(cache.get(1));
+        assertNotNull(cache.get(2));
+        assertEquals(secondSize, cache.getSize());
+
+        cache.invalidateAll();
+        assertNull(cache.get(2));
+        assertEquals(0, cache.getSize());
+        assertEquals("Histórias invalidadas não são descartes.", 0, cache.getEvictionCount());
+    }
+
+    /**
+     * Uma entrada lida antes de uma alteração (geração anterior) não pode ser guardada depois
+     * que a história foi invalidada.
+     */
+    @Test
+    public void testStaleEntryRejected() {
+        HistoryCache cache = new HistoryCache(100000);
+        long generation = cache.getGeneration();
+        HistoryCache.Entry stale = createEntry("Conteúdo antigo");
+
+        cache.invalidate(1);
+        assertFalse(cache.put(1, stale, generation));
+        assertNull(cache.get(1));
+
+        assertTrue(cache.put(1, createEntry("Conteúdo novo"), cache.getGeneration()));
+        assertEquals("Conteúdo novo", cache.get(1).getParagraphs().getContent(0));
+    }
+
+    /**
+     * Os parágrafos são copiados do blob na criação da entrada, com os mesmos IDs.
+     */
+    @Test
+    public void testParagraphsCopiedFromBlob() {
+        ParagraphBlob.Reader reader = new ParagraphBlob.Reader(new ParagraphBlob.Builder()
+                .add(ParagraphExtractor.TYPE_TEXT, "Era uma vez ção 🐻")
+                .add(ParagraphExtractor.TYPE_IMAGE, "http://a.com/1.jpg")
+                .add(ParagraphExtractor.TYPE_END, ParagraphExtractor.END)
+                .build());
+
+        HistoryCache.Entry entry = new HistoryCache.Entry("Título", "http://a.com/capa.jpg", 1,
+                reader);
+        ParagraphList paragraphs = entry.getParagraphs();
+
+        assertEquals("Título", entry.getTitle());
+        assertEquals("http://a.com/capa.jpg", entry.getImage());
+        assertEquals(1, entry.getFavorite());
+        assertEquals(reader.getCount(), paragraphs.getCount());
+        for (int i = 0; i < reader.getCount(); i++) {
+            assertEquals(reader.getId(i), paragraphs.getId(i));
+            assertEquals(reader.getType(i), paragraphs.getType(i));
+            assertEquals(reader.getContent(i), paragraphs.getContent(i));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidMaxSize() {
+        new HistoryCache(0);
+    }
+
+    private static HistoryCache.Entry createEntry(String... contents) {
+        ParagraphBlob.Builder builder = new ParagraphBlob.Builder();
+        for (String content : contents) {
+            builder.add(ParagraphExtractor.TYPE_TEXT, content);
+        }
+        return new HistoryCache.Entry("História", null, 0,
+                new ParagraphBlob.Reader(builder.build()));
+    }
+}
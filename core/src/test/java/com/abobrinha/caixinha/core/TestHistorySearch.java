@@ -0,0 +1,68 @@
+package com.abobrinha.caixinha.core;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+
+public class TestHistorySearch {
+
+    @Test
+    public void testFold() {
+        assertEquals("coracao de leao", HistorySearch.fold("Coração de LEÃO"));
+        assertEquals("pinguim no deserto", HistorySearch.fold("Pinguim no Deserto"));
+        assertEquals("", HistorySearch.fold(""));
+    }
+
+    @Test
+    public void testMatchQuery() {
+        assertEquals("coracao*", HistorySearch.buildMatchQuery("Coração"));
+        assertEquals("era uma vez*", HistorySearch.buildMatchQuery("  Era, uma  vez"));
+        assertEquals("raposa esperta*", HistorySearch.buildMatchQuery("\"raposa\" -esperta*"));
+        assertNull(HistorySearch.buildMatchQuery(" \"*- "));
+        assertNull(HistorySearch.buildMatchQuery(null));
+    }
+
+    @Test
+    public void testContent() {
+        String content = new HistorySearch.ContentBuilder()
+                .add(ParagraphExtractor.TYPE_TEXT, "Era uma vez um Pinguim.")
+                .add(ParagraphExtractor.TYPE_IMAGE, "http://www.teste.com/1.jpg")
+                .add(ParagraphExtractor.TYPE_TEXT, "Ele foi ao deserto, à procura de calor.")
+                .add(ParagraphExtractor.TYPE_END, ParagraphExtractor.END)
+                .add(ParagraphExtractor.TYPE_AUTHOR, ParagraphExtractor.AUTHOR)
+                .build();
+
+        assertEquals("era uma vez um pinguim.\nele foi ao deserto, a procura de calor.", content);
+    }
+
+    /**
+     * Uma palavra no título vale mais que no texto, e palavras raras valem mais que comuns.
+     */
+    @Test
+    public void testRank() {
+        // 1 palavra, 2 colunas (título e texto), 100 histórias
+        double titleHit = HistorySearch.rank(matchinfo(1, 2, 100, 1, 5, 5, 0, 10, 10));
+        double contentHit = HistorySearch.rank(matchinfo(1, 2, 100, 0, 5, 5, 1, 10, 10));
+        double commonContentHit = HistorySearch.rank(matchinfo(1, 2, 100, 0, 5, 5, 1, 90, 90));
+        double repeatedContentHit = HistorySearch.rank(matchinfo(1, 2, 100, 0, 5, 5, 4, 10, 10));
+
+        assertTrue(titleHit > repeatedContentHit);
+        assertTrue(repeatedContentHit > contentHit);
+        assertTrue(contentHit > commonContentHit);
+        assertEquals(0.0, HistorySearch.rank(matchinfo(1, 2, 100, 0, 5, 5, 0, 10, 10)), 0.0);
+    }
+
+    private static byte[] matchinfo(int... values) {
+        ByteBuffer info = ByteBuffer.allocate(values.length * 4).order(ByteOrder.nativeOrder());
+        for (int value : values) {
+            info.putInt(value);
+        }
+        return info.array();
+    }
+}
@@ -0,0 +1,47 @@
+package com.abobrinha.caixinha.core;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+
+public class TestHistoryTitle {
+
+    @Test
+    public void testPlainText() {
+        assertEquals("A Raposa “Esperta”",
+                HistoryTitle.toPlainText("A Raposa &#8220;Esperta&#8221;"));
+        assertEquals("Pão & Circo", HistoryTitle.toPlainText("Pão &amp; Circo"));
+        assertEquals("O Sapo Cururu", HistoryTitle.toPlainText("<b>O Sapo</b>  Cururu"));
+    }
+
+    @Test
+    public void testSortKey() {
+        assertEquals("arvore", HistoryTitle.toSortKey("Árvore"));
+        assertEquals("coracao de leao", HistoryTitle.toSortKey("Coração de LEÃO"));
+        assertEquals("zebra”", HistoryTitle.toSortKey("“Zebra”"));
+        assertEquals("", HistoryTitle.toSortKey(""));
+    }
+
+    /**
+     * A ordem pela chave deve ser a alfabética em português, e não a dos códigos dos caracteres
+     * (em que "Árvore" viria depois de "Zebra").
+     */
+    @Test
+    public void testPortugueseOrder() {
+        String[] titles = {"Zebra", "“Égua”", "Árvore", "abacaxi", "Elefante", "Ovo"};
+        Arrays.sort(titles, new Comparator<String>() {
+            @Override
+            public int compare(String a, String b) {
+                return HistoryTitle.toSortKey(a).compareTo(HistoryTitle.toSortKey(b));
+            }
+        });
+
+        assertArrayEquals(new String[]{"abacaxi", "Árvore", "“Égua”", "Elefante", "Ovo", "Zebra"},
+                titles);
+    }
+}
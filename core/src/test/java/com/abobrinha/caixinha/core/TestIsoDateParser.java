@@ -0,0 +1,80 @@
+package com.abobrinha.caixinha.core;
+
+import org.junit.Test;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+
+
+public class TestIsoDateParser {
+
+    /**
+     * Datas conhecidas, incluindo horários da tarde e do meio-dia, que eram convertidos
+     * incorretamente pelo padrão "hh" (12 horas) da implementação anterior.
+     */
+    @Test
+    public void testKnownDates() {
+        assertEquals(0L, IsoDateParser.parse("1970-01-01T00:00:00Z"));
+        assertEquals(0L, IsoDateParser.parse("1969-12-31T21:00:00-03:00"));
+        assertEquals(1494068419000L, IsoDateParser.parse("2017-05-06T08:00:19-03:00"));
+        assertEquals(1494111619000L, IsoDateParser.parse("2017-05-06T20:00:19-03:00"));
+        assertEquals(1494082819000L, IsoDateParser.parse("2017-05-06T12:00:19-03:00"));
+        assertEquals(1494082819000L, IsoDateParser.parse("2017-05-06T15:00:19Z"));
+        assertEquals(1494082819000L, IsoDateParser.parse("2017-05-06T20:30:19+05:30"));
+        assertEquals(951782400000L, IsoDateParser.parse("2000-02-29T00:00:00+00:00"));
+    }
+
+    @Test
+    public void testInvalidDates() {
+        String[] invalidDates = {
+                null,
+                "",
+                "2017-05-06",
+                "2017-05-06 08:00:19-03:00",
+                "2017-05-06T08:00:19-0300",
+                "2017-05-06T08:00:19+03:0a",
+                "2017-13-06T08:00:19-03:00",
+                "2017-02-29T08:00:19-03:00",
+                "2017-04-31T08:00:19-03:00",
+                "2017-05-06T24:00:19-03:00",
+                "2017-05-06T08:60:19-03:00",
+                "2017-05-06T08:00:19X",
+                "2o17-05-06T08:00:19-03:00"
+        };
+
+        for (String date : invalidDates) {
+            assertEquals("Data inválida aceita: " + date,
+                    IsoDateParser.INVALID_DATE, IsoDateParser.parse(date));
+        }
+    }
+
+    /**
+     * Compara com o SimpleDateFormat (com o padrão de 24 horas correto) para datas aleatórias
+     * em diversos fusos.
+     */
+    @Test
+    public void testMatchesSimpleDateFormat() throws ParseException {
+        SimpleDateFormat reference = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssXXX", Locale.US);
+        reference.setLenient(false);
+
+        SimpleDateFormat formatter = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss", Locale.US);
+        String[] offsets = {"-03:00", "+00:00", "+05:30", "-09:30", "+14:00"};
+        Random random = new Random(113100833);
+
+        for (int i = 0; i < 10000; i++) {
+            String offset = offsets[random.nextInt(offsets.length)];
+            formatter.setTimeZone(TimeZone.getTimeZone("GMT" + offset));
+
+            long millis = (random.nextLong() % 4102444800L) * 1000L;
+            String date = formatter.format(millis) + offset;
+
+            assertEquals("Data convertida incorretamente: " + date,
+                    reference.parse(date).getTime(), IsoDateParser.parse(date));
+        }
+    }
+}
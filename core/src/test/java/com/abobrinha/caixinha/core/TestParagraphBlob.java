@@ -0,0 +1,142 @@
+package com.abobrinha.caixinha.core;
+
+import org.junit.Test;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+
+public class TestParagraphBlob {
+
+    /**
+     * Para todo o corpus do extrator, o blob deve devolver exatamente os parágrafos gravados.
+     */
+    @Test
+    public void testRoundTripCorpus() throws Exception {
+        for (String file : TestParagraphExtractor.CORPUS) {
+            List<String> paragraphs =
+                    TestParagraphExtractor.extract(TestParagraphExtractor.readResource(file));
+
+            ParagraphBlob.Reader reader = new ParagraphBlob.Reader(encode(paragraphs));
+            assertEquals("Resultado diferente do gravado em " + file, paragraphs, decode(reader));
+        }
+    }
+
+    /**
+     * Textos com acentos, emojis e maiores que 127 bytes (tamanho com mais de um byte).
+     */
+    @Test
+    public void testMultiByteContent() {
+        StringBuilder longText = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            longText.append("Era uma vez ção 🐻 ");
+        }
+
+        byte[] blob = new ParagraphBlob.Builder()
+                .add(ParagraphExtractor.TYPE_TEXT, longText.toString())
+                .add(ParagraphExtractor.TYPE_TEXT, "")
+                .add(ParagraphExtractor.TYPE_END, ParagraphExtractor.END)
+                .build();
+
+        ParagraphBlob.Reader reader = new ParagraphBlob.Reader(blob);
+        assertEquals(3, reader.getCount());
+        assertEquals(longText.toString(), reader.getContent(0));
+        assertEquals("", reader.getContent(1));
+        assertEquals(ParagraphExtractor.TYPE_END, reader.getType(2));
+        assertEquals(ParagraphExtractor.END, reader.getContent(2));
+    }
+
+    /**
+     * O texto de cada parágrafo só é decodificado quando solicitado, e apenas uma vez.
+     */
+    @Test
+    public void testContentDecodedLazily() {
+        byte[] blob = new ParagraphBlob.Builder()
+                .add(ParagraphExtractor.TYPE_TEXT, "Primeiro")
+                .add(ParagraphExtractor.TYPE_IMAGE, "http://a.com/1.jpg")
+                .build();
+
+        ParagraphBlob.Reader reader = new ParagraphBlob.Reader(blob);
+        assertEquals(ParagraphExtractor.TYPE_IMAGE, reader.getType(1));
+
+        String content = reader.getContent(1);
+        assertEquals("http://a.com/1.jpg", content);
+        assertSame("Texto do parágrafo foi decodificado novamente.", content, reader.getContent(1));
+    }
+
+    @Test
+    public void testInvalidBlobRejected() {
+        byte[] blob = new ParagraphBlob.Builder()
+                .add(ParagraphExtractor.TYPE_TEXT, "Parágrafo completo")
+                .build();
+
+        byte[] truncated = new byte[blob.length - 3];
+        System.arraycopy(blob, 0, truncated, 0, truncated.length);
+        assertRejected(truncated);
+
+        byte[] unknownVersion = blob.clone();
+        unknownVersion[0] = (byte) (ParagraphBlob.FORMAT_VERSION + 1);
+        assertRejected(unknownVersion);
+
+        assertRejected(new byte[0]);
+    }
+
+    /**
+     * Compara o tamanho do blob com o dos textos dos parágrafos: o formato deve acrescentar
+     * apenas alguns bytes por parágrafo.
+     */
+    @Test
+    public void testCompactEncoding() throws Exception {
+        Charset utf8 = Charset.forName("UTF-8");
+        int paragraphCount = 0;
+        int contentBytes = 0;
+        int blobBytes = 0;
+
+        for (String file : TestParagraphExtractor.CORPUS) {
+            List<String> paragraphs =
+                    TestParagraphExtractor.extract(TestParagraphExtractor.readResource(file));
+            for (String paragraph : paragraphs) {
+                contentBytes += paragraph.substring(paragraph.indexOf('|') + 1).getBytes(utf8).length;
+            }
+            paragraphCount += paragraphs.size();
+            blobBytes += encode(paragraphs).length;
+        }
+
+        assertTrue("Blob com mais de 4 bytes por parágrafo além do texto.",
+                blobBytes - contentBytes <= paragraphCount * 4);
+    }
+
+    private static void assertRejected(byte[] blob) {
+        try {
+            new ParagraphBlob.Reader(blob);
+            fail("Blob inválido deveria ter sido rejeitado.");
+        } catch (IllegalArgumentException e) {
+            // esperado
+        }
+    }
+
+    // Parágrafos no formato "tipo|conteúdo", como em TestParagraphExtractor
+    private static byte[] encode(List<String> paragraphs) {
+        ParagraphBlob.Builder builder = new ParagraphBlob.Builder();
+        for (String paragraph : paragraphs) {
+            int separator = paragraph.indexOf('|');
+            builder.add(Integer.parseInt(paragraph.substring(0, separator)),
+                    paragraph.substring(separator + 1));
+        }
+        return builder.build();
+    }
+
+    private static List<String> decode(ParagraphBlob.Reader reader) {
+        List<String> paragraphs = new ArrayList<>();
+        for (int i = 0; i < reader.getCount(); i++) {
+            paragraphs.add(reader.getType(i) + "|" + reader.getContent(i));
+        }
+        return paragraphs;
+    }
+}
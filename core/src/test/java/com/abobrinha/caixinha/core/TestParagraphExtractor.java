@@ -0,0 +1,107 @@
+package com.abobrinha.caixinha.core;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+
+
+public class TestParagraphExtractor {
+
+    // Conteúdos reais do fixture da API e casos montados com as marcações dos editores do WordPress
+    static final String[] CORPUS = {
+            "paragraphs/fixture_1.html",
+            "paragraphs/fixture_2.html",
+            "paragraphs/fixture_3.html",
+            "paragraphs/classic_editor.html",
+            "paragraphs/block_editor.html",
+            "paragraphs/edge_cases.html"
+    };
+
+    /**
+     * Para todo o corpus, o extrator deve gerar exatamente a mesma sequência de parágrafos
+     * (tipo e conteúdo) que o parser anterior, gravada em um arquivo .expected.txt ao lado de
+     * cada HTML (ver readExpected).
+     */
+    @Test
+    public void testSameOutputAsLegacyParser() throws Exception {
+        for (String file : CORPUS) {
+            String html = readResource(file);
+            List<String> expected = readExpected(file.replace(".html", ".expected.txt"));
+
+            assertFalse("Corpus sem parágrafos: " + file, expected.isEmpty());
+            assertEquals("Resultado diferente do parser anterior em " + file,
+                    expected, extract(html));
+        }
+    }
+
+    /**
+     * Correção em relação ao parser anterior: cada imagem de um parágrafo gera sua própria linha.
+     */
+    @Test
+    public void testMultipleImagesInParagraph() {
+        String html = "<p>Duas imagens<img src='http://a.com/1.jpg?w=10'>" +
+                "<img src='http://a.com/2.jpg'></p>";
+
+        assertEquals(Arrays.asList(
+                ParagraphExtractor.TYPE_TEXT + "|Duas imagens",
+                ParagraphExtractor.TYPE_IMAGE + "|http://a.com/1.jpg",
+                ParagraphExtractor.TYPE_IMAGE + "|http://a.com/2.jpg"),
+                extract(html));
+    }
+
+    static List<String> extract(String html) {
+        final List<String> paragraphs = new ArrayList<>();
+        ParagraphExtractor.extract(html, new ParagraphExtractor.OnParagraphListener() {
+            @Override
+            public void onParagraph(int type, String content) {
+                paragraphs.add(type + "|" + content);
+            }
+        });
+        return paragraphs;
+    }
+
+    /*
+     * Um parágrafo por linha, no formato "tipo|conteúdo", com as quebras de linha do conteúdo
+     * escritas como \n e as barras invertidas como \\.
+     */
+    private static List<String> readExpected(String name) throws IOException {
+        List<String> paragraphs = new ArrayList<>();
+        for (String line : readResource(name).split("\n")) {
+            StringBuilder paragraph = new StringBuilder(line.length());
+            for (int i = 0; i < line.length(); i++) {
+                char c = line.charAt(i);
+                if (c == '\\' && i + 1 < line.length()) {
+                    c = line.charAt(++i) == 'n' ? '\n' : line.charAt(i);
+                }
+                paragraph.append(c);
+            }
+            paragraphs.add(paragraph.toString());
+        }
+        return paragraphs;
+    }
+
+    static String readResource(String name) throws IOException {
+        InputStream in = TestParagraphExtractor.class.getClassLoader().getResourceAsStream(name);
+        assertNotNull("Recurso não encontrado: " + name, in);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toString("UTF-8");
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.abobrinha.caixinha.core;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+
+public class TestWordPressPageReader {
+
+    private static final String FIXTURE_POSTS = "fixtures/posts.json";
+
+    @Test
+    public void testRecordedPage() throws Exception {
+        WordPressPageReader reader = new WordPressPageReader(
+                new StringReader(TestParagraphExtractor.readResource(FIXTURE_POSTS)));
+        List<MapRow> rows = readAll(reader);
+
+        assertEquals(30, rows.size());
+        assertEquals(30, reader.getFound());
+
+        MapRow first = rows.get(0);
+        assertEquals(2929L, first.get(WordPressPageReader.FIELD_ID));
+        assertEquals(IsoDateParser.parse("2018-06-15T17:17:01-03:00"),
+                first.get(WordPressPageReader.FIELD_DATE));
+        assertEquals("O Pinguim no Deserto", first.get(WordPressPageReader.FIELD_TITLE));
+        for (MapRow row : rows) {
+            assertNotNull(row.get(WordPressPageReader.FIELD_URL));
+            assertNotNull(row.get(WordPressPageReader.FIELD_CONTENT));
+            assertTrue((Long) row.get(WordPressPageReader.FIELD_MODIFIED) > 0);
+        }
+    }
+
+    /**
+     * Os campos da página podem vir depois dos posts, e apenas os campos presentes são lidos.
+     */
+    @Test
+    public void testFieldsAfterPostsAndPartialPosts() throws Exception {
+        String json = "{\"posts\":[" +
+                "{\"ID\":1,\"date\":\"2017-05-06T08:00:19-03:00\",\"title\":null,\"other\":[1,2]}," +
+                "{\"ID\":2,\"date\":\"invalida\",\"URL\":\"http://a.com/2\"}]," +
+                "\"found\":42,\"meta\":{\"links\":{}}}";
+
+        WordPressPageReader reader = new WordPressPageReader(new StringReader(json));
+        List<MapRow> rows = readAll(reader);
+
+        assertEquals(2, rows.size());
+        assertEquals(42, reader.getFound());
+
+        assertTrue(rows.get(0).containsKey(WordPressPageReader.FIELD_TITLE));
+        assertNull(rows.get(0).get(WordPressPageReader.FIELD_TITLE));
+        assertFalse(rows.get(0).containsKey(WordPressPageReader.FIELD_CONTENT));
+        assertEquals(IsoDateParser.INVALID_DATE, rows.get(1).get(WordPressPageReader.FIELD_DATE));
+    }
+
+    @Test
+    public void testEmptyPage() throws Exception {
+        WordPressPageReader reader =
+                new WordPressPageReader(new StringReader("{\"found\":0,\"posts\":[]}"));
+        assertFalse(reader.nextPost(new MapRow()));
+        assertFalse(reader.nextPost(new MapRow()));
+        assertEquals(0, reader.getFound());
+    }
+
+    @Test
+    public void testInvalidResponses() throws Exception {
+        assertRejected("{\"error\":\"unknown_blog\",\"message\":\"Unknown blog\"}");
+        assertRejected("{\"posts\":[{\"ID\":1}]}");
+        assertRejected("{\"posts\":[{\"date\":\"2017-05-06T08:00:19-03:00\"}]}");
+        assertRejected("{\"posts\":[{\"ID\":\"abc\",\"date\":\"2017-05-06T08:00:19-03:00\"}]}");
+        assertRejected("[]");
+    }
+
+    @Test
+    public void testSinglePost() throws Exception {
+        MapRow row = new MapRow();
+        WordPressPageReader.readSinglePost(new StringReader(
+                "{\"ID\":7,\"date\":\"2017-05-06T15:00:19Z\",\"content\":\"<p>Era uma vez</p>\"}"),
+                row);
+
+        assertEquals(7L, row.get(WordPressPageReader.FIELD_ID));
+        assertEquals(1494082819000L, row.get(WordPressPageReader.FIELD_DATE));
+        assertEquals("<p>Era uma vez</p>", row.get(WordPressPageReader.FIELD_CONTENT));
+
+        try {
+            WordPressPageReader.readSinglePost(new StringReader(
+                    "{\"error\":\"unknown_post\",\"message\":\"Unknown post\"}"), new MapRow());
+            fail("Erro da API deveria ter sido lançado.");
+        } catch (WordPressFormatException e) {
+            assertTrue(e.getMessage().contains("unknown_post"));
+        }
+    }
+
+    private static void assertRejected(String json) throws IOException {
+        try {
+            readAll(new WordPressPageReader(new StringReader(json)));
+            fail("Resposta inválida deveria ter sido rejeitada: " + json);
+        } catch (WordPressFormatException e) {
+            // esperado
+        }
+    }
+
+    private static List<MapRow> readAll(WordPressPageReader reader)
+            throws IOException, WordPressFormatException {
+        List<MapRow> rows = new ArrayList<>();
+        MapRow row = new MapRow();
+        while (reader.nextPost(row)) {
+            rows.add(row);
+            row = new MapRow();
+        }
+        return rows;
+    }
+
+    /*
+     * Guarda cada campo com o nome utilizado pela API.
+     */
+    private static class MapRow extends HashMap<String, Object> implements HistoryRow {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public void putId(long id) {
+            put(WordPressPageReader.FIELD_ID, id);
+        }
+
+        @Override
+        public void putDate(long dateMillis) {
+            put(WordPressPageReader.FIELD_DATE, dateMillis);
+        }
+
+        @Override
+        public void putModified(long dateMillis) {
+            put(WordPressPageReader.FIELD_MODIFIED, dateMillis);
+        }
+
+        @Override
+        public void putTitle(String title) {
+            put(WordPressPageReader.FIELD_TITLE, title);
+        }
+
+        @Override
+        public void putUrl(String url) {
+            put(WordPressPageReader.FIELD_URL, url);
+        }
+
+        @Override
+        public void putImage(String imageUrl) {
+            put(WordPressPageReader.FIELD_IMAGE, imageUrl);
+        }
+
+        @Override
+        public void putRawContent(String rawContent) {
+            put(WordPressPageReader.FIELD_CONTENT, rawContent);
+        }
+    }
+}